@@ -0,0 +1,109 @@
+package checkers.inference.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.sat4j.core.VecInt;
+
+import checkers.inference.InferenceResult;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.PropagationSolver;
+import checkers.inference.solver.backend.maxsat.MaxSatFormatTranslator;
+import checkers.inference.solver.backend.maxsat.MaxSatSolverFactory;
+import checkers.inference.solver.backend.maxsat.encoder.MaxSATSubtypeConstraintEncoder;
+import checkers.inference.solver.backend.z3.Z3Solver;
+import checkers.inference.solver.util.SolverEnvironment;
+
+/**
+ * Benchmarks of the solver backends on the normalized constraints of a {@link Workload}: MaxSAT
+ * clause encoding alone, and complete solves with MaxSatSolver, Z3Solver and PropagationSolver.
+ * {@link #maxSatSubtypeEncoding} encodes subtype constraints between variables alone, which
+ * instantiates the clause templates of the lattice.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BackendBenchmarks {
+
+    @Benchmark
+    public List<VecInt> maxSatEncoding(Workload workload) {
+        MaxSatFormatTranslator formatTranslator = new MaxSatFormatTranslator(workload.lattice);
+        List<VecInt> clauses = new ArrayList<>();
+        for (Constraint constraint : workload.normalizedConstraints) {
+            VecInt[] encoding = constraint.serialize(formatTranslator);
+            if (encoding != null) {
+                Collections.addAll(clauses, encoding);
+            }
+        }
+        for (Slot slot : workload.slots) {
+            if (slot instanceof VariableSlot) {
+                formatTranslator.generateWellFormednessClauses(clauses, slot.getId());
+            }
+        }
+        return clauses;
+    }
+
+    /** Each variable is constrained to be a subtype of this many of the variables after it. */
+    private static final int SUPERTYPES_PER_VARIABLE = 8;
+
+    @Benchmark
+    public long maxSatSubtypeEncoding(Workload workload) {
+        Map<AnnotationMirror, Integer> typeToInt = AnnotationUtils.createAnnotationMap();
+        for (AnnotationMirror type : workload.lattice.allTypes) {
+            typeToInt.put(type, typeToInt.size());
+        }
+        MaxSATSubtypeConstraintEncoder encoder = new MaxSATSubtypeConstraintEncoder(workload.lattice, typeToInt);
+        List<VariableSlot> variables = workload.variables;
+        long clauses = 0;
+        for (int i = 0; i < variables.size(); i++) {
+            for (int j = 1; j <= SUPERTYPES_PER_VARIABLE; j++) {
+                clauses += encoder.encodeVariable_Variable(variables.get(i),
+                        variables.get((i + j) % variables.size())).length;
+            }
+        }
+        return clauses;
+    }
+
+    @Benchmark
+    public Map<Integer, AnnotationMirror> maxSatSolve(Workload workload) {
+        return new MaxSatSolverFactory()
+                .createSolver(solverEnvironment(workload), workload.slots, workload.normalizedConstraints, workload.lattice)
+                .solve();
+    }
+
+    @Benchmark
+    public Map<Integer, AnnotationMirror> z3Solve(Workload workload) {
+        return new Z3Solver(solverEnvironment(workload), workload.slots, workload.normalizedConstraints,
+                new LatticeZ3BitVectorFormatTranslator(workload.lattice), workload.lattice)
+                .solve();
+    }
+
+    @Benchmark
+    public InferenceResult propagationSolve(Workload workload) {
+        return new PropagationSolver().solve(Collections.<String, String>emptyMap(), workload.slots,
+                workload.normalizedConstraints, workload.environment.qualifierHierarchy,
+                workload.environment.processingEnvironment);
+    }
+
+    private static SolverEnvironment solverEnvironment(Workload workload) {
+        return new SolverEnvironment(Collections.<String, String>emptyMap(),
+                workload.environment.processingEnvironment);
+    }
+}
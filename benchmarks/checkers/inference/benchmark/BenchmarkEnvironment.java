@@ -0,0 +1,100 @@
+package checkers.inference.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.type.TypeMirror;
+
+import org.checkerframework.common.basetype.BaseAnnotatedTypeFactory;
+import org.checkerframework.framework.type.QualifierHierarchy;
+import org.checkerframework.javacutil.BugInCF;
+
+import checkers.inference.DefaultSlotManager;
+import checkers.inference.InferenceMain;
+import checkers.inference.SlotManager;
+import checkers.inference.benchmark.lattice.WideLatticeAnnotatedTypeFactory;
+import checkers.inference.benchmark.lattice.WideLatticeChecker;
+import checkers.inference.replay.ReplayEnvironment;
+
+/**
+ * The inference environment the benchmarks run in: the real type factory, qualifier hierarchy and
+ * processing environment of a {@link WideLatticeChecker} of a given width, set up as a
+ * {@link ReplayEnvironment}. Synthetic workloads are built on top of it without going through
+ * javac again.
+ *
+ * InferenceMain is a singleton, so there is one environment per JVM. JMH forks a JVM for each
+ * benchmark and parameter combination, so benchmarks must not be run with {@code -f 0}.
+ */
+public final class BenchmarkEnvironment {
+
+    private static BenchmarkEnvironment instance;
+
+    public final int latticeWidth;
+
+    public final BaseAnnotatedTypeFactory realTypeFactory;
+
+    public final QualifierHierarchy qualifierHierarchy;
+
+    public final ProcessingEnvironment processingEnvironment;
+
+    /** Qualifiers of the lattice, used as the values of constant slots. */
+    public final List<AnnotationMirror> qualifiers;
+
+    /** Underlying type of the synthetic variable slots. */
+    public final TypeMirror objectType;
+
+    private BenchmarkEnvironment(int latticeWidth, ReplayEnvironment replayEnvironment) {
+        this.latticeWidth = latticeWidth;
+        this.realTypeFactory = replayEnvironment.realTypeFactory;
+        this.qualifierHierarchy = replayEnvironment.qualifierHierarchy;
+        this.processingEnvironment = replayEnvironment.processingEnvironment;
+        this.qualifiers = replayEnvironment.qualifiers;
+        this.objectType = replayEnvironment.objectType;
+    }
+
+    /**
+     * Get the environment of this JVM, setting it up on first use.
+     *
+     * @param latticeWidth number of incomparable qualifiers between top and bottom: 2, 4 or 8
+     */
+    public static synchronized BenchmarkEnvironment get(int latticeWidth) {
+        if (instance == null) {
+            try {
+                instance = bootstrap(latticeWidth);
+            } catch (IOException e) {
+                throw new BugInCF("Could not set up the benchmark environment", e);
+            }
+        } else if (instance.latticeWidth != latticeWidth) {
+            throw new BugInCF("Benchmark environment already set up with lattice width "
+                    + instance.latticeWidth + ", cannot switch to " + latticeWidth
+                    + " in the same JVM. Run the benchmarks forked.");
+        }
+        return instance;
+    }
+
+    private static BenchmarkEnvironment bootstrap(int latticeWidth) throws IOException {
+        System.setProperty(WideLatticeAnnotatedTypeFactory.WIDTH_PROPERTY, String.valueOf(latticeWidth));
+        return new BenchmarkEnvironment(latticeWidth,
+                ReplayEnvironment.bootstrap(WideLatticeChecker.class.getName()));
+    }
+
+    /**
+     * The slot manager of the inference run the environment was set up with. Solvers read the
+     * number of slots from it, so workloads that are solved must create their slots here.
+     */
+    public SlotManager getSlotManager() {
+        return InferenceMain.getInstance().getSlotManager();
+    }
+
+    /**
+     * Create an empty slot manager for this environment's type system.
+     */
+    public SlotManager createSlotManager() {
+        Set<? extends AnnotationMirror> tops = qualifierHierarchy.getTopAnnotations();
+        return new DefaultSlotManager(processingEnvironment, tops.iterator().next(),
+                realTypeFactory.getSupportedTypeQualifiers(), true);
+    }
+}
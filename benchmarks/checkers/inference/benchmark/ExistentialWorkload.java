@@ -0,0 +1,44 @@
+package checkers.inference.benchmark;
+
+import java.util.List;
+import java.util.Set;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.VariableSlot;
+
+/**
+ * Subtype constraints between chains of existential variables, as generated for uses of type
+ * variables, for the existential normalization of ConstraintNormalizer.
+ */
+@State(Scope.Benchmark)
+public class ExistentialWorkload {
+
+    @Param({"4"})
+    public int latticeWidth;
+
+    /** Number of potential variables of each existential variable. */
+    @Param({"4", "16", "32"})
+    public int depth;
+
+    @Param({"100"})
+    public int count;
+
+    @Param({"42"})
+    public long seed;
+
+    public Set<Constraint> constraints;
+
+    @Setup
+    public void setUp() {
+        BenchmarkEnvironment environment = BenchmarkEnvironment.get(latticeWidth);
+        SyntheticConstraintGenerator generator =
+                new SyntheticConstraintGenerator(environment, environment.createSlotManager(), seed);
+        List<VariableSlot> variables = generator.createVariables(4 * depth);
+        constraints = generator.generateExistentialChains(variables, count, depth);
+    }
+}
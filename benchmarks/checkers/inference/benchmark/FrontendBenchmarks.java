@@ -0,0 +1,85 @@
+package checkers.inference.benchmark;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import checkers.inference.ConstraintNormalizer;
+import checkers.inference.SlotManager;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.constraintgraph.ConstraintGraph;
+import checkers.inference.solver.constraintgraph.GraphBuilder;
+
+/**
+ * Benchmarks of the stages between constraint generation and the solver backends: slot creation,
+ * adding constraints, normalization (also of existential variables) and building the constraint
+ * graph.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontendBenchmarks {
+
+    /**
+     * Create a fresh slot manager holding one variable per workload variable and a constant per
+     * lower bound, then look every slot up by id.
+     */
+    @Benchmark
+    public SlotManager slotManager(Workload workload) {
+        SlotManager slotManager = workload.environment.createSlotManager();
+        SyntheticConstraintGenerator generator =
+                new SyntheticConstraintGenerator(workload.environment, slotManager, workload.seed);
+        for (VariableSlot variable : generator.createVariables(workload.size)) {
+            slotManager.getSlot(variable.getId());
+        }
+        for (int i = 0; i < workload.size; i++) {
+            slotManager.createConstantSlot(
+                    workload.environment.qualifiers.get(i % workload.environment.qualifiers.size()));
+        }
+        return slotManager;
+    }
+
+    @Benchmark
+    public Set<Constraint> constraintManagerAdd(Workload workload) {
+        ConstraintManager constraintManager = new ConstraintManager();
+        constraintManager.init(workload.environment.qualifierHierarchy);
+        for (Constraint constraint : workload.constraints) {
+            if (constraint instanceof SubtypeConstraint) {
+                SubtypeConstraint subtype = (SubtypeConstraint) constraint;
+                constraintManager.addSubtypeConstraint(subtype.getSubtype(), subtype.getSupertype());
+            } else if (constraint instanceof EqualityConstraint) {
+                EqualityConstraint equality = (EqualityConstraint) constraint;
+                constraintManager.addEqualityConstraint(equality.getFirst(), equality.getSecond());
+            }
+        }
+        return constraintManager.getConstraints();
+    }
+
+    @Benchmark
+    public Set<Constraint> normalize(Workload workload) {
+        return new ConstraintNormalizer().normalize(workload.constraints);
+    }
+
+    @Benchmark
+    public Set<Constraint> normalizeExistentialChains(ExistentialWorkload workload) {
+        return new ConstraintNormalizer().normalize(workload.constraints);
+    }
+
+    @Benchmark
+    public ConstraintGraph buildGraph(Workload workload) {
+        return new GraphBuilder(workload.slots, workload.normalizedConstraints, workload.lattice.top).buildGraph();
+    }
+}
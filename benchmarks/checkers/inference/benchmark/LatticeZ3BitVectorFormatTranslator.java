@@ -0,0 +1,59 @@
+package checkers.inference.benchmark;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import checkers.inference.solver.backend.z3.Z3BitVectorCodec;
+import checkers.inference.solver.backend.z3.Z3BitVectorFormatTranslator;
+import checkers.inference.solver.frontend.Lattice;
+
+/**
+ * Z3 bit vector translator for any lattice, so that Z3Solver can be benchmarked on the synthetic
+ * lattice. A qualifier is encoded as the set of qualifiers below it, which turns subtyping into the
+ * subset relation the bit vector encoders expect.
+ */
+public class LatticeZ3BitVectorFormatTranslator extends Z3BitVectorFormatTranslator {
+
+    public LatticeZ3BitVectorFormatTranslator(Lattice lattice) {
+        super(lattice);
+    }
+
+    @Override
+    protected Z3BitVectorCodec createZ3BitVectorCodec() {
+        final List<AnnotationMirror> types = new ArrayList<>(lattice.allTypes);
+
+        return new Z3BitVectorCodec() {
+            @Override
+            public int getFixedBitVectorSize() {
+                return types.size();
+            }
+
+            @Override
+            public BigInteger encodeConstantAM(AnnotationMirror am) {
+                BigInteger encoding = BigInteger.ZERO;
+                for (int i = 0; i < types.size(); i++) {
+                    if (lattice.isSubtype(types.get(i), am)) {
+                        encoding = encoding.setBit(i);
+                    }
+                }
+                return encoding;
+            }
+
+            @Override
+            public AnnotationMirror decodeNumeralValue(BigInteger numeralValue,
+                    ProcessingEnvironment processingEnvironment) {
+                for (AnnotationMirror type : types) {
+                    if (encodeConstantAM(type).equals(numeralValue)) {
+                        return type;
+                    }
+                }
+                // Values that are not a down-set of the lattice are not constrained away.
+                return lattice.top;
+            }
+        };
+    }
+}
@@ -0,0 +1,149 @@
+package checkers.inference.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import checkers.inference.SlotManager;
+import checkers.inference.model.AlwaysTrueConstraint;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+
+/**
+ * Generates synthetic, always satisfiable constraint sets of a given shape and size.
+ *
+ * Variables are connected by subtype constraints (every {@value #EQUALITY_EVERY}th one is an
+ * equality instead), and every {@value #LOWER_BOUND_EVERY}th variable gets a random qualifier of
+ * the lattice as constant lower bound. Since there are no upper bounds, top is always a solution.
+ */
+public class SyntheticConstraintGenerator {
+
+    /** Shapes of the subtype graph between the variables. */
+    public enum Shape {
+        /** v0 <: v1 <: ... <: vn */
+        CHAIN,
+        /** Every variable is a sub- or supertype of v0, alternately. */
+        STAR,
+        /** Every variable is a supertype of two random earlier variables. */
+        RANDOM_DAG
+    }
+
+    private static final int EQUALITY_EVERY = 10;
+
+    private static final int LOWER_BOUND_EVERY = 8;
+
+    private static final int RANDOM_DAG_FAN_IN = 2;
+
+    /** Class names of the locations of synthetic variables, unique per JVM. */
+    private static final AtomicInteger nextClassId = new AtomicInteger();
+
+    private final BenchmarkEnvironment environment;
+
+    private final SlotManager slotManager;
+
+    private final ConstraintManager constraintManager;
+
+    private final Random random;
+
+    public SyntheticConstraintGenerator(BenchmarkEnvironment environment, SlotManager slotManager, long seed) {
+        this.environment = environment;
+        this.slotManager = slotManager;
+        this.constraintManager = new ConstraintManager();
+        this.constraintManager.init(environment.qualifierHierarchy);
+        this.random = new Random(seed);
+    }
+
+    public List<VariableSlot> createVariables(int count) {
+        List<VariableSlot> variables = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ClassDeclLocation location = new ClassDeclLocation("synthetic.C" + nextClassId.getAndIncrement());
+            variables.add(slotManager.createSourceVariableSlot(location, environment.objectType));
+        }
+        return variables;
+    }
+
+    public Set<Constraint> generate(Shape shape, List<VariableSlot> variables) {
+        Set<Constraint> constraints = new LinkedHashSet<>();
+        int size = variables.size();
+
+        switch (shape) {
+            case CHAIN:
+                for (int i = 1; i < size; i++) {
+                    add(constraints, i, variables.get(i - 1), variables.get(i));
+                }
+                break;
+
+            case STAR:
+                VariableSlot hub = variables.get(0);
+                for (int i = 1; i < size; i++) {
+                    if (i % 2 == 0) {
+                        add(constraints, i, variables.get(i), hub);
+                    } else {
+                        add(constraints, i, hub, variables.get(i));
+                    }
+                }
+                break;
+
+            case RANDOM_DAG:
+                for (int i = 1; i < size; i++) {
+                    for (int k = 0; k < Math.min(i, RANDOM_DAG_FAN_IN); k++) {
+                        add(constraints, i, variables.get(random.nextInt(i)), variables.get(i));
+                    }
+                }
+                break;
+        }
+
+        for (int i = 0; i < size; i += LOWER_BOUND_EVERY) {
+            ConstantSlot bound = slotManager.createConstantSlot(
+                    environment.qualifiers.get(random.nextInt(environment.qualifiers.size())));
+            addIfNotTrivial(constraints, constraintManager.createSubtypeConstraint(bound, variables.get(i)));
+        }
+
+        return constraints;
+    }
+
+    /**
+     * Generates count subtype constraints between two existential variables each, which are
+     * chains of depth potential variables picked at random from variables, e.g. for depth 2
+     * (v3 | (v7 | v1)) <: (v5 | (v2 | v0)).  Deep chains are what makes the existential
+     * normalization of ConstraintNormalizer expensive.
+     */
+    public Set<Constraint> generateExistentialChains(List<VariableSlot> variables, int count, int depth) {
+        Set<Constraint> constraints = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            addIfNotTrivial(constraints, constraintManager.createSubtypeConstraint(
+                    existentialChain(variables, depth), existentialChain(variables, depth)));
+        }
+        return constraints;
+    }
+
+    private Slot existentialChain(List<VariableSlot> variables, int depth) {
+        Slot chain = variables.get(random.nextInt(variables.size()));
+        for (int i = 0; i < depth; i++) {
+            chain = slotManager.createExistentialVariableSlot(
+                    variables.get(random.nextInt(variables.size())), chain);
+        }
+        return chain;
+    }
+
+    private void add(Set<Constraint> constraints, int index, Slot subtype, Slot supertype) {
+        if (index % EQUALITY_EVERY == 0) {
+            addIfNotTrivial(constraints, constraintManager.createEqualityConstraint(subtype, supertype));
+        } else {
+            addIfNotTrivial(constraints, constraintManager.createSubtypeConstraint(subtype, supertype));
+        }
+    }
+
+    private static void addIfNotTrivial(Set<Constraint> constraints, Constraint constraint) {
+        if (!(constraint instanceof AlwaysTrueConstraint)) {
+            constraints.add(constraint);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package checkers.inference.benchmark;
+
+import java.util.List;
+import java.util.Set;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import checkers.inference.ConstraintNormalizer;
+import checkers.inference.SlotManager;
+import checkers.inference.benchmark.SyntheticConstraintGenerator.Shape;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.frontend.LatticeBuilder;
+
+/**
+ * A synthetic workload shared by the benchmarks of one fork, created in the slot manager of the
+ * {@link BenchmarkEnvironment} so that it can be handed to the solvers.
+ */
+@State(Scope.Benchmark)
+public class Workload {
+
+    @Param({"4"})
+    public int latticeWidth;
+
+    @Param({"RANDOM_DAG"})
+    public Shape shape;
+
+    @Param({"1000"})
+    public int size;
+
+    @Param({"42"})
+    public long seed;
+
+    public BenchmarkEnvironment environment;
+
+    public List<VariableSlot> variables;
+
+    /** Constraints as created by the ConstraintManager. */
+    public Set<Constraint> constraints;
+
+    /** Constraints as handed to the solvers by InferenceMain. */
+    public Set<Constraint> normalizedConstraints;
+
+    /** All slots of the environment's slot manager, including the workload's. */
+    public List<Slot> slots;
+
+    public Lattice lattice;
+
+    @Setup
+    public void setUp() {
+        environment = BenchmarkEnvironment.get(latticeWidth);
+        SlotManager slotManager = environment.getSlotManager();
+        SyntheticConstraintGenerator generator = new SyntheticConstraintGenerator(environment, slotManager, seed);
+        variables = generator.createVariables(size);
+        constraints = generator.generate(shape, variables);
+        normalizedConstraints = new ConstraintNormalizer().normalize(constraints);
+        slots = slotManager.getSlots();
+        lattice = new LatticeBuilder().buildLattice(environment.qualifierHierarchy, slots);
+    }
+}
@@ -0,0 +1,64 @@
+package checkers.inference.benchmark.lattice;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.checkerframework.common.basetype.BaseTypeChecker;
+import org.checkerframework.javacutil.BugInCF;
+
+import checkers.inference.BaseInferenceRealTypeFactory;
+import checkers.inference.benchmark.lattice.qual.Wide1;
+import checkers.inference.benchmark.lattice.qual.Wide2;
+import checkers.inference.benchmark.lattice.qual.Wide3;
+import checkers.inference.benchmark.lattice.qual.Wide4;
+import checkers.inference.benchmark.lattice.qual.Wide5;
+import checkers.inference.benchmark.lattice.qual.Wide6;
+import checkers.inference.benchmark.lattice.qual.Wide7;
+import checkers.inference.benchmark.lattice.qual.Wide8;
+import checkers.inference.benchmark.lattice.qual.WideBottom2;
+import checkers.inference.benchmark.lattice.qual.WideBottom4;
+import checkers.inference.benchmark.lattice.qual.WideBottom8;
+import checkers.inference.benchmark.lattice.qual.WideTop;
+
+public class WideLatticeAnnotatedTypeFactory extends BaseInferenceRealTypeFactory {
+
+    /** System property holding the number of middle qualifiers: 2, 4 or 8. */
+    public static final String WIDTH_PROPERTY = "inference.benchmark.latticeWidth";
+
+    private static final List<Class<? extends Annotation>> MIDDLE_QUALIFIERS = Arrays.asList(
+            Wide1.class, Wide2.class, Wide3.class, Wide4.class,
+            Wide5.class, Wide6.class, Wide7.class, Wide8.class);
+
+    public WideLatticeAnnotatedTypeFactory(BaseTypeChecker checker, boolean isInfer) {
+        super(checker, isInfer);
+        postInit();
+    }
+
+    @Override
+    protected Set<Class<? extends Annotation>> createSupportedTypeQualifiers() {
+        int width = Integer.getInteger(WIDTH_PROPERTY, 4);
+        Class<? extends Annotation> bottom;
+        switch (width) {
+            case 2:
+                bottom = WideBottom2.class;
+                break;
+            case 4:
+                bottom = WideBottom4.class;
+                break;
+            case 8:
+                bottom = WideBottom8.class;
+                break;
+            default:
+                throw new BugInCF("Unsupported benchmark lattice width: " + width);
+        }
+
+        Set<Class<? extends Annotation>> res = new HashSet<>();
+        res.add(WideTop.class);
+        res.addAll(MIDDLE_QUALIFIERS.subList(0, width));
+        res.add(bottom);
+        return res;
+    }
+}
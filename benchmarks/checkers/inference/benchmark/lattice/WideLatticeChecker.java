@@ -0,0 +1,16 @@
+package checkers.inference.benchmark.lattice;
+
+import checkers.inference.BaseInferrableChecker;
+
+/**
+ * A type system with no rules of its own, used by the benchmarks to get a lattice of a chosen
+ * width: {@code WideTop}, {@code Wide1} to {@code WideN} and {@code WideBottomN}, where N is the
+ * value of the {@value WideLatticeAnnotatedTypeFactory#WIDTH_PROPERTY} system property.
+ */
+public class WideLatticeChecker extends BaseInferrableChecker {
+
+    @Override
+    public WideLatticeAnnotatedTypeFactory createRealTypeFactory(boolean infer) {
+        return new WideLatticeAnnotatedTypeFactory(this, infer);
+    }
+}
@@ -0,0 +1,20 @@
+package checkers.inference.benchmark.lattice.qual;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.checkerframework.framework.qual.SubtypeOf;
+
+/**
+ * Middle qualifier 4 of the synthetic benchmark lattice, incomparable to the other middle qualifiers.
+ *
+ * @see checkers.inference.benchmark.lattice.WideLatticeChecker
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE_USE, ElementType.TYPE_PARAMETER})
+@SubtypeOf({WideTop.class})
+public @interface Wide4 {}
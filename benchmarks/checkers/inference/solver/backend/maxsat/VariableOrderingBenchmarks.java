@@ -0,0 +1,139 @@
+package checkers.inference.solver.backend.maxsat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sat4j.core.VecInt;
+import org.sat4j.maxsat.WeightedMaxSatDecorator;
+import org.sat4j.minisat.core.ICDCL;
+import org.sat4j.pb.IPBSolver;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * Benchmarks sat4j on a generated coloring problem with the clauses in encoding order, and
+ * renumbered and seeded by a {@link VariableOrdering}.  In the package of VariableOrdering, whose
+ * constructor from a graph is package-private.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VariableOrderingBenchmarks {
+
+    private static final int NUM_TYPES = 3;
+
+    /**
+     * A 3-coloring of a random graph with a planted solution, at an edge density where such
+     * problems need search, with a few slots fixed by constants.
+     */
+    @State(Scope.Benchmark)
+    public static class ColoringInstance {
+
+        /** NONE for the encoding order, or a {@link VariableOrdering.Strategy}. */
+        @Param({"NONE", "BFS", "RCM"})
+        public String strategy;
+
+        @Param({"400"})
+        public int slots;
+
+        @Param({"3"})
+        public long seed;
+
+        List<VecInt> clauses;
+
+        VariableOrdering ordering;
+
+        @Setup
+        public void setUp() {
+            Random random = new Random(seed);
+            int[] colors = new int[slots + 1];
+            for (int s = 1; s <= slots; s++) {
+                colors[s] = random.nextInt(NUM_TYPES);
+            }
+            int[] from = new int[slots * 23 / 10];
+            int[] to = new int[from.length];
+            int edges = 0;
+            while (edges < from.length) {
+                int a = 1 + random.nextInt(slots);
+                int b = 1 + random.nextInt(slots);
+                if (colors[a] != colors[b]) {
+                    from[edges] = a;
+                    to[edges] = b;
+                    edges++;
+                }
+            }
+            clauses = new ArrayList<>();
+            for (int s = 1; s <= slots; s++) {
+                int[] atLeastOne = new int[NUM_TYPES];
+                for (int t = 0; t < NUM_TYPES; t++) {
+                    atLeastOne[t] = var(s, t);
+                    for (int u = t + 1; u < NUM_TYPES; u++) {
+                        clauses.add(VectorUtils.asVec(-var(s, t), -var(s, u)));
+                    }
+                }
+                clauses.add(VectorUtils.asVec(atLeastOne));
+            }
+            for (int e = 0; e < edges; e++) {
+                for (int t = 0; t < NUM_TYPES; t++) {
+                    clauses.add(VectorUtils.asVec(-var(from[e], t), -var(to[e], t)));
+                }
+            }
+            boolean[] adjacentToConstant = new boolean[slots + 1];
+            for (int i = 0; i < 5; i++) {
+                int s = 1 + random.nextInt(slots);
+                adjacentToConstant[s] = true;
+                clauses.add(VectorUtils.asVec(var(s, colors[s])));
+            }
+
+            if (!strategy.equals("NONE")) {
+                ordering = new VariableOrdering(slots, NUM_TYPES, from, to, edges, adjacentToConstant,
+                        VariableOrdering.Strategy.valueOf(strategy));
+            }
+        }
+    }
+
+    @Benchmark
+    public int[] solveColoring(ColoringInstance instance) throws ContradictionException, TimeoutException {
+        int variables = instance.slots * NUM_TYPES;
+        VariableOrdering ordering = instance.ordering;
+        IPBSolver pbSolver = org.sat4j.pb.SolverFactory.newDefault();
+        List<VecInt> solverClauses = new ArrayList<>();
+        for (VecInt clause : instance.clauses) {
+            solverClauses.add(ordering != null ? ordering.toSolverClause(clause) : clause);
+        }
+        if (ordering != null) {
+            ICDCL<?> cdclSolver = (ICDCL<?>) pbSolver;
+            cdclSolver.setOrder(new SeededVarOrderHeap(cdclSolver.getOrder().getPhaseSelectionStrategy(),
+                    ordering, variables));
+            VariableOrdering.sortClauses(solverClauses);
+        }
+        WeightedMaxSatDecorator solver = new WeightedMaxSatDecorator(pbSolver);
+        solver.newVar(variables);
+        for (VecInt clause : solverClauses) {
+            solver.addHardClause(clause);
+        }
+        if (!solver.isSatisfiable()) {
+            throw new IllegalStateException("Unsatisfiable, although the planted coloring is a solution");
+        }
+        return ordering != null ? ordering.fromSolverModel(solver.model()) : solver.model();
+    }
+
+    private static int var(int slot, int type) {
+        return (slot - 1) * NUM_TYPES + type + 1;
+    }
+}
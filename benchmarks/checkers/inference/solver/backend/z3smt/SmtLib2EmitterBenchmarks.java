@@ -0,0 +1,150 @@
+package checkers.inference.solver.backend.z3smt;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+import com.microsoft.z3.Expr;
+import com.microsoft.z3.IntExpr;
+import com.microsoft.z3.Optimize;
+
+/**
+ * Benchmarks writing the SMT-LIB2 input of Z3SmtSolver on generated encodings, with z3's
+ * {@code Optimize.toString()} for the slots and {@code simplify().toString()} for every
+ * constraint, the default, and with {@link SmtLib2Emitter}, the {@code directEmission} option.
+ * Only needs the Z3 native library on {@code java.library.path}, not the inference environment.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SmtLib2EmitterBenchmarks {
+
+    /**
+     * Integer slots ranging over the {@code types} qualifiers of a chain, with subtype constraints
+     * between random pairs of slots, encoded by cases on the qualifier of the subtype like the
+     * encoders of the Z3Smt type systems do, so that the constraints share the equalities of a
+     * slot with each qualifier.
+     */
+    @State(Scope.Benchmark)
+    public static class Encodings {
+
+        @Param({"1000", "10000"})
+        public int size;
+
+        @Param({"4"})
+        public int types;
+
+        @Param({"7"})
+        public long seed;
+
+        Context context;
+
+        List<BoolExpr> wellformedness;
+
+        List<BoolExpr> preferences;
+
+        List<BoolExpr> constraints;
+
+        @Setup
+        public void setUp() {
+            context = new Context();
+            Random random = new Random(seed);
+            IntExpr[] slots = new IntExpr[size];
+            wellformedness = new ArrayList<>();
+            preferences = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                slots[i] = context.mkIntConst("slot_" + i);
+                wellformedness.add(context.mkAnd(
+                        context.mkGe(slots[i], context.mkInt(0)),
+                        context.mkLt(slots[i], context.mkInt(types))));
+                preferences.add(context.mkEq(slots[i], context.mkInt(types - 1)));
+            }
+            constraints = new ArrayList<>();
+            for (int i = 0; i < size * 2; i++) {
+                IntExpr subtype = slots[random.nextInt(size)];
+                IntExpr supertype = slots[random.nextInt(size)];
+                BoolExpr[] cases = new BoolExpr[types];
+                for (int t = 0; t < types; t++) {
+                    // Qualifier t of the chain is a subtype of the qualifiers t and above.
+                    cases[t] = context.mkImplies(
+                            context.mkEq(subtype, context.mkInt(t)),
+                            context.mkGe(supertype, context.mkInt(t)));
+                }
+                constraints.add(context.mkAnd(cases));
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public String simplifyToString(Encodings encodings) {
+        Optimize solver = encodings.context.mkOptimize();
+        for (int i = 0; i < encodings.size; i++) {
+            BoolExpr wfConstraint = encodings.wellformedness.get(i);
+            if (!wfConstraint.simplify().isTrue()) {
+                solver.Assert(wfConstraint);
+            }
+            solver.AssertSoft(encodings.preferences.get(i), 1, "");
+        }
+        String slotDefinitionsAndConstraints = solver.toString();
+        StringBuilder smtFileContents = new StringBuilder();
+        smtFileContents.append(slotDefinitionsAndConstraints, 0,
+                slotDefinitionsAndConstraints.lastIndexOf("(check-sat)"));
+        for (BoolExpr constraint : encodings.constraints) {
+            Expr simplifiedConstraint = constraint.simplify();
+            if (simplifiedConstraint.isTrue()) {
+                continue;
+            }
+            smtFileContents.append("(assert ");
+            smtFileContents.append(simplifiedConstraint);
+            smtFileContents.append(")\n");
+        }
+        smtFileContents.append("(check-sat)\n(get-model)\n");
+        return smtFileContents.toString();
+    }
+
+    @Benchmark
+    public String emitter(Encodings encodings) {
+        StringWriter out = new StringWriter();
+        try (SmtLib2Emitter emitter = new SmtLib2Emitter(out)) {
+            for (int i = 0; i < encodings.size; i++) {
+                BoolExpr wfConstraint = encodings.wellformedness.get(i);
+                if (!SmtLib2Emitter.isTriviallyTrue(wfConstraint)) {
+                    emitter.assertHard(wfConstraint);
+                }
+                emitter.assertSoft(encodings.preferences.get(i), 1);
+            }
+            for (BoolExpr constraint : encodings.constraints) {
+                if (SmtLib2Emitter.isTriviallyTrue(constraint)) {
+                    continue;
+                }
+                emitter.assertHard(constraint);
+            }
+            emitter.write("(check-sat)\n(get-model)\n");
+        }
+        return out.toString();
+    }
+}
@@ -3,8 +3,21 @@ package checkers.inference;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
 import org.checkerframework.framework.type.AnnotatedTypeMirror;
 
+import com.sun.tools.javac.processing.JavacProcessingEnvironment;
+
+import java.io.File;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.Element;
+import javax.tools.JavaFileManager;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
 
+import checkers.inference.util.BytecodeTypeSummaryCache;
 import checkers.inference.util.CopyUtil;
 
 
@@ -17,16 +30,62 @@ import checkers.inference.util.CopyUtil;
  * whether a library was in bytecode or source code.  Note: I believe this is
  * much less of an issue these days since the game is more akin to
  * human aided automatic solving.
+ *
+ * If InferenceOptions.bytecodeCacheDir is set, the real annotations are looked up in a
+ * persistent {@link BytecodeTypeSummaryCache} first, and the real type factory is only
+ * consulted for elements that are not in the cache.
  */
 public class BytecodeTypeAnnotator {
     private final AnnotatedTypeFactory realTypeFactory;
     private final InferenceAnnotatedTypeFactory inferenceTypeFactory;
 
+    /** The persistent summary cache, or null if it is disabled. */
+    private final BytecodeTypeSummaryCache summaryCache;
 
     public BytecodeTypeAnnotator(InferenceAnnotatedTypeFactory inferenceTypeFactory,
                                  AnnotatedTypeFactory realTypeFactory) {
         this.realTypeFactory = realTypeFactory;
         this.inferenceTypeFactory = inferenceTypeFactory;
+
+        if (InferenceOptions.bytecodeCacheDir != null) {
+            List<String> qualifierNames = new ArrayList<>();
+            for (Class<? extends Annotation> qual : realTypeFactory.getSupportedTypeQualifiers()) {
+                qualifierNames.add(qual.getCanonicalName());
+            }
+            // The real annotations depend on the code of the real checker, of the framework and
+            // of this annotator.
+            List<Class<?>> codeClasses = Arrays.asList(realTypeFactory.getChecker().getClass(),
+                    AnnotatedTypeFactory.class, BytecodeTypeAnnotator.class);
+            this.summaryCache = new BytecodeTypeSummaryCache(new File(InferenceOptions.bytecodeCacheDir),
+                    realTypeFactory.getElementUtils(), realTypeFactory.getChecker().getClass().getCanonicalName(),
+                    qualifierNames, codeClasses, realTypeFactory.getChecker().getOptions(),
+                    getClassPath(realTypeFactory.getProcessingEnv()));
+        } else {
+            this.summaryCache = null;
+        }
+    }
+
+    /**
+     * @return the class path the checked code is compiled against, or the class path of this
+     * JVM if the compiler does not use a standard file manager
+     */
+    private static Iterable<? extends File> getClassPath(ProcessingEnvironment processingEnv) {
+        if (processingEnv instanceof JavacProcessingEnvironment) {
+            JavaFileManager fileManager = ((JavacProcessingEnvironment) processingEnv).getContext()
+                    .get(JavaFileManager.class);
+            if (fileManager instanceof StandardJavaFileManager) {
+                Iterable<? extends File> classPath =
+                        ((StandardJavaFileManager) fileManager).getLocation(StandardLocation.CLASS_PATH);
+                if (classPath != null) {
+                    return classPath;
+                }
+            }
+        }
+        List<File> classPath = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            classPath.add(new File(entry));
+        }
+        return classPath;
     }
 
     /**
@@ -37,9 +96,23 @@ public class BytecodeTypeAnnotator {
      * @param inferenceType The type of element.  inferenceType will be annotated by this method
      */
     public void annotate(final Element element, final AnnotatedTypeMirror inferenceType) {
-        final AnnotatedTypeMirror realType = realTypeFactory.getAnnotatedType(element);
+        if (summaryCache == null || !summaryCache.apply(element, inferenceType)) {
+            final AnnotatedTypeMirror realType = realTypeFactory.getAnnotatedType(element);
 
-        CopyUtil.copyAnnotations(realType, inferenceType);
+            CopyUtil.copyAnnotations(realType, inferenceType);
+            if (summaryCache != null) {
+                summaryCache.record(element, inferenceType);
+            }
+        }
         inferenceTypeFactory.getConstantToVariableAnnotator().visit(inferenceType);
     }
+
+    /**
+     * Write the entries recorded during this run to the persistent summary cache, if enabled.
+     */
+    public void writeSummaryCache() {
+        if (summaryCache != null) {
+            summaryCache.write();
+        }
+    }
 }
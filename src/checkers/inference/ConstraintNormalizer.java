@@ -1,17 +1,18 @@
 package checkers.inference;
 
-import checkers.inference.model.VariableSlot;
 import org.checkerframework.javacutil.BugInCF;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.logging.Logger;
 
 import checkers.inference.model.BinaryConstraint;
@@ -61,11 +62,39 @@ public class ConstraintNormalizer {
         return normalizedConstraints;
     }
 
+    /**
+     * Replaces binary constraints between existential variables by ExistentialConstraints.
+     *
+     * An existential variable (1 | (2 | (3 | 4))) is expanded into its conditionals 1, 2, 3 and
+     * the slot 4 that always exists.  For a binary constraint between two existential variables,
+     * every pair of a left and a right conditional gives a path of exists / does not exist
+     * decisions, e.g. !1 2 5, under which the constraint holds between that pair.  The paths of all
+     * constraints are inserted into a trie, in which paths with a common prefix of decisions share
+     * their nodes, and each node of the trie becomes one ExistentialConstraint.
+     */
     private static class ExistentialVariableNormalizer implements Normalizer {
-        private ExistentialTree existentialTree = new ExistentialTree();
 
+        /** A conditional is not on the current path. */
+        private static final byte ABSENT = 0;
+        /** The slot of a conditional exists on the current path. */
+        private static final byte EXISTS = 1;
+        /** The slot of a conditional does not exist on the current path. */
+        private static final byte NOT_EXISTS = 2;
+
+        private final ExistentialNode root = new ExistentialNode(null, false);
+
+        /** Primitive ids of the constant slots, see {@link #slotKey}. */
+        private final HashMap<String, Integer> constantKeys = new HashMap<>();
+
+        /**
+         * @return the ExistentialConstraints for the constraints accepted so far
+         */
         public Set<Constraint> getConstraints() {
-            return existentialTree.toConstraints();
+            final Set<Constraint> constraints = new LinkedHashSet<>();
+            for (final ExistentialNode node : root.sortedChildren(true)) {
+                node.toConstraints(constraints);
+            }
+            return constraints;
         }
 
         /**
@@ -125,187 +154,297 @@ public class ConstraintNormalizer {
         // !1 2 !5 1 => [ filtered out as it unsatisfiable
         // !1 2 !5 !1 6 => 2 [ 6
         //  ...
+        //
+        // A path is sorted: first the conditionals that may not exist, then the slots that always
+        // exist, each by SLOT_COMPARATOR.  A slot occurs at most once in each of the two parts.
+        // Instead of building each path, the path is kept in an array indexed by the position of
+        // each conditional in that order, and the trie nodes of the previous path are reused up
+        // to the first position that changed.
         protected void addToTree(final List<Slot> leftSlots,
                               final List<Slot> rightSlots,
                               final BinaryConstraint constraint) {
 
-            final int initialSize = (int) Math.floor((Math.pow(leftSlots.size() * leftSlots.size(), 2) * 3/4));
-
-            // a list of values from leftSlots, where exist == false
-            // we have already added their positive cases to implications
-            final HashSet<Value> previouslyEncountered = new HashSet<>(initialSize);
+            // The rank of each distinct slot of this constraint in SLOT_COMPARATOR order.
+            final TreeMap<Slot, Integer> ranks = new TreeMap<>(SLOT_COMPARATOR);
+            for (final Slot slot : leftSlots) {
+                ranks.put(slot, 0);
+            }
+            for (final Slot slot : rightSlots) {
+                ranks.put(slot, 0);
+            }
+            int rank = 0;
+            for (final Map.Entry<Slot, Integer> entry : ranks.entrySet()) {
+                entry.setValue(rank++);
+            }
 
+            // positions [0, alwaysStart) hold conditionals, [alwaysStart, 2 * alwaysStart) the
+            // slots that always exist
+            final int alwaysStart = ranks.size();
             final int lastLeftIndex  = leftSlots.size() - 1;
             final int lastRightIndex = rightSlots.size() - 1;
 
-            for (int leftIndex = 0; leftIndex < leftSlots.size(); leftIndex++) {
-                final Slot left  = leftSlots.get(leftIndex);
-                final boolean lastLeft = leftIndex == lastLeftIndex;
-
-                final TreeSet<Value> encountered = new TreeSet<>(previouslyEncountered);
-                final Value lhsValue = new Value(left, true, lastLeft);
-
-                if (!previouslyEncountered.contains(lhsValue.negate())) {
-                    encountered.add(lhsValue);
-
-                    for (int rightIndex = 0; rightIndex < rightSlots.size(); rightIndex++) {
-                        final Slot right = rightSlots.get(rightIndex);
-                        final boolean lastRight = rightIndex == lastRightIndex;
+            final int[] leftPositions = new int[leftSlots.size()];
+            for (int leftIndex = 0; leftIndex <= lastLeftIndex; leftIndex++) {
+                leftPositions[leftIndex] = ranks.get(leftSlots.get(leftIndex))
+                        + (leftIndex == lastLeftIndex ? alwaysStart : 0);
+            }
+            final int[] rightPositions = new int[rightSlots.size()];
+            for (int rightIndex = 0; rightIndex <= lastRightIndex; rightIndex++) {
+                rightPositions[rightIndex] = ranks.get(rightSlots.get(rightIndex))
+                        + (rightIndex == lastRightIndex ? alwaysStart : 0);
+            }
 
-                        final Value rhsValue = new Value(right, true, lastRight);
-                        if (!left.equals(right) && !encountered.contains(rhsValue.negate())) {
-                            final TreeSet<Value> path = new TreeSet<>(encountered);
-                            path.add(rhsValue);
-                            existentialTree.addConstraints(path, constraint.make(left, right));
-                        }
-                        encountered.add(rhsValue.negate());
+            // the left conditionals, where exist == false,
+            // we have already added their positive cases to implications
+            final byte[] previouslyEncountered = new byte[2 * alwaysStart];
+            final Slot[] previousSlots = new Slot[2 * alwaysStart];
+
+            final byte[] path = new byte[2 * alwaysStart];
+            final Slot[] pathSlots = new Slot[2 * alwaysStart];
+            final ExistentialNode[] pathNodes = new ExistentialNode[2 * alwaysStart];
+
+            for (int leftIndex = 0; leftIndex <= lastLeftIndex; leftIndex++) {
+                final Slot left = leftSlots.get(leftIndex);
+                final int leftPosition = leftPositions[leftIndex];
+
+                System.arraycopy(previouslyEncountered, 0, path, 0, path.length);
+                System.arraycopy(previousSlots, 0, pathSlots, 0, path.length);
+                set(path, pathSlots, leftPosition, EXISTS, left);
+                // none of the nodes in pathNodes belong to this path yet
+                int firstChanged = 0;
+
+                for (int rightIndex = 0; rightIndex <= lastRightIndex; rightIndex++) {
+                    final Slot right = rightSlots.get(rightIndex);
+                    final int rightPosition = rightPositions[rightIndex];
+
+                    if (!left.equals(right) && path[rightPosition] == ABSENT) {
+                        set(path, pathSlots, rightPosition, EXISTS, right);
+                        firstChanged = Math.min(firstChanged, rightPosition);
+                        walk(path, pathSlots, pathNodes, alwaysStart, firstChanged)
+                                .addConstraint(constraint.make(left, right));
+                        path[rightPosition] = ABSENT;
+                        firstChanged = rightPosition;
+                    }
+                    if (set(path, pathSlots, rightPosition, NOT_EXISTS, right)) {
+                        firstChanged = Math.min(firstChanged, rightPosition);
                     }
-
-                    previouslyEncountered.add(lhsValue.negate());
                 }
+
+                set(previouslyEncountered, previousSlots, leftPosition, NOT_EXISTS, left);
             }
         }
 
-
-    }
-
-    private static class ExistentialTree {
-        private TreeMap<Slot, ExistentialNode> nodes = new TreeMap<>(SLOT_COMPARATOR);
-
-        public void addConstraints(final TreeSet<Value> path, final Constraint constraint) {
-            final Iterator<Value> pathIterator = path.iterator();
-            final Value head = pathIterator.next();
-
-            ExistentialNode current = getOrCreateNode(nodes, head);
-            Value currentValue = head;
-
-            while (pathIterator.hasNext() && !currentValue.alwaysExists) {
-                final Value nextValue = pathIterator.next();
-                if (currentValue.exists) {
-                    current = getOrCreateNode(current.ifExists, nextValue);
-                } else {
-                    current = getOrCreateNode(current.ifNotExists, nextValue);
-                }
-                currentValue = nextValue;
+        /**
+         * Sets the conditional at position to value, unless it is already on the path.
+         * @return true if the path changed
+         */
+        private static boolean set(final byte[] path, final Slot[] pathSlots, final int position,
+                                   final byte value, final Slot slot) {
+            if (path[position] != ABSENT) {
+                return false;
             }
-
-            current.constraints.add(constraint);
+            path[position] = value;
+            pathSlots[position] = slot;
+            return true;
         }
 
-        private static ExistentialNode getOrCreateNode(final TreeMap<Slot, ExistentialNode> nodes, Value value) {
-            ExistentialNode node;
-            if (!nodes.containsKey(value.slot)) {
-                node = new ExistentialNode(value);
-                nodes.put(value.slot, node);
-            } else {
-                node = nodes.get(value.slot);
+        /**
+         * Returns the node of the trie at which the given path ends, creating the missing nodes.
+         * The path ends at its first slot that always exists.
+         *
+         * @param pathNodes the node of each conditional of the previous path, which are still the
+         *                  nodes of this path before position firstChanged
+         */
+        private ExistentialNode walk(final byte[] path, final Slot[] pathSlots,
+                                     final ExistentialNode[] pathNodes, final int alwaysStart,
+                                     final int firstChanged) {
+            int position = firstChanged - 1;
+            while (position >= 0 && path[position] == ABSENT) {
+                position--;
+            }
+            if (position >= alwaysStart) {
+                // the path ends before firstChanged
+                position = alwaysStart;
+                while (path[position] == ABSENT) {
+                    position++;
+                }
+                return pathNodes[position];
             }
 
-            return node;
+            ExistentialNode current = position < 0 ? root : pathNodes[position];
+            boolean exists = position < 0 || path[position] == EXISTS;
+            for (position = firstChanged; position < path.length; position++) {
+                if (path[position] == ABSENT) {
+                    continue;
+                }
+                final Slot slot = pathSlots[position];
+                current = current.getOrCreateChild(exists, slotKey(slot), slot, position >= alwaysStart);
+                pathNodes[position] = current;
+                if (position >= alwaysStart) {
+                    break;
+                }
+                exists = path[position] == EXISTS;
+            }
+            return current;
         }
 
-        public Set<Constraint> toConstraints() {
-            final Set<Constraint> constraints = new LinkedHashSet<>();
-            // start here, traverse tree make it into existential constraints
-            for (final ExistentialNode node : nodes.values()) {
-                constraints.addAll(node.toConstraints());
+        /**
+         * @return a primitive id of slot that is equal for two slots iff SLOT_COMPARATOR considers
+         * them equal: the id of a variable, or a negative id per value of a constant
+         */
+        private int slotKey(final Slot slot) {
+            if (!(slot instanceof ConstantSlot)) {
+                return slot.getId();
             }
-            return constraints;
+            final String value = ((ConstantSlot) slot).getValue().toString();
+            Integer key = constantKeys.get(value);
+            if (key == null) {
+                key = -1 - constantKeys.size();
+                constantKeys.put(value, key);
+            }
+            return key;
         }
-
     }
 
-
+    /**
+     * A node of the trie of ExistentialVariableNormalizer.  Its children are in two open
+     * addressing tables from the primitive slot key to the child, one for the paths on which
+     * the slot of this node exists and one for the paths on which it does not.
+     */
     private static class ExistentialNode {
         private final Slot slot;
-        private final TreeMap<Slot, ExistentialNode> ifExists;
-        private final TreeMap<Slot, ExistentialNode> ifNotExists;
-        private final Set<Constraint> constraints;
         private final boolean alwaysExists;
+        private Set<Constraint> constraints;
+
+        private int[] ifExistsKeys;
+        private ExistentialNode[] ifExists;
+        private int ifExistsSize;
 
-        public ExistentialNode(Value value) {
-            slot = value.slot;
-            this.alwaysExists = value.alwaysExists;
-            ifExists = new TreeMap<>(SLOT_COMPARATOR);
-            ifNotExists = new TreeMap<>(SLOT_COMPARATOR);
+        private int[] ifNotExistsKeys;
+        private ExistentialNode[] ifNotExists;
+        private int ifNotExistsSize;
 
-            constraints = new LinkedHashSet<Constraint>();
+        public ExistentialNode(Slot slot, boolean alwaysExists) {
+            this.slot = slot;
+            this.alwaysExists = alwaysExists;
         }
 
-        public Set<Constraint> toConstraints() {
-            if (alwaysExists) {
-                return constraints;
+        public void addConstraint(final Constraint constraint) {
+            if (constraints == null) {
+                constraints = new LinkedHashSet<>();
             }
+            constraints.add(constraint);
+        }
 
-            List<Constraint> ifExistsConstraints = new ArrayList<>();
-            List<Constraint> ifNotExistsConstraints = new ArrayList<>();
-
-            ifExistsConstraints.addAll(constraints);
-            for (final ExistentialNode existNode : ifExists.values()) {
-                ifExistsConstraints.addAll(existNode.toConstraints());
+        public ExistentialNode getOrCreateChild(final boolean exists, final int key, final Slot slot,
+                                                final boolean alwaysExists) {
+            int[] keys = exists ? ifExistsKeys : ifNotExistsKeys;
+            ExistentialNode[] children = exists ? ifExists : ifNotExists;
+            if (children != null) {
+                final int mask = children.length - 1;
+                for (int index = mix(key) & mask; children[index] != null; index = (index + 1) & mask) {
+                    if (keys[index] == key) {
+                        return children[index];
+                    }
+                }
             }
 
-            for (final ExistentialNode notExistNode : ifNotExists.values()) {
-                ifNotExistsConstraints.addAll(notExistNode.toConstraints());
+            final int size = exists ? ifExistsSize : ifNotExistsSize;
+            if (children == null || 2 * (size + 1) > children.length) {
+                final int capacity = children == null ? 2 : children.length * 2;
+                final int[] newKeys = new int[capacity];
+                final ExistentialNode[] newChildren = new ExistentialNode[capacity];
+                if (children != null) {
+                    for (int index = 0; index < children.length; index++) {
+                        if (children[index] != null) {
+                            insert(newKeys, newChildren, keys[index], children[index]);
+                        }
+                    }
+                }
+                keys = newKeys;
+                children = newChildren;
             }
-            final LinkedHashSet<Constraint> ret = new LinkedHashSet<>();
 
-            ret.add(InferenceMain
-                    .getInstance()
-                    .getConstraintManager()
-                    .createExistentialConstraint(slot, ifExistsConstraints,
-                            ifNotExistsConstraints));
-            return ret;
+            final ExistentialNode child = new ExistentialNode(slot, alwaysExists);
+            insert(keys, children, key, child);
+            if (exists) {
+                ifExistsKeys = keys;
+                ifExists = children;
+                ifExistsSize++;
+            } else {
+                ifNotExistsKeys = keys;
+                ifNotExists = children;
+                ifNotExistsSize++;
+            }
+            return child;
         }
-    }
 
-    private static class Value implements Comparable<Value> {
-        public final Slot slot;
-        public final boolean exists;
-        public final boolean alwaysExists;
+        private static void insert(final int[] keys, final ExistentialNode[] children,
+                                   final int key, final ExistentialNode child) {
+            final int mask = children.length - 1;
+            int index = mix(key) & mask;
+            while (children[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            children[index] = child;
+        }
 
-        public Value(final Slot slot, boolean exists, boolean alwaysExists) {
-            this.slot = slot;
-            this.exists = exists;
-            this.alwaysExists = alwaysExists;
+        private static int mix(final int key) {
+            final int h = key * 0x9E3779B1;
+            return h ^ (h >>> 16);
         }
 
-        @Override
-        public int compareTo(Value that) {
-            if (that == null) {
-                return -1;
+        /**
+         * @return the children on the paths where this node's slot (does not) exist, sorted by
+         * SLOT_COMPARATOR
+         */
+        public List<ExistentialNode> sortedChildren(final boolean exists) {
+            final ExistentialNode[] children = exists ? ifExists : ifNotExists;
+            if (children == null) {
+                return Collections.emptyList();
             }
-            if (this.alwaysExists == that.alwaysExists) {
-                return SLOT_COMPARATOR.compare(this.slot, that.slot);
-            } else {
-                if (!this.alwaysExists) {
-                    return -1;
-                } else {
-                    return 1;
+            final List<ExistentialNode> sorted = new ArrayList<>(exists ? ifExistsSize : ifNotExistsSize);
+            for (final ExistentialNode child : children) {
+                if (child != null) {
+                    sorted.add(child);
                 }
             }
+            sorted.sort((first, second) -> SLOT_COMPARATOR.compare(first.slot, second.slot));
+            return sorted;
         }
 
-        public Value negate() {
-            return new Value(slot, !exists, alwaysExists);
-        }
-
-        @Override
-        public String toString() {
-            final StringBuilder sb = new StringBuilder();
+        /**
+         * Adds the constraints of this subtree to out: the constraints of this node if its slot
+         * always exists, otherwise one ExistentialConstraint for its slot.
+         */
+        public void toConstraints(final Collection<Constraint> out) {
             if (alwaysExists) {
-                sb.append("[");
-                sb.append(
-                        slot instanceof VariableSlot ? slot.getId()
-                                          : ((ConstantSlot) slot).getValue());
-                sb.append("]");
-            } else {
-                if (!exists) {
-                    sb.append("!");
+                if (constraints != null) {
+                    out.addAll(constraints);
                 }
-                sb.append(slot.getId());
+                return;
+            }
+
+            List<Constraint> ifExistsConstraints = new ArrayList<>();
+            List<Constraint> ifNotExistsConstraints = new ArrayList<>();
+
+            if (constraints != null) {
+                ifExistsConstraints.addAll(constraints);
+            }
+            for (final ExistentialNode existNode : sortedChildren(true)) {
+                existNode.toConstraints(ifExistsConstraints);
+            }
+
+            for (final ExistentialNode notExistNode : sortedChildren(false)) {
+                notExistNode.toConstraints(ifNotExistsConstraints);
             }
-            return sb.toString();
+
+            out.add(InferenceMain
+                    .getInstance()
+                    .getConstraintManager()
+                    .createExistentialConstraint(slot, ifExistsConstraints,
+                            ifNotExistsConstraints));
         }
     }
 
@@ -46,6 +46,14 @@ public class DefaultInferenceResult implements InferenceResult {
      */
     protected final Collection<Constraint> unsatisfiableConstraints;
 
+    /**
+     * Whether the solutions are optimal. False if the solver ran out of its time budget before
+     * it could prove that no better solution exists.
+     *
+     * @see #isOptimal()
+     */
+    protected final boolean optimal;
+
     /**
      * No-arg constructor.
      *
@@ -68,7 +76,20 @@ public class DefaultInferenceResult implements InferenceResult {
      * @param varIdToAnnotation mapping from variable ID to inferred solution {@code AnnotationMirror}
      */
     public DefaultInferenceResult(Map<Integer, AnnotationMirror> varIdToAnnotation) {
-        this(varIdToAnnotation, new HashSet<>());
+        this(varIdToAnnotation, true);
+    }
+
+    /**
+     * Two-arg constructor that accepts {@code varIdToAnnotation} and whether it is optimal.
+     *
+     * Should be called when inference has solutions that may not be optimal, e.g. the best
+     * solutions a solver found before its time budget ran out.
+     *
+     * @param varIdToAnnotation mapping from variable ID to inferred solution {@code AnnotationMirror}
+     * @param optimal whether the solutions are known to be optimal
+     */
+    public DefaultInferenceResult(Map<Integer, AnnotationMirror> varIdToAnnotation, boolean optimal) {
+        this(varIdToAnnotation, new HashSet<>(), optimal);
     }
 
     /**
@@ -80,16 +101,17 @@ public class DefaultInferenceResult implements InferenceResult {
      *                                 support explaining, empty set should be passed.
      */
     public DefaultInferenceResult(Collection<Constraint> unsatisfiableConstraints) {
-        this(null, unsatisfiableConstraints);
+        this(null, unsatisfiableConstraints, true);
     }
 
     private DefaultInferenceResult(Map<Integer, AnnotationMirror> varIdToAnnotation,
-                                  Collection<Constraint> unsatisfiableConstraints) {
+                                  Collection<Constraint> unsatisfiableConstraints, boolean optimal) {
         if (unsatisfiableConstraints == null) {
             throw new IllegalArgumentException("unsatisfiableConstraints should never be null!");
         }
         this.varIdToAnnotation = varIdToAnnotation;
         this.unsatisfiableConstraints = unsatisfiableConstraints;
+        this.optimal = optimal;
     }
 
     @Override
@@ -105,6 +127,11 @@ public class DefaultInferenceResult implements InferenceResult {
         return varIdToAnnotation;
     }
 
+    @Override
+    public boolean isOptimal() {
+        return optimal;
+    }
+
     @Override
     public boolean containsSolutionForVariable(int varId) {
         if (!hasSolution()) {
@@ -236,6 +236,23 @@ public class DefaultSlotManager implements SlotManager {
         slots.put(slot.getId(), slot);
     }
 
+    /**
+     * Add a slot that was created outside of this manager, keeping its id, e.g. a slot read back
+     * from a constraint file. Slots created afterwards by this manager get ids above it.
+     *
+     * @param slot a slot whose id is not in use in this manager
+     */
+    public void addSlot(final Slot slot) {
+        if (slots.containsKey(slot.getId())) {
+            throw new BugInCF("Slot id %d is already in use", slot.getId());
+        }
+        addToSlots(slot);
+        nextId = Math.max(nextId, slot.getId() + 1);
+        if (slot instanceof ConstantSlot && !constantCache.containsKey(((ConstantSlot) slot).getValue())) {
+            constantCache.put(((ConstantSlot) slot).getValue(), slot.getId());
+        }
+    }
+
     /**
      * @inheritDoc
      */
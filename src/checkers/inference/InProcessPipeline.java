@@ -0,0 +1,217 @@
+package checkers.inference;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.checkerframework.framework.util.ExecUtil;
+
+/**
+ * Runs the inference and typechecking steps of the InferenceLauncher in the JVM of the launcher,
+ * instead of launching a JVM for each of them.  This saves the JVM startup and class loading of
+ * these steps, and lets the typecheck reuse the file manager of this pipeline.
+ *
+ * Each javac invocation still gets its own javac Context, so the steps do not share compiler
+ * state:  inference goes through InferenceMain as usual, and the typecheck creates a new
+ * compilation task with the JavaCompiler API.  Failures of inference are returned as exit statuses
+ * instead of exiting the launcher.  If insertion follows, inference writes the JAIF to memory
+ * instead of to InferenceOptions.jaifFile.
+ *
+ * The Annotation File Utilities print their output to System.out and may exit the JVM, so the
+ * insertion step alone still runs in a separate JVM, on the classpath of the launcher.  Its main
+ * class only reads JAIFs from files, so the JAIF in memory is written to the JAIF file just
+ * before it runs.
+ *
+ * As all steps share this JVM, its memory settings and boot classpath are those of the launcher:
+ * -Xmx and -Xms javac options are ignored, and on Java 8 the launcher itself must be run with
+ * javac on the boot classpath.
+ */
+public class InProcessPipeline implements AutoCloseable {
+
+    /**
+     * The main classes of the Annotation File Utilities insertion tool, in the packages of older
+     * and newer AFU releases.
+     */
+    private static final String[] AFU_MAIN_CLASSES = {
+        "annotator.Main",
+        "org.checkerframework.afu.annotator.Main"
+    };
+
+    private final PrintStream outStream;
+    private final PrintStream errStream;
+
+    /**
+     * The classpath for javac if the javac options do not specify one, like the classpath of the
+     * process that InferenceLauncher.infer would launch.
+     */
+    private final String classpath;
+
+    private final JavaCompiler compiler;
+    private StandardJavaFileManager fileManager;
+
+    /** The JAIF of the last inference run with keepJaifInMemory, or null. */
+    private String jaif;
+
+    public InProcessPipeline(PrintStream outStream, PrintStream errStream, String classpath) {
+        this.outStream = outStream;
+        this.errStream = errStream;
+        this.classpath = classpath;
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new RuntimeException("No system Java compiler available; run the launcher with a JDK.");
+        }
+    }
+
+    /**
+     * Runs InferenceMain on the sources and options in InferenceOptions.
+     * @param keepJaifInMemory whether to keep the JAIF for insert instead of writing
+     * InferenceOptions.jaifFile
+     * @return the exit status of inference, which is not 0 if javac fails or there is no solution
+     */
+    public int infer(boolean keepJaifInMemory) {
+        List<String> launcherJavacOptions = InferenceOptions.javacOptions;
+        InferenceOptions.javacOptions = getJavacOptions(launcherJavacOptions);
+        jaif = null;
+        try {
+            InferenceMain inferenceMain = InferenceMain.resetInstance();
+            StringWriter jaifWriter = null;
+            if (keepJaifInMemory) {
+                jaifWriter = new StringWriter();
+                inferenceMain.setJaifWriter(jaifWriter);
+            }
+            int result = inferenceMain.runForExitStatus();
+            if (jaifWriter != null) {
+                jaif = jaifWriter.toString();
+            }
+            return result;
+        } finally {
+            InferenceOptions.javacOptions = launcherJavacOptions;
+        }
+    }
+
+    /**
+     * Runs the main class of the Annotation File Utilities in a separate JVM with the classpath of
+     * the launcher, writing what it prints to insertOut.  If the last inference kept its JAIF in
+     * memory, it is written to jaifFile first.
+     * @param afuOptions the options for the insertion, without the insertion script
+     * @return the exit status of the insertion
+     */
+    public int insert(List<String> afuOptions, String jaifFile, String[] javaFiles, OutputStream insertOut) {
+        if (jaif != null) {
+            try {
+                Files.write(Paths.get(jaifFile), jaif.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        List<String> command = new ArrayList<>(afuOptions.size() + javaFiles.length + 5);
+        command.add(InferenceLauncher.getJavaCommand(System.getProperty("java.home"), outStream));
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add(findAfuMainClass());
+        command.addAll(afuOptions);
+        command.add(jaifFile);
+        Collections.addAll(command, javaFiles);
+
+        if (InferenceOptions.printCommands) {
+            outStream.println("Running insertion command:");
+            outStream.println(String.join(" ", command));
+        }
+
+        return ExecUtil.execute(command.toArray(new String[command.size()]), insertOut, errStream);
+    }
+
+    /**
+     * Typechecks the given files with InferenceOptions.checker.
+     * @return the exit status of the typecheck
+     */
+    public int typecheck(String[] javaFiles) {
+        List<String> options = new ArrayList<>();
+        options.add("-processor");
+        options.add(InferenceOptions.checker);
+        options.addAll(getJavacOptions(InferenceOptions.javacOptions));
+        if (InferenceOptions.cfArgs != null && !InferenceOptions.cfArgs.isEmpty()) {
+            options.add(InferenceOptions.cfArgs);
+        }
+
+        if (InferenceOptions.printCommands) {
+            outStream.println("Running in-process typecheck with options:");
+            outStream.println(String.join(" ", options));
+        }
+
+        Iterable<? extends JavaFileObject> compilationUnits = getFileManager().getJavaFileObjects(javaFiles);
+        PrintWriter output = new PrintWriter(outStream, true);
+        boolean success = compiler.getTask(output, getFileManager(), null, options, null, compilationUnits).call();
+        output.flush();
+        return success ? 0 : 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileManager != null) {
+            fileManager.close();
+            fileManager = null;
+        }
+    }
+
+    private StandardJavaFileManager getFileManager() {
+        if (fileManager == null) {
+            fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+        }
+        return fileManager;
+    }
+
+    /**
+     * @return the launcher's javac options without the JVM memory options, which only apply to a
+     * separate process, and with the inference classpath if they do not specify one
+     */
+    private List<String> getJavacOptions(List<String> launcherJavacOptions) {
+        List<String> javacOptions = new ArrayList<>(launcherJavacOptions.size() + 2);
+        boolean hasClasspath = false;
+        for (String option : launcherJavacOptions) {
+            if (option.startsWith("-Xmx") || option.startsWith("-Xms")
+                    || option.startsWith("-J-Xmx") || option.startsWith("-J-Xms")) {
+                continue;
+            }
+            if (option.equals("-cp") || option.equals("-classpath") || option.equals("--class-path")) {
+                hasClasspath = true;
+            }
+            javacOptions.add(option);
+        }
+
+        if (!hasClasspath) {
+            javacOptions.add("-classpath");
+            javacOptions.add(classpath);
+        }
+        return javacOptions;
+    }
+
+    private static String findAfuMainClass() {
+        for (String className : AFU_MAIN_CLASSES) {
+            try {
+                Class.forName(className, false, InProcessPipeline.class.getClassLoader());
+                return className;
+            } catch (ClassNotFoundException e) {
+                // try the next one
+            }
+        }
+        throw new RuntimeException("Could not find the Annotation File Utilities on the classpath, tried: "
+                + Arrays.toString(AFU_MAIN_CLASSES));
+    }
+}
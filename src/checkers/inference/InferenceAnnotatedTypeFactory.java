@@ -221,6 +221,10 @@ public class InferenceAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
         return constantToVariableAnnotator;
     }
 
+    public BytecodeTypeAnnotator getBytecodeTypeAnnotator() {
+        return bytecodeTypeAnnotator;
+    }
+
     @Override
     protected TypeHierarchy createTypeHierarchy() {
         return new InferenceTypeHierarchy(checker, getQualifierHierarchy(), varAnnot);
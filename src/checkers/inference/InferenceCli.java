@@ -63,23 +63,30 @@ public class InferenceCli {
     public static String[] otherOptions;
 
     public static void main(String[] args) throws IOException {
-        initCli(args);
+        if (!initCli(args)) {
+            return;
+        }
         InferenceMain inferenceMain = new InferenceMain();
         inferenceMain.run();
     }
 
-    public static void initCli(String [] args) {
+    /**
+     * Parses the options into the fields of this class.
+     * @return false if only the usage or the version was asked for and printed, so there is
+     * nothing to run
+     */
+    public static boolean initCli(String [] args) {
         Options options = new Options("InferenceCli [options]", InferenceCli.class);
         otherOptions = options.parse(true, args);
 
         if (help) {
             options.printUsage();
-            System.exit(0);
+            return false;
         }
 
         if (version) {
             System.out.println("Checker-framework-inference version: " + VERSION);
-            System.exit(0);
+            return false;
         }
 
         if (log_level == null) {
@@ -92,6 +99,7 @@ public class InferenceCli {
         for (String arg : args) {
             optionsStr += arg + " ";
         }
+        return true;
     }
 
     /**
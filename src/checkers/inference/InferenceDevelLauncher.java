@@ -56,7 +56,7 @@ public class InferenceDevelLauncher extends InferenceLauncher {
         assert (runtimeCp != null) : RUNTIME_CP + " must specify a path entry to prepend to the Java classpath when running Javac";  // TODO: Fix the assert messages
         assert (annotatedJDK != null) : ANNOTATED_JDK + " must specify a path entry to prepend to the annotated JDK";
 
-        new InferenceDevelLauncher(System.out, System.err).launch(args);
+        exitOnNonZeroStatus(new InferenceDevelLauncher(System.out, System.err).launch(args));
     }
 
     @Override
@@ -8,17 +8,22 @@ import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import checkers.inference.InferenceOptions.InitStatus;
+import checkers.inference.util.ParallelAnnotationInserter;
 import org.plumelib.util.StringsPlume;
 
 
@@ -38,6 +43,12 @@ public class InferenceLauncher {
     private final PrintStream outStream;
     private final PrintStream errStream;
 
+    /** How long each step took, in the order they ran. */
+    private final Map<String, Long> stepNanos = new LinkedHashMap<>();
+
+    /** Runs the steps in this JVM when InferenceOptions.inProcess is set, created on first use. */
+    private InProcessPipeline inProcessPipeline;
+
     private static final String PROP_PREFIX = "InferenceLauncher";
     private static final String RUNTIME_BCP_PROP = PROP_PREFIX + ".runtime.bcp";
 
@@ -46,13 +57,33 @@ public class InferenceLauncher {
         this.errStream = errStream;
     }
 
+    /**
+     * Parses the options into InferenceOptions.
+     * @throws LaunchExitException if the options are invalid or only help was asked for
+     */
     protected void initInferenceOptions(String [] args) {
         InitStatus initStatus = InferenceOptions.init(args, true);
 
-        initStatus.validateOrExit();
+        int status = initStatus.validate();
+        if (status != InitStatus.CONTINUE) {
+            throw new LaunchExitException(status);
+        }
+    }
+
+    /**
+     * Runs the steps of the mode in InferenceOptions, stopping at the first that fails.
+     * @return 0 if all steps succeeded, otherwise the exit status of the failure
+     */
+    public int launch(String [] args) {
+        try {
+            runSteps(args);
+            return 0;
+        } catch (LaunchExitException e) {
+            return e.status;
+        }
     }
 
-    public void launch(String [] args) {
+    private void runSteps(String [] args) {
         initInferenceOptions(args);
 
         Mode mode = null;
@@ -62,29 +93,69 @@ public class InferenceLauncher {
         } catch (IllegalArgumentException iexc) {
             outStream.println("Could not recognize mode: " + InferenceOptions.mode + "\n"
                     + "valid modes: " + StringsPlume.join(", ", Mode.values()));
-            System.exit(1);
+            throw new LaunchExitException(1);
         }
 
-        switch (mode) {
-            case TYPECHECK:
-                typecheck(InferenceOptions.javaFiles);
-                break;
+        try {
+            switch (mode) {
+                case TYPECHECK:
+                    timed("Typechecking", () -> typecheck(InferenceOptions.javaFiles));
+                    break;
+
+                case INFER:
+                    timed("Inference", this::infer);
+                    break;
+
+                case ROUNDTRIP:
+                    timed("Inference", this::infer);
+                    timed("Insert annotations", this::insertJaif);
+                    break;
+
+                case ROUNDTRIP_TYPECHECK:
+                    timed("Inference", this::infer);
+                    List<String> updatedJavaFiles = timed("Insert annotations", this::insertJaif);
+                    timed("Typechecking", () -> typecheck(updatedJavaFiles.toArray(new String[updatedJavaFiles.size()])));
+                    break;
+            }
+        } finally {
+            closeInProcessPipeline();
+        }
+
+        printTimings(outStream);
+    }
 
-            case INFER:
-                infer();
-                break;
+    private void timed(String step, Runnable action) {
+        timed(step, () -> {
+            action.run();
+            return null;
+        });
+    }
 
-            case ROUNDTRIP:
-                infer();
-                insertJaif();
-                break;
+    /**
+     * Runs the given step and records how long it took, for printTimings.
+     */
+    private <T> T timed(String step, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            stepNanos.put(step, System.nanoTime() - start);
+        }
+    }
 
-            case ROUNDTRIP_TYPECHECK:
-                infer();
-                List<String> updatedJavaFiles =  insertJaif();
-                typecheck(updatedJavaFiles.toArray(new String[updatedJavaFiles.size()]));
-                break;
+    /**
+     * Prints how long each step took, and whether the steps ran in this JVM or in separate
+     * processes, so that runs with and without --inProcess can be compared.
+     */
+    private void printTimings(PrintStream out) {
+        printStep("Timings (" + (InferenceOptions.inProcess ? "in-process" : "separate processes") + ")", out);
+        long total = 0;
+        for (Map.Entry<String, Long> entry : stepNanos.entrySet()) {
+            out.println(String.format("%-20s %10.3f s", entry.getKey(), entry.getValue() / 1e9));
+            total += entry.getValue();
         }
+        out.println(String.format("%-20s %10.3f s", "Total", total / 1e9));
+        out.flush();
     }
 
     /**
@@ -105,7 +176,7 @@ public class InferenceLauncher {
     }
 
     public static void main(String [] args) {
-        new InferenceLauncher(System.out, System.err).launch(args);
+        exitOnNonZeroStatus(new InferenceLauncher(System.out, System.err).launch(args));
     }
 
     /**
@@ -117,6 +188,14 @@ public class InferenceLauncher {
     public void typecheck(String [] javaFiles) {
         printStep("Typechecking", outStream);
 
+        if (InferenceOptions.inProcess) {
+            int result = getInProcessPipeline().typecheck(javaFiles);
+            reportStatus("Typechecking", result, outStream);
+            outStream.flush();
+            stopOnNonZeroStatus(result);
+            return;
+        }
+
         List<String> options = new ArrayList<>(InferenceOptions.javacOptions.size() + javaFiles.length + 2);
         options.add("-processor");
         options.add(InferenceOptions.checker);
@@ -145,7 +224,7 @@ public class InferenceLauncher {
 
         reportStatus("Typechecking", result, outStream);
         outStream.flush();
-        exitOnNonZeroStatus(result);
+        stopOnNonZeroStatus(result);
     }
 
     /**
@@ -155,6 +234,18 @@ public class InferenceLauncher {
      */
     public void infer() {
         printStep("Inferring", outStream);
+
+        if (InferenceOptions.inProcess) {
+            Mode mode = Mode.valueOf(InferenceOptions.mode);
+            int result = getInProcessPipeline().infer(mode == Mode.ROUNDTRIP || mode == Mode.ROUNDTRIP_TYPECHECK);
+            outStream.flush();
+            errStream.flush();
+            reportStatus("Inference", result, outStream);
+            outStream.flush();
+            stopOnNonZeroStatus(result);
+            return;
+        }
+
         final String java = getJavaCommand(System.getProperty("java.home"), outStream);
         List<String> argList = new LinkedList<>();
         argList.add(java);
@@ -186,8 +277,11 @@ public class InferenceLauncher {
         addIfNotNull("--solver", InferenceOptions.solver, argList);
         addIfNotNull("--solverArgs", InferenceOptions.solverArgs, argList);
         addIfNotNull("--cfArgs", InferenceOptions.cfArgs, argList);
+        addIfNotNull("--bytecodeCacheDir", InferenceOptions.bytecodeCacheDir, argList);
 
         addIfTrue("--hacks", InferenceOptions.hacks, argList);
+        addIfTrue("--equalityPresolve", InferenceOptions.equalityPresolve, argList);
+        addIfTrue("--subtypeCyclePresolve", InferenceOptions.subtypeCyclePresolve, argList);
 
         Mode mode = Mode.valueOf(InferenceOptions.mode);
         if (InferenceOptions.makeDefaultsExplicit
@@ -223,7 +317,7 @@ public class InferenceLauncher {
 
         reportStatus("Inference", result, outStream);
         outStream.flush();
-        exitOnNonZeroStatus(result);
+        stopOnNonZeroStatus(result);
     }
 
     public static String getJavaCommand(final String javaHome, final PrintStream out) {
@@ -283,19 +377,11 @@ public class InferenceLauncher {
             options.add("-v");
             options.add("--print-error-stack=true");
             options.add("--outdir=" + outputDir.getAbsolutePath());
-            options.add(jaifFile);
-
-            Collections.addAll(options, InferenceOptions.javaFiles);
-
-            if (InferenceOptions.printCommands) {
-                outStream.println("Running Insert Annotations Command:");
-                outStream.println(String.join(" ", options));
-            }
 
             // this can get quite large for large projects and it is not advisable to run
             // roundtripping via the InferenceLauncher for these projects
             ByteArrayOutputStream insertOut = new ByteArrayOutputStream();
-            result = ExecUtil.execute(options.toArray(new String[options.size()]), insertOut, errStream);
+            result = executeInsertion(options, jaifFile, insertOut);
             outStream.println(insertOut.toString());
 
 
@@ -307,20 +393,12 @@ public class InferenceLauncher {
         } else {
             String jaifFile = getJaifFilePath(new File("."));
 
-            String [] options = new String [4 + InferenceOptions.javaFiles.length];
-            options[0] = insertAnnotationsScript;
-            options[1] = "-v";
-            options[2] = "-i";
-            options[3] = jaifFile;
-
-            System.arraycopy(InferenceOptions.javaFiles, 0, options, 4, InferenceOptions.javaFiles.length);
-
-            if (InferenceOptions.printCommands) {
-                outStream.println("Running Insert Annotations Command:");
-                outStream.println(StringsPlume.join(" ", options));
-            }
+            List<String> options = new ArrayList<>();
+            options.add(insertAnnotationsScript);
+            options.add("-v");
+            options.add("-i");
 
-            result = ExecUtil.execute(options, outStream, errStream);
+            result = executeInsertion(options, jaifFile, outStream);
 
             for (String filePath : InferenceOptions.javaFiles) {
                 outputJavaFiles.add(filePath);
@@ -329,10 +407,73 @@ public class InferenceLauncher {
 
         reportStatus("Insert annotations", result, outStream);
         outStream.flush();
-        exitOnNonZeroStatus(result);
+        stopOnNonZeroStatus(result);
         return outputJavaFiles;
     }
 
+    /**
+     * Runs the insertion command on the jaif and InferenceOptions.javaFiles, either as a single
+     * process or, if InferenceOptions.afuWorkers is greater than 1, with a ParallelAnnotationInserter.
+     * @param options the insertion command and its options, without the jaif and the source files
+     * @return the exit status of the insertion
+     */
+    private int executeInsertion(List<String> options, String jaifFile, OutputStream insertOut) {
+        if (InferenceOptions.inProcess) {
+            // The AFU main class takes the arguments of the script, without the script itself.
+            return getInProcessPipeline().insert(options.subList(1, options.size()), jaifFile,
+                    InferenceOptions.javaFiles, insertOut);
+        }
+
+        if (InferenceOptions.afuWorkers > 1) {
+            if (InferenceOptions.printCommands) {
+                outStream.println("Running Insert Annotations Command with " + InferenceOptions.afuWorkers
+                        + " processes, each on a package's jaif entries and source files:");
+                outStream.println(String.join(" ", options));
+            }
+
+            try {
+                return new ParallelAnnotationInserter(options, InferenceOptions.afuWorkers)
+                        .insert(new File(jaifFile), InferenceOptions.javaFiles, insertOut, errStream);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        List<String> command = new ArrayList<>(options);
+        command.add(jaifFile);
+        Collections.addAll(command, InferenceOptions.javaFiles);
+
+        if (InferenceOptions.printCommands) {
+            outStream.println("Running Insert Annotations Command:");
+            outStream.println(String.join(" ", command));
+        }
+
+        return ExecUtil.execute(command.toArray(new String[command.size()]), insertOut, errStream);
+    }
+
+    private InProcessPipeline getInProcessPipeline() {
+        if (inProcessPipeline == null) {
+            String bcp = getInferenceRuntimeBootclassPath();
+            if (bcp != null && !bcp.isEmpty()) {
+                outStream.println("Running in-process: the boot classpath " + bcp
+                        + " must already be on the boot classpath of the launcher.");
+            }
+            inProcessPipeline = new InProcessPipeline(outStream, errStream, getInferenceRuntimeClassPath());
+        }
+        return inProcessPipeline;
+    }
+
+    private void closeInProcessPipeline() {
+        if (inProcessPipeline != null) {
+            try {
+                inProcessPipeline.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            inProcessPipeline = null;
+        }
+    }
+
     public static void ensureDirectoryExists(File path) {
         if (!path.exists()) {
             if (!path.mkdirs()) {
@@ -455,6 +596,27 @@ public class InferenceLauncher {
         }
     }
 
+    /**
+     * Stops the launch with the given status if it is not 0, so that launch returns it.
+     */
+    protected static void stopOnNonZeroStatus(int result) {
+        if (result != 0) {
+            throw new LaunchExitException(result);
+        }
+    }
+
+    /** Stops the steps of launch, which returns the status instead of exiting the JVM. */
+    protected static class LaunchExitException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        public LaunchExitException(int status) {
+            super("Inference launch stopped with exit status " + status);
+            this.status = status;
+        }
+    }
+
     public static void addIfTrue(String name, boolean isPresent, List<String> args) {
         if (isPresent) {
             args.add(name);
@@ -7,9 +7,11 @@ import org.checkerframework.common.basetype.BaseAnnotatedTypeFactory;
 import java.io.FileOutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -24,8 +26,13 @@ import checkers.inference.InferenceOptions.InitStatus;
 import checkers.inference.model.AnnotationLocation;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
 import checkers.inference.model.VariableSlot;
+import checkers.inference.presolve.EqualityPresolver;
+import checkers.inference.presolve.SlotSubstitution;
+import checkers.inference.presolve.SubtypeCyclePresolver;
 import checkers.inference.qual.VarAnnot;
+import checkers.inference.solver.util.Statistics;
 import checkers.inference.util.InferenceUtil;
 import checkers.inference.util.JaifBuilder;
 import org.checkerframework.javacutil.AnnotationUtils;
@@ -108,13 +115,35 @@ public class InferenceMain {
 
     private ResultHandler resultHandler;
 
+    /**
+     * Whether a failure exits the JVM, or throws an InferenceExitException so that runForExitStatus
+     * can return the exit status.
+     */
+    private boolean exitOnFailure = true;
+
+    /** The status of the first failure while exitOnFailure is false, or 0 if there was none. */
+    private int failureStatus;
+
+    /** Where to write the JAIF instead of InferenceOptions.jaifFile, or null to write the file. */
+    private Writer jaifWriter;
+
     public void setResultHandler(ResultHandler resultHandler) {
         this.resultHandler = resultHandler;
     }
 
+    /**
+     * Write the JAIF to the given writer instead of InferenceOptions.jaifFile, for callers that
+     * run inference in their own JVM and use the JAIF themselves.
+     */
+    public void setJaifWriter(Writer jaifWriter) {
+        this.jaifWriter = jaifWriter;
+    }
+
     public static void main(String [] args) {
-        InitStatus status = InferenceOptions.init(args, false);
-        status.validateOrExit();
+        int status = InferenceOptions.init(args, false).validate();
+        if (status != InitStatus.CONTINUE) {
+            System.exit(status);
+        }
 
         InferenceMain inferenceMain = new InferenceMain();
         inferenceMain.run();
@@ -146,16 +175,76 @@ public class InferenceMain {
 
         // Start up javac
         startCheckerFramework();
+        if (inferenceTypeFactory != null) {
+            inferenceTypeFactory.getBytecodeTypeAnnotator().writeSummaryCache();
+        }
         solve();
         // solverResult = null covers case when debug solver is used, but in this case
         // shouldn't exit
         if (solverResult != null && !solverResult.hasSolution()) {
             logger.info("No solution, exiting...");
-            System.exit(1);
+            exit(1);
         }
         writeJaif();
     }
 
+    /**
+     * Kick off the inference process like run, but return the status with which run would exit
+     * the JVM instead of exiting, for callers that run inference in their own JVM.
+     * @return 0 if inference succeeded, otherwise the exit status of the failure
+     */
+    public int runForExitStatus() {
+        exitOnFailure = false;
+        failureStatus = 0;
+        try {
+            run();
+            return 0;
+        } catch (RuntimeException e) {
+            // javac may wrap the exception thrown from the checker.
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof InferenceExitException) {
+                    return failureStatus;
+                }
+            }
+            throw e;
+        } finally {
+            exitOnFailure = true;
+        }
+    }
+
+    /**
+     * Exits the JVM with the given status, or, in runForExitStatus, records the status and throws
+     * an InferenceExitException to stop inference.
+     */
+    private static void exit(int status) {
+        InferenceMain instance = getInstance();
+        if (instance == null || instance.exitOnFailure) {
+            System.exit(status);
+        }
+        if (instance.failureStatus == 0) {
+            instance.failureStatus = status;
+        }
+        throw new InferenceExitException(status);
+    }
+
+    /** Stops inference in runForExitStatus where inference would otherwise exit the JVM. */
+    private static class InferenceExitException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        InferenceExitException(int status) {
+            super("Inference failed with exit status " + status);
+        }
+    }
+
+    /**
+     * Run only the Checker Framework part of inference on the configured sources, creating the real
+     * type factory, slot manager and constraint manager without solving or writing a JAIF. Tools
+     * that drive the solvers directly, such as the benchmarks, use this to set up the environment.
+     */
+    public void runCheckerFramework() {
+        startCheckerFramework();
+    }
+
     /**
      * Run the Checker-Framework using InferenceChecker
      */
@@ -216,11 +305,13 @@ public class InferenceMain {
 
     /**
      * Create a jaif file that records the mapping of VariableSlots to their code positions.
-     * The output file can be configured by the command-line argument jaiffile.
+     * The output file can be configured by the command-line argument jaiffile, or replaced by
+     * a writer with setJaifWriter.
      */
     private void writeJaif() {
-        try (PrintWriter writer
-                = new PrintWriter(new FileOutputStream(InferenceOptions.jaifFile))) {
+        try (PrintWriter writer = jaifWriter != null
+                ? new PrintWriter(jaifWriter)
+                : new PrintWriter(new FileOutputStream(InferenceOptions.jaifFile))) {
 
             List<VariableSlot> varSlots = slotManager.getVariableSlots();
             Map<AnnotationLocation, String> values = new HashMap<>();
@@ -249,8 +340,8 @@ public class InferenceMain {
             }
 
             JaifBuilder builder = new JaifBuilder(values, annotationClasses, realChecker.isInsertMainModOfLocalVar());
-            String jaif = builder.createJaif();
-            writer.println(jaif);
+            builder.writeJaif(writer);
+            writer.println();
 
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Failed to write out jaif file!", e);
@@ -270,14 +361,41 @@ public class InferenceMain {
         // TODO: Prune out unneeded variables
         // TODO: Options to type-check after this.
 
+        Collection<Slot> slots = slotManager.getSlots();
+        SlotSubstitution substitution = null;
+        if (InferenceOptions.subtypeCyclePresolve) {
+            substitution = new SubtypeCyclePresolver().presolve(slots, normalizedConstraints);
+        } else if (InferenceOptions.equalityPresolve) {
+            substitution = new EqualityPresolver().presolve(slots, normalizedConstraints);
+        }
+        if (substitution != null) {
+            int constraintCount = normalizedConstraints.size();
+            normalizedConstraints = substitution.substitute(normalizedConstraints);
+            slots = substitution.removeReplacedSlots(slots);
+            int removedConstraints = constraintCount - normalizedConstraints.size();
+            logger.info("Presolve merged " + substitution.getNumberOfReplacedSlots() + " slots and removed "
+                    + removedConstraints + " constraints");
+            Statistics.addOrIncrementEntry("presolve_merged_slots", substitution.getNumberOfReplacedSlots());
+            Statistics.addOrIncrementEntry("presolve_removed_constraints", removedConstraints);
+
+            if (!substitution.getUnsatisfiableConstraints().isEmpty()) {
+                logger.info("Presolve found unsatisfiable constraints");
+                this.solverResult = new DefaultInferenceResult(substitution.getUnsatisfiableConstraints());
+                return;
+            }
+        }
+
         if (InferenceOptions.solver != null) {
             InferenceSolver solver = getSolver();
             this.solverResult = solver.solve(
                     parseSolverArgs(),
-                    slotManager.getSlots(),
+                    slots,
                     normalizedConstraints,
                     getRealTypeFactory().getQualifierHierarchy(),
                     inferenceChecker.getProcessingEnvironment());
+            if (substitution != null && solverResult != null) {
+                this.solverResult = substitution.mapBack(solverResult);
+            }
         }
     }
 
@@ -325,7 +443,7 @@ public class InferenceMain {
                 logger.finer(String.format("Created real checker: %s", realChecker));
             } catch (Throwable e) {
               logger.log(Level.SEVERE, "Error instantiating checker class \"" + InferenceOptions.checker + "\".", e);
-              System.exit(5);
+              exit(5);
           }
         }
         return realChecker;
@@ -373,6 +491,14 @@ public class InferenceMain {
         return slotManager;
     }
 
+    /**
+     * Replace the slot manager, e.g. with one holding slots read back from a constraint file.
+     * Must not be called once the Checker Framework has started generating constraints.
+     */
+    public void setSlotManager(SlotManager slotManager) {
+        this.slotManager = slotManager;
+    }
+
     protected InferenceSolver getSolver() {
         try {
             InferenceSolver solver = (InferenceSolver) Class.forName(
@@ -381,7 +507,7 @@ public class InferenceMain {
             return solver;
         } catch (Throwable e) {
             logger.log(Level.SEVERE, "Error instantiating solver class \"" + InferenceOptions.solver + "\".", e);
-            System.exit(5);
+            exit(5);
             return null; // Dead code
         }
     }
@@ -392,9 +518,17 @@ public class InferenceMain {
      * @return Map of string keys and values
      */
     private Map<String, String> parseSolverArgs() {
+        return parseSolverArgs(InferenceOptions.solverArgs);
+    }
+
+    /**
+     * Parse the given solver-args, in the format of {@link InferenceOptions#solverArgs}.
+     * @param solverArgs comma separated list of key=value pairs, or null for none
+     * @return Map of string keys and values
+     */
+    public static Map<String, String> parseSolverArgs(@Nullable String solverArgs) {
         Map<String, String> processed = new HashMap<>();
-        if (InferenceOptions.solverArgs != null) {
-            String solverArgs = InferenceOptions.solverArgs;
+        if (solverArgs != null) {
             String[] split = solverArgs.split(",");
             for (String part : split) {
                 int index;
@@ -483,7 +617,7 @@ public class InferenceMain {
             if (!success) {
                 logger.severe("Error return code from javac! Quitting.");
                 logger.info(javacOutStr);
-                System.exit(1);
+                exit(1);
             }
         }
     }
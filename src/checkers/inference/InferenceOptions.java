@@ -49,6 +49,9 @@ public class InferenceOptions {
     @Option("Should we log certain exceptions rather than crash")
     public static boolean hacks;
 
+    @Option("Run inference and typechecking in the JVM of the launcher instead of launching a JVM for each step.  Only for the ROUNDTRIP modes.")
+    public static boolean inProcess;
+
     /**
      * The type system to use for checker, solver, and related command-line
      * options.  If you use this option, all required command-line
@@ -85,6 +88,16 @@ public class InferenceOptions {
     @Option("The JSON file to which constraints should be dumped.  This field is mutually exclusive with solver.")
     public static String jsonFile;
 
+    @Option("[path] directory of the persistent cache of real qualifiers on library (bytecode) types")
+    public static String bytecodeCacheDir;
+
+    @Option("Merge the slots that are equated by EqualityConstraints into one slot per equivalence class before solving.")
+    public static boolean equalityPresolve;
+
+    @Option("Merge the slots on cycles of SubtypeConstraints (and EqualityConstraints) into one slot per strongly "
+            + "connected component before solving. Subsumes --equalityPresolve.")
+    public static boolean subtypeCyclePresolve;
+
     // ------------------------------------------------------
     @OptionGroup("Annotation File Utilities options")
 
@@ -100,6 +113,9 @@ public class InferenceOptions {
     @Option("Additional AFU options")
     public static String afuOptions;
 
+    @Option("Number of insertion processes to run in parallel, each on the jaif entries and source files of some packages.  1 inserts everything with a single process.")
+    public static int afuWorkers = 1;
+
     @Option("If true, insert solutions that are equivalent to the default ones back to the code.")
     public static boolean makeDefaultsExplicit;
 
@@ -189,9 +205,9 @@ public class InferenceOptions {
                 modeEnum = Mode.valueOf(InferenceOptions.mode);
 
             } catch (IllegalArgumentException iexc) {
-                System.out.println("Could not recognize mode: " + InferenceOptions.mode + "\n"
+                errors.add("Could not recognize mode: " + InferenceOptions.mode + "\n"
                         + "valid modes: " + StringsPlume.join(", ", Mode.values()));
-                System.exit(1);
+                return new InitStatus(options, errors, help);
             }
 
             if (modeEnum != Mode.TYPECHECK) {
@@ -211,6 +227,10 @@ public class InferenceOptions {
                 }
             }
 
+            if (inProcess && modeEnum.ordinal() < Mode.ROUNDTRIP.ordinal()) {
+                errors.add("--inProcess only applies to the ROUNDTRIP and ROUNDTRIP_TYPECHECK modes.");
+            }
+
             if (modeEnum.ordinal() >= Mode.ROUNDTRIP.ordinal()) {
                 if (afuOutputDir == null) {
                     if (!inPlace) {
@@ -220,6 +240,14 @@ public class InferenceOptions {
                     errors.add("You cannot specify both an Annotation File Utilities output directory (--afuOutputDir or -afud) and --inPlace.");
                 }
 
+                if (inProcess && afuWorkers > 1) {
+                    errors.add("Insertion with several processes (--afuWorkers) cannot be combined with --inProcess.");
+                }
+
+                if (afuWorkers < 1) {
+                    errors.add("The number of insertion processes (--afuWorkers) must be at least 1.");
+                }
+
                 if (afuOptions != null && afuOptions.contains("\\s-d\\s")) {
                     errors.add("Annotation File Utilities output dir must be specified via (--afuOutputDir or -afud) not -d in AFU Options.");
                 }
@@ -335,20 +363,30 @@ public class InferenceOptions {
             this.printHelp = printHelp;
         }
 
-        public void validateOrExit() {
-            validateOrExit("\n");
+        /** Returned by {@link #validate()} if the caller should go on. */
+        public static final int CONTINUE = -1;
+
+        public int validate() {
+            return validate("\n");
         }
-        public void validateOrExit(String errorDelimiter) {
+
+        /**
+         * Print the errors and the usage if there are errors, or the usage if help was asked for.
+         * @return the status to exit with if there were errors or help was asked for, otherwise
+         * {@link #CONTINUE}
+         */
+        public int validate(String errorDelimiter) {
             if (!errors.isEmpty()) {
                 System.out.println(StringsPlume.join(errorDelimiter, errors));
                 options.printUsage();
-                System.exit(1);
+                return 1;
             }
 
             if (printHelp) {
                 options.printUsage();
-                System.exit(0);
+                return 0;
             }
+            return CONTINUE;
         }
     }
 }
@@ -33,6 +33,17 @@ public interface InferenceResult {
      */
     Map<Integer, AnnotationMirror> getSolutions();
 
+    /**
+     * Indicates if the solutions are optimal with respect to the preferences of the constraints.
+     *
+     * @return false if the solver ran out of its time budget before it could prove that there are
+     * no better solutions, in which case the solutions are the best ones found so far. True
+     * otherwise, also if {@link #hasSolution()} is false.
+     *
+     * @see checkers.inference.solver.SolverEngine.SolverEngineArg#timeBudget
+     */
+    boolean isOptimal();
+
     /**
      * A method to check if there is solution for a particular variable ID or not.
      *
@@ -1,22 +1,23 @@
 package checkers.inference;
 
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
-import java.util.Set;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
 
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-import checkers.inference.model.serialization.JsonDeserializer;
 import org.plumelib.options.Option;
 import org.plumelib.options.Options;
 
@@ -26,6 +27,10 @@ import org.plumelib.options.Options;
  * {@link @VarAnnot} annotations and creates a new JAIF by replacing the @VarAnnots
  * with the annotation for that @VarAnnot's id in the solution.
  *
+ * The JSON files are parsed as a stream into a table indexed by variable id, and the JAIF is
+ * rewritten one line at a time through buffered file channels, so memory use does not depend on
+ * the size of the JAIF.
+ *
  * @author mcarthur
  */
 public class SolutionJaifUpdater {
@@ -49,6 +54,20 @@ public class SolutionJaifUpdater {
     @Option("The string representation of the bottom annotation in the hierarchy (e.g. @NonNull)")
     public static String botAnnotation;
 
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] VAR_ANNOT_BYTES = CHECKERS_INFERENCE_QUALS_VAR_ANNOT.getBytes(Charset.defaultCharset());
+
+    // Keys of the JSON constraint format, see JsonSerializer.
+    private static final String CONSTRAINTS_KEY = "constraints";
+    private static final String CONSTRAINT_KEY = "constraint";
+    private static final String VARIABLES_KEY = "variables";
+    private static final String VARIABLES_VALUE_KEY = "type_value";
+    private static final String EXISTENTIAL_VARIABLES_KEY = "enabled_vars";
+    private static final String EXISTENTIAL_CONSTRAINT_KEY = "enabled_check";
+    private static final String EXISTENTIAL_ID = "id";
+    private static final String VAR_PREFIX = "var:";
+
     public static void main(String[] args) throws IOException, ParseException {
         Options options = new Options("SolutionJaifUpdator [options]", SolutionJaifUpdater.class);
         options.parse(true, args);
@@ -58,84 +77,357 @@ public class SolutionJaifUpdater {
             System.exit(1);
         }
 
-        String solvedJsonStr = readFile(solvedJson);
-        JsonDeserializer solvedDeserializer = new JsonDeserializer(null, solvedJsonStr);
+        updateJaif(Paths.get(originalJson), Paths.get(solvedJson), Paths.get(jaifFilename), Paths.get(outputFilename),
+                topAnnotation, botAnnotation, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Replace the @VarAnnots of a JAIF with their solutions.
+     *
+     * A line with a @VarAnnot whose variable has no solution is dropped with a warning, as is a
+     * line whose variable is a potential variable of an existential constraint that the solution
+     * did not enable. All other lines are copied. Lines may end with \n, \r\n or \r, and are
+     * written with the platform line separator.
+     *
+     * @param bufferSize size of the read and write buffers of the JAIF
+     */
+    static void updateJaif(Path originalJsonPath, Path solvedJsonPath, Path jaifPath, Path outputPath,
+                           String top, String bottom, int bufferSize) throws IOException, ParseException {
+        SolutionTable solutions = new SolutionTable();
+        parseJson(solvedJsonPath, new SolutionHandler(solutions, false));
+        parseJson(originalJsonPath, new SolutionHandler(solutions, true));
+
+        try (FileChannel in = FileChannel.open(jaifPath, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(outputPath, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            new JaifRewriter(solutions, top, bottom, out, bufferSize).rewrite(in);
+        }
+    }
 
-        Map<String, Boolean> existentialValues = getExistentialValues(originalJson, solvedDeserializer);
-        Map<String, String> solvedValues = getSolvedValues(solvedDeserializer, topAnnotation, botAnnotation);
-        updateJaif(solvedValues, existentialValues, jaifFilename, outputFilename);
+    private static void parseJson(Path path, SolutionHandler handler) throws IOException, ParseException {
+        try (Reader reader = Files.newBufferedReader(path, Charset.defaultCharset())) {
+            new JSONParser().parse(reader, handler);
+        }
     }
 
     /**
-     * Parses the inference.jaif file provided by verigames.jar and updates the variable values
-     * with a boolean of true/false depending on the results obtained from the updates xml file
-     * after the user plays the game.
-     * @param values Map<String, Boolean> where the integer is the variable id and the boolean
-     * is the value to replace the variable id with.
-     * @param existentialValues
-     * @throws FileNotFoundException thrown if the file inference.jaif is not found in the current
-     * directory.
+     * @return the integer between the first and second colon of e.g. "var:12", or -1 if there is
+     * none
      */
-    private static void updateJaif(Map<String, String> values, Map<String, Boolean> existentialValues,
-                                   String jaifPath, String outputFile) throws FileNotFoundException {
-        if (values == null) {
-            throw new IllegalArgumentException("Map passed must not be null");
+    private static int parseId(String value) {
+        String field = colonField(value);
+        if (field == null) {
+            return -1;
         }
+        try {
+            int id = Integer.parseInt(field);
+            return id >= 0 && String.valueOf(id).equals(field) ? id : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
-        try (Scanner in = new Scanner(new File(jaifPath));
-             PrintStream out = new PrintStream(new File(outputFile))) {
+    private static String colonField(String value) {
+        int start = value.indexOf(':');
+        if (start < 0) {
+            return null;
+        }
+        int end = value.indexOf(':', start + 1);
+        return value.substring(start + 1, end < 0 ? value.length() : end);
+    }
 
-            while (in.hasNextLine()) {
-                String line = in.nextLine();
-                int start = -1;
-                if ((start = line.indexOf(CHECKERS_INFERENCE_QUALS_VAR_ANNOT)) != -1) {
+    /**
+     * The solution of every variable, indexed by variable id: whether it is top or bottom, and
+     * whether it is an existential variable that is disabled.
+     */
+    private static class SolutionTable {
+        private static final byte NO_SOLUTION = 0;
+        private static final byte TOP = 1;
+        private static final byte BOTTOM = 2;
 
-                    int end = start + (CHECKERS_INFERENCE_QUALS_VAR_ANNOT.length());
-                    String key = line.substring(end, line.length() - 1);
+        private byte[] values = new byte[1024];
+        private final BitSet potential = new BitSet();
+        private final BitSet enabled = new BitSet();
 
-                    if (values.get(key) == null) {
-                        System.out.println("Warning: Could not find value for " + key + " using supertype, skipping");
-                    } else {
-                        Boolean exists = existentialValues.get(key);
-                        if (exists == null || exists) {
-                            out.print(line.substring(0, start));
-                            out.println(values.get(key));
-                        }
+        void setValue(int id, boolean isBottom) {
+            if (id >= values.length) {
+                values = Arrays.copyOf(values, Math.max(id + 1, values.length * 2));
+            }
+            values[id] = isBottom ? BOTTOM : TOP;
+        }
+
+        byte getValue(int id) {
+            return id >= 0 && id < values.length ? values[id] : NO_SOLUTION;
+        }
+
+        void setPotential(int id) {
+            potential.set(id);
+        }
+
+        void setEnabled(int id) {
+            enabled.set(id);
+        }
+
+        boolean exists(int id) {
+            return !potential.get(id) || enabled.get(id);
+        }
+    }
+
+    /**
+     * Streaming JSON handler that records the solutions and enabled variables of a solved
+     * constraint file, or the potential variables of the existential constraints of an original
+     * constraint file.
+     */
+    private static class SolutionHandler implements ContentHandler {
+        private final SolutionTable solutions;
+        private final boolean isOriginal;
+
+        /** Keys of the enclosing object entries, innermost first. */
+        private final Deque<String> keys = new ArrayDeque<>();
+
+        /** Constraint type and existential id of the enclosing objects, innermost first. */
+        private final Deque<String[]> objects = new ArrayDeque<>();
+
+        private String variable;
+
+        SolutionHandler(SolutionTable solutions, boolean isOriginal) {
+            this.solutions = solutions;
+            this.isOriginal = isOriginal;
+        }
+
+        @Override
+        public void startJSON() {
+        }
+
+        @Override
+        public void endJSON() {
+        }
+
+        @Override
+        public boolean startObject() {
+            objects.push(new String[2]);
+            return true;
+        }
+
+        @Override
+        public boolean endObject() {
+            String[] object = objects.pop();
+            if (isOriginal && CONSTRAINTS_KEY.equals(keys.peekLast())
+                    && EXISTENTIAL_CONSTRAINT_KEY.equals(object[0])
+                    && object[1] != null && object[1].startsWith(VAR_PREFIX)) {
+                int id = parseId(object[1]);
+                if (id >= 0) {
+                    solutions.setPotential(id);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean startObjectEntry(String key) {
+            if (keys.size() == 1 && VARIABLES_KEY.equals(keys.peek())) {
+                variable = key;
+            }
+            keys.push(key);
+            return true;
+        }
+
+        @Override
+        public boolean endObjectEntry() {
+            keys.pop();
+            return true;
+        }
+
+        @Override
+        public boolean startArray() {
+            return true;
+        }
+
+        @Override
+        public boolean endArray() {
+            return true;
+        }
+
+        @Override
+        public boolean primitive(Object value) {
+            if (!(value instanceof String)) {
+                return true;
+            }
+            String string = (String) value;
+            String topKey = keys.peekLast();
+
+            if (isOriginal) {
+                String[] object = objects.peek();
+                if (object != null && CONSTRAINTS_KEY.equals(topKey)) {
+                    if (CONSTRAINT_KEY.equals(keys.peek())) {
+                        object[0] = string;
+                    } else if (EXISTENTIAL_ID.equals(keys.peek())) {
+                        object[1] = string;
+                    }
+                }
+
+            } else if (VARIABLES_KEY.equals(topKey)) {
+                // In the first results from v.12 the output solved JSON had two different formats
+                // in the Variables section: "var:1": "type:0" and "var:1": {"type_value": "type:0"}.
+                if (keys.size() == 2 || (keys.size() == 3 && VARIABLES_VALUE_KEY.equals(keys.peek()))) {
+                    int id = parseId(variable);
+                    if (id >= 0) {
+                        solutions.setValue(id, "0".equals(colonField(string)));
                     }
+                }
 
-                } else
-                    out.println(line);
+            } else if (EXISTENTIAL_VARIABLES_KEY.equals(topKey) && keys.size() == 1) {
+                int id = parseId(string);
+                if (id >= 0) {
+                    solutions.setEnabled(id);
+                }
             }
+            return true;
         }
     }
 
-    private static final Map<String, Boolean> getExistentialValues(String originalJsonFilename, JsonDeserializer solvedDeserializer) throws IOException, ParseException {
-        String json = readFile(originalJsonFilename);
-        JsonDeserializer deserializer = new JsonDeserializer(null, json);
-        List<String> allPotentialVariables = deserializer.getPotentialVariables();
-        Set<String> enabledVars = solvedDeserializer.getEnabledVars();
+    /**
+     * Copies a JAIF line by line from a channel to another, replacing the @VarAnnots.
+     */
+    private static class JaifRewriter {
+        private final SolutionTable solutions;
+        private final byte[] top;
+        private final byte[] bottom;
+        private final byte[] lineSeparator;
+        private final FileChannel out;
+        private final ByteBuffer outBuffer;
+        private final int bufferSize;
 
-        Map<String, Boolean> out = new LinkedHashMap<>();
-        for (String potentialVar : allPotentialVariables) {
-            out.put(potentialVar, enabledVars.contains(potentialVar));
+        private byte[] line = new byte[256];
+        private int lineLength = 0;
+
+        JaifRewriter(SolutionTable solutions, String top, String bottom, FileChannel out, int bufferSize) {
+            this.solutions = solutions;
+            this.top = top.getBytes(Charset.defaultCharset());
+            this.bottom = bottom.getBytes(Charset.defaultCharset());
+            this.lineSeparator = System.lineSeparator().getBytes(Charset.defaultCharset());
+            this.out = out;
+            this.outBuffer = ByteBuffer.allocate(bufferSize);
+            this.bufferSize = bufferSize;
         }
 
-        return out;
-    }
+        void rewrite(FileChannel in) throws IOException {
+            ByteBuffer inBuffer = ByteBuffer.allocate(bufferSize);
+            boolean afterCarriageReturn = false;
+            boolean inLine = false;
+
+            while (in.read(inBuffer) != -1) {
+                inBuffer.flip();
+                while (inBuffer.hasRemaining()) {
+                    byte b = inBuffer.get();
+                    if (afterCarriageReturn) {
+                        afterCarriageReturn = false;
+                        if (b == '\n') {
+                            continue;
+                        }
+                    }
+                    if (b == '\n' || b == '\r') {
+                        processLine();
+                        afterCarriageReturn = b == '\r';
+                        inLine = false;
+                    } else {
+                        appendToLine(b);
+                        inLine = true;
+                    }
+                }
+                inBuffer.clear();
+            }
+            if (inLine) {
+                processLine();
+            }
 
-    private static final Map<String, String> getSolvedValues(JsonDeserializer deserializer, String top, String bottom) throws IOException, ParseException {
-        Map<String, String> values = deserializer.getAnnotationValues();
-        Map<String, String> results = new HashMap<>();
-        for (Map.Entry<String, String> entry: values.entrySet()) {
-            String value = entry.getValue().equals("0") ? bottom : top;
-            results.put(entry.getKey(), value);
+            outBuffer.flip();
+            while (outBuffer.hasRemaining()) {
+                out.write(outBuffer);
+            }
         }
 
-        return results;
-    }
+        private void appendToLine(byte b) {
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = b;
+        }
+
+        private void processLine() throws IOException {
+            int start = indexOfVarAnnot();
+            if (start == -1) {
+                write(line, 0, lineLength);
+                write(lineSeparator, 0, lineSeparator.length);
+            } else {
+                // The id is everything between the VarAnnot prefix and the closing parenthesis.
+                int keyStart = start + VAR_ANNOT_BYTES.length;
+                int keyEnd = Math.max(keyStart, lineLength - 1);
+                int id = parseId(keyStart, keyEnd);
+                byte value = solutions.getValue(id);
+
+                if (value == SolutionTable.NO_SOLUTION) {
+                    String key = new String(line, keyStart, keyEnd - keyStart, Charset.defaultCharset());
+                    System.out.println("Warning: Could not find value for " + key + " using supertype, skipping");
+                } else if (solutions.exists(id)) {
+                    write(line, 0, start);
+                    byte[] annotation = value == SolutionTable.BOTTOM ? bottom : top;
+                    write(annotation, 0, annotation.length);
+                    write(lineSeparator, 0, lineSeparator.length);
+                }
+            }
+            lineLength = 0;
+        }
 
-    static String readFile(String path) throws IOException {
-        byte[] encoded = Files.readAllBytes(Paths.get(path));
-        return new String(encoded, Charset.defaultCharset());
+        private int indexOfVarAnnot() {
+            int last = lineLength - VAR_ANNOT_BYTES.length;
+            outer:
+            for (int i = 0; i <= last; i++) {
+                for (int j = 0; j < VAR_ANNOT_BYTES.length; j++) {
+                    if (line[i + j] != VAR_ANNOT_BYTES[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+
+        /**
+         * @return the id written in decimal without leading zeros in line[start, end), or -1
+         */
+        private int parseId(int start, int end) {
+            if (start == end || (line[start] == '0' && end - start > 1)) {
+                return -1;
+            }
+            long id = 0;
+            for (int i = start; i < end; i++) {
+                byte b = line[i];
+                if (b < '0' || b > '9') {
+                    return -1;
+                }
+                id = id * 10 + (b - '0');
+                if (id > Integer.MAX_VALUE) {
+                    return -1;
+                }
+            }
+            return (int) id;
+        }
+
+        private void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (!outBuffer.hasRemaining()) {
+                    outBuffer.flip();
+                    while (outBuffer.hasRemaining()) {
+                        out.write(outBuffer);
+                    }
+                    outBuffer.clear();
+                }
+                int chunk = Math.min(length, outBuffer.remaining());
+                outBuffer.put(bytes, offset, chunk);
+                offset += chunk;
+                length -= chunk;
+            }
+        }
     }
 }
@@ -0,0 +1,156 @@
+package checkers.inference.model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hash-conses the constraints created by {@link ConstraintManager}. Constraints are looked up by
+ * their kind and the ids of their slots (plus the operation or weight where the kind has one),
+ * stored in a primitive open-addressing table, so that creating a constraint that was created
+ * before returns the canonical instance without allocating a new constraint or computing the
+ * hashCode and equals of its slots.
+ *
+ * The interned value is the result of the kind's create method, which may be a normalized
+ * constraint, e.g. {@link AlwaysTrueConstraint} or an {@link EqualityConstraint} for a subtype
+ * constraint. As with the constraint set, the canonical instance has the location of the first
+ * constraint created with its key.
+ *
+ * The slot order is part of the key, also for symmetric constraints like equality, so that the
+ * returned constraint always has its slots in the requested order.
+ */
+class ConstraintInterner {
+
+    /** The interned kinds of constraints. */
+    enum Kind {
+        SUBTYPE(SubtypeConstraint.class),
+        EQUALITY(EqualityConstraint.class),
+        INEQUALITY(InequalityConstraint.class),
+        COMPARABLE(ComparableConstraint.class),
+        COMPARISON(ComparisonConstraint.class),
+        COMBINE(CombineConstraint.class),
+        PREFERENCE(PreferenceConstraint.class),
+        ARITHMETIC(ArithmeticConstraint.class);
+
+        final Class<? extends Constraint> constraintClass;
+
+        Kind(Class<? extends Constraint> constraintClass) {
+            this.constraintClass = constraintClass;
+        }
+    }
+
+    /** Number of ints per key: the kind and operation, then up to three slot ids or a weight. */
+    private static final int KEY_WIDTH = 4;
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    /** Keys of the table, KEY_WIDTH ints per entry. The header of an unused entry is 0. */
+    private int[] keys = new int[INITIAL_CAPACITY * KEY_WIDTH];
+
+    /** The canonical constraint of each used entry. */
+    private Constraint[] values = new Constraint[INITIAL_CAPACITY];
+
+    private int size = 0;
+
+    /** Number of lookups that found a canonical instance, per kind. */
+    private final long[] duplicates = new long[Kind.values().length];
+
+    /**
+     * Encodes a kind and an operation ordinal (0 if there is none, -1 if it is null) into the
+     * header of a key. The header is never 0, which marks unused entries.
+     */
+    static int header(Kind kind, int operation) {
+        return ((operation + 1) << 8) | (kind.ordinal() + 1);
+    }
+
+    /**
+     * @return the canonical constraint for the given key, or null if there is none yet
+     */
+    Constraint get(int header, int a, int b, int c) {
+        int mask = values.length - 1;
+        for (int index = hash(header, a, b, c) & mask; ; index = (index + 1) & mask) {
+            int offset = index * KEY_WIDTH;
+            if (keys[offset] == 0) {
+                return null;
+            }
+            if (keys[offset] == header && keys[offset + 1] == a && keys[offset + 2] == b && keys[offset + 3] == c) {
+                duplicates[(header & 0xff) - 1]++;
+                return values[index];
+            }
+        }
+    }
+
+    /**
+     * Records constraint as the canonical constraint for the given key, which must not have one yet.
+     *
+     * @return constraint
+     */
+    Constraint put(int header, int a, int b, int c, Constraint constraint) {
+        if (2 * (size + 1) > values.length) {
+            grow();
+        }
+        insert(header, a, b, c, constraint);
+        size++;
+        return constraint;
+    }
+
+    /** Removes all canonical constraints and duplicate counts. */
+    void clear() {
+        keys = new int[INITIAL_CAPACITY * KEY_WIDTH];
+        values = new Constraint[INITIAL_CAPACITY];
+        size = 0;
+        for (int i = 0; i < duplicates.length; i++) {
+            duplicates[i] = 0;
+        }
+    }
+
+    /**
+     * @return the number of duplicates found per kind of constraint, keyed by the simple name of
+     * the constraint class, for the kinds with at least one duplicate
+     */
+    Map<String, Long> getDuplicateCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Kind kind : Kind.values()) {
+            if (duplicates[kind.ordinal()] > 0) {
+                counts.put(kind.constraintClass.getSimpleName(), duplicates[kind.ordinal()]);
+            }
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    private void insert(int header, int a, int b, int c, Constraint constraint) {
+        int mask = values.length - 1;
+        int index = hash(header, a, b, c) & mask;
+        while (keys[index * KEY_WIDTH] != 0) {
+            index = (index + 1) & mask;
+        }
+        int offset = index * KEY_WIDTH;
+        keys[offset] = header;
+        keys[offset + 1] = a;
+        keys[offset + 2] = b;
+        keys[offset + 3] = c;
+        values[index] = constraint;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Constraint[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Constraint[oldValues.length * 2];
+        for (int index = 0; index < oldValues.length; index++) {
+            int offset = index * KEY_WIDTH;
+            if (oldKeys[offset] != 0) {
+                insert(oldKeys[offset], oldKeys[offset + 1], oldKeys[offset + 2], oldKeys[offset + 3],
+                        oldValues[index]);
+            }
+        }
+    }
+
+    private static int hash(int header, int a, int b, int c) {
+        int h = header;
+        h = h * 0x9E3779B1 + a;
+        h = h * 0x9E3779B1 + b;
+        h = h * 0x9E3779B1 + c;
+        return h ^ (h >>> 16);
+    }
+}
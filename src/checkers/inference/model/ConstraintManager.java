@@ -2,6 +2,7 @@ package checkers.inference.model;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.sun.source.util.TreePath;
@@ -12,6 +13,7 @@ import checkers.inference.InferenceAnnotatedTypeFactory;
 import checkers.inference.VariableAnnotator;
 import checkers.inference.model.ArithmeticConstraint.ArithmeticOperationKind;
 import checkers.inference.model.ComparisonConstraint.ComparisonOperationKind;
+import checkers.inference.model.ConstraintInterner.Kind;
 
 /**
  * Constraint manager holds constraints that are generated by InferenceVisitor.
@@ -25,6 +27,12 @@ public class ConstraintManager {
 
     private final Set<Constraint> constraints = new HashSet<Constraint>();
 
+    /**
+     * Canonical instances of the constraints created by the createXXXConstraint methods, keyed by
+     * kind and slot ids, so that duplicates are found before they are allocated.
+     */
+    private final ConstraintInterner interner = new ConstraintInterner();
+
     private InferenceAnnotatedTypeFactory inferenceTypeFactory;
 
     private SourceChecker checker;
@@ -35,12 +43,38 @@ public class ConstraintManager {
         this.inferenceTypeFactory = inferenceTypeFactory;
         this.realQualHierarchy = inferenceTypeFactory.getRealQualifierHierarchy();
         this.checker = inferenceTypeFactory.getChecker();
+        // The normalization of constraints depends on the qualifier hierarchy.
+        interner.clear();
+    }
+
+    /**
+     * Initialize this manager outside of a type-checking run, e.g. when benchmarking or replaying
+     * constraints. Constraints created this way have a missing location, and an unsatisfiable
+     * constraint passed to one of the addXXXConstraint methods is a bug rather than a type error.
+     *
+     * @param realQualHierarchy the qualifier hierarchy of the real type system
+     */
+    public void init(QualifierHierarchy realQualHierarchy) {
+        this.inferenceTypeFactory = null;
+        this.realQualHierarchy = realQualHierarchy;
+        this.checker = null;
+        interner.clear();
     }
 
     public Set<Constraint> getConstraints() {
         return constraints;
     }
 
+    /**
+     * Returns the number of times a createXXXConstraint method returned the canonical instance of a
+     * constraint created before, instead of creating a duplicate, per kind of constraint.
+     *
+     * @return a map from the simple name of the constraint class to the number of duplicates
+     */
+    public Map<String, Long> getDuplicateCounts() {
+        return interner.getDuplicateCounts();
+    }
+
     /**
      * If the {@code ignoreConstraints} flag is set to false, then this method checks to see if the
      * given {@link Constraint} is an instance of {@link AlwaysFalseConstraint}. If so, a warning is
@@ -89,8 +123,13 @@ public class ConstraintManager {
      * {@link AlwaysTrueConstraint}, {@link AlwaysFalseConstraint}, or {@link EqualityConstraint}.
      */
     public Constraint createSubtypeConstraint(Slot subtype, Slot supertype) {
-        return SubtypeConstraint.create(subtype, supertype, getCurrentLocation(),
-                realQualHierarchy);
+        int header = ConstraintInterner.header(Kind.SUBTYPE, 0);
+        Constraint constraint = interner.get(header, id(subtype), id(supertype), 0);
+        if (constraint != null) {
+            return constraint;
+        }
+        return interner.put(header, id(subtype), id(supertype), 0,
+                SubtypeConstraint.create(subtype, supertype, getCurrentLocation(), realQualHierarchy));
     }
 
     /**
@@ -98,7 +137,13 @@ public class ConstraintManager {
      * {@link AlwaysTrueConstraint} or {@link AlwaysFalseConstraint}.
      */
     public Constraint createEqualityConstraint(Slot first, Slot second) {
-        return EqualityConstraint.create(first, second, getCurrentLocation());
+        int header = ConstraintInterner.header(Kind.EQUALITY, 0);
+        Constraint constraint = interner.get(header, id(first), id(second), 0);
+        if (constraint != null) {
+            return constraint;
+        }
+        return interner.put(header, id(first), id(second), 0,
+                EqualityConstraint.create(first, second, getCurrentLocation()));
     }
 
     /**
@@ -106,7 +151,13 @@ public class ConstraintManager {
      * {@link AlwaysTrueConstraint} or {@link AlwaysFalseConstraint}.
      */
     public Constraint createInequalityConstraint(Slot first, Slot second) {
-        return InequalityConstraint.create(first, second, getCurrentLocation());
+        int header = ConstraintInterner.header(Kind.INEQUALITY, 0);
+        Constraint constraint = interner.get(header, id(first), id(second), 0);
+        if (constraint != null) {
+            return constraint;
+        }
+        return interner.put(header, id(first), id(second), 0,
+                InequalityConstraint.create(first, second, getCurrentLocation()));
     }
 
     /**
@@ -114,7 +165,13 @@ public class ConstraintManager {
      * {@link AlwaysTrueConstraint} or {@link AlwaysFalseConstraint}.
      */
     public Constraint createComparableConstraint(Slot first, Slot second) {
-        return ComparableConstraint.create(first, second, getCurrentLocation(), realQualHierarchy);
+        int header = ConstraintInterner.header(Kind.COMPARABLE, 0);
+        Constraint constraint = interner.get(header, id(first), id(second), 0);
+        if (constraint != null) {
+            return constraint;
+        }
+        return interner.put(header, id(first), id(second), 0,
+                ComparableConstraint.create(first, second, getCurrentLocation(), realQualHierarchy));
     }
 
     /**
@@ -122,14 +179,26 @@ public class ConstraintManager {
      */
     public Constraint createComparisonConstraint(ComparisonOperationKind operation, Slot first,
     		Slot second, ComparisonVariableSlot result) {
-        return ComparisonConstraint.create(operation, first, second, result, getCurrentLocation(), realQualHierarchy);
+        int header = ConstraintInterner.header(Kind.COMPARISON, operation == null ? -1 : operation.ordinal());
+        Constraint constraint = interner.get(header, id(first), id(second), id(result));
+        if (constraint != null) {
+            return constraint;
+        }
+        return interner.put(header, id(first), id(second), id(result),
+                ComparisonConstraint.create(operation, first, second, result, getCurrentLocation(), realQualHierarchy));
     }
 
     /**
      * Creates a {@link CombineConstraint} between the three slots.
      */
     public CombineConstraint createCombineConstraint(Slot target, Slot decl, CombVariableSlot result) {
-        return CombineConstraint.create(target, decl, result, getCurrentLocation());
+        int header = ConstraintInterner.header(Kind.COMBINE, 0);
+        Constraint constraint = interner.get(header, id(target), id(decl), id(result));
+        if (constraint != null) {
+            return (CombineConstraint) constraint;
+        }
+        return (CombineConstraint) interner.put(header, id(target), id(decl), id(result),
+                CombineConstraint.create(target, decl, result, getCurrentLocation()));
     }
 
     /**
@@ -137,7 +206,13 @@ public class ConstraintManager {
      */
     public PreferenceConstraint createPreferenceConstraint(VariableSlot variable, ConstantSlot goal,
             int weight) {
-        return PreferenceConstraint.create(variable, goal, weight, getCurrentLocation());
+        int header = ConstraintInterner.header(Kind.PREFERENCE, 0);
+        Constraint constraint = interner.get(header, id(variable), id(goal), weight);
+        if (constraint != null) {
+            return (PreferenceConstraint) constraint;
+        }
+        return (PreferenceConstraint) interner.put(header, id(variable), id(goal), weight,
+                PreferenceConstraint.create(variable, goal, weight, getCurrentLocation()));
     }
 
     /**
@@ -158,12 +233,29 @@ public class ConstraintManager {
      */
     public ArithmeticConstraint createArithmeticConstraint(ArithmeticOperationKind operation,
             Slot leftOperand, Slot rightOperand, ArithmeticVariableSlot result) {
-        return ArithmeticConstraint.create(operation, leftOperand, rightOperand, result,
-                getCurrentLocation());
+        int header = ConstraintInterner.header(Kind.ARITHMETIC, operation == null ? -1 : operation.ordinal());
+        Constraint constraint = interner.get(header, id(leftOperand), id(rightOperand), id(result));
+        if (constraint != null) {
+            return (ArithmeticConstraint) constraint;
+        }
+        return (ArithmeticConstraint) interner.put(header, id(leftOperand), id(rightOperand),
+                id(result), ArithmeticConstraint.create(operation, leftOperand, rightOperand, result,
+                        getCurrentLocation()));
+    }
+
+    /**
+     * The id of the given slot for looking up an interned constraint. The create methods reject
+     * null slots, which therefore get an id that is never interned.
+     */
+    private static int id(Slot slot) {
+        return slot == null ? -1 : slot.getId();
     }
 
     // TODO: give location directly in Constraint.create() methods
     private AnnotationLocation getCurrentLocation() {
+        if (inferenceTypeFactory == null) {
+            return AnnotationLocation.MISSING_LOCATION;
+        }
         TreePath path = inferenceTypeFactory.getVisitorTreePath();
         if (path != null) {
             return VariableAnnotator.treeToLocation(inferenceTypeFactory, path.getLeaf());
@@ -172,6 +264,13 @@ public class ConstraintManager {
         }
     }
 
+    private void reportUnsatisfiable(String messageKey, Slot first, Slot second) {
+        if (checker == null) {
+            throw new BugInCF("Unsatisfiable constraint (%s) between %s and %s", messageKey, first, second);
+        }
+        checker.reportError(inferenceTypeFactory.getVisitorTreePath().getLeaf(), messageKey, first, second);
+    }
+
     // All addXXXConstraint methods create a (possibly normalized) constraint for the given slots.
     // They also issue errors for unsatisfiable constraints, unless the method name has "NoErrorMsg"
     // in it.
@@ -188,11 +287,7 @@ public class ConstraintManager {
             // relevant error message (eg assignment.type.incompatible) at the precise code AST node
             // this subtype constraint originates from.
             // Same for constraints below.
-            checker.reportError(
-                    inferenceTypeFactory.getVisitorTreePath().getLeaf(),
-                    "subtype.constraint.unsatisfiable",
-                    subtype,
-                    supertype);
+            reportUnsatisfiable("subtype.constraint.unsatisfiable", subtype, supertype);
         } else {
             add(constraint);
         }
@@ -222,11 +317,7 @@ public class ConstraintManager {
     public void addEqualityConstraint(Slot first, Slot second) {
         Constraint constraint = createEqualityConstraint(first, second);
         if (constraint instanceof AlwaysFalseConstraint) {
-            checker.reportError(
-                    inferenceTypeFactory.getVisitorTreePath().getLeaf(),
-                    "equality.constraint.unsatisfiable",
-                    first,
-                    second);
+            reportUnsatisfiable("equality.constraint.unsatisfiable", first, second);
         } else {
             add(constraint);
         }
@@ -240,11 +331,7 @@ public class ConstraintManager {
     public void addInequalityConstraint(Slot first, Slot second) {
         Constraint constraint = createInequalityConstraint(first, second);
         if (constraint instanceof AlwaysFalseConstraint) {
-            checker.reportError(
-                    inferenceTypeFactory.getVisitorTreePath().getLeaf(),
-                    "inequality.constraint.unsatisfiable",
-                    first,
-                    second);
+            reportUnsatisfiable("inequality.constraint.unsatisfiable", first, second);
         } else {
             add(constraint);
         }
@@ -258,11 +345,7 @@ public class ConstraintManager {
     public void addComparableConstraint(Slot first, Slot second) {
         Constraint constraint = createComparableConstraint(first, second);
         if (constraint instanceof AlwaysFalseConstraint) {
-            checker.reportError(
-                    inferenceTypeFactory.getVisitorTreePath().getLeaf(),
-                    "comparable.constraint.unsatisfiable",
-                    first,
-                    second);
+            reportUnsatisfiable("comparable.constraint.unsatisfiable", first, second);
         } else {
             add(constraint);
         }
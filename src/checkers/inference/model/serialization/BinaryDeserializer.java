@@ -0,0 +1,329 @@
+package checkers.inference.model.serialization;
+
+import static checkers.inference.model.serialization.BinaryFormat.*;
+import static checkers.inference.util.VarInts.*;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.type.TypeKind;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.javacutil.AnnotationBuilder;
+import org.checkerframework.javacutil.BugInCF;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ArithmeticConstraint.ArithmeticOperationKind;
+import checkers.inference.model.ArithmeticVariableSlot;
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.ComparisonConstraint.ComparisonOperationKind;
+import checkers.inference.model.ComparisonVariableSlot;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.LubVariableSlot;
+import checkers.inference.model.RefinementVariableSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.VariableSlot;
+
+/**
+ * Reads slots and constraints written by {@link BinarySerializer}.
+ *
+ * The string pool, qualifiers and slot table are read when the deserializer is created. Constraints
+ * are then read one at a time with {@link #readConstraint()}, or all at once with
+ * {@link #readConstraints()}. Constraints are created through the given ConstraintManager, and
+ * slots are created with a missing location and no underlying type. The solution, if any, is
+ * available once all constraints have been read.
+ */
+public class BinaryDeserializer implements Closeable {
+
+    private static final ArithmeticOperationKind[] ARITHMETIC_OPERATIONS = ArithmeticOperationKind.values();
+
+    private static final ComparisonOperationKind[] COMPARISON_OPERATIONS = ComparisonOperationKind.values();
+
+    private final DataInputStream in;
+
+    private final ProcessingEnvironment processingEnvironment;
+
+    private final ConstraintManager constraintManager;
+
+    private final String[] strings;
+
+    private final AnnotationMirror[] qualifiers;
+
+    private final Map<Integer, Slot> slotsById = new HashMap<>();
+
+    private final List<Slot> slots;
+
+    private final int version;
+
+    private boolean finished = false;
+
+    private final Map<Integer, AnnotationMirror> solutions = new LinkedHashMap<>();
+
+    private final Set<Integer> enabledVariables = new LinkedHashSet<>();
+
+    public BinaryDeserializer(InputStream inputStream, ProcessingEnvironment processingEnvironment,
+            ConstraintManager constraintManager) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(inputStream));
+        this.processingEnvironment = processingEnvironment;
+        this.constraintManager = constraintManager;
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a binary constraint file");
+        }
+        version = readVarInt(in);
+        if (version < MIN_VERSION || version > VERSION) {
+            throw new IOException("Unsupported binary constraint file version " + version
+                    + ", expected " + MIN_VERSION + " to " + VERSION);
+        }
+
+        strings = new String[readVarInt(in)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[readVarInt(in)];
+            in.readFully(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        qualifiers = new AnnotationMirror[readVarInt(in)];
+        for (int i = 0; i < qualifiers.length; i++) {
+            qualifiers[i] = readQualifier();
+        }
+
+        int slotCount = readVarInt(in);
+        List<Slot> slots = new ArrayList<>(slotCount);
+        int previousId = 0;
+        for (int i = 0; i < slotCount; i++) {
+            Slot slot = readSlot(previousId);
+            slots.add(slot);
+            slotsById.put(slot.getId(), slot);
+            previousId = slot.getId();
+        }
+        this.slots = Collections.unmodifiableList(slots);
+    }
+
+    /**
+     * @return all slots of the slot table, in increasing id order
+     */
+    public List<Slot> getSlots() {
+        return slots;
+    }
+
+    /**
+     * Read the next constraint of the constraint stream.
+     *
+     * @return the next constraint, or null at the end of the stream
+     */
+    public @Nullable Constraint readConstraint() throws IOException {
+        if (finished) {
+            return null;
+        }
+        int opcode = in.readUnsignedByte();
+        if (opcode == OP_END) {
+            finished = true;
+            if (version >= SOLUTION_VERSION) {
+                readSolution();
+            }
+            return null;
+        }
+        return readConstraint(opcode);
+    }
+
+    /**
+     * Read all remaining constraints of the constraint stream.
+     */
+    public List<Constraint> readConstraints() throws IOException {
+        List<Constraint> constraints = new ArrayList<>();
+        Constraint constraint;
+        while ((constraint = readConstraint()) != null) {
+            constraints.add(constraint);
+        }
+        return constraints;
+    }
+
+    /**
+     * @return the solved qualifier of each variable id, empty if the file has no solution
+     */
+    public Map<Integer, AnnotationMirror> getSolutions() {
+        checkFinished();
+        return Collections.unmodifiableMap(solutions);
+    }
+
+    /**
+     * @return the ids of the potential variables of existential constraints that exist in the
+     * solution
+     */
+    public Set<Integer> getEnabledVariables() {
+        checkFinished();
+        return Collections.unmodifiableSet(enabledVariables);
+    }
+
+    private void checkFinished() {
+        if (!finished) {
+            throw new BugInCF("The solution can only be read after all constraints have been read");
+        }
+    }
+
+    private void readSolution() throws IOException {
+        int solutionCount = readVarInt(in);
+        int previousId = 0;
+        for (int i = 0; i < solutionCount; i++) {
+            int id = previousId + readSignedVarInt(in);
+            solutions.put(id, qualifiers[readVarInt(in)]);
+            previousId = id;
+        }
+
+        int enabledCount = readVarInt(in);
+        previousId = 0;
+        for (int i = 0; i < enabledCount; i++) {
+            int id = previousId + readSignedVarInt(in);
+            enabledVariables.add(id);
+            previousId = id;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private AnnotationMirror readQualifier() throws IOException {
+        AnnotationBuilder builder = new AnnotationBuilder(processingEnvironment, strings[readVarInt(in)]);
+        int elementCount = readVarInt(in);
+        for (int i = 0; i < elementCount; i++) {
+            String elementName = strings[readVarInt(in)];
+            int header = readVarInt(in);
+            String[] values = new String[header >>> 1];
+            for (int j = 0; j < values.length; j++) {
+                values[j] = strings[readVarInt(in)];
+            }
+            if ((header & 1) != 0) {
+                builder.setValue(elementName, Arrays.asList(values));
+            } else {
+                builder.setValue(elementName, values[0]);
+            }
+        }
+        return builder.build();
+    }
+
+    private Slot readSlot(int previousId) throws IOException {
+        int tag = in.readUnsignedByte();
+        int id = previousId + readSignedVarInt(in);
+        AnnotationLocation location = AnnotationLocation.MISSING_LOCATION;
+
+        switch (tag) {
+            case SLOT_SOURCE_VARIABLE: {
+                boolean insertable = in.readBoolean();
+                int defaultAnnotation = readVarInt(in);
+                return new SourceVariableSlot(id, location, null,
+                        defaultAnnotation == NO_QUALIFIER ? null : qualifiers[defaultAnnotation - 1], insertable);
+            }
+            case SLOT_CONSTANT:
+                return new ConstantSlot(id, qualifiers[readVarInt(in)]);
+            case SLOT_REFINEMENT_VARIABLE:
+                return new RefinementVariableSlot(id, location, readSlotReference());
+            case SLOT_EXISTENTIAL_VARIABLE:
+                return new ExistentialVariableSlot(id, readSlotReference(), readSlotReference());
+            case SLOT_COMB_VARIABLE:
+                return new CombVariableSlot(id, location, readSlotReference(), readSlotReference());
+            case SLOT_LUB_VARIABLE:
+                return new LubVariableSlot(id, location, readSlotReference(), readSlotReference());
+            case SLOT_ARITHMETIC_VARIABLE:
+                return new ArithmeticVariableSlot(id, location, TypeKind.valueOf(strings[readVarInt(in)]));
+            case SLOT_COMPARISON_VARIABLE:
+                return new ComparisonVariableSlot(id, location, readSlotReference());
+            default:
+                throw new IOException("Unknown slot tag " + tag + " for slot " + id);
+        }
+    }
+
+    private @Nullable Slot readSlotReference() throws IOException {
+        int id = readVarInt(in);
+        return id == 0 ? null : slot(id);
+    }
+
+    private Slot slot(int id) {
+        Slot slot = slotsById.get(id);
+        if (slot == null) {
+            throw new BugInCF("Constraint file references slot " + id + " before or without defining it");
+        }
+        return slot;
+    }
+
+    private Slot readSlot() throws IOException {
+        return slot(readVarInt(in));
+    }
+
+    private List<Constraint> readNested() throws IOException {
+        int count = readVarInt(in);
+        List<Constraint> constraints = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            constraints.add(readConstraint(in.readUnsignedByte()));
+        }
+        return constraints;
+    }
+
+    private Constraint readConstraint(int opcode) throws IOException {
+        switch (opcode) {
+            case OP_SUBTYPE:
+                return constraintManager.createSubtypeConstraint(readSlot(), readSlot());
+            case OP_EQUALITY:
+                return constraintManager.createEqualityConstraint(readSlot(), readSlot());
+            case OP_INEQUALITY:
+                return constraintManager.createInequalityConstraint(readSlot(), readSlot());
+            case OP_COMPARABLE:
+                return constraintManager.createComparableConstraint(readSlot(), readSlot());
+            case OP_COMPARISON: {
+                Slot left = readSlot();
+                Slot right = readSlot();
+                ComparisonVariableSlot result = (ComparisonVariableSlot) readSlot();
+                return constraintManager.createComparisonConstraint(
+                        COMPARISON_OPERATIONS[readVarInt(in)], left, right, result);
+            }
+            case OP_COMBINE:
+                return constraintManager.createCombineConstraint(readSlot(), readSlot(), (CombVariableSlot) readSlot());
+            case OP_PREFERENCE: {
+                VariableSlot variable = (VariableSlot) readSlot();
+                ConstantSlot goal = (ConstantSlot) readSlot();
+                return constraintManager.createPreferenceConstraint(variable, goal, readSignedVarInt(in));
+            }
+            case OP_EXISTENTIAL: {
+                Slot potential = readSlot();
+                List<Constraint> potentialConstraints = readNested();
+                List<Constraint> alternateConstraints = readNested();
+                return constraintManager.createExistentialConstraint(potential, potentialConstraints, alternateConstraints);
+            }
+            case OP_IMPLICATION: {
+                List<Constraint> assumptions = readNested();
+                Constraint conclusion = readConstraint(in.readUnsignedByte());
+                return constraintManager.createImplicationConstraint(assumptions, conclusion);
+            }
+            case OP_ARITHMETIC: {
+                Slot left = readSlot();
+                Slot right = readSlot();
+                ArithmeticVariableSlot result = (ArithmeticVariableSlot) readSlot();
+                return constraintManager.createArithmeticConstraint(
+                        ARITHMETIC_OPERATIONS[readVarInt(in)], left, right, result);
+            }
+            default:
+                throw new IOException("Unknown constraint opcode " + opcode);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package checkers.inference.model.serialization;
+
+/**
+ * Constants of the binary constraint format written by {@link BinarySerializer}
+ * and read by {@link BinaryDeserializer}. A file is laid out as:
+ *
+ * <pre>
+ * magic "CFIC", varint version
+ * string pool:   varint count, then each string as varint byte length + UTF-8 bytes
+ * qualifiers:    varint count, then each qualifier as
+ *                  varint name, varint element count, then per element
+ *                  varint element name, varint (value count &lt;&lt; 1 | is array), varint values
+ * slot table:    varint count, then each slot as tag byte, varint id delta, tag specific fields
+ * constraints:   opcode byte + operands, repeated, terminated by {@link #OP_END}
+ * solution:      varint count, then each solved variable as varint id delta, varint qualifier
+ *                varint count, then the varint id deltas of the enabled existential variables
+ * </pre>
+ *
+ * Strings are referenced by their index in the string pool, qualifiers by their index in the
+ * qualifier table, and slots by their id. Slot ids are written as the difference to the previous
+ * slot's id, so the usual densely numbered slot tables cost about one byte per id. Nested
+ * constraints (of existential and implication constraints) are written inline after a varint count.
+ *
+ * Varints are read and written by {@link checkers.inference.util.VarInts}.
+ *
+ * Qualifiers may only have String or String[] element values, which covers all type systems here.
+ *
+ * Version 1 files end after the constraints; readers accept them as files without a solution.
+ */
+final class BinaryFormat {
+
+    static final int MAGIC = 0x43464943; // "CFIC"
+
+    static final int VERSION = 2;
+
+    /** Oldest version that can still be read. */
+    static final int MIN_VERSION = 1;
+
+    /** First version with a solution section. */
+    static final int SOLUTION_VERSION = 2;
+
+    // Slot tags.
+    static final int SLOT_SOURCE_VARIABLE = 1;
+    static final int SLOT_CONSTANT = 2;
+    static final int SLOT_REFINEMENT_VARIABLE = 3;
+    static final int SLOT_EXISTENTIAL_VARIABLE = 4;
+    static final int SLOT_COMB_VARIABLE = 5;
+    static final int SLOT_LUB_VARIABLE = 6;
+    static final int SLOT_ARITHMETIC_VARIABLE = 7;
+    static final int SLOT_COMPARISON_VARIABLE = 8;
+
+    // Constraint opcodes.
+    static final int OP_END = 0;
+    static final int OP_SUBTYPE = 1;
+    static final int OP_EQUALITY = 2;
+    static final int OP_INEQUALITY = 3;
+    static final int OP_COMPARABLE = 4;
+    static final int OP_COMPARISON = 5;
+    static final int OP_COMBINE = 6;
+    static final int OP_PREFERENCE = 7;
+    static final int OP_EXISTENTIAL = 8;
+    static final int OP_IMPLICATION = 9;
+    static final int OP_ARITHMETIC = 10;
+
+    /** Value of a qualifier reference that stands for no qualifier, other values are index + 1. */
+    static final int NO_QUALIFIER = 0;
+
+    private BinaryFormat() {
+    }
+}
@@ -0,0 +1,444 @@
+package checkers.inference.model.serialization;
+
+import static checkers.inference.model.serialization.BinaryFormat.*;
+import static checkers.inference.util.VarInts.*;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.ExecutableElement;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.BugInCF;
+
+import checkers.inference.model.ArithmeticConstraint;
+import checkers.inference.model.ArithmeticVariableSlot;
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.CombineConstraint;
+import checkers.inference.model.ComparableConstraint;
+import checkers.inference.model.ComparisonConstraint;
+import checkers.inference.model.ComparisonVariableSlot;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.ExistentialConstraint;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.ImplicationConstraint;
+import checkers.inference.model.InequalityConstraint;
+import checkers.inference.model.LubVariableSlot;
+import checkers.inference.model.PreferenceConstraint;
+import checkers.inference.model.RefinementVariableSlot;
+import checkers.inference.model.Serializer;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.SubtypeConstraint;
+
+/**
+ * Writes slots and constraints in the compact binary format described in {@link BinaryFormat}.
+ *
+ * The slot table is written when the serializer is created; constraints are then streamed one at a
+ * time through {@link #write(Constraint)}, so a constraint set never has to be held in memory in a
+ * serialized form. {@link #close()} terminates the constraint stream and writes the solution, if
+ * the serializer was created with one.
+ *
+ * Slot locations and underlying types are not written: a deserialized constraint set is meant to
+ * be solved again, not to be inserted back into source code.
+ */
+public class BinarySerializer implements Serializer<Integer, Void>, Closeable {
+
+    private final DataOutputStream out;
+
+    private final Map<String, Integer> strings = new LinkedHashMap<>();
+
+    private final Map<AnnotationMirror, Integer> qualifiers = AnnotationUtils.createAnnotationMap();
+
+    private final List<AnnotationMirror> qualifierTable = new ArrayList<>();
+
+    private final Map<Integer, AnnotationMirror> solutions;
+
+    private final Collection<Integer> enabledVariables;
+
+    public BinarySerializer(OutputStream outputStream, Collection<Slot> slots) throws IOException {
+        this(outputStream, slots, Collections.<Integer, AnnotationMirror>emptyMap(), Collections.<Integer>emptySet());
+    }
+
+    /**
+     * Create a serializer that also writes a solution after the constraints.
+     *
+     * @param solutions the solved qualifier of each variable id
+     * @param enabledVariables the ids of the potential variables of existential constraints that
+     *                         exist in the solution
+     */
+    public BinarySerializer(OutputStream outputStream, Collection<Slot> slots,
+            Map<Integer, AnnotationMirror> solutions, Collection<Integer> enabledVariables) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        this.solutions = solutions;
+        this.enabledVariables = enabledVariables;
+
+        List<Slot> sortedSlots = new ArrayList<>(slots);
+        Collections.sort(sortedSlots, Comparator.comparingInt(Slot::getId));
+        for (Slot slot : sortedSlots) {
+            collectStrings(slot);
+        }
+        for (AnnotationMirror solution : solutions.values()) {
+            collectStrings(solution);
+        }
+        writeHeader(sortedSlots);
+    }
+
+    /**
+     * Write all given constraints.
+     */
+    public void writeAll(Collection<Constraint> constraints) {
+        for (Constraint constraint : constraints) {
+            write(constraint);
+        }
+    }
+
+    /**
+     * Write a single constraint to the constraint stream.
+     */
+    public void write(Constraint constraint) {
+        constraint.serialize(this);
+    }
+
+    /**
+     * Terminate the constraint stream and write the solution section.
+     */
+    @Override
+    public void close() throws IOException {
+        out.writeByte(OP_END);
+
+        List<Integer> solvedIds = new ArrayList<>(solutions.keySet());
+        Collections.sort(solvedIds);
+        writeVarInt(out, solvedIds.size());
+        int previousId = 0;
+        for (int id : solvedIds) {
+            writeSignedVarInt(out, id - previousId);
+            writeVarInt(out, qualifiers.get(solutions.get(id)));
+            previousId = id;
+        }
+
+        List<Integer> enabledIds = new ArrayList<>(enabledVariables);
+        Collections.sort(enabledIds);
+        writeVarInt(out, enabledIds.size());
+        previousId = 0;
+        for (int id : enabledIds) {
+            writeSignedVarInt(out, id - previousId);
+            previousId = id;
+        }
+
+        out.close();
+    }
+
+    private void collectStrings(Slot slot) {
+        if (slot instanceof ConstantSlot) {
+            collectStrings(((ConstantSlot) slot).getValue());
+        } else if (slot instanceof SourceVariableSlot) {
+            AnnotationMirror defaultAnnotation = ((SourceVariableSlot) slot).getDefaultAnnotation();
+            if (defaultAnnotation != null) {
+                collectStrings(defaultAnnotation);
+            }
+        } else if (slot instanceof ArithmeticVariableSlot) {
+            stringIndex(((ArithmeticVariableSlot) slot).getValueTypeKind().name());
+        }
+    }
+
+    private void collectStrings(AnnotationMirror qualifier) {
+        if (qualifiers.containsKey(qualifier)) {
+            return;
+        }
+        qualifiers.put(qualifier, qualifierTable.size());
+        qualifierTable.add(qualifier);
+
+        stringIndex(AnnotationUtils.annotationName(qualifier));
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> element
+                : qualifier.getElementValues().entrySet()) {
+            stringIndex(element.getKey().getSimpleName().toString());
+            for (String value : elementValues(qualifier, element.getValue())) {
+                stringIndex(value);
+            }
+        }
+    }
+
+    private int stringIndex(String string) {
+        Integer index = strings.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.put(string, index);
+        }
+        return index;
+    }
+
+    private static List<String> elementValues(AnnotationMirror qualifier, AnnotationValue annotationValue) {
+        Object value = annotationValue.getValue();
+        if (value instanceof String) {
+            return Collections.singletonList((String) value);
+        }
+        if (value instanceof List) {
+            List<String> values = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                Object elementValue = ((AnnotationValue) element).getValue();
+                if (!(elementValue instanceof String)) {
+                    throw new BugInCF("Only String and String[] qualifier elements can be serialized: " + qualifier);
+                }
+                values.add((String) elementValue);
+            }
+            return values;
+        }
+        throw new BugInCF("Only String and String[] qualifier elements can be serialized: " + qualifier);
+    }
+
+    private void writeHeader(List<Slot> sortedSlots) throws IOException {
+        out.writeInt(MAGIC);
+        writeVarInt(out, VERSION);
+
+        writeVarInt(out, strings.size());
+        for (String string : strings.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+
+        writeVarInt(out, qualifierTable.size());
+        for (AnnotationMirror qualifier : qualifierTable) {
+            writeVarInt(out, strings.get(AnnotationUtils.annotationName(qualifier)));
+            Map<? extends ExecutableElement, ? extends AnnotationValue> elements = qualifier.getElementValues();
+            writeVarInt(out, elements.size());
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> element : elements.entrySet()) {
+                writeVarInt(out, strings.get(element.getKey().getSimpleName().toString()));
+                List<String> values = elementValues(qualifier, element.getValue());
+                boolean isArray = element.getValue().getValue() instanceof List;
+                writeVarInt(out, values.size() << 1 | (isArray ? 1 : 0));
+                for (String value : values) {
+                    writeVarInt(out, strings.get(value));
+                }
+            }
+        }
+
+        writeVarInt(out, sortedSlots.size());
+        int previousId = 0;
+        for (Slot slot : sortedSlots) {
+            writeSlot(slot, previousId);
+            previousId = slot.getId();
+        }
+    }
+
+    private void writeSlot(Slot slot, int previousId) throws IOException {
+        int tag;
+        if (slot instanceof SourceVariableSlot) {
+            tag = SLOT_SOURCE_VARIABLE;
+        } else if (slot instanceof ConstantSlot) {
+            tag = SLOT_CONSTANT;
+        } else if (slot instanceof RefinementVariableSlot) {
+            tag = SLOT_REFINEMENT_VARIABLE;
+        } else if (slot instanceof ExistentialVariableSlot) {
+            tag = SLOT_EXISTENTIAL_VARIABLE;
+        } else if (slot instanceof CombVariableSlot) {
+            tag = SLOT_COMB_VARIABLE;
+        } else if (slot instanceof LubVariableSlot) {
+            tag = SLOT_LUB_VARIABLE;
+        } else if (slot instanceof ArithmeticVariableSlot) {
+            tag = SLOT_ARITHMETIC_VARIABLE;
+        } else if (slot instanceof ComparisonVariableSlot) {
+            tag = SLOT_COMPARISON_VARIABLE;
+        } else {
+            throw new BugInCF("Unknown slot kind: " + slot);
+        }
+
+        out.writeByte(tag);
+        writeSignedVarInt(out, slot.getId() - previousId);
+
+        switch (tag) {
+            case SLOT_SOURCE_VARIABLE: {
+                SourceVariableSlot sourceSlot = (SourceVariableSlot) slot;
+                out.writeBoolean(sourceSlot.isInsertable());
+                AnnotationMirror defaultAnnotation = sourceSlot.getDefaultAnnotation();
+                writeVarInt(out, defaultAnnotation == null ? NO_QUALIFIER : qualifiers.get(defaultAnnotation) + 1);
+                break;
+            }
+            case SLOT_CONSTANT:
+                writeVarInt(out, qualifiers.get(((ConstantSlot) slot).getValue()));
+                break;
+            case SLOT_REFINEMENT_VARIABLE:
+                writeSlotReference(((RefinementVariableSlot) slot).getRefined());
+                break;
+            case SLOT_EXISTENTIAL_VARIABLE:
+                writeSlotReference(((ExistentialVariableSlot) slot).getPotentialSlot());
+                writeSlotReference(((ExistentialVariableSlot) slot).getAlternativeSlot());
+                break;
+            case SLOT_COMB_VARIABLE:
+                writeSlotReference(((CombVariableSlot) slot).getFirst());
+                writeSlotReference(((CombVariableSlot) slot).getSecond());
+                break;
+            case SLOT_LUB_VARIABLE:
+                writeSlotReference(((LubVariableSlot) slot).getLeft());
+                writeSlotReference(((LubVariableSlot) slot).getRight());
+                break;
+            case SLOT_ARITHMETIC_VARIABLE:
+                writeVarInt(out, strings.get(((ArithmeticVariableSlot) slot).getValueTypeKind().name()));
+                break;
+            case SLOT_COMPARISON_VARIABLE:
+                writeSlotReference(((ComparisonVariableSlot) slot).getRefined());
+                break;
+        }
+    }
+
+    /** Slot ids start at 1, so 0 stands for no slot. */
+    private void writeSlotReference(Slot slot) throws IOException {
+        writeVarInt(out, slot == null ? 0 : slot.getId());
+    }
+
+    private void writeOperands(int opcode, Slot... slots) {
+        try {
+            out.writeByte(opcode);
+            for (Slot slot : slots) {
+                writeVarInt(out, slot.serialize(this));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeNested(Collection<Constraint> constraints) {
+        try {
+            writeVarInt(out, constraints.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writeAll(constraints);
+    }
+
+    @Override
+    public Integer serialize(SourceVariableSlot slot) {
+        return slot.getId();
+    }
+
+    @Override
+    public Integer serialize(ConstantSlot slot) {
+        return slot.getId();
+    }
+
+    @Override
+    public Integer serialize(ExistentialVariableSlot slot) {
+        return slot.getId();
+    }
+
+    @Override
+    public Integer serialize(RefinementVariableSlot slot) {
+        return slot.getId();
+    }
+
+    @Override
+    public Integer serialize(CombVariableSlot slot) {
+        return slot.getId();
+    }
+
+    @Override
+    public Integer serialize(LubVariableSlot slot) {
+        return slot.getId();
+    }
+
+    @Override
+    public Integer serialize(ComparisonVariableSlot slot) {
+        return slot.getId();
+    }
+
+    @Override
+    public Integer serialize(ArithmeticVariableSlot slot) {
+        return slot.getId();
+    }
+
+    @Override
+    public Void serialize(SubtypeConstraint constraint) {
+        writeOperands(OP_SUBTYPE, constraint.getSubtype(), constraint.getSupertype());
+        return null;
+    }
+
+    @Override
+    public Void serialize(EqualityConstraint constraint) {
+        writeOperands(OP_EQUALITY, constraint.getFirst(), constraint.getSecond());
+        return null;
+    }
+
+    @Override
+    public Void serialize(InequalityConstraint constraint) {
+        writeOperands(OP_INEQUALITY, constraint.getFirst(), constraint.getSecond());
+        return null;
+    }
+
+    @Override
+    public Void serialize(ComparableConstraint constraint) {
+        writeOperands(OP_COMPARABLE, constraint.getFirst(), constraint.getSecond());
+        return null;
+    }
+
+    @Override
+    public Void serialize(ComparisonConstraint constraint) {
+        writeOperands(OP_COMPARISON, constraint.getLeft(), constraint.getRight(), constraint.getResult());
+        writeOperationKind(constraint.getOperation().ordinal());
+        return null;
+    }
+
+    @Override
+    public Void serialize(CombineConstraint constraint) {
+        writeOperands(OP_COMBINE, constraint.getTarget(), constraint.getDeclared(), constraint.getResult());
+        return null;
+    }
+
+    @Override
+    public Void serialize(PreferenceConstraint constraint) {
+        writeOperands(OP_PREFERENCE, constraint.getVariable(), constraint.getGoal());
+        try {
+            writeSignedVarInt(out, constraint.getWeight());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return null;
+    }
+
+    @Override
+    public Void serialize(ExistentialConstraint constraint) {
+        writeOperands(OP_EXISTENTIAL, constraint.getPotentialVariable());
+        writeNested(constraint.potentialConstraints());
+        writeNested(constraint.getAlternateConstraints());
+        return null;
+    }
+
+    @Override
+    public Void serialize(ImplicationConstraint constraint) {
+        writeOperands(OP_IMPLICATION);
+        writeNested(constraint.getAssumptions());
+        write(constraint.getConclusion());
+        return null;
+    }
+
+    @Override
+    public Void serialize(ArithmeticConstraint constraint) {
+        writeOperands(OP_ARITHMETIC, constraint.getLeftOperand(), constraint.getRightOperand(), constraint.getResult());
+        writeOperationKind(constraint.getOperation().ordinal());
+        return null;
+    }
+
+    private void writeOperationKind(int ordinal) {
+        try {
+            writeVarInt(out, ordinal);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
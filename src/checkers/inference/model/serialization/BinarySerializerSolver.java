@@ -0,0 +1,47 @@
+package checkers.inference.model.serialization;
+
+import org.checkerframework.framework.type.QualifierHierarchy;
+import org.checkerframework.javacutil.BugInCF;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+import checkers.inference.InferenceResult;
+import checkers.inference.InferenceSolver;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+
+/**
+ * InferenceSolver that dumps the slots and (normalized) constraints to a file in the binary format
+ * of {@link BinarySerializer}, to be replayed later by {@link checkers.inference.replay.ConstraintReplay}
+ * without running the compiler again.
+ */
+public class BinarySerializerSolver implements InferenceSolver {
+
+    private static final String FILE_KEY = "constraint-file";
+    private static final String DEFAULT_FILE = "./constraints.cfic";
+
+    @Override
+    public InferenceResult solve(
+            Map<String, String> configuration,
+            Collection<Slot> slots,
+            Collection<Constraint> constraints,
+            QualifierHierarchy qualHierarchy,
+            ProcessingEnvironment processingEnvironment) {
+
+        String outFile = configuration.containsKey(FILE_KEY) ?
+                configuration.get(FILE_KEY)
+                : DEFAULT_FILE;
+        try (BinarySerializer serializer = new BinarySerializer(new FileOutputStream(outFile), slots)) {
+            serializer.writeAll(constraints);
+        } catch (IOException e) {
+            throw new BugInCF("Could not write constraint file " + outFile, e);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,164 @@
+package checkers.inference.model.serialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.BugInCF;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import checkers.inference.SlotManager;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+
+import static checkers.inference.model.serialization.JsonSerializer.EXISTENTIAL_VARIABLES_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.VARIABLES_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.VARIABLES_VALUE_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.VAR_PREFIX;
+
+/**
+ * Converts constraint files between the JSON format of {@link JsonSerializer} and the binary format
+ * of {@link BinarySerializer}, including the solution (the "variables" and "enabled_vars" sections).
+ *
+ * The kind of each variable, and the slots it refers to, are kept in the "slots" section of the
+ * JSON format; JSON files without that section only have source variables.
+ *
+ * Converting from JSON to binary and back gives the same slots, constraints and solution, up to the
+ * equivalent notations of the JSON format: subtype constraints written as "var:1 &lt;= var:2" come
+ * back as objects, and variable values written as plain strings come back as "type_value" objects.
+ * Only the constraints that {@link JsonDeserializer} can read can be converted from JSON, and only
+ * the constants that the {@link AnnotationMirrorSerializer} knows can be converted to JSON.
+ */
+public class JsonBinaryConverter {
+
+    private final AnnotationMirrorSerializer annotationSerializer;
+
+    public JsonBinaryConverter(AnnotationMirrorSerializer annotationSerializer) {
+        this.annotationSerializer = annotationSerializer;
+    }
+
+    /**
+     * Convert a JSON constraint file to the binary format.
+     *
+     * The constant slots are created by the JsonDeserializer in the slot manager of InferenceMain,
+     * which must therefore be set up (with {@code storeConstants} set, so that constants get the
+     * same ids as in the run the JSON file was written by) and passed in here.
+     */
+    public void jsonToBinary(String json, OutputStream binary, SlotManager slotManager)
+            throws IOException, ParseException {
+        JsonDeserializer deserializer = new JsonDeserializer(annotationSerializer, json);
+        List<Constraint> constraints = deserializer.parseConstraints();
+        Map<Integer, Slot> variables = deserializer.parseSlots();
+
+        Map<Integer, Slot> slots = new TreeMap<>();
+        for (Slot slot : slotManager.getSlots()) {
+            if (slot instanceof ConstantSlot) {
+                slots.put(slot.getId(), slot);
+            }
+        }
+        for (Slot variable : variables.values()) {
+            addVariable(slots, variable.getId(), variable);
+        }
+        for (Constraint constraint : constraints) {
+            for (Slot slot : constraint.getSlots()) {
+                addVariable(slots, slot.getId(), slot);
+            }
+        }
+
+        Map<Integer, AnnotationMirror> solutions = new HashMap<>();
+        JSONObject variablesSection = (JSONObject) deserializer.root.get(VARIABLES_KEY);
+        if (variablesSection != null) {
+            for (Object entryObject : variablesSection.entrySet()) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) entryObject;
+                int id = parseVariable((String) entry.getKey());
+                String value = entry.getValue() instanceof JSONObject
+                        ? (String) ((JSONObject) entry.getValue()).get(VARIABLES_VALUE_KEY)
+                        : (String) entry.getValue();
+                solutions.put(id, annotationSerializer.deserialize(value));
+                addVariable(slots, id, null);
+            }
+        }
+
+        Set<Integer> enabledVariables = new LinkedHashSet<>();
+        JSONArray enabledArray = (JSONArray) deserializer.root.get(EXISTENTIAL_VARIABLES_KEY);
+        if (enabledArray != null) {
+            for (Object variable : enabledArray) {
+                int id = parseVariable((String) variable);
+                enabledVariables.add(id);
+                addVariable(slots, id, null);
+            }
+        }
+
+        try (BinarySerializer serializer = new BinarySerializer(binary, slots.values(), solutions, enabledVariables)) {
+            serializer.writeAll(constraints);
+        }
+    }
+
+    /**
+     * Convert a binary constraint file to the JSON format.
+     */
+    @SuppressWarnings("unchecked")
+    public void binaryToJson(InputStream binary, Writer json, ProcessingEnvironment processingEnvironment,
+            ConstraintManager constraintManager) throws IOException {
+        List<Slot> slots;
+        List<Constraint> constraints;
+        Map<Integer, AnnotationMirror> solutions;
+        Set<Integer> enabledVariables;
+        try (BinaryDeserializer deserializer = new BinaryDeserializer(binary, processingEnvironment, constraintManager)) {
+            slots = deserializer.getSlots();
+            constraints = deserializer.readConstraints();
+            solutions = deserializer.getSolutions();
+            enabledVariables = deserializer.getEnabledVariables();
+        }
+
+        JsonSerializer serializer = new JsonSerializer(slots, constraints, solutions, annotationSerializer, true);
+        JSONObject root = serializer.generateConstraintFile();
+        if (!enabledVariables.isEmpty()) {
+            JSONArray enabledArray = new JSONArray();
+            for (int id : enabledVariables) {
+                enabledArray.add(VAR_PREFIX + id);
+            }
+            root.put(EXISTENTIAL_VARIABLES_KEY, enabledArray);
+        }
+        root.writeJSONString(json);
+        json.flush();
+    }
+
+    /**
+     * Add a variable of the JSON file to the slot table, unless it is already there. The kinds of
+     * variables come from the "slots" section, which is added first; other variables are source
+     * variables.
+     */
+    private static void addVariable(Map<Integer, Slot> slots, int id, Slot slot) {
+        Slot existing = slots.get(id);
+        if (existing == null) {
+            slots.put(id, slot != null && !(slot instanceof ConstantSlot) ? slot
+                    : new SourceVariableSlot(id, AnnotationLocation.MISSING_LOCATION, null, null, true));
+        } else if (existing instanceof ConstantSlot && existing != slot) {
+            throw new BugInCF("Variable id %d of the JSON file is also the id of constant slot %s", id, existing);
+        }
+    }
+
+    private static int parseVariable(String variable) {
+        if (!variable.startsWith(VAR_PREFIX)) {
+            throw new BugInCF("Expected a variable, found: " + variable);
+        }
+        return Integer.parseInt(variable.substring(VAR_PREFIX.length()));
+    }
+}
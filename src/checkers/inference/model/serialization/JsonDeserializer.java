@@ -10,6 +10,7 @@ import java.util.Map;
 import java.util.Set;
 
 import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.type.TypeKind;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -18,20 +19,37 @@ import org.json.simple.parser.ParseException;
 
 import checkers.inference.InferenceMain;
 import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ArithmeticVariableSlot;
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.ComparisonVariableSlot;
+import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.LubVariableSlot;
+import checkers.inference.model.RefinementVariableSlot;
 import checkers.inference.model.Slot;
 import checkers.inference.model.SourceVariableSlot;
+import static checkers.inference.model.serialization.JsonSerializer.ARITHMETIC_SLOT_KIND;
+import static checkers.inference.model.serialization.JsonSerializer.ARITHMETIC_VALUE_TYPE;
+import static checkers.inference.model.serialization.JsonSerializer.COMB_FIRST;
+import static checkers.inference.model.serialization.JsonSerializer.COMB_SECOND;
+import static checkers.inference.model.serialization.JsonSerializer.COMB_SLOT_KIND;
 import static checkers.inference.model.serialization.JsonSerializer.COMPARABLE_CONSTRAINT_KEY;
 import static checkers.inference.model.serialization.JsonSerializer.COMPARISON_CONSTRAINT_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.COMPARISON_REFINED;
+import static checkers.inference.model.serialization.JsonSerializer.COMPARISON_SLOT_KIND;
 import static checkers.inference.model.serialization.JsonSerializer.CONSTRAINTS_KEY;
 import static checkers.inference.model.serialization.JsonSerializer.CONSTRAINT_KEY;
 import static checkers.inference.model.serialization.JsonSerializer.EQUALITY_CONSTRAINT_KEY;
 import static checkers.inference.model.serialization.JsonSerializer.EQUALITY_LHS;
 import static checkers.inference.model.serialization.JsonSerializer.EQUALITY_RHS;
+import static checkers.inference.model.serialization.JsonSerializer.EXISTENTIAL_ALTERNATIVE;
 import static checkers.inference.model.serialization.JsonSerializer.EXISTENTIAL_CONSTRAINT_KEY;
 import static checkers.inference.model.serialization.JsonSerializer.EXISTENTIAL_ELSE;
 import static checkers.inference.model.serialization.JsonSerializer.EXISTENTIAL_ID;
+import static checkers.inference.model.serialization.JsonSerializer.EXISTENTIAL_POTENTIAL;
+import static checkers.inference.model.serialization.JsonSerializer.EXISTENTIAL_SLOT_KIND;
 import static checkers.inference.model.serialization.JsonSerializer.EXISTENTIAL_THEN;
 import static checkers.inference.model.serialization.JsonSerializer.EXISTENTIAL_VARIABLES_KEY;
 import static checkers.inference.model.serialization.JsonSerializer.INEQUALITY_CONSTRAINT_KEY;
@@ -39,6 +57,16 @@ import static checkers.inference.model.serialization.JsonSerializer.INEQUALITY_L
 import static checkers.inference.model.serialization.JsonSerializer.INEQUALITY_RHS;
 import static checkers.inference.model.serialization.JsonSerializer.COMPARABLE_LHS;
 import static checkers.inference.model.serialization.JsonSerializer.COMPARABLE_RHS;
+import static checkers.inference.model.serialization.JsonSerializer.LUB_LEFT;
+import static checkers.inference.model.serialization.JsonSerializer.LUB_RIGHT;
+import static checkers.inference.model.serialization.JsonSerializer.LUB_SLOT_KIND;
+import static checkers.inference.model.serialization.JsonSerializer.REFINEMENT_REFINED;
+import static checkers.inference.model.serialization.JsonSerializer.REFINEMENT_SLOT_KIND;
+import static checkers.inference.model.serialization.JsonSerializer.SLOTS_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.SLOT_KIND;
+import static checkers.inference.model.serialization.JsonSerializer.SOURCE_DEFAULT;
+import static checkers.inference.model.serialization.JsonSerializer.SOURCE_INSERTABLE;
+import static checkers.inference.model.serialization.JsonSerializer.SOURCE_SLOT_KIND;
 import static checkers.inference.model.serialization.JsonSerializer.SUBTYPE_CONSTRAINT_KEY;
 import static checkers.inference.model.serialization.JsonSerializer.SUBTYPE_SUB_KEY;
 import static checkers.inference.model.serialization.JsonSerializer.SUBTYPE_SUPER_KEY;
@@ -205,6 +233,80 @@ public class JsonDeserializer {
         return results;
     }
 
+    /**
+     * Parse the variables of the "slots" section, which records the kind of each variable that is
+     * not a plain source variable. Variables that are only referred to there are source variables.
+     *
+     * @return the variables of the "slots" section and the variables they refer to by id, empty
+     * if there is no such section
+     */
+    public Map<Integer, Slot> parseSlots() {
+        Map<Integer, Slot> slots = new HashMap<>();
+        JSONObject slotsSection = (JSONObject) root.get(SLOTS_KEY);
+        if (slotsSection != null) {
+            for (Object variable : slotsSection.keySet()) {
+                parseSlotReference(slotsSection, (String) variable, slots);
+            }
+        }
+        return slots;
+    }
+
+    private Slot parseSlotReference(JSONObject slotsSection, String reference, Map<Integer, Slot> slots) {
+        if (reference == null) {
+            return null;
+        }
+        JSONObject slotObj = (JSONObject) slotsSection.get(reference);
+        if (slotObj == null) {
+            Slot slot = parseSlot(reference);
+            if (!(slot instanceof ConstantSlot)) {
+                slots.putIfAbsent(slot.getId(), slot);
+                return slots.get(slot.getId());
+            }
+            return slot;
+        }
+
+        int id = Integer.valueOf(reference.split(":")[1]);
+        Slot slot = slots.get(id);
+        if (slot != null) {
+            return slot;
+        }
+
+        AnnotationLocation location = AnnotationLocation.MISSING_LOCATION;
+        String kind = (String) slotObj.get(SLOT_KIND);
+        if (SOURCE_SLOT_KIND.equals(kind)) {
+            Boolean insertable = (Boolean) slotObj.get(SOURCE_INSERTABLE);
+            String defaultAnnotation = (String) slotObj.get(SOURCE_DEFAULT);
+            slot = new SourceVariableSlot(id, location, null,
+                    defaultAnnotation == null ? null : annotationSerializer.deserialize(defaultAnnotation),
+                    insertable == null || insertable);
+        } else if (REFINEMENT_SLOT_KIND.equals(kind)) {
+            slot = new RefinementVariableSlot(id, location,
+                    parseSlotReference(slotsSection, (String) slotObj.get(REFINEMENT_REFINED), slots));
+        } else if (EXISTENTIAL_SLOT_KIND.equals(kind)) {
+            slot = new ExistentialVariableSlot(id,
+                    parseSlotReference(slotsSection, (String) slotObj.get(EXISTENTIAL_POTENTIAL), slots),
+                    parseSlotReference(slotsSection, (String) slotObj.get(EXISTENTIAL_ALTERNATIVE), slots));
+        } else if (COMB_SLOT_KIND.equals(kind)) {
+            slot = new CombVariableSlot(id, location,
+                    parseSlotReference(slotsSection, (String) slotObj.get(COMB_FIRST), slots),
+                    parseSlotReference(slotsSection, (String) slotObj.get(COMB_SECOND), slots));
+        } else if (LUB_SLOT_KIND.equals(kind)) {
+            slot = new LubVariableSlot(id, location,
+                    parseSlotReference(slotsSection, (String) slotObj.get(LUB_LEFT), slots),
+                    parseSlotReference(slotsSection, (String) slotObj.get(LUB_RIGHT), slots));
+        } else if (ARITHMETIC_SLOT_KIND.equals(kind)) {
+            slot = new ArithmeticVariableSlot(id, location,
+                    TypeKind.valueOf((String) slotObj.get(ARITHMETIC_VALUE_TYPE)));
+        } else if (COMPARISON_SLOT_KIND.equals(kind)) {
+            slot = new ComparisonVariableSlot(id, location,
+                    parseSlotReference(slotsSection, (String) slotObj.get(COMPARISON_REFINED), slots));
+        } else {
+            throw new IllegalArgumentException("Parse error: unknown slot kind: " + slotObj);
+        }
+        slots.put(id, slot);
+        return slot;
+    }
+
     private Slot parseSlot(String slot) {
         if (slot.startsWith(VAR_PREFIX)) {
             int id = Integer.valueOf(slot.split(":")[1]);
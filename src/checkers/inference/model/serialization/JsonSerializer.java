@@ -61,6 +61,18 @@ import checkers.inference.model.SubtypeConstraint;
     }
   },
 
+  // The kind of each variable and the slots it refers to
+  // Variables not listed here are source variables
+  "slots": {
+    "var:1" : { "kind": "source", "insertable": false, "default": "type:0" },
+    "var:3" : { "kind": "comb", "first": "var:1", "second": "type:1" },
+    "var:4" : { "kind": "lub", "left": "var:1", "right": "var:3" },
+    "var:5" : { "kind": "refinement", "refined": "var:1" },
+    "var:6" : { "kind": "existential", "potential": "var:1", "alternative": "var:5" },
+    "var:7" : { "kind": "arithmetic", "value_type": "INT" },
+    "var:8" : { "kind": "comparison", "refined": "var:7" }
+  },
+
   "constraints": [
     // Format 1
     "var:10 <= type:0",
@@ -144,6 +156,27 @@ public class JsonSerializer implements Serializer<String, JSONObject> {
     protected static final String VARIABLES_KEY = "variables";
     protected static final String VARIABLES_VALUE_KEY = "type_value";
 
+    protected static final String SLOTS_KEY = "slots";
+    protected static final String SLOT_KIND = "kind";
+    protected static final String SOURCE_SLOT_KIND = "source";
+    protected static final String SOURCE_INSERTABLE = "insertable";
+    protected static final String SOURCE_DEFAULT = "default";
+    protected static final String REFINEMENT_SLOT_KIND = "refinement";
+    protected static final String REFINEMENT_REFINED = "refined";
+    protected static final String EXISTENTIAL_SLOT_KIND = "existential";
+    protected static final String EXISTENTIAL_POTENTIAL = "potential";
+    protected static final String EXISTENTIAL_ALTERNATIVE = "alternative";
+    protected static final String COMB_SLOT_KIND = "comb";
+    protected static final String COMB_FIRST = "first";
+    protected static final String COMB_SECOND = "second";
+    protected static final String LUB_SLOT_KIND = "lub";
+    protected static final String LUB_LEFT = "left";
+    protected static final String LUB_RIGHT = "right";
+    protected static final String ARITHMETIC_SLOT_KIND = "arithmetic";
+    protected static final String ARITHMETIC_VALUE_TYPE = "value_type";
+    protected static final String COMPARISON_SLOT_KIND = "comparison";
+    protected static final String COMPARISON_REFINED = "refined";
+
     protected static final String EXISTENTIAL_VARIABLES_KEY = "enabled_vars";
     protected static final String EXISTENTIAL_CONSTRAINT_KEY = "enabled_check";
     protected static final String EXISTENTIAL_ID = "id";
@@ -162,22 +195,37 @@ public class JsonSerializer implements Serializer<String, JSONObject> {
 
     protected static final String VAR_PREFIX = "var:";
 
-    @SuppressWarnings("unused")
     private final Collection<Slot> slots;
     private final Collection<Constraint> constraints;
     private final Map<Integer, AnnotationMirror> solutions;
 
+    /** Whether to write the slots section, see {@link #generateSlotsSection()}. */
+    private final boolean writeSlots;
+
     private AnnotationMirrorSerializer annotationSerializer;
 
     public JsonSerializer(Collection<Slot> slots,
                           Collection<Constraint> constraints,
                           Map<Integer, AnnotationMirror> solutions,
                           AnnotationMirrorSerializer annotationSerializer) {
+        this(slots, constraints, solutions, annotationSerializer, false);
+    }
+
+    /**
+     * @param writeSlots whether to write the kinds of the variables in a slots section, which
+     * only the conversion to the binary format needs
+     */
+    public JsonSerializer(Collection<Slot> slots,
+                          Collection<Constraint> constraints,
+                          Map<Integer, AnnotationMirror> solutions,
+                          AnnotationMirrorSerializer annotationSerializer,
+                          boolean writeSlots) {
 
         this.slots = slots;
         this.constraints = constraints;
         this.solutions = solutions;
         this.annotationSerializer = annotationSerializer;
+        this.writeSlots = writeSlots;
     }
 
     @SuppressWarnings("unchecked")
@@ -189,6 +237,13 @@ public class JsonSerializer implements Serializer<String, JSONObject> {
             result.put(VARIABLES_KEY, generateVariablesSection());
         }
 
+        if (writeSlots && slots != null) {
+            JSONObject slotsSection = generateSlotsSection();
+            if (!slotsSection.isEmpty()) {
+                result.put(SLOTS_KEY, slotsSection);
+            }
+        }
+
         result.put(CONSTRAINTS_KEY, constraintsToJsonArray(constraints));
         return result;
     }
@@ -205,6 +260,68 @@ public class JsonSerializer implements Serializer<String, JSONObject> {
         return variables;
     }
 
+    /**
+     * Describe the variables that are not plain source variables, so that their kind survives a
+     * round trip through the JSON format. Source variables are only listed if they are not
+     * insertable or have a default annotation.
+     */
+    @SuppressWarnings("unchecked")
+    protected JSONObject generateSlotsSection() {
+        JSONObject slotsSection = new JSONObject();
+        for (Slot slot : slots) {
+            if (slot instanceof ConstantSlot) {
+                // Constants are written by value wherever they are used.
+                continue;
+            }
+            JSONObject slotObj = new JSONObject();
+            if (slot instanceof SourceVariableSlot) {
+                SourceVariableSlot sourceSlot = (SourceVariableSlot) slot;
+                if (sourceSlot.isInsertable() && sourceSlot.getDefaultAnnotation() == null) {
+                    continue;
+                }
+                slotObj.put(SLOT_KIND, SOURCE_SLOT_KIND);
+                slotObj.put(SOURCE_INSERTABLE, sourceSlot.isInsertable());
+                if (sourceSlot.getDefaultAnnotation() != null) {
+                    slotObj.put(SOURCE_DEFAULT, getConstantString(sourceSlot.getDefaultAnnotation()));
+                }
+            } else if (slot instanceof RefinementVariableSlot) {
+                slotObj.put(SLOT_KIND, REFINEMENT_SLOT_KIND);
+                slotObj.put(REFINEMENT_REFINED, slotReference(((RefinementVariableSlot) slot).getRefined()));
+            } else if (slot instanceof ExistentialVariableSlot) {
+                ExistentialVariableSlot existentialSlot = (ExistentialVariableSlot) slot;
+                slotObj.put(SLOT_KIND, EXISTENTIAL_SLOT_KIND);
+                slotObj.put(EXISTENTIAL_POTENTIAL, slotReference(existentialSlot.getPotentialSlot()));
+                slotObj.put(EXISTENTIAL_ALTERNATIVE, slotReference(existentialSlot.getAlternativeSlot()));
+            } else if (slot instanceof CombVariableSlot) {
+                slotObj.put(SLOT_KIND, COMB_SLOT_KIND);
+                slotObj.put(COMB_FIRST, slotReference(((CombVariableSlot) slot).getFirst()));
+                slotObj.put(COMB_SECOND, slotReference(((CombVariableSlot) slot).getSecond()));
+            } else if (slot instanceof LubVariableSlot) {
+                slotObj.put(SLOT_KIND, LUB_SLOT_KIND);
+                slotObj.put(LUB_LEFT, slotReference(((LubVariableSlot) slot).getLeft()));
+                slotObj.put(LUB_RIGHT, slotReference(((LubVariableSlot) slot).getRight()));
+            } else if (slot instanceof ArithmeticVariableSlot) {
+                slotObj.put(SLOT_KIND, ARITHMETIC_SLOT_KIND);
+                slotObj.put(ARITHMETIC_VALUE_TYPE, ((ArithmeticVariableSlot) slot).getValueTypeKind().name());
+            } else if (slot instanceof ComparisonVariableSlot) {
+                slotObj.put(SLOT_KIND, COMPARISON_SLOT_KIND);
+                slotObj.put(COMPARISON_REFINED, slotReference(((ComparisonVariableSlot) slot).getRefined()));
+            } else {
+                continue;
+            }
+            slotsSection.put(serializeSlot(slot), slotObj);
+        }
+        return slotsSection;
+    }
+
+    /** Existential slots can't be serialized as operands, but they can be referred to here. */
+    private String slotReference(Slot slot) {
+        if (slot == null) {
+            return null;
+        }
+        return slot instanceof ConstantSlot ? serialize((ConstantSlot) slot) : serializeSlot(slot);
+    }
+
     protected JSONArray constraintsToJsonArray(final Collection<Constraint> constraints) {
         JSONArray jsonConstraints = new JSONArray();
         for (Constraint constraint : constraints) {
@@ -21,6 +21,9 @@ import checkers.inference.model.Slot;
 
 /**
  * InferenceSolver that serializes constraints to a file in JSON format.
+ * With write-slots=true, the kinds of the variables are written too, so that the file can be
+ * converted to the binary format by {@link checkers.inference.replay.ConstraintFileConverter}
+ * without turning every variable into a source variable.
  *
  * @author mcarthur
  *
@@ -30,6 +33,7 @@ public class JsonSerializerSolver implements InferenceSolver {
 
     private static final String FILE_KEY = "constraint-file";
     private static final String DEFAULT_FILE = "./constraints.json";
+    private static final String WRITE_SLOTS_KEY = "write-slots";
     private Map<String, String> configuration;
 
     @Override
@@ -44,7 +48,8 @@ public class JsonSerializerSolver implements InferenceSolver {
         AnnotationMirror top = qualHierarchy.getTopAnnotations().iterator().next();
         AnnotationMirror bottom = qualHierarchy.getBottomAnnotations().iterator().next();
         SimpleAnnotationMirrorSerializer annotationSerializer = new SimpleAnnotationMirrorSerializer(top, bottom);
-        JsonSerializer serializer = new JsonSerializer(slots, constraints, null, annotationSerializer);
+        JsonSerializer serializer = new JsonSerializer(slots, constraints, null, annotationSerializer,
+                Boolean.parseBoolean(configuration.get(WRITE_SLOTS_KEY)));
         printJson(serializer);
 
         return null;
@@ -0,0 +1,347 @@
+package checkers.inference.presolve;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+
+import checkers.inference.model.ComparableConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.InequalityConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.solver.frontend.Lattice;
+
+/**
+ * Narrows the qualifiers every variable slot can take before a backend encodes it, by arc
+ * consistency (AC-3) over the top-level subtype, equality, inequality and comparable
+ * constraints.
+ *
+ * A constraint between a variable and a constant restricts the domain of the variable directly,
+ * e.g. a subtype of a constant can only take the subtypes of that constant.  A constraint
+ * between two variables removes the qualifiers of one variable that no qualifier left in the
+ * domain of the other supports, and every change to a domain revisits the constraints of that
+ * slot until no domain changes.  Domains are bit sets over the qualifier indexes of
+ * {@link SlotDomains}, so revising a constraint takes a few word operations per qualifier.
+ *
+ * The constraints within existential and implication constraints only hold conditionally, and
+ * the other kinds of constraints are left to the backends, so they never narrow a domain.
+ */
+public class DomainPresolver {
+
+    private static final int SUBTYPE = 0, EQUALITY = 1, INEQUALITY = 2, COMPARABLE = 3;
+
+    /** The qualifiers of the lattice, in the order of their indexes. */
+    private final List<AnnotationMirror> types;
+
+    /** The subtypes of each qualifier, by qualifier index, including the qualifier itself. */
+    private final BitSet[] subtypes;
+
+    /** The supertypes of each qualifier, by qualifier index, including the qualifier itself. */
+    private final BitSet[] supertypes;
+
+    /** The qualifiers comparable to each qualifier, by qualifier index. */
+    private final BitSet[] comparables;
+
+    public DomainPresolver(Lattice lattice) {
+        this.types = new ArrayList<>(lattice.allTypes);
+        int numTypes = types.size();
+        subtypes = new BitSet[numTypes];
+        supertypes = new BitSet[numTypes];
+        comparables = new BitSet[numTypes];
+        for (int t = 0; t < numTypes; t++) {
+            subtypes[t] = toBitSet(lattice.subType.get(types.get(t)));
+            subtypes[t].set(t);
+            supertypes[t] = toBitSet(lattice.superType.get(types.get(t)));
+            supertypes[t].set(t);
+        }
+        for (int t = 0; t < numTypes; t++) {
+            comparables[t] = (BitSet) subtypes[t].clone();
+            comparables[t].or(supertypes[t]);
+        }
+    }
+
+    /**
+     * @param slots all slots of the constraints
+     * @param constraints the normalized constraints
+     * @return the domain of every slot, or the constraints that left a slot without any qualifier
+     */
+    public SlotDomains presolve(Collection<Slot> slots, Collection<Constraint> constraints) {
+        int maxId = -1;
+        for (Slot slot : slots) {
+            maxId = Math.max(maxId, slot.getId());
+        }
+        for (Constraint constraint : constraints) {
+            for (Slot slot : constraint.getSlots()) {
+                maxId = Math.max(maxId, slot.getId());
+            }
+        }
+        State state = new State(maxId + 1);
+
+        // Constraints with a constant narrow a domain once, the ones between two variables are
+        // revised until nothing changes.
+        List<Constraint> binaryConstraints = new ArrayList<>();
+        IntList kinds = new IntList();
+        IntList firsts = new IntList();
+        IntList seconds = new IntList();
+        for (Constraint constraint : constraints) {
+            int kind;
+            Slot first;
+            Slot second;
+            if (constraint instanceof SubtypeConstraint) {
+                kind = SUBTYPE;
+                first = ((SubtypeConstraint) constraint).getSubtype();
+                second = ((SubtypeConstraint) constraint).getSupertype();
+            } else if (constraint instanceof EqualityConstraint) {
+                kind = EQUALITY;
+                first = ((EqualityConstraint) constraint).getFirst();
+                second = ((EqualityConstraint) constraint).getSecond();
+            } else if (constraint instanceof InequalityConstraint) {
+                kind = INEQUALITY;
+                first = ((InequalityConstraint) constraint).getFirst();
+                second = ((InequalityConstraint) constraint).getSecond();
+            } else if (constraint instanceof ComparableConstraint) {
+                kind = COMPARABLE;
+                first = ((ComparableConstraint) constraint).getFirst();
+                second = ((ComparableConstraint) constraint).getSecond();
+            } else {
+                continue;
+            }
+
+            boolean firstIsConstant = first instanceof ConstantSlot;
+            boolean secondIsConstant = second instanceof ConstantSlot;
+            if (firstIsConstant && secondIsConstant) {
+                continue;
+            } else if (firstIsConstant || secondIsConstant) {
+                int constant = typeIndex(firstIsConstant ? (ConstantSlot) first : (ConstantSlot) second);
+                if (constant < 0) {
+                    // A qualifier outside the lattice, which the backends deal with.
+                    continue;
+                }
+                Slot variable = firstIsConstant ? second : first;
+                if (!state.restrict(variable.getId(), unaryDomain(kind, constant, secondIsConstant), constraint)) {
+                    return state.toDomains(variable.getId());
+                }
+            } else if (first.getId() == second.getId()) {
+                if (kind == INEQUALITY) {
+                    state.restrict(first.getId(), new BitSet(), constraint);
+                    return state.toDomains(first.getId());
+                }
+            } else {
+                binaryConstraints.add(constraint);
+                kinds.add(kind);
+                firsts.add(first.getId());
+                seconds.add(second.getId());
+            }
+        }
+
+        // The constraints of each slot, in compressed sparse row form: the constraints of slot s
+        // are slotConstraints[firstConstraint[s]] .. slotConstraints[firstConstraint[s + 1] - 1].
+        int count = binaryConstraints.size();
+        int[] firstConstraint = new int[maxId + 2];
+        for (int c = 0; c < count; c++) {
+            firstConstraint[firsts.get(c) + 1]++;
+            firstConstraint[seconds.get(c) + 1]++;
+        }
+        for (int id = 0; id <= maxId; id++) {
+            firstConstraint[id + 1] += firstConstraint[id];
+        }
+        int[] slotConstraints = new int[2 * count];
+        int[] fill = Arrays.copyOf(firstConstraint, maxId + 1);
+        for (int c = 0; c < count; c++) {
+            slotConstraints[fill[firsts.get(c)]++] = c;
+            slotConstraints[fill[seconds.get(c)]++] = c;
+        }
+
+        int[] queue = new int[count];
+        boolean[] queued = new boolean[count];
+        int head = 0;
+        int size = count;
+        for (int c = 0; c < count; c++) {
+            queue[c] = c;
+            queued[c] = true;
+        }
+        while (size > 0) {
+            int c = queue[head];
+            head = (head + 1) % count;
+            size--;
+            queued[c] = false;
+
+            Constraint constraint = binaryConstraints.get(c);
+            int first = firsts.get(c);
+            int second = seconds.get(c);
+            for (int side = 0; side < 2; side++) {
+                int target = side == 0 ? first : second;
+                int other = side == 0 ? second : first;
+                int before = state.domain(target).cardinality();
+                if (!revise(state, kinds.get(c), side == 0, target, other, constraint)) {
+                    return state.toDomains(target);
+                }
+                if (state.domain(target).cardinality() == before) {
+                    continue;
+                }
+                for (int i = firstConstraint[target]; i < firstConstraint[target + 1]; i++) {
+                    int next = slotConstraints[i];
+                    if (!queued[next] && next != c) {
+                        queue[(head + size) % count] = next;
+                        queued[next] = true;
+                        size++;
+                    }
+                }
+            }
+        }
+        return state.toDomains(-1);
+    }
+
+    /**
+     * Removes the qualifiers of the target slot that no qualifier of the other slot supports.
+     *
+     * @param targetIsFirst whether the target slot is the first slot of the constraint, i.e. the
+     * subtype of a subtype constraint
+     * @return false if no qualifier is left for the target slot
+     */
+    private boolean revise(State state, int kind, boolean targetIsFirst, int target, int other,
+            Constraint constraint) {
+        BitSet otherDomain = state.domain(other);
+        BitSet supported = new BitSet(types.size());
+        BitSet targetDomain = state.domain(target);
+        for (int t = targetDomain.nextSetBit(0); t >= 0; t = targetDomain.nextSetBit(t + 1)) {
+            boolean hasSupport;
+            switch (kind) {
+                case SUBTYPE:
+                    hasSupport = (targetIsFirst ? supertypes[t] : subtypes[t]).intersects(otherDomain);
+                    break;
+                case EQUALITY:
+                    hasSupport = otherDomain.get(t);
+                    break;
+                case INEQUALITY:
+                    int firstOther = otherDomain.nextSetBit(0);
+                    hasSupport = firstOther >= 0 && (firstOther != t || otherDomain.nextSetBit(t + 1) >= 0);
+                    break;
+                default:
+                    hasSupport = comparables[t].intersects(otherDomain);
+                    break;
+            }
+            if (hasSupport) {
+                supported.set(t);
+            }
+        }
+        return state.restrict(target, supported, constraint);
+    }
+
+    /**
+     * @param constantIsSecond whether the constant is the second slot of the constraint, i.e. the
+     * supertype of a subtype constraint
+     * @return the qualifiers a variable can take in a constraint with the given constant
+     */
+    private BitSet unaryDomain(int kind, int constant, boolean constantIsSecond) {
+        BitSet domain;
+        switch (kind) {
+            case SUBTYPE:
+                return (BitSet) (constantIsSecond ? subtypes[constant] : supertypes[constant]).clone();
+            case EQUALITY:
+                domain = new BitSet(types.size());
+                domain.set(constant);
+                return domain;
+            case INEQUALITY:
+                domain = new BitSet(types.size());
+                domain.set(0, types.size());
+                domain.clear(constant);
+                return domain;
+            default:
+                return (BitSet) comparables[constant].clone();
+        }
+    }
+
+    /**
+     * @return the index of the qualifier of the constant, or -1 if it is not in the lattice
+     */
+    private int typeIndex(ConstantSlot constant) {
+        AnnotationMirror value = constant.getValue();
+        for (int t = 0; t < types.size(); t++) {
+            if (types.get(t) == value) {
+                return t;
+            }
+        }
+        for (int t = 0; t < types.size(); t++) {
+            if (AnnotationUtils.areSame(types.get(t), value)) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private BitSet toBitSet(Collection<AnnotationMirror> qualifiers) {
+        BitSet result = new BitSet(types.size());
+        if (qualifiers != null) {
+            for (AnnotationMirror qualifier : qualifiers) {
+                int t = types.indexOf(qualifier);
+                if (t >= 0) {
+                    result.set(t);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** The domains while they are narrowed, and the constraints that narrowed each of them. */
+    private class State {
+        /** The domain of each slot, by id, or null while the slot can take every qualifier. */
+        final BitSet[] domains;
+
+        /** The constraints that removed qualifiers from the domain of each slot, by id. */
+        final List<List<Constraint>> narrowedBy;
+
+        final BitSet allTypes;
+
+        State(int slotCount) {
+            domains = new BitSet[slotCount];
+            narrowedBy = new ArrayList<>(slotCount);
+            for (int id = 0; id < slotCount; id++) {
+                narrowedBy.add(null);
+            }
+            allTypes = new BitSet(types.size());
+            allTypes.set(0, types.size());
+        }
+
+        BitSet domain(int id) {
+            return domains[id] != null ? domains[id] : allTypes;
+        }
+
+        /**
+         * Intersects the domain of the slot with the given qualifiers.
+         *
+         * @return false if no qualifier is left
+         */
+        boolean restrict(int id, BitSet allowed, Constraint cause) {
+            BitSet domain = domain(id);
+            BitSet narrowed = (BitSet) domain.clone();
+            narrowed.and(allowed);
+            if (narrowed.equals(domain)) {
+                return true;
+            }
+            domains[id] = narrowed;
+            List<Constraint> causes = narrowedBy.get(id);
+            if (causes == null) {
+                causes = new ArrayList<>(2);
+                narrowedBy.set(id, causes);
+            }
+            causes.add(cause);
+            return !narrowed.isEmpty();
+        }
+
+        /**
+         * @param emptySlotId the id of the slot left without qualifiers, or -1 if there is none
+         */
+        SlotDomains toDomains(int emptySlotId) {
+            return new SlotDomains(types, domains, narrowedBy, emptySlotId);
+        }
+    }
+}
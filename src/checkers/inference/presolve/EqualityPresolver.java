@@ -0,0 +1,36 @@
+package checkers.inference.presolve;
+
+import java.util.Collection;
+import java.util.Set;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.Slot;
+
+/**
+ * Merges the slots that are equated by EqualityConstraints, e.g. through chains of assignments
+ * and method bindings, into one representative per equivalence class, so that the solver encodes
+ * one slot per class instead of every equality.
+ *
+ * Only top-level equalities are used: the equalities within existential and implication
+ * constraints only hold conditionally.  The merged equalities become trivially true and are
+ * dropped by {@link SlotSubstitution#substitute(Set)}.
+ */
+public class EqualityPresolver {
+
+    /**
+     * @param slots all slots of the constraints
+     * @param constraints the normalized constraints
+     * @return the substitution of every slot by the representative of its equivalence class
+     */
+    public SlotSubstitution presolve(Collection<Slot> slots, Set<Constraint> constraints) {
+        SlotUnionFind unionFind = new SlotUnionFind(slots);
+        for (Constraint constraint : constraints) {
+            if (constraint instanceof EqualityConstraint) {
+                EqualityConstraint equality = (EqualityConstraint) constraint;
+                unionFind.union(equality.getFirst(), equality.getSecond(), equality);
+            }
+        }
+        return unionFind.toSubstitution(constraints);
+    }
+}
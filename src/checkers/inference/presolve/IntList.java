@@ -0,0 +1,24 @@
+package checkers.inference.presolve;
+
+import java.util.Arrays;
+
+/** A growable list of ints, to avoid boxing every edge. */
+class IntList {
+    private int[] values = new int[16];
+    private int size = 0;
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, 2 * size);
+        }
+        values[size++] = value;
+    }
+
+    int get(int i) {
+        return values[i];
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,86 @@
+package checkers.inference.presolve;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import checkers.inference.InferenceResult;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+
+/**
+ * The result of solving the constraints rewritten by a {@link SlotSubstitution}, in terms of the
+ * original slots and constraints.
+ */
+class PresolvedInferenceResult implements InferenceResult {
+
+    private final InferenceResult result;
+
+    private final SlotSubstitution substitution;
+
+    /** The solutions of the solver and of the replaced slots, created on first use. */
+    private Map<Integer, AnnotationMirror> solutions;
+
+    PresolvedInferenceResult(InferenceResult result, SlotSubstitution substitution) {
+        this.result = result;
+        this.substitution = substitution;
+    }
+
+    @Override
+    public boolean hasSolution() {
+        return result.hasSolution();
+    }
+
+    @Override
+    public Map<Integer, AnnotationMirror> getSolutions() {
+        if (!hasSolution()) {
+            return null;
+        }
+        if (solutions == null) {
+            solutions = new HashMap<>(result.getSolutions());
+            for (Map.Entry<Integer, Slot> entry : substitution.getRepresentatives().entrySet()) {
+                AnnotationMirror solution = getSolution(entry.getValue());
+                if (solution != null) {
+                    solutions.put(entry.getKey(), solution);
+                }
+            }
+        }
+        return solutions;
+    }
+
+    @Override
+    public boolean isOptimal() {
+        return result.isOptimal();
+    }
+
+    @Override
+    public boolean containsSolutionForVariable(int varId) {
+        if (!hasSolution()) {
+            return false;
+        }
+        return getSolutions().containsKey(varId);
+    }
+
+    @Override
+    public AnnotationMirror getSolutionForVariable(int varId) {
+        if (!hasSolution()) {
+            return null;
+        }
+        return getSolutions().get(varId);
+    }
+
+    @Override
+    public Collection<Constraint> getUnsatisfiableConstraints() {
+        return substitution.toOriginalConstraints(result.getUnsatisfiableConstraints());
+    }
+
+    private AnnotationMirror getSolution(Slot representative) {
+        if (representative instanceof ConstantSlot) {
+            return ((ConstantSlot) representative).getValue();
+        }
+        return result.getSolutionForVariable(representative.getId());
+    }
+}
@@ -0,0 +1,179 @@
+package checkers.inference.presolve;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.SlotManager;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.solver.frontend.Lattice;
+
+/**
+ * The qualifiers each slot can take, as narrowed by {@link DomainPresolver}.
+ *
+ * Qualifiers are identified by their index in the iteration order of {@link Lattice#allTypes},
+ * the same indexes as
+ * {@link checkers.inference.solver.backend.maxsat.MaxSatFormatTranslator#typeToInt}.  Slots
+ * that no constraint narrowed can take every qualifier of the lattice.
+ */
+public class SlotDomains {
+
+    private final List<AnnotationMirror> types;
+
+    /** The domain of each slot, by id, or null if the slot can take every qualifier. */
+    private final BitSet[] domains;
+
+    /** The constraints that removed qualifiers from the domain of each slot, by id. */
+    private final List<List<Constraint>> narrowedBy;
+
+    /** The id of the slot that no qualifier is left for, or -1 if there is none. */
+    private final int emptySlotId;
+
+    SlotDomains(List<AnnotationMirror> types, BitSet[] domains, List<List<Constraint>> narrowedBy,
+            int emptySlotId) {
+        this.types = types;
+        this.domains = domains;
+        this.narrowedBy = narrowedBy;
+        this.emptySlotId = emptySlotId;
+    }
+
+    /**
+     * @return true if the domain of some slot is empty, i.e. the constraints have no solution
+     */
+    public boolean isUnsatisfiable() {
+        return emptySlotId != -1;
+    }
+
+    /**
+     * @return the constraints that together leave a slot without any qualifier, or an empty list
+     * if every slot has a qualifier left
+     */
+    public List<Constraint> getUnsatisfiableConstraints() {
+        if (!isUnsatisfiable()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(getCauses(Collections.singletonList(emptySlotId)));
+    }
+
+    /**
+     * @param slotId the id of a slot
+     * @param typeIndex the index of a qualifier
+     * @return whether the slot can still take the qualifier
+     */
+    public boolean isAllowed(int slotId, int typeIndex) {
+        BitSet domain = getDomain(slotId);
+        return domain == null || domain.get(typeIndex);
+    }
+
+    /**
+     * @return the number of qualifiers the slot can still take
+     */
+    public int getDomainSize(int slotId) {
+        BitSet domain = getDomain(slotId);
+        return domain == null ? types.size() : domain.cardinality();
+    }
+
+    /**
+     * @return the only qualifier the slot can take, or null if it can take more than one
+     */
+    public AnnotationMirror getFixedType(int slotId) {
+        BitSet domain = getDomain(slotId);
+        if (domain == null || domain.cardinality() != 1) {
+            return null;
+        }
+        return types.get(domain.nextSetBit(0));
+    }
+
+    /**
+     * @return the total number of qualifiers removed from the domains of all slots
+     */
+    public long getNumberOfRemovedTypes() {
+        long removed = 0;
+        for (BitSet domain : domains) {
+            if (domain != null) {
+                removed += types.size() - domain.cardinality();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Replaces every variable slot with a single qualifier left by a constant slot of that
+     * qualifier, so that the backends do not encode it at all.  Slots in positions that require
+     * a variable, like the result of a combine constraint, keep their domain instead.
+     *
+     * @param constraints the constraints the domains were computed from
+     * @return the substitution of the fixed slots, whose unsatisfiable constraints are explained by
+     * the constraints that fixed each of their slots
+     */
+    public SlotSubstitution fixSingletons(Collection<Constraint> constraints) {
+        Set<Integer> pinned = new HashSet<>();
+        SlotUnionFind.collectPinnedSlotIds(constraints, pinned);
+
+        SlotManager slotManager = InferenceMain.getInstance().getSlotManager();
+        Map<Integer, Slot> representatives = new HashMap<>();
+        for (Constraint constraint : constraints) {
+            for (Slot slot : constraint.getSlots()) {
+                if (slot instanceof ConstantSlot || pinned.contains(slot.getId())
+                        || representatives.containsKey(slot.getId())) {
+                    continue;
+                }
+                AnnotationMirror fixedType = getFixedType(slot.getId());
+                if (fixedType == null) {
+                    continue;
+                }
+                representatives.put(slot.getId(), slotManager.createConstantSlot(fixedType));
+            }
+        }
+
+        // The constant of a qualifier is shared by all slots fixed to it, so the causes are kept
+        // by the replaced slot.  They are only searched for if an explanation needs them.
+        return new SlotSubstitution(representatives, slotId -> representatives.containsKey(slotId)
+                ? getCauses(Collections.singletonList(slotId)) : null);
+    }
+
+    private BitSet getDomain(int slotId) {
+        return slotId >= 0 && slotId < domains.length ? domains[slotId] : null;
+    }
+
+    /**
+     * @return the constraints that narrowed the domains of the slots, and transitively the ones
+     * that narrowed the domains of the other slots of those constraints
+     */
+    private Set<Constraint> getCauses(Collection<Integer> slotIds) {
+        Set<Constraint> causes = new LinkedHashSet<>();
+        Set<Integer> visited = new HashSet<>(slotIds);
+        Deque<Integer> worklist = new ArrayDeque<>(slotIds);
+        while (!worklist.isEmpty()) {
+            List<Constraint> narrowing = narrowedBy.get(worklist.poll());
+            if (narrowing == null) {
+                continue;
+            }
+            for (Constraint constraint : narrowing) {
+                if (!causes.add(constraint)) {
+                    continue;
+                }
+                for (Slot slot : constraint.getSlots()) {
+                    if (!(slot instanceof ConstantSlot) && visited.add(slot.getId())) {
+                        worklist.add(slot.getId());
+                    }
+                }
+            }
+        }
+        return causes;
+    }
+}
@@ -0,0 +1,286 @@
+package checkers.inference.presolve;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.InferenceResult;
+import checkers.inference.model.AlwaysFalseConstraint;
+import checkers.inference.model.AlwaysTrueConstraint;
+import checkers.inference.model.ArithmeticConstraint;
+import checkers.inference.model.CombineConstraint;
+import checkers.inference.model.ComparableConstraint;
+import checkers.inference.model.ComparisonConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.ExistentialConstraint;
+import checkers.inference.model.ImplicationConstraint;
+import checkers.inference.model.InequalityConstraint;
+import checkers.inference.model.PreferenceConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.VariableSlot;
+
+/**
+ * Replaces slots that must have the same solution by a representative slot, as computed by a
+ * presolve pass like {@link EqualityPresolver}.
+ *
+ * {@link #substitute(Set)} rewrites the constraints in terms of the representatives, dropping
+ * the constraints that become trivially true, and {@link #removeReplacedSlots(Collection)}
+ * removes the replaced slots from the slots handed to the solver.  {@link #mapBack} spreads the
+ * solution of each representative back to the slots it replaced.
+ */
+public class SlotSubstitution {
+
+    /** The representative of every replaced slot, by the id of the replaced slot. */
+    private final Map<Integer, Slot> representatives;
+
+    /**
+     * The constraints that made a slot equal to its representative, by the id of the slot, or
+     * null for slots that are not replaced.
+     */
+    private final Function<Integer, Collection<Constraint>> causesOfSlot;
+
+    /** The constraints each rewritten constraint was created from. */
+    private final Map<Constraint, List<Constraint>> origins = new HashMap<>();
+
+    /** The constraints that became false when rewritten. */
+    private final List<Constraint> unsatisfiableConstraints = new ArrayList<>();
+
+    SlotSubstitution(Map<Integer, Slot> representatives, Function<Integer, Collection<Constraint>> causesOfSlot) {
+        this.representatives = representatives;
+        this.causesOfSlot = causesOfSlot;
+    }
+
+    /**
+     * @return the number of slots that are replaced by a representative
+     */
+    public int getNumberOfReplacedSlots() {
+        return representatives.size();
+    }
+
+    /**
+     * @return the representative of slot, or slot itself if it is not replaced
+     */
+    public Slot getRepresentative(Slot slot) {
+        Slot representative = representatives.get(slot.getId());
+        return representative != null ? representative : slot;
+    }
+
+    /**
+     * @return the given slots without the replaced ones
+     */
+    public List<Slot> removeReplacedSlots(Collection<Slot> slots) {
+        List<Slot> remaining = new ArrayList<>(slots.size());
+        for (Slot slot : slots) {
+            if (!representatives.containsKey(slot.getId())) {
+                remaining.add(slot);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Rewrites the given constraints in terms of the representatives.  Constraints that become
+     * always true are dropped, and the preferences for the same representative and goal are
+     * combined into one preference with the sum of their weights, so that the solver optimizes
+     * the same objective.
+     *
+     * @return the rewritten constraints
+     * @see #getUnsatisfiableConstraints()
+     */
+    public Set<Constraint> substitute(Set<Constraint> constraints) {
+        ConstraintManager constraintManager = InferenceMain.getInstance().getConstraintManager();
+        Set<Constraint> rewritten = new LinkedHashSet<>(constraints.size());
+        Map<List<Slot>, Integer> preferenceWeights = new LinkedHashMap<>();
+        Map<List<Slot>, List<Constraint>> preferenceOrigins = new HashMap<>();
+
+        for (Constraint constraint : constraints) {
+            if (constraint instanceof PreferenceConstraint) {
+                PreferenceConstraint preference = (PreferenceConstraint) constraint;
+                Slot variable = getRepresentative(preference.getVariable());
+                if (variable instanceof ConstantSlot) {
+                    // The preference is satisfied or not regardless of the solution.
+                    continue;
+                }
+                List<Slot> key = Arrays.asList(variable, preference.getGoal());
+                preferenceWeights.merge(key, preference.getWeight(), Integer::sum);
+                preferenceOrigins.computeIfAbsent(key, k -> new ArrayList<>()).add(constraint);
+                continue;
+            }
+
+            Constraint result = rewrite(constraint);
+            if (result instanceof AlwaysTrueConstraint) {
+                continue;
+            }
+            if (result instanceof AlwaysFalseConstraint) {
+                unsatisfiableConstraints.add(constraint);
+                continue;
+            }
+            rewritten.add(result);
+            origins.computeIfAbsent(result, k -> new ArrayList<>()).add(constraint);
+        }
+
+        for (Map.Entry<List<Slot>, Integer> entry : preferenceWeights.entrySet()) {
+            List<Slot> key = entry.getKey();
+            Constraint preference = constraintManager.createPreferenceConstraint(
+                    (VariableSlot) key.get(0), (ConstantSlot) key.get(1), entry.getValue());
+            rewritten.add(preference);
+            origins.computeIfAbsent(preference, k -> new ArrayList<>()).addAll(preferenceOrigins.get(key));
+        }
+        return rewritten;
+    }
+
+    /**
+     * @return the constraints that became false in the last {@link #substitute(Set)}, together with
+     * the constraints that made their slots equal, or an empty list if there are none
+     */
+    public List<Constraint> getUnsatisfiableConstraints() {
+        Set<Constraint> explanation = new LinkedHashSet<>();
+        for (Constraint constraint : unsatisfiableConstraints) {
+            explanation.add(constraint);
+            addCauses(constraint, explanation);
+        }
+        return new ArrayList<>(explanation);
+    }
+
+    /**
+     * @return result with the solution of each representative also as the solution of the slots
+     * it replaced, and with its unsatisfiable constraints in terms of the original constraints
+     */
+    public InferenceResult mapBack(InferenceResult result) {
+        return new PresolvedInferenceResult(result, this);
+    }
+
+    Map<Integer, Slot> getRepresentatives() {
+        return Collections.unmodifiableMap(representatives);
+    }
+
+    /**
+     * @return the original constraints of the given rewritten ones, together with the
+     * constraints that made their slots equal
+     */
+    Collection<Constraint> toOriginalConstraints(Collection<Constraint> rewritten) {
+        Set<Constraint> originals = new LinkedHashSet<>();
+        for (Constraint constraint : rewritten) {
+            List<Constraint> constraintOrigins = origins.get(constraint);
+            if (constraintOrigins == null) {
+                originals.add(constraint);
+                addCauses(constraint, originals);
+            } else {
+                originals.addAll(constraintOrigins);
+                for (Constraint origin : constraintOrigins) {
+                    addCauses(origin, originals);
+                }
+            }
+        }
+        return originals;
+    }
+
+    /** Adds the causes of the slots of the original constraint. */
+    private void addCauses(Constraint constraint, Set<Constraint> out) {
+        for (Slot slot : constraint.getSlots()) {
+            Collection<Constraint> causes = causesOfSlot.apply(slot.getId());
+            if (causes != null) {
+                out.addAll(causes);
+            }
+        }
+    }
+
+    private Constraint rewrite(Constraint constraint) {
+        if (!replacesAny(constraint.getSlots())) {
+            return constraint;
+        }
+
+        ConstraintManager constraintManager = InferenceMain.getInstance().getConstraintManager();
+        if (constraint instanceof SubtypeConstraint) {
+            SubtypeConstraint subtype = (SubtypeConstraint) constraint;
+            return constraintManager.createSubtypeConstraint(
+                    getRepresentative(subtype.getSubtype()), getRepresentative(subtype.getSupertype()));
+        } else if (constraint instanceof EqualityConstraint) {
+            EqualityConstraint equality = (EqualityConstraint) constraint;
+            return constraintManager.createEqualityConstraint(
+                    getRepresentative(equality.getFirst()), getRepresentative(equality.getSecond()));
+        } else if (constraint instanceof InequalityConstraint) {
+            InequalityConstraint inequality = (InequalityConstraint) constraint;
+            return constraintManager.createInequalityConstraint(
+                    getRepresentative(inequality.getFirst()), getRepresentative(inequality.getSecond()));
+        } else if (constraint instanceof ComparableConstraint) {
+            ComparableConstraint comparable = (ComparableConstraint) constraint;
+            return constraintManager.createComparableConstraint(
+                    getRepresentative(comparable.getFirst()), getRepresentative(comparable.getSecond()));
+        } else if (constraint instanceof ComparisonConstraint) {
+            ComparisonConstraint comparison = (ComparisonConstraint) constraint;
+            return constraintManager.createComparisonConstraint(comparison.getOperation(),
+                    getRepresentative(comparison.getLeft()), getRepresentative(comparison.getRight()),
+                    comparison.getResult());
+        } else if (constraint instanceof CombineConstraint) {
+            CombineConstraint combine = (CombineConstraint) constraint;
+            return constraintManager.createCombineConstraint(getRepresentative(combine.getTarget()),
+                    getRepresentative(combine.getDeclared()), combine.getResult());
+        } else if (constraint instanceof ArithmeticConstraint) {
+            ArithmeticConstraint arithmetic = (ArithmeticConstraint) constraint;
+            return constraintManager.createArithmeticConstraint(arithmetic.getOperation(),
+                    getRepresentative(arithmetic.getLeftOperand()),
+                    getRepresentative(arithmetic.getRightOperand()), arithmetic.getResult());
+        } else if (constraint instanceof PreferenceConstraint) {
+            // A preference within an existential or implication constraint.
+            PreferenceConstraint preference = (PreferenceConstraint) constraint;
+            Slot variable = getRepresentative(preference.getVariable());
+            if (!(variable instanceof VariableSlot)) {
+                return constraint;
+            }
+            return constraintManager.createPreferenceConstraint(
+                    (VariableSlot) variable, preference.getGoal(), preference.getWeight());
+        } else if (constraint instanceof ExistentialConstraint) {
+            ExistentialConstraint existential = (ExistentialConstraint) constraint;
+            return constraintManager.createExistentialConstraint(existential.getPotentialVariable(),
+                    rewriteConjunction(existential.potentialConstraints()),
+                    rewriteConjunction(existential.getAlternateConstraints()));
+        } else if (constraint instanceof ImplicationConstraint) {
+            ImplicationConstraint implication = (ImplicationConstraint) constraint;
+            List<Constraint> assumptions = new ArrayList<>(implication.getAssumptions().size());
+            for (Constraint assumption : implication.getAssumptions()) {
+                assumptions.add(rewrite(assumption));
+            }
+            return constraintManager.createImplicationConstraint(assumptions, rewrite(implication.getConclusion()));
+        }
+        throw new BugInCF("Cannot substitute the slots of " + constraint.getClass().getSimpleName() + ": " + constraint);
+    }
+
+    /**
+     * Rewrites a conjunction of constraints, dropping the constraints that become always true.
+     */
+    private List<Constraint> rewriteConjunction(List<Constraint> constraints) {
+        List<Constraint> rewritten = new ArrayList<>(constraints.size());
+        for (Constraint constraint : constraints) {
+            Constraint result = rewrite(constraint);
+            if (!(result instanceof AlwaysTrueConstraint)) {
+                rewritten.add(result);
+            }
+        }
+        return rewritten;
+    }
+
+    private boolean replacesAny(List<Slot> slots) {
+        for (Slot slot : slots) {
+            if (representatives.containsKey(slot.getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
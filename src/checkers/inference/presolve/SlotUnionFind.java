@@ -0,0 +1,193 @@
+package checkers.inference.presolve;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import checkers.inference.model.ArithmeticConstraint;
+import checkers.inference.model.CombineConstraint;
+import checkers.inference.model.ComparisonConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ExistentialConstraint;
+import checkers.inference.model.ImplicationConstraint;
+import checkers.inference.model.Slot;
+
+/**
+ * Union-find over slot ids, with path halving and union by size, that groups the slots which
+ * must have the same solution into classes and turns them into a {@link SlotSubstitution}.
+ */
+class SlotUnionFind {
+
+    private int[] parent;
+    private int[] size;
+    private Slot[] slots;
+
+    /** The constraints that caused each union, by the root of its class. */
+    private final Map<Integer, List<Constraint>> causes = new HashMap<>();
+
+    SlotUnionFind(Collection<Slot> allSlots) {
+        int maxId = -1;
+        for (Slot slot : allSlots) {
+            maxId = Math.max(maxId, slot.getId());
+        }
+        parent = new int[0];
+        size = new int[0];
+        slots = new Slot[0];
+        ensureCapacity(maxId + 1);
+    }
+
+    /**
+     * Merges the classes of first and second.
+     *
+     * @param cause the constraint that makes first and second equal, reported if the
+     *              substituted constraints are unsatisfiable
+     */
+    void union(Slot first, Slot second, Constraint cause) {
+        int firstRoot = find(add(first));
+        int secondRoot = find(add(second));
+        List<Constraint> firstCauses = causes.remove(firstRoot);
+        List<Constraint> secondCauses = causes.remove(secondRoot);
+        if (firstRoot != secondRoot) {
+            if (size[firstRoot] < size[secondRoot]) {
+                int swap = firstRoot;
+                firstRoot = secondRoot;
+                secondRoot = swap;
+            }
+            parent[secondRoot] = firstRoot;
+            size[firstRoot] += size[secondRoot];
+        }
+
+        List<Constraint> merged = firstCauses != null ? firstCauses : new ArrayList<>();
+        if (secondCauses != null && secondCauses != firstCauses) {
+            merged.addAll(secondCauses);
+        }
+        merged.add(cause);
+        causes.put(firstRoot, merged);
+    }
+
+    /**
+     * Builds the substitution that replaces every member of a class by its representative: the
+     * constant of the class if it has one, otherwise its member with the smallest id.  Classes
+     * with two or more constants are left alone, the solver reports them as unsatisfiable.
+     *
+     * Slots in positions that require a particular kind of slot, i.e. the results of
+     * comparison, combine and arithmetic constraints and the potential variables of existential
+     * constraints, are never replaced.  They stay in the constraints, together with an equality
+     * to the representative of their class.
+     */
+    SlotSubstitution toSubstitution(Collection<Constraint> constraints) {
+        Set<Integer> pinned = new HashSet<>();
+        collectPinnedSlotIds(constraints, pinned);
+
+        Map<Integer, List<Slot>> classes = new HashMap<>();
+        for (int id = 0; id < parent.length; id++) {
+            if (slots[id] != null && size[find(id)] > 1) {
+                classes.computeIfAbsent(find(id), root -> new ArrayList<>()).add(slots[id]);
+            }
+        }
+
+        Map<Integer, Slot> representatives = new HashMap<>();
+        Map<Integer, List<Constraint>> causesOfSlot = new HashMap<>();
+        for (Map.Entry<Integer, List<Slot>> entry : classes.entrySet()) {
+            Slot representative = chooseRepresentative(entry.getValue(), pinned);
+            if (representative == null) {
+                continue;
+            }
+            List<Constraint> classCauses = causes.get(entry.getKey());
+            for (Slot member : entry.getValue()) {
+                if (member != representative && !pinned.contains(member.getId())) {
+                    representatives.put(member.getId(), representative);
+                    causesOfSlot.put(member.getId(), classCauses);
+                }
+            }
+            causesOfSlot.put(representative.getId(), classCauses);
+        }
+        return new SlotSubstitution(representatives, causesOfSlot::get);
+    }
+
+    /**
+     * @return the representative of the class with the given members, or null if the class
+     * has more than one constant
+     */
+    private static Slot chooseRepresentative(List<Slot> members, Set<Integer> pinned) {
+        Slot constant = null;
+        Slot smallest = null;
+        Slot smallestUnpinned = null;
+        for (Slot member : members) {
+            if (member instanceof ConstantSlot) {
+                if (constant != null) {
+                    return null;
+                }
+                constant = member;
+            }
+            if (smallest == null || member.getId() < smallest.getId()) {
+                smallest = member;
+            }
+            if (!pinned.contains(member.getId())
+                    && (smallestUnpinned == null || member.getId() < smallestUnpinned.getId())) {
+                smallestUnpinned = member;
+            }
+        }
+        if (constant != null) {
+            return constant;
+        }
+        return smallestUnpinned != null ? smallestUnpinned : smallest;
+    }
+
+    static void collectPinnedSlotIds(Collection<Constraint> constraints, Set<Integer> pinned) {
+        for (Constraint constraint : constraints) {
+            if (constraint instanceof ComparisonConstraint) {
+                pinned.add(((ComparisonConstraint) constraint).getResult().getId());
+            } else if (constraint instanceof CombineConstraint) {
+                pinned.add(((CombineConstraint) constraint).getResult().getId());
+            } else if (constraint instanceof ArithmeticConstraint) {
+                pinned.add(((ArithmeticConstraint) constraint).getResult().getId());
+            } else if (constraint instanceof ExistentialConstraint) {
+                ExistentialConstraint existential = (ExistentialConstraint) constraint;
+                pinned.add(existential.getPotentialVariable().getId());
+                collectPinnedSlotIds(existential.potentialConstraints(), pinned);
+                collectPinnedSlotIds(existential.getAlternateConstraints(), pinned);
+            } else if (constraint instanceof ImplicationConstraint) {
+                ImplicationConstraint implication = (ImplicationConstraint) constraint;
+                collectPinnedSlotIds(implication.getAssumptions(), pinned);
+                collectPinnedSlotIds(Arrays.asList(implication.getConclusion()), pinned);
+            }
+        }
+    }
+
+    private int add(Slot slot) {
+        int id = slot.getId();
+        ensureCapacity(id + 1);
+        slots[id] = slot;
+        return id;
+    }
+
+    private int find(int id) {
+        while (parent[id] != id) {
+            parent[id] = parent[parent[id]];
+            id = parent[id];
+        }
+        return id;
+    }
+
+    private void ensureCapacity(int capacity) {
+        int oldCapacity = parent.length;
+        if (capacity <= oldCapacity) {
+            return;
+        }
+        capacity = Math.max(capacity, 2 * oldCapacity);
+        parent = Arrays.copyOf(parent, capacity);
+        size = Arrays.copyOf(size, capacity);
+        slots = Arrays.copyOf(slots, capacity);
+        for (int id = oldCapacity; id < capacity; id++) {
+            parent[id] = id;
+            size[id] = 1;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package checkers.inference.presolve;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
+
+/**
+ * Merges the slots on a cycle of subtype constraints, e.g. a <: b <: c <: a, into one
+ * representative slot.  The subtype relation of every qualifier hierarchy is antisymmetric, so
+ * the slots of a strongly connected component of the subtype graph must all have the same
+ * solution, whatever the lattice.  The constraints within a component become trivially true and
+ * are dropped by {@link SlotSubstitution#substitute(Set)}, the others are rewritten to constrain
+ * the representative.
+ *
+ * The subtype graph has an edge from the subtype to the supertype of every top-level
+ * SubtypeConstraint, and edges in both directions for every top-level EqualityConstraint, so
+ * this also merges everything {@link EqualityPresolver} merges.  The components are found with
+ * an iterative version of Tarjan's algorithm over a compact adjacency array, in time linear in
+ * the number of slots and constraints.
+ */
+public class SubtypeCyclePresolver {
+
+    /**
+     * @param slots all slots of the constraints
+     * @param constraints the normalized constraints
+     * @return the substitution of every slot by the representative of its strongly connected
+     * component
+     */
+    public SlotSubstitution presolve(Collection<Slot> slots, Set<Constraint> constraints) {
+        List<Constraint> edgeConstraints = new ArrayList<>();
+        IntList edgeFrom = new IntList();
+        IntList edgeTo = new IntList();
+        int maxId = -1;
+        for (Slot slot : slots) {
+            maxId = Math.max(maxId, slot.getId());
+        }
+        Slot[] slotsById = new Slot[maxId + 1];
+
+        for (Constraint constraint : constraints) {
+            Slot from;
+            Slot to;
+            if (constraint instanceof SubtypeConstraint) {
+                from = ((SubtypeConstraint) constraint).getSubtype();
+                to = ((SubtypeConstraint) constraint).getSupertype();
+            } else if (constraint instanceof EqualityConstraint) {
+                from = ((EqualityConstraint) constraint).getFirst();
+                to = ((EqualityConstraint) constraint).getSecond();
+            } else {
+                continue;
+            }
+
+            int maxEdgeId = Math.max(from.getId(), to.getId());
+            if (maxEdgeId >= slotsById.length) {
+                slotsById = Arrays.copyOf(slotsById, Math.max(maxEdgeId + 1, 2 * slotsById.length));
+            }
+            slotsById[from.getId()] = from;
+            slotsById[to.getId()] = to;
+            edgeFrom.add(from.getId());
+            edgeTo.add(to.getId());
+            edgeConstraints.add(constraint);
+            if (constraint instanceof EqualityConstraint) {
+                edgeFrom.add(to.getId());
+                edgeTo.add(from.getId());
+                edgeConstraints.add(constraint);
+            }
+        }
+
+        int[] component = findComponents(slotsById.length, edgeFrom, edgeTo);
+        int[] componentSize = new int[slotsById.length];
+        for (int id = 0; id < slotsById.length; id++) {
+            if (slotsById[id] != null) {
+                componentSize[component[id]]++;
+            }
+        }
+
+        // The edges within a component connect all of its slots, and are the reason they are equal.
+        SlotUnionFind unionFind = new SlotUnionFind(slots);
+        for (int edge = 0; edge < edgeConstraints.size(); edge++) {
+            int from = edgeFrom.get(edge);
+            int to = edgeTo.get(edge);
+            if (from != to && component[from] == component[to] && componentSize[component[from]] > 1) {
+                unionFind.union(slotsById[from], slotsById[to], edgeConstraints.get(edge));
+            }
+        }
+        return unionFind.toSubstitution(constraints);
+    }
+
+    /**
+     * Tarjan's algorithm, with an explicit stack instead of recursion so that long subtype chains
+     * do not overflow the call stack.
+     *
+     * @return the component of every node, identified by the index of its root node
+     */
+    private static int[] findComponents(int nodeCount, IntList edgeFrom, IntList edgeTo) {
+        // Adjacency in compressed sparse row form: the successors of node n are
+        // successors[firstEdge[n]] .. successors[firstEdge[n + 1] - 1].
+        int[] firstEdge = new int[nodeCount + 1];
+        for (int edge = 0; edge < edgeFrom.size(); edge++) {
+            firstEdge[edgeFrom.get(edge) + 1]++;
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            firstEdge[node + 1] += firstEdge[node];
+        }
+        int[] successors = new int[edgeFrom.size()];
+        int[] fill = Arrays.copyOf(firstEdge, nodeCount);
+        for (int edge = 0; edge < edgeFrom.size(); edge++) {
+            successors[fill[edgeFrom.get(edge)]++] = edgeTo.get(edge);
+        }
+
+        int[] index = new int[nodeCount];
+        Arrays.fill(index, -1);
+        int[] lowLink = new int[nodeCount];
+        boolean[] onStack = new boolean[nodeCount];
+        int[] component = new int[nodeCount];
+        int[] stack = new int[nodeCount];
+        int stackSize = 0;
+        // The nodes being visited and the next edge to follow from each.
+        int[] callNodes = new int[nodeCount];
+        int[] callEdges = new int[nodeCount];
+        int nextIndex = 0;
+
+        for (int start = 0; start < nodeCount; start++) {
+            if (index[start] != -1) {
+                continue;
+            }
+            int depth = 0;
+            callNodes[0] = start;
+            callEdges[0] = firstEdge[start];
+            index[start] = lowLink[start] = nextIndex++;
+            stack[stackSize++] = start;
+            onStack[start] = true;
+
+            while (depth >= 0) {
+                int node = callNodes[depth];
+                if (callEdges[depth] < firstEdge[node + 1]) {
+                    int successor = successors[callEdges[depth]++];
+                    if (index[successor] == -1) {
+                        index[successor] = lowLink[successor] = nextIndex++;
+                        stack[stackSize++] = successor;
+                        onStack[successor] = true;
+                        depth++;
+                        callNodes[depth] = successor;
+                        callEdges[depth] = firstEdge[successor];
+                    } else if (onStack[successor]) {
+                        lowLink[node] = Math.min(lowLink[node], index[successor]);
+                    }
+                    continue;
+                }
+
+                if (lowLink[node] == index[node]) {
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        onStack[member] = false;
+                        component[member] = node;
+                    } while (member != node);
+                }
+                depth--;
+                if (depth >= 0) {
+                    int caller = callNodes[depth];
+                    lowLink[caller] = Math.min(lowLink[caller], lowLink[node]);
+                }
+            }
+        }
+        return component;
+    }
+}
@@ -0,0 +1,72 @@
+package checkers.inference.replay;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.json.simple.parser.ParseException;
+import org.plumelib.options.Option;
+import org.plumelib.options.Options;
+
+import checkers.inference.DefaultSlotManager;
+import checkers.inference.model.serialization.JsonBinaryConverter;
+import checkers.inference.model.serialization.SimpleAnnotationMirrorSerializer;
+
+/**
+ * Converts constraint files between the JSON format of
+ * {@link checkers.inference.model.serialization.JsonSerializerSolver} and the binary format of
+ * {@link checkers.inference.model.serialization.BinarySerializerSolver}. Files ending in .json are
+ * read and written as JSON, all others as binary.
+ *
+ * Usage: {@code ConstraintFileConverter --checker <checker> input output}
+ *
+ * Like JsonSerializerSolver, this only supports type systems with a top and a bottom qualifier.
+ */
+public class ConstraintFileConverter {
+
+    @Option("[InferrableChecker] the fully-qualified name of the checker the constraints were generated with")
+    public static String checker;
+
+    @Option("Additional javac options for setting up the type system, e.g. -Astubs=...")
+    public static String javacOptions;
+
+    public static void main(String[] args) throws IOException, ParseException {
+        Options options = new Options("ConstraintFileConverter [options] input output", ConstraintFileConverter.class);
+        String[] files = options.parse(true, args);
+        if (checker == null || files.length != 2 || isJson(files[0]) == isJson(files[1])) {
+            System.out.println("Expected a checker, and a JSON and a binary file.");
+            options.printUsage();
+            System.exit(1);
+        }
+
+        ReplayEnvironment environment = ReplayEnvironment.bootstrap(checker,
+                javacOptions == null ? new String[0] : javacOptions.trim().split("\\s+"));
+        AnnotationMirror top = environment.qualifierHierarchy.getTopAnnotations().iterator().next();
+        AnnotationMirror bottom = environment.qualifierHierarchy.getBottomAnnotations().iterator().next();
+        JsonBinaryConverter converter = new JsonBinaryConverter(new SimpleAnnotationMirrorSerializer(top, bottom));
+
+        if (isJson(files[0])) {
+            // Constants must get the ids they had when the JSON file was written.
+            DefaultSlotManager slotManager = environment.newSlotManager(true);
+            String json = new String(Files.readAllBytes(Paths.get(files[0])), StandardCharsets.UTF_8);
+            try (FileOutputStream out = new FileOutputStream(files[1])) {
+                converter.jsonToBinary(json, out, slotManager);
+            }
+        } else {
+            try (FileInputStream in = new FileInputStream(files[0]);
+                 Writer out = Files.newBufferedWriter(Paths.get(files[1]), StandardCharsets.UTF_8)) {
+                converter.binaryToJson(in, out, environment.processingEnvironment, environment.constraintManager);
+            }
+        }
+    }
+
+    private static boolean isJson(String file) {
+        return file.endsWith(".json");
+    }
+}
@@ -0,0 +1,128 @@
+package checkers.inference.replay;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+import org.checkerframework.javacutil.BugInCF;
+import org.plumelib.options.Option;
+import org.plumelib.options.Options;
+
+import checkers.inference.DefaultSlotManager;
+import checkers.inference.InferenceMain;
+import checkers.inference.InferenceResult;
+import checkers.inference.InferenceSolver;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
+import checkers.inference.model.serialization.BinaryDeserializer;
+import checkers.inference.model.serialization.BinarySerializerSolver;
+
+/**
+ * Replays constraint files written by {@link BinarySerializerSolver} or
+ * {@link SyntheticWorkloadGenerator} with any InferenceSolver (including {@link
+ * checkers.inference.solver.SolverEngine} configurations), without compiling the original sources.
+ * Prints the number of slots and constraints, the solve time of every repetition and whether a
+ * solution was found.
+ *
+ * Usage: {@code ConstraintReplay --checker <checker> --solver <solver> [--solverArgs ...] file...}
+ *
+ * The checker must be the one the file was written with, since the qualifiers of the file are
+ * looked up in its type system.
+ */
+public class ConstraintReplay {
+
+    @Option("[InferrableChecker] the fully-qualified name of the checker the constraints were generated with")
+    public static String checker;
+
+    @Option("[InferenceSolver] the fully-qualified name of the solver to replay the constraints with")
+    public static String solver;
+
+    @Option("Args to pass to solver, in the format key1=value,key2=value")
+    public static String solverArgs;
+
+    @Option("Additional javac options for setting up the type system, e.g. -Astubs=...")
+    public static String javacOptions;
+
+    @Option("Number of times to solve each file")
+    public static int repeat = 1;
+
+    public static void main(String[] args) throws IOException {
+        Options options = new Options("ConstraintReplay [options] constraint-file...", ConstraintReplay.class);
+        String[] files = options.parse(true, args);
+        if (checker == null || solver == null || files.length == 0 || repeat < 1) {
+            System.out.println("A required argument was not found.");
+            options.printUsage();
+            System.exit(1);
+        }
+
+        ReplayEnvironment environment = ReplayEnvironment.bootstrap(checker,
+                javacOptions == null ? new String[0] : javacOptions.trim().split("\\s+"));
+        Map<String, String> configuration = InferenceMain.parseSolverArgs(solverArgs);
+
+        for (String file : files) {
+            replay(environment, file, configuration);
+        }
+    }
+
+    private static void replay(ReplayEnvironment environment, String file, Map<String, String> configuration)
+            throws IOException {
+        for (int round = 0; round < repeat; round++) {
+            DefaultSlotManager slotManager = environment.newSlotManager(false);
+            long readStart = System.nanoTime();
+            List<Constraint> constraints = read(file, slotManager, environment.processingEnvironment,
+                    environment.constraintManager);
+            long readTime = System.nanoTime() - readStart;
+
+            InferenceSolver inferenceSolver = createSolver();
+            long solveStart = System.nanoTime();
+            InferenceResult result = inferenceSolver.solve(configuration, slotManager.getSlots(), constraints,
+                    environment.qualifierHierarchy, environment.processingEnvironment);
+            long solveTime = System.nanoTime() - solveStart;
+
+            System.out.println(String.format("%s [%d/%d]: %d slots, %d constraints, read %d ms, solve %d ms, %s",
+                    file, round + 1, repeat, slotManager.getNumberOfSlots(), constraints.size(),
+                    readTime / 1_000_000, solveTime / 1_000_000, describe(result)));
+        }
+    }
+
+    /**
+     * Read the slots and constraints of a constraint file. The slots are added to the given slot
+     * manager, and the constraints are created through the given constraint manager.
+     */
+    static List<Constraint> read(String file, DefaultSlotManager slotManager,
+            ProcessingEnvironment processingEnvironment, ConstraintManager constraintManager) throws IOException {
+        try (BinaryDeserializer deserializer = new BinaryDeserializer(new FileInputStream(file),
+                processingEnvironment, constraintManager)) {
+            for (Slot slot : deserializer.getSlots()) {
+                slotManager.addSlot(slot);
+            }
+            return deserializer.readConstraints();
+        }
+    }
+
+    private static String describe(InferenceResult result) {
+        if (result == null) {
+            return "no result";
+        }
+        if (result.hasSolution()) {
+            return "solved " + result.getSolutions().size() + " variables"
+                    + (result.isOptimal() ? "" : " (not optimal)");
+        }
+        Collection<Constraint> unsatisfiableConstraints = result.getUnsatisfiableConstraints();
+        return unsatisfiableConstraints == null ? "unsatisfiable"
+                : "unsatisfiable, " + unsatisfiableConstraints.size() + " constraints explained";
+    }
+
+    private static InferenceSolver createSolver() {
+        try {
+            return (InferenceSolver) Class.forName(solver, true, ClassLoader.getSystemClassLoader()).newInstance();
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
+            throw new BugInCF("Could not create solver " + solver, e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package checkers.inference.replay;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.type.TypeMirror;
+
+import org.checkerframework.common.basetype.BaseAnnotatedTypeFactory;
+import org.checkerframework.framework.type.QualifierHierarchy;
+import org.checkerframework.javacutil.AnnotationBuilder;
+
+import checkers.inference.DefaultSlotManager;
+import checkers.inference.InferenceMain;
+import checkers.inference.InferenceOptions;
+import checkers.inference.model.ConstraintManager;
+
+/**
+ * The type system a constraint file is replayed or generated against: the real type factory,
+ * qualifier hierarchy and processing environment of an InferenceChecker.
+ *
+ * These only exist inside a running compiler, so the environment is set up by running the
+ * InferenceChecker once on an empty class. Everything afterwards works on the constraints alone,
+ * without going through javac again. InferenceMain is a singleton, so there can only be one
+ * environment per JVM.
+ */
+public final class ReplayEnvironment {
+
+    public final BaseAnnotatedTypeFactory realTypeFactory;
+
+    public final QualifierHierarchy qualifierHierarchy;
+
+    public final ProcessingEnvironment processingEnvironment;
+
+    /** The qualifiers of the type system. */
+    public final List<AnnotationMirror> qualifiers;
+
+    /** Underlying type of synthetic variable slots. */
+    public final TypeMirror objectType;
+
+    /** A constraint manager that is not tied to a type factory, for recreating constraints. */
+    public final ConstraintManager constraintManager;
+
+    private ReplayEnvironment(InferenceMain inferenceMain) {
+        this.realTypeFactory = inferenceMain.getRealTypeFactory();
+        this.qualifierHierarchy = realTypeFactory.getQualifierHierarchy();
+        this.processingEnvironment = realTypeFactory.getProcessingEnv();
+
+        List<AnnotationMirror> qualifiers = new ArrayList<>();
+        for (Class<? extends Annotation> qual : realTypeFactory.getSupportedTypeQualifiers()) {
+            qualifiers.add(new AnnotationBuilder(processingEnvironment, qual).build());
+        }
+        this.qualifiers = Collections.unmodifiableList(qualifiers);
+        this.objectType = processingEnvironment.getElementUtils()
+                .getTypeElement(Object.class.getCanonicalName()).asType();
+
+        this.constraintManager = new ConstraintManager();
+        this.constraintManager.init(qualifierHierarchy);
+    }
+
+    /**
+     * Set up the environment of the given checker.
+     *
+     * @param checker fully-qualified name of the InferrableChecker
+     * @param javacOptions additional options for the bootstrap compilation, e.g. -Astubs=...
+     */
+    public static ReplayEnvironment bootstrap(String checker, String... javacOptions) throws IOException {
+        Path workDir = Files.createTempDirectory("inference-replay");
+        Path source = workDir.resolve("Empty.java");
+        Files.write(source, Collections.singletonList("class Empty { Object field; }"),
+                StandardCharsets.UTF_8);
+
+        InferenceOptions.checker = checker;
+        InferenceOptions.solver = null;
+        InferenceOptions.jsonFile = null;
+        InferenceOptions.logLevel = Level.WARNING.getName();
+        InferenceOptions.javacOptions = new ArrayList<>(Arrays.asList("-d", workDir.toString()));
+        InferenceOptions.javacOptions.addAll(Arrays.asList(javacOptions));
+        InferenceOptions.javaFiles = new String[] { source.toString() };
+
+        InferenceMain inferenceMain = InferenceMain.resetInstance();
+        inferenceMain.runCheckerFramework();
+
+        // Synthetic and replayed slots have no tree to look their default annotation up from.
+        InferenceOptions.makeDefaultsExplicit = true;
+
+        return new ReplayEnvironment(inferenceMain);
+    }
+
+    /**
+     * Create an empty slot manager and install it as the slot manager of InferenceMain, which
+     * solvers read the number of slots from. Slots of a replayed or generated workload must be
+     * added to it.
+     *
+     * @param storeConstants whether the slot manager pre-creates a constant slot per qualifier
+     */
+    public DefaultSlotManager newSlotManager(boolean storeConstants) {
+        Set<? extends AnnotationMirror> tops = qualifierHierarchy.getTopAnnotations();
+        DefaultSlotManager slotManager = new DefaultSlotManager(processingEnvironment, tops.iterator().next(),
+                realTypeFactory.getSupportedTypeQualifiers(), storeConstants);
+        InferenceMain.getInstance().setSlotManager(slotManager);
+        return slotManager;
+    }
+}
@@ -0,0 +1,264 @@
+package checkers.inference.replay;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import javax.lang.model.type.TypeKind;
+
+import org.checkerframework.javacutil.BugInCF;
+import org.plumelib.options.Option;
+import org.plumelib.options.Options;
+
+import checkers.inference.DefaultSlotManager;
+import checkers.inference.InferenceMain;
+import checkers.inference.model.AlwaysTrueConstraint;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.model.ArithmeticConstraint.ArithmeticOperationKind;
+import checkers.inference.model.ArithmeticVariableSlot;
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.LubVariableSlot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.model.serialization.BinarySerializer;
+
+/**
+ * Generates synthetic constraint workloads for a type system and writes them in the format of
+ * {@link BinarySerializer}, to be solved with {@link ConstraintReplay}.
+ *
+ * A workload has a fixed number of source variables, some of which get a random qualifier as
+ * constant lower bound. Constraints are then drawn according to a mix of weights per kind:
+ * <ul>
+ * <li>subtype: a subtype constraint between two variables</li>
+ * <li>equality: an equality constraint between two variables</li>
+ * <li>existential: an existential constraint on a new potential variable, whose constraint
+ *     applies to a variable as alternative if it does not exist</li>
+ * <li>comb: a new comb variable of two variables, its combine constraint and a subtype constraint
+ *     to a variable, like a viewpoint adapted field access</li>
+ * <li>lub: a new lub variable of two variables with both as subtypes, like a merge point</li>
+ * <li>arithmetic: a new arithmetic variable with an arithmetic constraint on two variables</li>
+ * </ul>
+ * Like in real code, most constraints are local: the second variable of a constraint is usually
+ * chosen among the {@value #LOCALITY_WINDOW} variables created around the first one.
+ */
+public class SyntheticWorkloadGenerator {
+
+    /** Kinds of constraints the generator draws from. */
+    public enum Kind {
+        SUBTYPE, EQUALITY, EXISTENTIAL, COMB, LUB, ARITHMETIC
+    }
+
+    @Option("[InferrableChecker] the fully-qualified name of the checker whose qualifiers to use")
+    public static String checker;
+
+    @Option("Additional javac options for setting up the type system, e.g. -Astubs=...")
+    public static String javacOptions;
+
+    @Option("[filename] the constraint file to write")
+    public static String output = "synthetic.cfic";
+
+    @Option("Number of source variables")
+    public static int variables = 10000;
+
+    @Option("Number of constraints to draw")
+    public static int constraints = 30000;
+
+    @Option("Seed of the random generator")
+    public static long seed = 42;
+
+    @Option("Weights of the constraint kinds, in the format kind=weight,kind=weight")
+    public static String mix = "subtype=60,equality=15,existential=5,comb=10,lub=8,arithmetic=2";
+
+    /** Every this many variables, one gets a constant lower bound. */
+    private static final int LOWER_BOUND_EVERY = 8;
+
+    private static final int LOCALITY_WINDOW = 32;
+
+    /** Percentage of constraints whose variables are picked within the locality window. */
+    private static final int LOCAL_PERCENT = 90;
+
+    private final ReplayEnvironment environment;
+
+    private final DefaultSlotManager slotManager;
+
+    private final ConstraintManager constraintManager;
+
+    private final Random random;
+
+    private final List<VariableSlot> variableSlots = new ArrayList<>();
+
+    private int nextLocation = 0;
+
+    public SyntheticWorkloadGenerator(ReplayEnvironment environment, DefaultSlotManager slotManager, long seed) {
+        this.environment = environment;
+        this.slotManager = slotManager;
+        this.constraintManager = environment.constraintManager;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = new Options("SyntheticWorkloadGenerator [options]", SyntheticWorkloadGenerator.class);
+        options.parse(true, args);
+        if (checker == null || variables < 2 || constraints < 0) {
+            System.out.println("A required argument was not found.");
+            options.printUsage();
+            System.exit(1);
+        }
+
+        ReplayEnvironment environment = ReplayEnvironment.bootstrap(checker,
+                javacOptions == null ? new String[0] : javacOptions.trim().split("\\s+"));
+        DefaultSlotManager slotManager = environment.newSlotManager(false);
+        SyntheticWorkloadGenerator generator = new SyntheticWorkloadGenerator(environment, slotManager, seed);
+        Set<Constraint> generated = generator.generate(variables, constraints, parseMix(mix));
+
+        try (BinarySerializer serializer = new BinarySerializer(new FileOutputStream(output), slotManager.getSlots())) {
+            serializer.writeAll(generated);
+        }
+        System.out.println("Wrote " + slotManager.getNumberOfSlots() + " slots and "
+                + generated.size() + " constraints to " + output);
+    }
+
+    /**
+     * Parse a mix in the format of {@link #mix} into weights per kind. Kinds that are not
+     * mentioned get weight 0.
+     */
+    public static Map<Kind, Integer> parseMix(String mix) {
+        Map<Kind, Integer> weights = new EnumMap<>(Kind.class);
+        for (Map.Entry<String, String> entry : InferenceMain.parseSolverArgs(mix).entrySet()) {
+            Kind kind;
+            try {
+                kind = Kind.valueOf(entry.getKey().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new BugInCF("Unknown constraint kind in mix: " + entry.getKey());
+            }
+            if (entry.getValue() == null) {
+                throw new BugInCF("Missing weight for constraint kind " + entry.getKey());
+            }
+            weights.put(kind, Integer.parseInt(entry.getValue()));
+        }
+        return weights;
+    }
+
+    /**
+     * Create the variables of a workload in the slot manager and draw its constraints.
+     * Constraints that are trivially true are dropped, as are duplicates, so the result may have
+     * fewer constraints than requested.
+     */
+    public Set<Constraint> generate(int variableCount, int constraintCount, Map<Kind, Integer> weights) {
+        int totalWeight = 0;
+        for (int weight : weights.values()) {
+            totalWeight += weight;
+        }
+        if (totalWeight <= 0) {
+            throw new BugInCF("The constraint mix must have a positive weight");
+        }
+
+        for (int i = 0; i < variableCount; i++) {
+            variableSlots.add(slotManager.createSourceVariableSlot(nextLocation(), environment.objectType));
+        }
+
+        Set<Constraint> result = new LinkedHashSet<>();
+        for (int i = 0; i < variableCount; i += LOWER_BOUND_EVERY) {
+            ConstantSlot bound = slotManager.createConstantSlot(
+                    environment.qualifiers.get(random.nextInt(environment.qualifiers.size())));
+            add(result, constraintManager.createSubtypeConstraint(bound, variableSlots.get(i)));
+        }
+
+        for (int i = 0; i < constraintCount; i++) {
+            generate(result, pickKind(weights, totalWeight));
+        }
+        return result;
+    }
+
+    private void generate(Set<Constraint> result, Kind kind) {
+        int first = random.nextInt(variableSlots.size());
+        VariableSlot left = variableSlots.get(first);
+        VariableSlot right = variableSlots.get(pickPartner(first));
+
+        switch (kind) {
+            case SUBTYPE:
+                add(result, constraintManager.createSubtypeConstraint(left, right));
+                break;
+
+            case EQUALITY:
+                add(result, constraintManager.createEqualityConstraint(left, right));
+                break;
+
+            case EXISTENTIAL: {
+                VariableSlot potential = slotManager.createSourceVariableSlot(nextLocation(), environment.objectType);
+                add(result, constraintManager.createExistentialConstraint(potential,
+                        Collections.singletonList(constraintManager.createSubtypeConstraint(potential, right)),
+                        Collections.singletonList(constraintManager.createSubtypeConstraint(left, right))));
+                break;
+            }
+
+            case COMB: {
+                CombVariableSlot comb = slotManager.createCombVariableSlot(left, right);
+                add(result, constraintManager.createCombineConstraint(left, right, comb));
+                add(result, constraintManager.createSubtypeConstraint(comb,
+                        variableSlots.get(pickPartner(first))));
+                break;
+            }
+
+            case LUB: {
+                LubVariableSlot lub = slotManager.createLubMergeVariableSlot(left, right);
+                add(result, constraintManager.createSubtypeConstraint(left, lub));
+                add(result, constraintManager.createSubtypeConstraint(right, lub));
+                break;
+            }
+
+            case ARITHMETIC: {
+                ArithmeticVariableSlot arithmetic = new ArithmeticVariableSlot(slotManager.getNumberOfSlots() + 1,
+                        AnnotationLocation.MISSING_LOCATION, TypeKind.INT);
+                slotManager.addSlot(arithmetic);
+                ArithmeticOperationKind[] operations = ArithmeticOperationKind.values();
+                add(result, constraintManager.createArithmeticConstraint(
+                        operations[random.nextInt(operations.length)], left, right, arithmetic));
+                break;
+            }
+        }
+    }
+
+    private Kind pickKind(Map<Kind, Integer> weights, int totalWeight) {
+        int pick = random.nextInt(totalWeight);
+        for (Map.Entry<Kind, Integer> entry : weights.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new BugInCF("Unreachable");
+    }
+
+    /** Pick a variable other than the given one, usually close to it. */
+    private int pickPartner(int index) {
+        int size = variableSlots.size();
+        int partner;
+        if (random.nextInt(100) >= LOCAL_PERCENT) {
+            partner = random.nextInt(size);
+        } else {
+            partner = Math.floorMod(index + random.nextInt(2 * LOCALITY_WINDOW + 1) - LOCALITY_WINDOW, size);
+        }
+        return partner == index ? (index + 1) % size : partner;
+    }
+
+    private ClassDeclLocation nextLocation() {
+        return new ClassDeclLocation("synthetic.C" + nextLocation++);
+    }
+
+    private static void add(Set<Constraint> result, Constraint constraint) {
+        if (!(constraint instanceof AlwaysTrueConstraint)) {
+            result.add(constraint);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import checkers.inference.DefaultInferenceResult;
 import checkers.inference.InferenceResult;
 import org.checkerframework.framework.type.QualifierHierarchy;
 import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.UserError;
 
 import java.util.Collection;
 import java.util.HashMap;
@@ -25,6 +26,8 @@ import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.Slot;
 import checkers.inference.model.serialization.CnfVecIntSerializer;
+import checkers.inference.solver.backend.maxsat.AnytimeMaxSatSearch;
+import checkers.inference.solver.util.SolverEnvironment;
 import org.sat4j.specs.ContradictionException;
 import org.sat4j.specs.TimeoutException;
 
@@ -44,6 +47,7 @@ public class MaxSat2TypeSolver implements InferenceSolver {
     private AnnotationMirror bottom;
     private CnfVecIntSerializer serializer;
     private SlotManager slotManager;
+    private SolverEnvironment solverEnvironment;
 
     @Override
     public InferenceResult solve(
@@ -60,6 +64,8 @@ public class MaxSat2TypeSolver implements InferenceSolver {
         this.top = qualHierarchy.getTopAnnotations().iterator().next();
         this.bottom = qualHierarchy.getBottomAnnotations().iterator().next();
         this.slotManager = InferenceMain.getInstance().getSlotManager();
+        this.solverEnvironment = new SolverEnvironment(configuration, processingEnvironment,
+                SolverEngine.getTimeBudget(configuration));
         this.serializer = new CnfVecIntSerializer(slotManager) {
             @Override
             protected boolean isTop(ConstantSlot constantSlot) {
@@ -96,7 +102,7 @@ public class MaxSat2TypeSolver implements InferenceSolver {
         solver.newVar(totalVars);
         solver.setExpectedNumberOfClauses(totalClauses);
 
-        // arbitrary timeout selected for no particular reason
+        // arbitrary timeout selected for no particular reason, unless there is a time budget
         solver.setTimeoutMs(1000000);
 
         VecInt lastClause = null;
@@ -122,12 +128,29 @@ public class MaxSat2TypeSolver implements InferenceSolver {
         }
 
         boolean isSatisfiable;
-        try {
-            // isSatisfiable() launches the solvers and waits until one of them finishes
-            isSatisfiable = solver.isSatisfiable();
-
-        } catch(TimeoutException te) {
-            throw new RuntimeException("MAX-SAT solving timeout! ");
+        int[] solution = null;
+        boolean optimal = true;
+        if (solverEnvironment.hasTimeBudget()) {
+            // Keep improving the model until it is optimal or the time budget runs out.
+            AnytimeMaxSatSearch search = new AnytimeMaxSatSearch(solver, solverEnvironment);
+            isSatisfiable = search.search();
+            if (!isSatisfiable && search.isTimedOut()) {
+                throw new UserError("The MaxSAT solver found no solution within the time budget.");
+            }
+            solution = search.getModel();
+            optimal = search.isOptimal();
+        } else {
+            try {
+                // isSatisfiable() launches the solvers and waits until one of them finishes
+                isSatisfiable = solver.isSatisfiable();
+                if (isSatisfiable) {
+                    solution = solver.model();
+                }
+                // The first model is only known to be optimal if there is nothing to optimize.
+                optimal = softClauses.isEmpty();
+            } catch(TimeoutException te) {
+                throw new RuntimeException("MAX-SAT solving timeout! ");
+            }
         }
 
         if (!isSatisfiable) {
@@ -137,7 +160,6 @@ public class MaxSat2TypeSolver implements InferenceSolver {
             return new DefaultInferenceResult(new HashSet<>());
         }
 
-        int[] solution = solver.model();
         // The following code decodes VecInt solution to the slot-annotation mappings
         final Map<Integer, AnnotationMirror> decodedSolution = new HashMap<>();
         final Map<Integer, Integer> existentialToPotentialIds = serializer.getExistentialToPotentialVar();
@@ -164,6 +186,6 @@ public class MaxSat2TypeSolver implements InferenceSolver {
             }
         }
 
-        return new DefaultInferenceResult(decodedSolution);
+        return new DefaultInferenceResult(decodedSolution, optimal);
     }
 }
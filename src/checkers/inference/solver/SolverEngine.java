@@ -1,25 +1,34 @@
 package checkers.inference.solver;
 
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.Map;
 
 import javax.annotation.processing.ProcessingEnvironment;
 
 import org.checkerframework.framework.type.QualifierHierarchy;
 import org.checkerframework.javacutil.BugInCF;
+import org.checkerframework.javacutil.UserError;
 
+import checkers.inference.DefaultInferenceResult;
+import checkers.inference.InferenceMain;
 import checkers.inference.InferenceResult;
 import checkers.inference.InferenceSolver;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.Slot;
+import checkers.inference.presolve.DomainPresolver;
+import checkers.inference.presolve.SlotDomains;
+import checkers.inference.presolve.SlotSubstitution;
 import checkers.inference.solver.backend.SolverFactory;
 import checkers.inference.solver.backend.maxsat.MaxSatSolver;
 import checkers.inference.solver.frontend.Lattice;
 import checkers.inference.solver.frontend.LatticeBuilder;
 import checkers.inference.solver.strategy.PlainSolvingStrategy;
+import checkers.inference.solver.strategy.PortfolioSolvingStrategy;
 import checkers.inference.solver.strategy.SolvingStrategy;
 import checkers.inference.solver.util.NameUtils;
 import checkers.inference.solver.util.PrintUtils;
+import checkers.inference.solver.util.SolutionReporter;
 import checkers.inference.solver.util.SolverArg;
 import checkers.inference.solver.util.SolverEnvironment;
 import checkers.inference.solver.util.Statistics;
@@ -68,13 +77,39 @@ public class SolverEngine implements InferenceSolver {
         /**
          * whether to write statistics & solutions in append mode or not
          */
-        noAppend;
+        noAppend,
+
+        /**
+         * time budget for solving in milliseconds, shared by all underlying solvers. When it runs
+         * out, the solvers return the best solution found so far, flagged as not optimal.
+         */
+        timeBudget,
+
+        /**
+         * whether to narrow the qualifiers of each slot by arc consistency before solving, see
+         * {@link DomainPresolver}. Slots left with one qualifier are replaced by constants, and
+         * the narrowed domains are handed to the solving strategy, which hands them to the format
+         * translators of its solvers.
+         */
+        domainPresolve;
     }
 
     private final String BACKEND_PACKAGE_PATH = SolverFactory.class.getPackage().getName();
     private final String STRATEGY_PACKAGE_NAME = SolvingStrategy.class.getPackage().getName();
 
     protected SolverFactory createSolverFactory() {
+        return createSolverFactory(solverName);
+    }
+
+    /**
+     * Creates the factory of the named backend, by default an instance of
+     * {@code checkers.inference.solver.backend.<name in lowercase>.<name>SolverFactory}. Type
+     * systems whose backends need a factory of their own, like Z3 and Z3Smt, override this, which
+     * also gives the backends of a {@link PortfolioSolvingStrategy} their factories.
+     *
+     * @param solverName the name of the backend, e.g. MaxSat
+     */
+    protected SolverFactory createSolverFactory(String solverName) {
         final String solverPackageName = BACKEND_PACKAGE_PATH + "." + solverName.toLowerCase();
         final String solverFactoryClassName = solverName + "SolverFactory";
 
@@ -92,6 +127,9 @@ public class SolverEngine implements InferenceSolver {
     }
 
     protected SolvingStrategy createSolvingStrategy(SolverFactory solverFactory) {
+        if (NameUtils.getStrategyName(PortfolioSolvingStrategy.class).equals(strategyName)) {
+            return new PortfolioSolvingStrategy(solverFactory, this::createSolverFactory);
+        }
         final String strategyClassName = strategyName + "SolvingStrategy";
 
         try {
@@ -107,21 +145,56 @@ public class SolverEngine implements InferenceSolver {
                                        Collection<Constraint> constraints, QualifierHierarchy qualHierarchy,
                                        ProcessingEnvironment processingEnvironment) {
 
-        SolverEnvironment solverEnvironment = new SolverEnvironment(configuration, processingEnvironment);
+        SolverEnvironment solverEnvironment = new SolverEnvironment(configuration, processingEnvironment,
+                getTimeBudget(configuration));
 
         configureSolverEngineArgs(solverEnvironment);
 
         //TODO: Add solve timing statistic.
         Lattice lattice = new LatticeBuilder().buildLattice(qualHierarchy, slots);
-        SolvingStrategy solvingStrategy = createSolvingStrategy();
-        InferenceResult inferenceResult = solvingStrategy.solve(solverEnvironment, slots, constraints, lattice);
+        InferenceResult inferenceResult = null;
+        Collection<Slot> solvedSlots = slots;
+        Collection<Constraint> solvedConstraints = constraints;
+        SlotDomains slotDomains = null;
+        SlotSubstitution fixedSlots = null;
+        if (solverEnvironment.getBoolArg(SolverEngineArg.domainPresolve)) {
+            slotDomains = new DomainPresolver(lattice).presolve(slots, constraints);
+            Statistics.addOrIncrementEntry("presolve_removed_qualifiers", slotDomains.getNumberOfRemovedTypes());
+            if (slotDomains.isUnsatisfiable()) {
+                inferenceResult = new DefaultInferenceResult(slotDomains.getUnsatisfiableConstraints());
+            } else {
+                fixedSlots = slotDomains.fixSingletons(constraints);
+                solvedConstraints = fixedSlots.substitute(new LinkedHashSet<>(constraints));
+                solvedSlots = fixedSlots.removeReplacedSlots(slots);
+                Statistics.addOrIncrementEntry("presolve_fixed_slots", fixedSlots.getNumberOfReplacedSlots());
+                if (!fixedSlots.getUnsatisfiableConstraints().isEmpty()) {
+                    inferenceResult = new DefaultInferenceResult(fixedSlots.getUnsatisfiableConstraints());
+                }
+            }
+        }
+
+        if (inferenceResult == null) {
+            SolvingStrategy solvingStrategy = createSolvingStrategy();
+            if (slotDomains != null) {
+                solvingStrategy.setSlotDomains(slotDomains);
+            }
+            inferenceResult = solvingStrategy.solve(solverEnvironment, solvedSlots, solvedConstraints, lattice);
+            if (fixedSlots != null && inferenceResult != null) {
+                inferenceResult = fixedSlots.mapBack(inferenceResult);
+            }
+        }
 
         if (inferenceResult == null) {
             throw new BugInCF("InferenceResult should never be null, but null result detected!");
         }
 
         if (inferenceResult.hasSolution()) {
-            PrintUtils.printSolutions(inferenceResult.getSolutions());
+            if (!inferenceResult.isOptimal()) {
+                InferenceMain.getInstance().logger.warning("Solving ran out of the time budget, "
+                        + "the solutions are the best ones found so far and may not be optimal.");
+                Statistics.addOrIncrementEntry("non_optimal_solutions", 1);
+            }
+            SolutionReporter.create(solverEnvironment).report(inferenceResult.getSolutions());
             if (writeSolutions) {
                 PrintUtils.writeSolutions(inferenceResult.getSolutions(), noAppend);
             }
@@ -135,6 +208,8 @@ public class SolverEngine implements InferenceSolver {
         if (collectStatistics) {
             Statistics.recordSlotsStatistics(slots);
             Statistics.recordConstraintsStatistics(constraints);
+            Statistics.recordDuplicateConstraintsStatistics(
+                    InferenceMain.getInstance().getConstraintManager().getDuplicateCounts());
             Map<String, Long> statistics = Statistics.getStatistics();
             PrintUtils.printStatistics(statistics);
             PrintUtils.writeStatistics(statistics, noAppend);
@@ -143,6 +218,27 @@ public class SolverEngine implements InferenceSolver {
         return inferenceResult;
     }
 
+    /**
+     * @return the milliseconds given by {@link SolverEngineArg#timeBudget}, or Long.MAX_VALUE if
+     * there is no time budget
+     */
+    public static long getTimeBudget(Map<String, String> configuration) {
+        String timeBudget = configuration.get(SolverEngineArg.timeBudget.name());
+        if (timeBudget == null) {
+            return Long.MAX_VALUE;
+        }
+        long budget;
+        try {
+            budget = Long.parseLong(timeBudget.trim());
+        } catch (NumberFormatException e) {
+            throw new UserError("The time budget must be a number of milliseconds, but got: " + timeBudget);
+        }
+        if (budget < 0) {
+            throw new UserError("The time budget must not be negative, but got: " + timeBudget);
+        }
+        return budget;
+    }
+
     /**
      * This method configures following arguments: solving strategy, and collectStatistics.
      *
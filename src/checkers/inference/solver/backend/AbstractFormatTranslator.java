@@ -2,6 +2,7 @@ package checkers.inference.solver.backend;
 
 import checkers.inference.model.ArithmeticConstraint;
 import checkers.inference.model.ArithmeticVariableSlot;
+import checkers.inference.model.BinaryConstraint;
 import checkers.inference.model.CombVariableSlot;
 import checkers.inference.model.CombineConstraint;
 import checkers.inference.model.ComparableConstraint;
@@ -18,10 +19,13 @@ import checkers.inference.model.PreferenceConstraint;
 import checkers.inference.model.RefinementVariableSlot;
 import checkers.inference.model.SubtypeConstraint;
 import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.presolve.SlotDomains;
 import checkers.inference.solver.backend.encoder.ArithmeticConstraintEncoder;
 import checkers.inference.solver.backend.encoder.ComparisonConstraintEncoder;
 import checkers.inference.solver.backend.encoder.ConstraintEncoderCoordinator;
 import checkers.inference.solver.backend.encoder.ConstraintEncoderFactory;
+import checkers.inference.solver.backend.encoder.EncodingCache;
+import checkers.inference.solver.backend.encoder.binary.BinaryConstraintEncoder;
 import checkers.inference.solver.backend.encoder.binary.ComparableConstraintEncoder;
 import checkers.inference.solver.backend.encoder.binary.EqualityConstraintEncoder;
 import checkers.inference.solver.backend.encoder.binary.InequalityConstraintEncoder;
@@ -68,6 +72,10 @@ import checkers.inference.solver.frontend.Lattice;
  * {@link checkers.inference.solver.backend.z3.Z3BitVectorFormatTranslator#initSolver(com.microsoft.z3.Optimize)}.
  * The general guideline is that {@link #finishInitializingEncoders() finishInitializingEncoders()} call
  * should always precede actual solving process.
+ * <p>
+ * Subclasses whose encodings of binary constraints can be filled in with other slots can override
+ * {@link #createEncodingCache()}, so that constraints that differ only in their variable slots are
+ * encoded once.
  *
  * @see ConstraintEncoderFactory
  * @see #finishInitializingEncoders()
@@ -130,10 +138,27 @@ public abstract class AbstractFormatTranslator<SlotEncodingT, ConstraintEncoding
      */
     protected ArithmeticConstraintEncoder<ConstraintEncodingT> arithmeticConstraintEncoder;
 
+    /**
+     * The qualifiers each slot can take after presolving, or null if every slot can take every
+     * qualifier of {@link #lattice}.
+     */
+    protected SlotDomains slotDomains;
+
+    /**
+     * The cache of the encodings of {@link BinaryConstraint}s by shape, or null if every constraint
+     * is encoded by its encoder.
+     */
+    protected EncodingCache<ConstraintEncodingT> encodingCache;
+
     public AbstractFormatTranslator(Lattice lattice) {
         this.lattice = lattice;
     }
 
+    @Override
+    public void setSlotDomains(SlotDomains slotDomains) {
+        this.slotDomains = slotDomains;
+    }
+
     /**
      * Finishes initializing encoders for subclasses of {@code AbstractFormatTranslator}. Subclasses of
      * {@code AbstractFormatTranslator} MUST call this method to finish initializing encoders at the end
@@ -153,6 +178,7 @@ public abstract class AbstractFormatTranslator<SlotEncodingT, ConstraintEncoding
         existentialConstraintEncoder = encoderFactory.createExistentialConstraintEncoder();
         implicationConstraintEncoder = encoderFactory.createImplicationConstraintEncoder();
         arithmeticConstraintEncoder = encoderFactory.createArithmeticConstraintEncoder();
+        encodingCache = createEncodingCache();
     }
 
     /**
@@ -163,28 +189,61 @@ public abstract class AbstractFormatTranslator<SlotEncodingT, ConstraintEncoding
      */
     protected abstract ConstraintEncoderFactory<ConstraintEncodingT> createConstraintEncoderFactory();
 
+    /**
+     * Creates the {@link EncodingCache} of the encodings of binary constraints. Subclasses whose
+     * encodings can be filled in with other variable slots should override this method.
+     *
+     * @return the cache, or null to encode every constraint by its encoder
+     */
+    protected EncodingCache<ConstraintEncodingT> createEncodingCache() {
+        return null;
+    }
+
+    /**
+     * Adds the hits and misses of the {@link EncodingCache} since the last call to the statistics.
+     */
+    public void recordEncodingCacheStatistics() {
+        if (encodingCache != null) {
+            encodingCache.recordStatistics();
+        }
+    }
+
+    /**
+     * Drops the hits and misses of the {@link EncodingCache} since the last call to
+     * {@link #recordEncodingCacheStatistics()}.
+     */
+    public void resetEncodingCacheStatistics() {
+        if (encodingCache != null) {
+            encodingCache.resetStatistics();
+        }
+    }
+
+    private ConstraintEncodingT dispatch(BinaryConstraint constraint,
+            BinaryConstraintEncoder<ConstraintEncodingT> encoder) {
+        if (encodingCache == null) {
+            return ConstraintEncoderCoordinator.dispatch(constraint, encoder);
+        }
+        return encodingCache.encode(constraint, encoder);
+    }
+
     @Override
     public ConstraintEncodingT serialize(SubtypeConstraint constraint) {
-        return subtypeConstraintEncoder == null ? null :
-                ConstraintEncoderCoordinator.dispatch(constraint, subtypeConstraintEncoder);
+        return subtypeConstraintEncoder == null ? null : dispatch(constraint, subtypeConstraintEncoder);
     }
 
     @Override
     public ConstraintEncodingT serialize(EqualityConstraint constraint) {
-        return equalityConstraintEncoder == null ? null :
-                ConstraintEncoderCoordinator.dispatch(constraint, equalityConstraintEncoder);
+        return equalityConstraintEncoder == null ? null : dispatch(constraint, equalityConstraintEncoder);
     }
 
     @Override
     public ConstraintEncodingT serialize(InequalityConstraint constraint) {
-        return inequalityConstraintEncoder == null ? null :
-                ConstraintEncoderCoordinator.dispatch(constraint, inequalityConstraintEncoder);
+        return inequalityConstraintEncoder == null ? null : dispatch(constraint, inequalityConstraintEncoder);
     }
 
     @Override
     public ConstraintEncodingT serialize(ComparableConstraint constraint) {
-        return comparableConstraintEncoder == null ? null :
-                ConstraintEncoderCoordinator.dispatch(constraint, comparableConstraintEncoder);
+        return comparableConstraintEncoder == null ? null : dispatch(constraint, comparableConstraintEncoder);
     }
 
     @Override
@@ -4,6 +4,7 @@ import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
 
 import checkers.inference.model.Serializer;
+import checkers.inference.presolve.SlotDomains;
 
 /**
  * Translator is responsible for encoding/decoding work for Backend.
@@ -27,4 +28,15 @@ public interface FormatTranslator<SlotEncodingT, ConstraintEncodingT, SlotSoluti
      * @return AnnotationMirror represent this solution
      */
     AnnotationMirror decodeSolution(SlotSolutionT solution, ProcessingEnvironment processingEnvironment);
+
+    /**
+     * Hands the domains narrowed by {@link checkers.inference.presolve.DomainPresolver} to this
+     * translator, so that it can leave out the qualifiers a slot cannot take. Translators that
+     * always encode the full lattice ignore them.
+     *
+     * @param slotDomains the qualifiers each slot can take, or null if every slot can take every
+     * qualifier
+     */
+    default void setSlotDomains(SlotDomains slotDomains) {
+    }
 }
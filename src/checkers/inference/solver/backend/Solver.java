@@ -10,6 +10,7 @@ import javax.lang.model.element.AnnotationMirror;
 import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.Slot;
+import checkers.inference.presolve.SlotDomains;
 import checkers.inference.solver.frontend.Lattice;
 import checkers.inference.solver.util.SolverEnvironment;
 
@@ -69,6 +70,16 @@ public abstract class Solver<T extends FormatTranslator<?, ?, ?>> {
      */
     protected final Lattice lattice;
 
+    /**
+     * Whether the solution of the last {@link #solve()} is optimal. A concrete solver sets it to
+     * false if it returns the best solution found before the time budget of the
+     * {@link SolverEnvironment} ran out.
+     */
+    protected boolean optimal = true;
+
+    /** Set by {@link #cancel()}, possibly from another thread. */
+    private volatile boolean cancelled = false;
+
     public Solver(SolverEnvironment solverEnvironment, Collection<Slot> slots,
             Collection<Constraint> constraints, T formatTranslator, Lattice lattice) {
         this.solverEnvironment = solverEnvironment;
@@ -79,6 +90,17 @@ public abstract class Solver<T extends FormatTranslator<?, ?, ?>> {
         this.lattice = lattice;
     }
 
+    /**
+     * Hands the domains narrowed by {@link checkers.inference.presolve.DomainPresolver} to the
+     * format translator.  Must be called before {@link #solve()}.
+     *
+     * @param slotDomains the qualifiers each slot can take, or null if every slot can take every
+     * qualifier
+     */
+    public void setSlotDomains(SlotDomains slotDomains) {
+        formatTranslator.setSlotDomains(slotDomains);
+    }
+
     /**
      * A concrete solver adapter needs to override this method and implements its own
      * constraint-solving strategy. In general, there will be three steps in this method:
@@ -95,6 +117,30 @@ public abstract class Solver<T extends FormatTranslator<?, ?, ?>> {
      */
     public abstract Map<Integer, AnnotationMirror> solve();
 
+    /**
+     * @return whether the solution of the last {@link #solve()} is known to be optimal
+     */
+    public boolean isOptimal() {
+        return optimal;
+    }
+
+    /**
+     * Asks a running {@link #solve()} to stop as soon as it can, e.g. because another solver
+     * already answered. This is cooperative: concrete solvers check {@link #isCancelled()} or
+     * stop their underlying solver when cancelled, and whatever the cancelled {@link #solve()}
+     * returns is meaningless. May be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return whether {@link #cancel()} was called
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
     /**
      * Returns a set of constraints that are not solvable together.
      */
@@ -0,0 +1,176 @@
+package checkers.inference.solver.backend.encoder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import checkers.inference.model.BinaryConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.binary.BinaryConstraintEncoder;
+import checkers.inference.solver.util.Statistics;
+
+/**
+ * A cache of the encodings of {@link BinaryConstraint}s by their shape, shared by all constraints
+ * that differ only in their variable slots.
+ * <p>
+ * The shape of a constraint is its class, the class of each variable slot and the value of each
+ * constant slot. Constant slots are unique per qualifier in the
+ * {@link checkers.inference.SlotManager}, so the id of a constant slot stands for its value. The
+ * first constraint of a shape is encoded by its encoder, and its encoding is kept as the template
+ * of the shape, with the variable slots it was encoded for. Every other constraint of the shape
+ * gets the template with its own variable slots filled in by {@link #fillIn}, which is up to the
+ * backend.
+ * <p>
+ * Constraints whose two slots are the same variable are never cached, since a template of them
+ * cannot tell its slots apart.
+ *
+ * @see checkers.inference.solver.backend.AbstractFormatTranslator#createEncodingCache()
+ */
+public abstract class EncodingCache<ConstraintEncodingT> {
+
+    /** The template of each shape, or null for shapes whose encoding can't be filled in. */
+    private final Map<Shape, Template<ConstraintEncodingT>> templates = new HashMap<>();
+
+    /** The numbers of encodings filled in from a template, and of encodings by encoders. */
+    private long hits, misses;
+
+    public ConstraintEncodingT encode(BinaryConstraint constraint, BinaryConstraintEncoder<ConstraintEncodingT> encoder) {
+        Slot first = constraint.getFirst();
+        Slot second = constraint.getSecond();
+        if (first instanceof VariableSlot && second instanceof VariableSlot && first.getId() == second.getId()) {
+            misses++;
+            return ConstraintEncoderCoordinator.dispatch(constraint, encoder);
+        }
+
+        Shape shape = new Shape(constraint, first, second);
+        VariableSlot[] slots = variableSlots(first, second);
+        Template<ConstraintEncodingT> template = templates.get(shape);
+        if (template != null) {
+            ConstraintEncodingT encoding = fillIn(template.encoding, template.slots, slots);
+            if (encoding != null) {
+                hits++;
+                return encoding;
+            }
+            templates.put(shape, null);
+        }
+
+        misses++;
+        ConstraintEncodingT encoding = ConstraintEncoderCoordinator.dispatch(constraint, encoder);
+        if (encoding != null && !templates.containsKey(shape)) {
+            templates.put(shape, new Template<>(toTemplate(encoding), slots));
+        }
+        return encoding;
+    }
+
+    /**
+     * Fills the given variable slots into the template of a shape.
+     *
+     * @param template the encoding of the first constraint of the shape, as returned by
+     * {@link #toTemplate}
+     * @param templateSlots the variable slots of the first constraint, in order
+     * @param slots the variable slots of the constraint to encode, in the same order
+     * @return the encoding of the constraint, or null if the template can't be filled in, e.g.
+     * because its encoder introduced variables of its own. The shape is then no longer cached
+     */
+    protected abstract ConstraintEncodingT fillIn(ConstraintEncodingT template, VariableSlot[] templateSlots,
+            VariableSlot[] slots);
+
+    /**
+     * @return the template to keep for the encoding, which is also handed out to the solver.
+     * Backends whose encodings are changed by the solver return a copy
+     */
+    protected ConstraintEncodingT toTemplate(ConstraintEncodingT encoding) {
+        return encoding;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Adds the hits and misses since the last call to the statistics, as encoding_cache_hits and
+     * encoding_cache_misses. The hit rate is hits / (hits + misses).
+     */
+    public void recordStatistics() {
+        Statistics.addOrIncrementEntry("encoding_cache_hits", hits);
+        Statistics.addOrIncrementEntry("encoding_cache_misses", misses);
+        resetStatistics();
+    }
+
+    /**
+     * Drops the hits and misses since the last call to {@link #recordStatistics()}, e.g. of a
+     * second encoding of the same constraints.
+     */
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+    }
+
+    private static VariableSlot[] variableSlots(Slot first, Slot second) {
+        if (first instanceof VariableSlot) {
+            if (second instanceof VariableSlot) {
+                return new VariableSlot[] {(VariableSlot) first, (VariableSlot) second};
+            }
+            return new VariableSlot[] {(VariableSlot) first};
+        } else if (second instanceof VariableSlot) {
+            return new VariableSlot[] {(VariableSlot) second};
+        }
+        return new VariableSlot[0];
+    }
+
+    private static class Template<ConstraintEncodingT> {
+        final ConstraintEncodingT encoding;
+        final VariableSlot[] slots;
+
+        Template(ConstraintEncodingT encoding, VariableSlot[] slots) {
+            this.encoding = encoding;
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * The class of a constraint, and for each of its slots the class of the variable slot or the
+     * id of the constant slot.
+     */
+    private static final class Shape {
+        private final Class<? extends Constraint> constraintKind;
+        private final Object first;
+        private final Object second;
+        private final int hashCode;
+
+        Shape(BinaryConstraint constraint, Slot first, Slot second) {
+            this.constraintKind = ((Constraint) constraint).getClass();
+            this.first = kind(first);
+            this.second = kind(second);
+            this.hashCode = Objects.hash(constraintKind, this.first, this.second);
+        }
+
+        private static Object kind(Slot slot) {
+            return slot instanceof ConstantSlot ? Integer.valueOf(slot.getId()) : slot.getClass();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Shape)) {
+                return false;
+            }
+            Shape shape = (Shape) o;
+            return constraintKind == shape.constraintKind && first.equals(shape.first) && second.equals(shape.second);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -13,6 +13,7 @@ import java.nio.file.Paths;
 
 import javax.lang.model.element.AnnotationMirror;
 
+import org.checkerframework.javacutil.UserError;
 import org.sat4j.core.VecInt;
 
 import checkers.inference.model.Constraint;
@@ -93,8 +94,13 @@ public class LingelingSolver extends MaxSatSolver {
                 CNFData.getAbsolutePath() + "/cnfdata" + localNth + ".txt" };
 
         final List<Integer> resultList = new ArrayList<Integer>();
-        ExternalSolverUtils.runExternalSolver(command, stdOut -> parseStdOut(stdOut, resultList),
-                stdErr -> ExternalSolverUtils.printStdStream(System.err, stdErr));
+        int exitStatus = ExternalSolverUtils.runExternalSolver(command, stdOut -> parseStdOut(stdOut, resultList),
+                stdErr -> ExternalSolverUtils.printStdStream(System.err, stdErr),
+                solverEnvironment.getRemainingTimeMillis());
+        if (exitStatus == ExternalSolverUtils.TIMEOUT_EXIT_STATUS) {
+            // Lingeling only prints a model once it is done, there is no best model so far.
+            throw new UserError("The Lingeling solver found no solution within the time budget.");
+        }
 
         // Java 8 style of List<Integer> to int[] conversion
         return resultList.stream().mapToInt(Integer::intValue).toArray();
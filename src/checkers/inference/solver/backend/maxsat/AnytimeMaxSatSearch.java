@@ -0,0 +1,123 @@
+package checkers.inference.solver.backend.maxsat;
+
+import org.sat4j.maxsat.WeightedMaxSatDecorator;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.TimeoutException;
+
+import checkers.inference.solver.util.SolverEnvironment;
+
+/**
+ * Searches for an optimal model of a weighted MaxSAT problem within the time budget of a
+ * {@link SolverEnvironment}, or until it is proven optimal if there is no time budget.
+ *
+ * The search asks the solver for a model, then repeatedly excludes every model that is not
+ * strictly better than the last one, until the solver proves that there is no better model or
+ * the budget runs out.  In the latter case the last model is the best one found so far, and is
+ * returned flagged as not optimal.
+ */
+public class AnytimeMaxSatSearch {
+
+    private final WeightedMaxSatDecorator solver;
+
+    private final SolverEnvironment solverEnvironment;
+
+    /** The best model found so far, or null. */
+    private int[] model;
+
+    private boolean optimal;
+
+    private boolean timedOut;
+
+    /** Set by {@link #cancel()}, possibly from another thread. */
+    private volatile boolean cancelled;
+
+    /** The number of models found, each better than the one before. */
+    private int improvements;
+
+    public AnytimeMaxSatSearch(WeightedMaxSatDecorator solver, SolverEnvironment solverEnvironment) {
+        this.solver = solver;
+        this.solverEnvironment = solverEnvironment;
+    }
+
+    /**
+     * Runs the search until it proves the model optimal or the time budget runs out.  Without a
+     * time budget, each call to the solver is limited by the timeout the solver was configured with.
+     *
+     * @return true if a model was found, false if the clauses are unsatisfiable or the time budget
+     * ran out before the first model was found
+     * @see #isTimedOut()
+     */
+    public boolean search() {
+        model = null;
+        optimal = false;
+        timedOut = false;
+        improvements = 0;
+
+        try {
+            while (true) {
+                if (cancelled || solverEnvironment.isTimeBudgetExhausted()) {
+                    timedOut = true;
+                    break;
+                }
+                if (solverEnvironment.hasTimeBudget()) {
+                    // A timeout of 0 means no timeout to sat4j.
+                    solver.setTimeoutMs(Math.max(1, solverEnvironment.getRemainingTimeMillis()));
+                }
+                if (!solver.admitABetterSolution()) {
+                    // Either unsatisfiable, or the last model was optimal.
+                    optimal = model != null;
+                    break;
+                }
+                model = solver.model();
+                improvements++;
+                try {
+                    solver.discardCurrentSolution();
+                } catch (ContradictionException e) {
+                    // No model can be better than this one.
+                    optimal = true;
+                    break;
+                }
+            }
+        } catch (TimeoutException e) {
+            timedOut = true;
+        }
+        return model != null;
+    }
+
+    /**
+     * Stops a running {@link #search()} as if the time budget ran out.  May be called from any
+     * thread.
+     */
+    public void cancel() {
+        cancelled = true;
+        solver.expireTimeout();
+    }
+
+    /**
+     * @return the best model found by the last {@link #search()}, or null if none was found
+     */
+    public int[] getModel() {
+        return model;
+    }
+
+    /**
+     * @return true if the last {@link #search()} proved its model optimal
+     */
+    public boolean isOptimal() {
+        return optimal;
+    }
+
+    /**
+     * @return true if the time budget ran out during the last {@link #search()}
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @return the number of models the last {@link #search()} found, each better than the last
+     */
+    public int getImprovements() {
+        return improvements;
+    }
+}
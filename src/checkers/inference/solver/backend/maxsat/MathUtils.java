@@ -27,11 +27,23 @@ public class MathUtils {
         return column + row * length;
     }
 
+    /**
+     * The inverse of {@link #mapIdToMatrixEntry} for the slot id.
+     * @param var a boolean variable in SAT solver, or its negation
+     * @param lattice target lattice
+     * @return the slot id of the varSlot the variable belongs to
+     */
     public static int getSlotId(int var, Lattice lattice) {
-        return (Math.abs(var) / lattice.numTypes + 1);
+        return (Math.abs(var) - 1) / lattice.numTypes + 1;
     }
 
+    /**
+     * The inverse of {@link #mapIdToMatrixEntry} for the type.
+     * @param var a boolean variable in SAT solver, or its negation
+     * @param lattice target lattice
+     * @return the integer representation of the type the variable stands for
+     */
     public static int getIntRep(int var, Lattice lattice) {
-        return Math.abs(var) - (Math.abs(var) / lattice.numTypes) * lattice.numTypes;
+        return (Math.abs(var) - 1) % lattice.numTypes;
     }
 }
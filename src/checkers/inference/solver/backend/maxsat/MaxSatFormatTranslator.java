@@ -9,9 +9,13 @@ import java.util.Map;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
 
+import checkers.inference.InferenceMain;
 import checkers.inference.solver.backend.AbstractFormatTranslator;
 import checkers.inference.solver.backend.encoder.ConstraintEncoderFactory;
+import checkers.inference.solver.backend.encoder.EncodingCache;
 import checkers.inference.solver.backend.maxsat.encoder.MaxSATConstraintEncoderFactory;
+import checkers.inference.solver.backend.maxsat.encoder.MaxSATEncodingCache;
+import checkers.inference.solver.backend.maxsat.encoder.MaxSATImplicationConstraintEncoder;
 import org.checkerframework.javacutil.AnnotationUtils;
 import org.sat4j.core.VecInt;
 
@@ -38,6 +42,16 @@ public class MaxSatFormatTranslator extends AbstractFormatTranslator<VecInt[], V
      */
     protected final Map<Integer, AnnotationMirror> intToType;
 
+    /**
+     * Allocates the auxiliary variables used by the encoders of this translator. Created on first
+     * use, when every slot exists.
+     */
+    private VariableAllocator variableAllocator;
+
+    /** How implication constraints are encoded. */
+    private MaxSATImplicationConstraintEncoder.Encoding implicationEncoding =
+            MaxSATImplicationConstraintEncoder.Encoding.SMALLEST;
+
     public MaxSatFormatTranslator(Lattice lattice) {
         super(lattice);
         // Initialize mappings between type and int.
@@ -61,18 +75,57 @@ public class MaxSatFormatTranslator extends AbstractFormatTranslator<VecInt[], V
         return new MaxSATConstraintEncoderFactory(lattice, typeToInt, this);
     }
 
+    @Override
+    protected EncodingCache<VecInt[]> createEncodingCache() {
+        return new MaxSATEncodingCache(lattice);
+    }
+
+    /**
+     * @return the allocator of the auxiliary variables of this translator, whose fresh variables
+     * are numbered above the variables of every slot
+     */
+    public VariableAllocator getVariableAllocator() {
+        if (variableAllocator == null) {
+            int numberOfSlots = InferenceMain.getInstance().getSlotManager().getNumberOfSlots();
+            variableAllocator = new VariableAllocator(numberOfSlots * lattice.numTypes);
+        }
+        return variableAllocator;
+    }
+
+    public void setVariableAllocator(VariableAllocator variableAllocator) {
+        this.variableAllocator = variableAllocator;
+    }
+
+    public MaxSATImplicationConstraintEncoder.Encoding getImplicationEncoding() {
+        return implicationEncoding;
+    }
+
+    public void setImplicationEncoding(MaxSATImplicationConstraintEncoder.Encoding implicationEncoding) {
+        this.implicationEncoding = implicationEncoding;
+    }
+
     /**
      * generate well form clauses such that there is one and only one beta value
      * can be true.
      *
+     * If presolving narrowed the domain of the slot, the clauses only range over the qualifiers
+     * of its domain, and the variables of the other qualifiers are set to false by unit clauses,
+     * which sat4j removes before searching.
      */
     public void generateWellFormednessClauses(List<VecInt> wellFormednessClauses, Integer varSlotId) {
-        int[] leastOneIsTrue = new int[lattice.numTypes];
+        List<Integer> varList = new ArrayList<Integer>(lattice.numTypes);
         for (Integer i : intToType.keySet()) {
-            leastOneIsTrue[i] = MathUtils.mapIdToMatrixEntry(varSlotId, i.intValue(), lattice);
+            if (slotDomains == null || slotDomains.isAllowed(varSlotId, i)) {
+                varList.add(i);
+            } else {
+                wellFormednessClauses.add(VectorUtils.asVec(-MathUtils.mapIdToMatrixEntry(varSlotId, i, lattice)));
+            }
+        }
+        int[] leastOneIsTrue = new int[varList.size()];
+        for (int i = 0; i < varList.size(); i++) {
+            leastOneIsTrue[i] = MathUtils.mapIdToMatrixEntry(varSlotId, varList.get(i), lattice);
         }
         wellFormednessClauses.add(VectorUtils.asVec(leastOneIsTrue));
-        List<Integer> varList = new ArrayList<Integer>(intToType.keySet());
         for (int i = 0; i < varList.size(); i++) {
             for (int j = i + 1; j < varList.size(); j++) {
                 VecInt vecInt = new VecInt(2);
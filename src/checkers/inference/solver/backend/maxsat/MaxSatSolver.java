@@ -1,10 +1,11 @@
 package checkers.inference.solver.backend.maxsat;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -13,15 +14,14 @@ import java.util.Set;
 import javax.lang.model.element.AnnotationMirror;
 
 import org.checkerframework.javacutil.BugInCF;
+import org.checkerframework.javacutil.UserError;
 import org.plumelib.util.Pair;
 import org.sat4j.core.VecInt;
-import org.sat4j.maxsat.SolverFactory;
 import org.sat4j.maxsat.WeightedMaxSatDecorator;
+import org.sat4j.minisat.core.ICDCL;
 import org.sat4j.pb.IPBSolver;
 import org.sat4j.specs.ContradictionException;
-import org.sat4j.specs.IConstr;
-import org.sat4j.tools.xplain.DeletionStrategy;
-import org.sat4j.tools.xplain.Xplain;
+import org.sat4j.specs.TimeoutException;
 
 import checkers.inference.InferenceMain;
 import checkers.inference.SlotManager;
@@ -29,6 +29,7 @@ import checkers.inference.model.Constraint;
 import checkers.inference.model.PreferenceConstraint;
 import checkers.inference.model.Slot;
 import checkers.inference.solver.backend.Solver;
+import checkers.inference.solver.backend.maxsat.encoder.MaxSATImplicationConstraintEncoder;
 import checkers.inference.solver.frontend.Lattice;
 import checkers.inference.solver.util.FileUtils;
 import checkers.inference.solver.util.SolverArg;
@@ -48,9 +49,26 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
         /**
          * Whether should print the CNF formulas.
          */
-        outputCNF;
+        outputCNF,
+
+        /**
+         * How implication constraints are encoded: cartesian, auxiliaryVariables, or smallest
+         * (the default), which picks whichever of the two gives fewer clauses.
+         */
+        implicationEncoding,
+
+        /**
+         * Renumber the slots and order the clauses along the constraint graph: bfs, breadth-first
+         * from the constants, or rcm, reverse Cuthill-McKee. The initial activities of the
+         * variables are then seeded from the graph, which needs a single sat4j solver instead of
+         * two racing ones. By default the encoding is solved as it is.
+         */
+        variableOrder;
     }
 
+    /** The timeout of each call to sat4j if there is no time budget. */
+    private static final int SAT4J_TIMEOUT_MS = 1000000;
+
     protected final SlotManager slotManager;
     protected final List<VecInt> hardClauses = new LinkedList<>();
     private List<VecInt> wellFormednessClauses = new LinkedList<>();
@@ -59,6 +77,12 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
     protected final File CNFData = new File(new File("").getAbsolutePath() + "/cnfData");
     protected StringBuilder CNFInput = new StringBuilder();
 
+    /** The sat4j solver while it runs, so that {@link #cancel()} can stop it. */
+    private volatile WeightedMaxSatDecorator runningSolver;
+
+    /** The anytime search while it runs, so that {@link #cancel()} can stop it. */
+    private volatile AnytimeMaxSatSearch runningSearch;
+
     private long serializationStart;
     private long serializationEnd;
     protected long solvingStart;
@@ -69,6 +93,7 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
         super(solverEnvironment, slots, constraints, formatTranslator,
                 lattice);
         this.slotManager = InferenceMain.getInstance().getSlotManager();
+        formatTranslator.setImplicationEncoding(getImplicationEncoding());
 
         if (shouldOutputCNF()) {
             CNFData.mkdir();
@@ -79,8 +104,6 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
     public Map<Integer, AnnotationMirror> solve() {
 
         Map<Integer, AnnotationMirror> solutions = null;
-        final WeightedMaxSatDecorator solver = new WeightedMaxSatDecorator(
-                org.sat4j.pb.SolverFactory.newBoth());
 
         this.serializationStart = System.currentTimeMillis();
         // Serialization step:
@@ -93,14 +116,50 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
             writeCNFInput();
         }
         // printClauses();
+        final VariableOrdering ordering = createVariableOrdering();
+        if (ordering != null) {
+            applyVariableOrdering(ordering);
+        }
+        final WeightedMaxSatDecorator solver = createSatSolver(ordering);
         configureSatSolver(solver);
 
+        optimal = true;
+        boolean timedOut = false;
         try {
+            // Without a time budget, a single check gives the first model sat4j finds.
+            boolean optimize = solverEnvironment.hasTimeBudget();
+            boolean hasSoftClauses = !softClauses.isEmpty();
             addClausesToSolver(solver);
             cleanUpClauses();
 
             this.solvingStart = System.currentTimeMillis();
-            boolean isSatisfiable = solver.isSatisfiable();
+            boolean isSatisfiable;
+            int[] model = null;
+            if (optimize) {
+                AnytimeMaxSatSearch search = new AnytimeMaxSatSearch(solver, solverEnvironment);
+                runningSearch = search;
+                if (isCancelled()) {
+                    return null;
+                }
+                isSatisfiable = search.search();
+                model = search.getModel();
+                optimal = search.isOptimal();
+                timedOut = search.isTimedOut();
+                Statistics.addOrIncrementEntry("sat_improved_models", search.getImprovements());
+            } else {
+                runningSolver = solver;
+                // A cancel before this check would not reach sat4j, which resets its timeout
+                // when the search starts.
+                if (isCancelled()) {
+                    return null;
+                }
+                isSatisfiable = solver.isSatisfiable();
+                if (isSatisfiable) {
+                    model = solver.model();
+                }
+                // The first model is only known to be optimal if there is nothing to optimize.
+                optimal = !hasSoftClauses;
+            }
             this.solvingEnd = System.currentTimeMillis();
 
             long solvingTime = solvingEnd - solvingStart;
@@ -108,10 +167,14 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
 
             Statistics.addOrIncrementEntry("sat_serialization_time(ms)", serializationTime);
             Statistics.addOrIncrementEntry("sat_solving_time(ms)", solvingTime);
+            Number conflicts = solver.getStat().get("conflicts");
+            if (conflicts != null) {
+                Statistics.addOrIncrementEntry("sat_conflicts", conflicts.longValue());
+            }
 
             if (isSatisfiable) {
-                solutions = decode(solver.model());
-            } else {
+                solutions = decode(ordering != null ? ordering.fromSolverModel(model) : model);
+            } else if (!timedOut) {
                 System.out.println("Not solvable!");
                 // Lazily initialize unsatisfiableConstraintExplainer when there is no solution
                 unsatisfiableConstraintExplainer = new MaxSATUnsatisfiableConstraintExplainer();
@@ -122,12 +185,38 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
             // This case indicates that constraints are not solvable, too. This is normal so continue
             // execution and let solver strategy to explain why there is no solution
             unsatisfiableConstraintExplainer = new MaxSATUnsatisfiableConstraintExplainer();
+        } catch (TimeoutException e) {
+            if (!isCancelled()) {
+                throw new UserError("The MaxSAT solver found no solution within sat4j's timeout of "
+                        + SAT4J_TIMEOUT_MS + " ms.");
+            }
+            // Stopped by cancel(), the result doesn't matter.
         } catch (Exception e) {
             throw new BugInCF("Unexpected error occurred!", e);
+        } finally {
+            runningSolver = null;
+            runningSearch = null;
+        }
+
+        if (solutions == null && timedOut && !isCancelled()) {
+            throw new UserError("The MaxSAT solver found no solution within the time budget.");
         }
         return solutions;
     }
 
+    @Override
+    public void cancel() {
+        super.cancel();
+        AnytimeMaxSatSearch search = runningSearch;
+        if (search != null) {
+            search.cancel();
+        }
+        WeightedMaxSatDecorator solver = runningSolver;
+        if (solver != null) {
+            solver.expireTimeout();
+        }
+    }
+
     /**
      * Convert constraints to list of VecInt.
      */
@@ -152,6 +241,74 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
                 }
             }
         }
+        formatTranslator.recordEncodingCacheStatistics();
+    }
+
+    /**
+     * @return the ordering given by {@link MaxSatSolverArg#variableOrder}, or null if there is none
+     */
+    protected VariableOrdering createVariableOrdering() {
+        String order = solverEnvironment.getArg(MaxSatSolverArg.variableOrder);
+        if (order == null) {
+            return null;
+        }
+        VariableOrdering.Strategy strategy;
+        switch (order.toLowerCase()) {
+            case "bfs":
+                strategy = VariableOrdering.Strategy.BFS;
+                break;
+            case "rcm":
+                strategy = VariableOrdering.Strategy.RCM;
+                break;
+            default:
+                throw new UserError("Unknown variable order: " + order + ", expected bfs or rcm");
+        }
+        return VariableOrdering.fromConstraints(constraints, slotManager.getNumberOfSlots(),
+                lattice.numTypes, strategy);
+    }
+
+    /**
+     * Renumbers the variables of all clauses for the solver, and sorts the hard clauses in the
+     * order of the slots.
+     */
+    private void applyVariableOrdering(VariableOrdering ordering) {
+        List<VecInt> orderedClauses = new ArrayList<>(hardClauses.size() + wellFormednessClauses.size());
+        for (VecInt hardClause : hardClauses) {
+            orderedClauses.add(ordering.toSolverClause(hardClause));
+        }
+        for (VecInt wellFormednessClause : wellFormednessClauses) {
+            orderedClauses.add(ordering.toSolverClause(wellFormednessClause));
+        }
+        // Well-formedness clauses are hard clauses too, and go next to the clauses of their slot.
+        VariableOrdering.sortClauses(orderedClauses);
+        hardClauses.clear();
+        hardClauses.addAll(orderedClauses);
+        wellFormednessClauses.clear();
+
+        List<Pair<VecInt, Integer>> orderedSoftClauses = new ArrayList<>(softClauses.size());
+        for (Pair<VecInt, Integer> softClause : softClauses) {
+            orderedSoftClauses.add(new Pair<VecInt, Integer>(ordering.toSolverClause(softClause.a), softClause.b));
+        }
+        softClauses.clear();
+        softClauses.addAll(orderedSoftClauses);
+    }
+
+    /**
+     * @param ordering the ordering of the variables, or null
+     * @return the sat4j solver; with an ordering, one whose initial variable activities are
+     * seeded from it
+     */
+    private WeightedMaxSatDecorator createSatSolver(VariableOrdering ordering) {
+        if (ordering == null) {
+            return new WeightedMaxSatDecorator(org.sat4j.pb.SolverFactory.newBoth());
+        }
+        IPBSolver pbSolver = org.sat4j.pb.SolverFactory.newDefault();
+        if (pbSolver instanceof ICDCL) {
+            ICDCL<?> cdclSolver = (ICDCL<?>) pbSolver;
+            cdclSolver.setOrder(new SeededVarOrderHeap(cdclSolver.getOrder().getPhaseSelectionStrategy(),
+                    ordering, formatTranslator.getVariableAllocator().getLastVariable()));
+        }
+        return new WeightedMaxSatDecorator(pbSolver);
     }
 
     protected void encodeWellFormednessRestriction() {
@@ -167,14 +324,19 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
      */
     private void configureSatSolver(WeightedMaxSatDecorator solver) {
 
-        final int totalVars = (slotManager.getNumberOfSlots() * lattice.numTypes);
+        // The slot variables, and the auxiliary variables of the encoding
+        final int totalVars = formatTranslator.getVariableAllocator().getLastVariable();
         final int totalClauses = hardClauses.size() + wellFormednessClauses.size() + softClauses.size();
 
         solver.newVar(totalVars);
         solver.setExpectedNumberOfClauses(totalClauses);
         Statistics.addOrIncrementEntry("cnf_clause_size", totalClauses);
+        Statistics.addOrIncrementEntry("cnf_auxiliary_variable_size",
+                formatTranslator.getVariableAllocator().getNumberOfFreshVariables());
         countVariables();
-        solver.setTimeoutMs(1000000);
+        // Without a time budget, an arbitrary timeout for each call to sat4j; with one, the search
+        // sets the remaining time.
+        solver.setTimeoutMs(SAT4J_TIMEOUT_MS);
     }
 
     private void addClausesToSolver(WeightedMaxSatDecorator solver) throws ContradictionException {
@@ -199,9 +361,10 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
 
     protected Map<Integer, AnnotationMirror> decode(int[] solution) {
         Map<Integer, AnnotationMirror> result = new HashMap<>();
+        VariableAllocator variableAllocator = formatTranslator.getVariableAllocator();
         for (Integer var : solution) {
-            if (var > 0) {
-                var = var - 1;
+            // Auxiliary variables don't stand for the type of a slot
+            if (var > 0 && !variableAllocator.isFresh(var)) {
                 int slotId = MathUtils.getSlotId(var, lattice);
                 AnnotationMirror type = formatTranslator.decodeSolution(var, solverEnvironment.processingEnvironment);
                 result.put(slotId, type);
@@ -226,13 +389,31 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
         return solverEnvironment.getBoolArg(MaxSatSolverArg.outputCNF);
     }
 
+    protected MaxSATImplicationConstraintEncoder.Encoding getImplicationEncoding() {
+        String encoding = solverEnvironment.getArg(MaxSatSolverArg.implicationEncoding);
+        if (encoding == null) {
+            return MaxSATImplicationConstraintEncoder.Encoding.SMALLEST;
+        }
+        switch (encoding.toLowerCase()) {
+            case "cartesian":
+                return MaxSATImplicationConstraintEncoder.Encoding.CARTESIAN;
+            case "auxiliaryvariables":
+                return MaxSATImplicationConstraintEncoder.Encoding.AUXILIARY_VARIABLES;
+            case "smallest":
+                return MaxSATImplicationConstraintEncoder.Encoding.SMALLEST;
+            default:
+                throw new UserError("Unknown implication encoding: " + encoding
+                        + ", expected cartesian, auxiliaryVariables or smallest");
+        }
+    }
+
     /**
      * Write CNF clauses into a string.
      */
     protected void buildCNFInput() {
 
         final int totalClauses = hardClauses.size()+ wellFormednessClauses.size();
-        final int totalVars = slotManager.getNumberOfSlots() * lattice.numTypes;
+        final int totalVars = formatTranslator.getVariableAllocator().getLastVariable();
 
         CNFInput.append("c This is the CNF input\n");
         CNFInput.append("p cnf ");
@@ -291,105 +472,44 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
         return unsatisfiableConstraintExplainer.minimumUnsatisfiableConstraints();
     }
 
+    /**
+     * Explains why the constraints are unsatisfiable with a minimal unsatisfiable subset of the
+     * constraints and well-formedness restrictions.  Each constraint, and the well-formedness
+     * restriction of each slot, is one item of an {@link UnsatCoreMinimizer}, so that all of its
+     * clauses are switched on and off together by a single selector variable.
+     */
     class MaxSATUnsatisfiableConstraintExplainer {
 
-        /**
-         * A mapping from VecInt to Constraint.
-         * */
-        private final Map<VecInt, Constraint> vecIntConstraintMap;
-
-        /**
-         * A mapping from IConstr to VecInt. IConstr is the result of adding VecInt to solver.
-         */
-
-        private final Map<IConstr, VecInt> iConstrVecIntMap;
+        private final UnsatCoreMinimizer<Constraint> minimizer = new UnsatCoreMinimizer<>();
 
         private MaxSATUnsatisfiableConstraintExplainer() {
-            // Using IdentityHashMap because different VecInts can share the same hash code,
-            // one VecInt might be overriden by a different VecInt.But VecInt has one-to-one
-            // relation to Constraint. Therefore, IdentityHashMap is used.
-            vecIntConstraintMap = new IdentityHashMap<>();
-            iConstrVecIntMap = new IdentityHashMap<>();
             cleanUpClauses();
-            // Fill up hardClauses and wellFormednessClauses again(cleared before) to feed into
-            // explanation solver
-            fillHardClauses();
-            encodeWellFormednessRestriction();
-
-        }
-
-        // Compared to encodeAllConstrains(), this method doesn't format translate soft clauses,
-        // and additionally stores the mapping from VecInt to Constraint, so that Constraint can
-        // be reversly looked up by VecInt
-        private void fillHardClauses() {
-            // Fill up vecIntConstraintMap to reversely lookup Constraint from VecInt
+            // Compared to encodeAllConstraints(), soft clauses are not encoded: preferences
+            // never make the constraints unsatisfiable.
             for (Constraint constraint : constraints) {
+                if (constraint instanceof PreferenceConstraint) {
+                    continue;
+                }
                 VecInt[] encoding = constraint.serialize(formatTranslator);
                 if (encoding == null) {
                     // Happens for unsupported Constraints. Already warned in encodeAllConstraints()
                     continue;
                 }
-                for (VecInt e : encoding) {
-                    if (e != null && e.size() != 0 && !(constraint instanceof PreferenceConstraint)) {
-                        hardClauses.add(e);
-                        vecIntConstraintMap.put(e, constraint);
-                    }
-                }
+                minimizer.addItem(constraint, Arrays.asList(encoding));
+            }
+            for (Integer varSlotId : varSlotIds) {
+                List<VecInt> clauses = new ArrayList<>();
+                formatTranslator.generateWellFormednessClauses(clauses, varSlotId);
+                minimizer.addItem(new WellFormednessConstraint(slotManager.getSlot(varSlotId)), clauses);
             }
         }
 
         public Collection<Constraint> minimumUnsatisfiableConstraints() {
-            // It's ok to use HashSet for Constraint, because its hashCose() implementation differentiates different
-            // Constraints well.
-            Set<Constraint> mus = new HashSet<>();
-            // Explainer solver that is used
-            Xplain<IPBSolver> explanationSolver = new Xplain<>(SolverFactory.newDefault());
-            configureExplanationSolver(hardClauses, wellFormednessClauses, slotManager, lattice, explanationSolver);
-            try {
-                addClausesToExplanationSolver(explanationSolver);
-                assert !explanationSolver.isSatisfiable();
-
-                Collection<IConstr> explanation = explanationSolver.explain();
-
-                for (IConstr i : explanation) {
-                    VecInt vecInt = iConstrVecIntMap.get(i);
-                    if (vecIntConstraintMap.get(vecInt) != null) {
-                        // This case is reached if vecInt is from Constraint
-                        mus.add(vecIntConstraintMap.get(vecInt));
-                    } else {
-                        // This case indicates vecInt is well-formedness restriction
-                        // TODO Instead of printing it, can we have a dedicated type, e.g. WellFormednessConstraint <: Constraint
-                        // TODO so that we can also add it to the result set?
-                        System.out.println("Explanation hits well-formedness restriction: " + i);
-                    }
-                }
-            } catch (Exception e) {
-                throw new BugInCF("Explanation solver encountered not-expected exception: ", e);
-            }
+            long explanationStart = System.currentTimeMillis();
+            List<Constraint> mus = minimizer.minimize();
+            Statistics.addOrIncrementEntry("sat_explanation_time(ms)", System.currentTimeMillis() - explanationStart);
+            Statistics.addOrIncrementEntry("sat_explanation_solver_calls", minimizer.getSolverCalls());
             return mus;
         }
-
-        private void configureExplanationSolver(final List<VecInt> hardClauses, final List<VecInt> wellformedness,
-                final SlotManager slotManager, final Lattice lattice, final Xplain<IPBSolver> explainer) {
-            int numberOfNewVars = slotManager.getNumberOfSlots() * lattice.numTypes;
-            System.out.println("Number of variables: " + numberOfNewVars);
-            int numberOfClauses = hardClauses.size() + wellformedness.size();
-            System.out.println("Number of clauses: " + numberOfClauses);
-            explainer.setMinimizationStrategy(new DeletionStrategy());
-            explainer.newVar(numberOfNewVars);
-            explainer.setExpectedNumberOfClauses(numberOfClauses);
-        }
-
-        private void addClausesToExplanationSolver(Xplain<IPBSolver> explanationSolver) throws ContradictionException {
-            for (VecInt clause : hardClauses) {
-                IConstr iConstr = explanationSolver.addClause(clause);
-                iConstrVecIntMap.put(iConstr, clause);
-
-            }
-            for (VecInt clause : wellFormednessClauses) {
-                IConstr iConstr = explanationSolver.addClause(clause);
-                iConstrVecIntMap.put(iConstr, clause);
-            }
-        }
     }
 }
@@ -0,0 +1,56 @@
+package checkers.inference.solver.backend.maxsat;
+
+import org.sat4j.core.LiteralsUtils;
+import org.sat4j.minisat.core.IPhaseSelectionStrategy;
+import org.sat4j.minisat.orders.VarOrderHeap;
+
+/**
+ * The variable order of sat4j, with initial activities from a {@link VariableOrdering} instead
+ * of all zero, so that the first decisions are on slots near constants and slots in many
+ * constraints.
+ */
+public class SeededVarOrderHeap extends VarOrderHeap {
+
+    private static final long serialVersionUID = 1L;
+
+    private final VariableOrdering ordering;
+
+    /** The number of variables of the encoding, without the ones the MaxSAT decorator adds. */
+    private final int numberOfVariables;
+
+    public SeededVarOrderHeap(IPhaseSelectionStrategy strategy, VariableOrdering ordering, int numberOfVariables) {
+        super(strategy);
+        this.ordering = ordering;
+        this.numberOfVariables = numberOfVariables;
+    }
+
+    /** Whether the activities were seeded, which only the first search does. */
+    private boolean seeded;
+
+    @Override
+    public void init() {
+        // The solver calls this before each search, e.g. for each better model the anytime search
+        // asks for, and it resets all activities.  Only the first search starts from the seeds,
+        // the later ones from the activities learned by the searches before.
+        double[] learned = seeded ? activity.clone() : null;
+        super.init();
+        if (learned == null) {
+            for (int var = 1; var <= numberOfVariables; var++) {
+                int seed = ordering.getActivitySeed(var);
+                for (int i = 0; i < seed; i++) {
+                    updateVar(LiteralsUtils.posLit(var));
+                }
+            }
+            seeded = true;
+            return;
+        }
+        int length = Math.min(learned.length, activity.length);
+        for (int var = 1; var < length; var++) {
+            // All activities are zero after the reset, so restoring one only moves it up the heap.
+            activity[var] = learned[var];
+            if (heap.inHeap(var)) {
+                heap.increase(var);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package checkers.inference.solver.backend.maxsat;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+import org.checkerframework.javacutil.BugInCF;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * Finds a minimal unsatisfiable subset (MUS) of a set of items, each of which is encoded as a
+ * group of clauses, e.g. the clauses of one constraint.
+ *
+ * Every item gets one selector variable, which is added negated to each of its clauses, so all
+ * clauses of the items are added to a single solver once and an item is switched on by assuming
+ * its selector.  The minimizer first shrinks the item set to the core the solver reports for the
+ * assumptions, then removes the remaining items one at a time: if the items without it are still
+ * unsatisfiable, the item is dropped together with every item outside of the new core, otherwise
+ * it belongs to the MUS.  Compared to checking every clause separately, this needs at most one
+ * solver call per item of the first core.
+ *
+ * @param <T> the type of the items
+ */
+public class UnsatCoreMinimizer<T> {
+
+    private final List<T> items = new ArrayList<>();
+
+    private final List<List<VecInt>> itemClauses = new ArrayList<>();
+
+    /** The largest variable of the clauses, selectors are numbered above it. */
+    private int maxVariable = 0;
+
+    /** The number of satisfiability checks of the last {@link #minimize()}. */
+    private int solverCalls = 0;
+
+    /**
+     * Adds an item that may be part of the explanation.  An item without clauses is always
+     * satisfied and never part of a MUS.
+     */
+    public void addItem(T item, Collection<VecInt> clauses) {
+        List<VecInt> nonEmptyClauses = new ArrayList<>(clauses.size());
+        for (VecInt clause : clauses) {
+            if (clause == null || clause.size() == 0) {
+                continue;
+            }
+            for (int i = 0; i < clause.size(); i++) {
+                maxVariable = Math.max(maxVariable, Math.abs(clause.get(i)));
+            }
+            nonEmptyClauses.add(clause);
+        }
+        items.add(item);
+        itemClauses.add(nonEmptyClauses);
+    }
+
+    /**
+     * @return the number of satisfiability checks of the last {@link #minimize()}
+     */
+    public int getSolverCalls() {
+        return solverCalls;
+    }
+
+    /**
+     * @return a minimal subset of the items whose clauses are unsatisfiable together, in the
+     * order the items were added
+     * @throws BugInCF if the clauses of all items are satisfiable together
+     */
+    public List<T> minimize() {
+        solverCalls = 0;
+        ISolver solver = SolverFactory.newDefault();
+        solver.newVar(maxVariable + items.size());
+        try {
+            for (int item = 0; item < items.size(); item++) {
+                int selector = selector(item);
+                for (VecInt clause : itemClauses.get(item)) {
+                    VecInt selectedClause = new VecInt(clause.size() + 1);
+                    for (int i = 0; i < clause.size(); i++) {
+                        selectedClause.push(clause.get(i));
+                    }
+                    selectedClause.push(-selector);
+                    solver.addClause(selectedClause);
+                }
+            }
+
+            List<Integer> core = new ArrayList<>(items.size());
+            for (int item = 0; item < items.size(); item++) {
+                core.add(item);
+            }
+            core = unsatisfiableCore(solver, core);
+            if (core == null) {
+                throw new BugInCF("Cannot explain satisfiable clauses");
+            }
+
+            // Every item before position is known to be in the MUS.
+            int position = 0;
+            while (position < core.size()) {
+                List<Integer> candidate = new ArrayList<>(core);
+                candidate.remove(position);
+                List<Integer> smallerCore = unsatisfiableCore(solver, candidate);
+                if (smallerCore != null) {
+                    core = smallerCore;
+                } else {
+                    position++;
+                }
+            }
+
+            List<T> mus = new ArrayList<>(core.size());
+            for (int item : core) {
+                mus.add(items.get(item));
+            }
+            return mus;
+        } catch (ContradictionException | TimeoutException e) {
+            throw new BugInCF("Explanation solver encountered not-expected exception: ", e);
+        }
+    }
+
+    /**
+     * @return the items of the core the solver reports if the given items are unsatisfiable
+     * together, in the order of the given items, or null if they are satisfiable
+     */
+    private List<Integer> unsatisfiableCore(ISolver solver, List<Integer> candidate) throws TimeoutException {
+        VecInt assumptions = new VecInt(candidate.size());
+        for (int item : candidate) {
+            assumptions.push(selector(item));
+        }
+        solverCalls++;
+        if (solver.isSatisfiable(assumptions)) {
+            return null;
+        }
+
+        IVecInt explanation = solver.unsatExplanation();
+        if (explanation == null || explanation.size() == 0) {
+            return candidate;
+        }
+        // Depending on the solver the explanation has the selectors or their negations.
+        BitSet inExplanation = new BitSet(items.size());
+        for (int i = 0; i < explanation.size(); i++) {
+            int item = Math.abs(explanation.get(i)) - maxVariable - 1;
+            if (item >= 0) {
+                inExplanation.set(item);
+            }
+        }
+        List<Integer> core = new ArrayList<>(inExplanation.cardinality());
+        for (int item : candidate) {
+            if (inExplanation.get(item)) {
+                core.add(item);
+            }
+        }
+        return core;
+    }
+
+    private int selector(int item) {
+        return maxVariable + item + 1;
+    }
+}
@@ -0,0 +1,51 @@
+package checkers.inference.solver.backend.maxsat;
+
+/**
+ * Allocates fresh boolean variables for one solve, numbered above the variables that stand for
+ * "slot has type", i.e. above {@code numberOfSlots * lattice.numTypes}, see
+ * {@link MathUtils#mapIdToMatrixEntry}.  Fresh variables are auxiliary: encoders use them to
+ * keep the encoding of a constraint small, and they are not decoded.
+ */
+public class VariableAllocator {
+
+    /** The highest variable that stands for a slot and a type. */
+    private final int lastSlotVariable;
+
+    /** The highest variable allocated so far, or lastSlotVariable if none was allocated. */
+    private int lastVariable;
+
+    public VariableAllocator(int lastSlotVariable) {
+        this.lastSlotVariable = lastSlotVariable;
+        this.lastVariable = lastSlotVariable;
+    }
+
+    /**
+     * @return a variable that is not used by any slot, nor returned before
+     */
+    public int newVariable() {
+        return ++lastVariable;
+    }
+
+    /**
+     * @param var a variable, positive or negative
+     * @return true if the variable was allocated by this allocator
+     */
+    public boolean isFresh(int var) {
+        return Math.abs(var) > lastSlotVariable;
+    }
+
+    public int getLastSlotVariable() {
+        return lastSlotVariable;
+    }
+
+    /**
+     * @return the highest variable in use, i.e. the number of variables the SAT solver needs
+     */
+    public int getLastVariable() {
+        return lastVariable;
+    }
+
+    public int getNumberOfFreshVariables() {
+        return lastVariable - lastSlotVariable;
+    }
+}
@@ -0,0 +1,363 @@
+package checkers.inference.solver.backend.maxsat;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.checkerframework.javacutil.BugInCF;
+import org.sat4j.core.VecInt;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+
+/**
+ * Renumbers the slots of a MaxSAT encoding along the constraint graph, so that slots which share
+ * constraints get nearby variables, and clauses can be given to the SAT solver in the same order.
+ * It also gives each variable an initial activity, higher for slots near constants and slots in
+ * many constraints, because the solver decides these first.
+ *
+ * The constraint graph has the variable slots as vertices, and an edge between the first
+ * variable slot of each constraint and each other variable slot of it. A slot is adjacent to a
+ * constant if one of its constraints has a constant slot.
+ *
+ * Slot s is renumbered to the s'-th slot of the order, so variable
+ * {@code (s - 1) * numTypes + t + 1} of the encoding becomes {@code (s' - 1) * numTypes + t + 1}
+ * for the solver. Variables above the slots, i.e. auxiliary variables, keep their number.
+ */
+public class VariableOrdering {
+
+    public enum Strategy {
+        /** Breadth-first from the slots adjacent to constants. */
+        BFS,
+        /** Reverse Cuthill-McKee, which keeps the numbers of adjacent slots close. */
+        RCM
+    }
+
+    /** Distances from constants beyond this don't raise the initial activity. */
+    private static final int MAX_SEEDED_DISTANCE = 8;
+
+    private final int numberOfSlots;
+    private final int numTypes;
+
+    /** For each slot id, its position in the order, starting from 1. */
+    private final int[] newSlotId;
+
+    /** For each position in the order, starting from 1, the slot id. */
+    private final int[] oldSlotId;
+
+    /** For each slot id, the number of edges between constants and it, or -1 if none. */
+    private final int[] distanceToConstant;
+
+    /** For each slot id, the number of its edges. */
+    private final int[] degree;
+
+    /**
+     * @param constraints the constraints of the encoding
+     * @param numberOfSlots the number of slots, whose ids are 1 to numberOfSlots
+     * @param numTypes the number of types of the lattice
+     * @param strategy the order of the slots
+     * @return the ordering of the slots of the given constraints
+     */
+    public static VariableOrdering fromConstraints(Collection<Constraint> constraints,
+            int numberOfSlots, int numTypes, Strategy strategy) {
+        IntPairs edges = new IntPairs();
+        boolean[] adjacentToConstant = new boolean[numberOfSlots + 1];
+        for (Constraint constraint : constraints) {
+            int first = 0;
+            boolean hasConstant = false;
+            for (Slot slot : constraint.getSlots()) {
+                if (slot instanceof ConstantSlot) {
+                    hasConstant = true;
+                } else if (first == 0) {
+                    first = slot.getId();
+                } else if (slot.getId() != first) {
+                    edges.add(first, slot.getId());
+                }
+            }
+            if (hasConstant) {
+                for (Slot slot : constraint.getSlots()) {
+                    if (!(slot instanceof ConstantSlot)) {
+                        checkId(slot.getId(), numberOfSlots);
+                        adjacentToConstant[slot.getId()] = true;
+                    }
+                }
+            }
+        }
+        return new VariableOrdering(numberOfSlots, numTypes, edges.firsts, edges.seconds, edges.size,
+                adjacentToConstant, strategy);
+    }
+
+    /**
+     * @param numberOfSlots the number of slots, whose ids are 1 to numberOfSlots
+     * @param numTypes the number of types of the lattice
+     * @param edgeFrom one end of each edge
+     * @param edgeTo the other end of each edge
+     * @param edges the number of edges
+     * @param adjacentToConstant for each slot id, whether it shares a constraint with a constant
+     * @param strategy the order of the slots
+     */
+    VariableOrdering(int numberOfSlots, int numTypes, int[] edgeFrom, int[] edgeTo, int edges,
+            boolean[] adjacentToConstant, Strategy strategy) {
+        this.numberOfSlots = numberOfSlots;
+        this.numTypes = numTypes;
+
+        // Adjacency lists in compressed form: the neighbours of slot s are
+        // neighbours[firstNeighbour[s]] to neighbours[firstNeighbour[s + 1] - 1].
+        degree = new int[numberOfSlots + 1];
+        for (int e = 0; e < edges; e++) {
+            checkId(edgeFrom[e], numberOfSlots);
+            checkId(edgeTo[e], numberOfSlots);
+            degree[edgeFrom[e]]++;
+            degree[edgeTo[e]]++;
+        }
+        int[] firstNeighbour = new int[numberOfSlots + 2];
+        for (int s = 1; s <= numberOfSlots; s++) {
+            firstNeighbour[s + 1] = firstNeighbour[s] + degree[s];
+        }
+        int[] neighbours = new int[2 * edges];
+        int[] next = Arrays.copyOf(firstNeighbour, numberOfSlots + 1);
+        for (int e = 0; e < edges; e++) {
+            neighbours[next[edgeFrom[e]]++] = edgeTo[e];
+            neighbours[next[edgeTo[e]]++] = edgeFrom[e];
+        }
+
+        distanceToConstant = new int[numberOfSlots + 1];
+        Arrays.fill(distanceToConstant, -1);
+        int[] queue = new int[numberOfSlots];
+        int tail = 0;
+        for (int s = 1; s <= numberOfSlots; s++) {
+            if (adjacentToConstant[s]) {
+                distanceToConstant[s] = 1;
+                queue[tail++] = s;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int s = queue[head];
+            for (int i = firstNeighbour[s]; i < firstNeighbour[s + 1]; i++) {
+                int n = neighbours[i];
+                if (distanceToConstant[n] < 0) {
+                    distanceToConstant[n] = distanceToConstant[s] + 1;
+                    queue[tail++] = n;
+                }
+            }
+        }
+
+        int[] order;
+        if (strategy == Strategy.BFS) {
+            // The multi-source search above, continued in the components without constants.
+            order = queue;
+            boolean[] visited = new boolean[numberOfSlots + 1];
+            for (int i = 0; i < tail; i++) {
+                visited[queue[i]] = true;
+            }
+            tail = search(order, tail, visited, firstNeighbour, neighbours, false);
+        } else {
+            order = new int[numberOfSlots];
+            tail = search(order, 0, new boolean[numberOfSlots + 1], firstNeighbour, neighbours, true);
+            for (int i = 0, j = tail - 1; i < j; i++, j--) {
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+        }
+
+        // Slots in no constraint keep their relative order at the end.
+        newSlotId = new int[numberOfSlots + 1];
+        oldSlotId = new int[numberOfSlots + 1];
+        for (int i = 0; i < tail; i++) {
+            newSlotId[order[i]] = i + 1;
+        }
+        int position = tail;
+        for (int s = 1; s <= numberOfSlots; s++) {
+            if (newSlotId[s] == 0) {
+                newSlotId[s] = ++position;
+            }
+            oldSlotId[newSlotId[s]] = s;
+        }
+    }
+
+    /**
+     * Appends the slots with edges that are not visited yet to the order, one breadth-first
+     * search per component, starting at a slot of minimum degree.
+     *
+     * @param byDegree whether to visit the neighbours of a slot in the order of their degree,
+     * as the Cuthill-McKee algorithm does
+     * @return the new length of the order
+     */
+    private int search(int[] order, int tail, boolean[] visited, int[] firstNeighbour, int[] neighbours,
+            boolean byDegree) {
+        Integer[] starts = new Integer[numberOfSlots];
+        for (int s = 1; s <= numberOfSlots; s++) {
+            starts[s - 1] = s;
+        }
+        Arrays.sort(starts, (a, b) -> degree[a] != degree[b] ? degree[a] - degree[b] : a - b);
+        int head = tail;
+        for (int start : starts) {
+            if (visited[start] || degree[start] == 0) {
+                continue;
+            }
+            visited[start] = true;
+            order[tail++] = start;
+            for (; head < tail; head++) {
+                int s = order[head];
+                int from = tail;
+                for (int i = firstNeighbour[s]; i < firstNeighbour[s + 1]; i++) {
+                    int n = neighbours[i];
+                    if (!visited[n]) {
+                        visited[n] = true;
+                        order[tail++] = n;
+                    }
+                }
+                if (byDegree) {
+                    sortByDegree(order, from, tail);
+                }
+            }
+        }
+        return tail;
+    }
+
+    /** Insertion sort, the neighbours of one slot are few. */
+    private void sortByDegree(int[] slots, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int s = slots[i];
+            int j = i - 1;
+            while (j >= from && degree[slots[j]] > degree[s]) {
+                slots[j + 1] = slots[j];
+                j--;
+            }
+            slots[j + 1] = s;
+        }
+    }
+
+    private static void checkId(int id, int numberOfSlots) {
+        if (id < 1 || id > numberOfSlots) {
+            throw new BugInCF("Slot id %d is not between 1 and the number of slots %d", id, numberOfSlots);
+        }
+    }
+
+    /**
+     * @return the position of the slot in the order, i.e. its slot id for the solver
+     */
+    public int getNewSlotId(int slotId) {
+        return newSlotId[slotId];
+    }
+
+    /**
+     * @param literal a literal of the encoding
+     * @return the literal for the solver
+     */
+    public int toSolverLiteral(int literal) {
+        return mapLiteral(literal, newSlotId);
+    }
+
+    /**
+     * @param literal a literal of the solver
+     * @return the literal of the encoding
+     */
+    public int fromSolverLiteral(int literal) {
+        return mapLiteral(literal, oldSlotId);
+    }
+
+    private int mapLiteral(int literal, int[] slotMap) {
+        int var = Math.abs(literal);
+        if (var > numberOfSlots * numTypes) {
+            return literal;
+        }
+        int row = (var - 1) / numTypes;
+        int mapped = (slotMap[row + 1] - 1) * numTypes + (var - 1) % numTypes + 1;
+        return literal > 0 ? mapped : -mapped;
+    }
+
+    /**
+     * @return a new clause with the literals of the given clause for the solver
+     */
+    public VecInt toSolverClause(VecInt clause) {
+        int[] literals = new int[clause.size()];
+        for (int i = 0; i < literals.length; i++) {
+            literals[i] = toSolverLiteral(clause.get(i));
+        }
+        return new VecInt(literals);
+    }
+
+    /**
+     * @return the model of the solver with the variables of the encoding, in the same order
+     */
+    public int[] fromSolverModel(int[] model) {
+        int[] result = new int[model.length];
+        for (int i = 0; i < model.length; i++) {
+            result[i] = fromSolverLiteral(model[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Sorts clauses of the solver by their lowest variable, so that the solver gets them in the
+     * order of the slots. The sort is stable.
+     */
+    public static void sortClauses(List<VecInt> solverClauses) {
+        long[] keys = new long[solverClauses.size()];
+        VecInt[] clauses = solverClauses.toArray(new VecInt[keys.length]);
+        for (int i = 0; i < clauses.length; i++) {
+            int lowest = Integer.MAX_VALUE;
+            for (int j = 0; j < clauses[i].size(); j++) {
+                lowest = Math.min(lowest, Math.abs(clauses[i].get(j)));
+            }
+            keys[i] = ((long) lowest << 32) | i;
+        }
+        Arrays.sort(keys);
+        solverClauses.clear();
+        for (long key : keys) {
+            solverClauses.add(clauses[(int) key]);
+        }
+    }
+
+    /**
+     * The initial activity of a variable of the solver: up to {@value #MAX_SEEDED_DISTANCE} for
+     * slots near constants, plus the binary logarithm of the degree of the slot.
+     *
+     * @param var a variable of the solver
+     * @return how often to bump the activity of the variable before solving
+     */
+    public int getActivitySeed(int var) {
+        if (var < 1 || var > numberOfSlots * numTypes) {
+            return 0;
+        }
+        int slot = oldSlotId[(var - 1) / numTypes + 1];
+        int seed = 0;
+        if (distanceToConstant[slot] > 0) {
+            seed += Math.max(0, MAX_SEEDED_DISTANCE + 1 - distanceToConstant[slot]);
+        }
+        seed += 31 - Integer.numberOfLeadingZeros(degree[slot] + 1);
+        return seed;
+    }
+
+    /**
+     * @return the sum over all edges of the difference of the positions of their slots; lower
+     * means adjacent slots have closer variables
+     */
+    long getProfile(int[] edgeFrom, int[] edgeTo, int edges) {
+        long profile = 0;
+        for (int e = 0; e < edges; e++) {
+            profile += Math.abs(newSlotId[edgeFrom[e]] - newSlotId[edgeTo[e]]);
+        }
+        return profile;
+    }
+
+    /** A growable list of int pairs. */
+    private static class IntPairs {
+        int[] firsts = new int[16];
+        int[] seconds = new int[16];
+        int size;
+
+        void add(int first, int second) {
+            if (size == firsts.length) {
+                firsts = Arrays.copyOf(firsts, size * 2);
+                seconds = Arrays.copyOf(seconds, size * 2);
+            }
+            firsts[size] = first;
+            seconds[size] = second;
+            size++;
+        }
+    }
+}
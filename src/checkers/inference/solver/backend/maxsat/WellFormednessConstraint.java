@@ -0,0 +1,52 @@
+package checkers.inference.solver.backend.maxsat;
+
+import java.util.Collections;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Serializer;
+import checkers.inference.model.Slot;
+
+/**
+ * The well-formedness restriction of a slot in the MaxSAT encoding: the slot has exactly one
+ * type of the lattice.  It is not created by the inference, but reported by
+ * {@link MaxSatSolver#explainUnsatisfiable()} when the restriction is part of the reason why
+ * the constraints are unsatisfiable, e.g. because the constraints require two incomparable
+ * types for the slot.
+ */
+public class WellFormednessConstraint extends Constraint {
+
+    public WellFormednessConstraint(Slot slot) {
+        super(Collections.singletonList(slot));
+    }
+
+    public Slot getSlot() {
+        return getSlots().get(0);
+    }
+
+    /**
+     * There is no serializer for well-formedness restrictions, they are only part of
+     * explanations.
+     *
+     * @return null
+     */
+    @Override
+    public <S, T> T serialize(Serializer<S, T> serializer) {
+        return null;
+    }
+
+    @Override
+    public int hashCode() {
+        return getSlot().hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return getSlot().equals(((WellFormednessConstraint) obj).getSlot());
+    }
+}
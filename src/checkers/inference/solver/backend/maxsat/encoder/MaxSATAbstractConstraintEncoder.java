@@ -1,5 +1,8 @@
 package checkers.inference.solver.backend.maxsat.encoder;
 
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
 import checkers.inference.solver.backend.encoder.AbstractConstraintEncoder;
 import checkers.inference.solver.backend.maxsat.VectorUtils;
 import checkers.inference.solver.frontend.Lattice;
@@ -27,8 +30,43 @@ public abstract class MaxSATAbstractConstraintEncoder extends AbstractConstraint
      */
     protected final Map<AnnotationMirror, Integer> typeToInt;
 
+    /** The clause templates of the lattice, looked up on first use. */
+    private MaxSATClauseTemplates clauseTemplates;
+
     public MaxSATAbstractConstraintEncoder(Lattice lattice, Map<AnnotationMirror, Integer> typeToInt) {
         super(lattice, EMPTY_CLAUSE, CONTRADICTORY_CLAUSES);
         this.typeToInt = typeToInt;
     }
+
+    protected MaxSATClauseTemplates getClauseTemplates() {
+        if (clauseTemplates == null) {
+            clauseTemplates = MaxSATClauseTemplates.forLattice(lattice, typeToInt);
+        }
+        return clauseTemplates;
+    }
+
+    /**
+     * @return the clauses of the template for the given slots, or {@link #emptyValue} if the
+     * template has no clauses
+     */
+    protected VecInt[] instantiate(int[][] template, Slot first, Slot second) {
+        if (template.length == 0) {
+            return emptyValue;
+        }
+        return getClauseTemplates().instantiate(template, first.getId(), second.getId());
+    }
+
+    /**
+     * @param templatesByConstant templates indexed by the qualifier index of the constant
+     * @return the clauses of the template of the constant for the given variable, or
+     * {@link #emptyValue} if the constant is not a type of the lattice or the template has no
+     * clauses
+     */
+    protected VecInt[] instantiate(int[][][] templatesByConstant, ConstantSlot constant, VariableSlot variable) {
+        Integer constantInt = typeToInt.get(constant.getValue());
+        if (constantInt == null) {
+            return emptyValue;
+        }
+        return instantiate(templatesByConstant[constantInt], variable, variable);
+    }
 }
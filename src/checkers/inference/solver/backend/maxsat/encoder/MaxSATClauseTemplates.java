@@ -0,0 +1,224 @@
+package checkers.inference.solver.backend.maxsat.encoder;
+
+import checkers.inference.solver.backend.maxsat.MathUtils;
+import checkers.inference.solver.frontend.Lattice;
+import org.sat4j.core.VecInt;
+
+import javax.lang.model.element.AnnotationMirror;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The clauses of the binary MaxSAT encoders, computed once per {@link Lattice}.
+ *
+ * The clauses of a subtype, equality, inequality or comparable constraint depend only on the
+ * lattice and on the ids of its slots. A template stores them as int[] clauses over qualifier
+ * indexes: literal {@code t + 1} stands for "the first slot has type t" and literal
+ * {@code numTypes + t + 1} for "the second slot has type t", negated where the clause has the
+ * negated variable. {@link #instantiate} turns a template into the clauses for concrete slots by
+ * adding the offset of each slot, see {@link MathUtils#mapIdToMatrixEntry}.
+ *
+ * Templates of constraints between a variable and a constant are indexed by the qualifier index
+ * of the constant, and only use the first slot.
+ */
+public class MaxSATClauseTemplates {
+
+    /** Lattices are shared by the solvers of all components under the graph solving strategy. */
+    private static final Map<Lattice, MaxSATClauseTemplates> templatesByLattice =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * @param lattice the lattice of the encoders
+     * @param typeToInt the qualifier indexes of the encoders, see
+     * {@link checkers.inference.solver.backend.maxsat.MaxSatFormatTranslator#typeToInt}, which
+     * are the same for all translators of a lattice
+     * @return the templates of the lattice, computed on first use
+     */
+    public static MaxSATClauseTemplates forLattice(Lattice lattice, Map<AnnotationMirror, Integer> typeToInt) {
+        return templatesByLattice.computeIfAbsent(lattice, l -> new MaxSATClauseTemplates(l, typeToInt));
+    }
+
+    private final int numTypes;
+
+    final int[][] subtypeVariableVariable;
+    final int[][][] subtypeVariableConstant;
+    final int[][][] subtypeConstantVariable;
+
+    final int[][] equalityVariableVariable;
+    final int[][][] equalityVariableConstant;
+
+    final int[][] inequalityVariableVariable;
+    final int[][][] inequalityVariableConstant;
+
+    final int[][] comparableVariableVariable;
+    final int[][][] comparableVariableConstant;
+
+    protected MaxSATClauseTemplates(Lattice lattice, Map<AnnotationMirror, Integer> typeToInt) {
+        this.numTypes = lattice.numTypes;
+        int top = typeToInt.get(lattice.top);
+        int bottom = typeToInt.get(lattice.bottom);
+
+        // Subtype: if we know the subtype, the supertype is one of its supertypes, and the other
+        // way round. Also: if subtype is top, then supertype is top; if supertype is bottom, then
+        // subtype is bottom.
+        List<int[]> subtype = new ArrayList<>();
+        for (AnnotationMirror type : lattice.allTypes) {
+            int t = typeToInt.get(type);
+            if (t != top) {
+                subtype.add(maybe(-first(t), lattice.superType.get(type), typeToInt, false));
+            }
+            if (t != bottom) {
+                subtype.add(maybe(-second(t), lattice.subType.get(type), typeToInt, true));
+            }
+        }
+        subtype.add(new int[] {-first(top), second(top)});
+        subtype.add(new int[] {-second(bottom), first(bottom)});
+        subtypeVariableVariable = subtype.toArray(new int[subtype.size()][]);
+
+        // Subtype against a constant: the variable must not be any type that is not a subtype
+        // (or supertype) of the constant.
+        subtypeVariableConstant = new int[numTypes][][];
+        subtypeConstantVariable = new int[numTypes][][];
+        for (AnnotationMirror constant : lattice.allTypes) {
+            int c = typeToInt.get(constant);
+            if (c == bottom) {
+                subtypeVariableConstant[c] = new int[][] {{first(bottom)}};
+            } else {
+                subtypeVariableConstant[c] = mustNotBe(c, lattice.superType.get(constant),
+                        lattice.incomparableType.get(constant), typeToInt);
+            }
+            if (c == top) {
+                subtypeConstantVariable[c] = new int[][] {{first(top)}};
+            } else {
+                subtypeConstantVariable[c] = mustNotBe(c, lattice.subType.get(constant),
+                        lattice.incomparableType.get(constant), typeToInt);
+            }
+        }
+
+        // Equality: a <=> b which is the same as (!a v b) & (!b v a)
+        // Inequality: a <=> !b which is the same as (!a v !b) & (b v a)
+        equalityVariableVariable = new int[numTypes * 2][];
+        inequalityVariableVariable = new int[numTypes * 2][];
+        equalityVariableConstant = new int[numTypes][][];
+        inequalityVariableConstant = new int[numTypes][][];
+        for (int t = 0; t < numTypes; t++) {
+            equalityVariableVariable[2 * t] = new int[] {-first(t), second(t)};
+            equalityVariableVariable[2 * t + 1] = new int[] {-second(t), first(t)};
+            inequalityVariableVariable[2 * t] = new int[] {-first(t), -second(t)};
+            inequalityVariableVariable[2 * t + 1] = new int[] {second(t), first(t)};
+            equalityVariableConstant[t] = new int[][] {{first(t)}};
+            inequalityVariableConstant[t] = new int[][] {{-first(t)}};
+        }
+
+        // Comparable: a variable must not be a type that is incomparable to the constant.
+        // Between two variables, the clauses contain both polarities of their variables.
+        List<int[]> comparable = new ArrayList<>();
+        comparableVariableConstant = new int[numTypes][][];
+        for (AnnotationMirror type : lattice.allTypes) {
+            int t = typeToInt.get(type);
+            Collection<AnnotationMirror> incomparables = lattice.incomparableType.get(type);
+            if (incomparables == null) {
+                comparableVariableConstant[t] = new int[0][];
+                continue;
+            }
+            comparableVariableConstant[t] = new int[incomparables.size()][];
+            int i = 0;
+            for (AnnotationMirror notComparable : incomparables) {
+                int n = typeToInt.get(notComparable);
+                comparable.add(new int[] {-first(t), -second(n), second(n), first(t)});
+                comparableVariableConstant[t][i++] = new int[] {-first(n)};
+            }
+        }
+        comparableVariableVariable = comparable.toArray(new int[comparable.size()][]);
+    }
+
+    /** @return the template literal for "the first slot has type t" */
+    private int first(int t) {
+        return t + 1;
+    }
+
+    /** @return the template literal for "the second slot has type t" */
+    private int second(int t) {
+        return numTypes + t + 1;
+    }
+
+    /**
+     * @return the clause: the known literal is false, or the unknown slot has one of the types
+     */
+    private int[] maybe(int knownLiteral, Collection<AnnotationMirror> types,
+            Map<AnnotationMirror, Integer> typeToInt, boolean unknownIsFirst) {
+        Collection<AnnotationMirror> maybeSet =
+                types != null ? types : Collections.<AnnotationMirror>emptySet();
+        int[] clause = new int[maybeSet.size() + 1];
+        int i = 0;
+        clause[i++] = knownLiteral;
+        for (AnnotationMirror type : maybeSet) {
+            int t = typeToInt.get(type);
+            clause[i++] = unknownIsFirst ? first(t) : second(t);
+        }
+        return clause;
+    }
+
+    /**
+     * @return one unit clause per type of the given collections except the constant itself: the
+     * slot is not that type
+     */
+    private int[][] mustNotBe(int constant, Collection<AnnotationMirror> comparables,
+            Collection<AnnotationMirror> incomparables, Map<AnnotationMirror, Integer> typeToInt) {
+        boolean[] excluded = new boolean[numTypes];
+        int count = 0;
+        List<Collection<AnnotationMirror>> collections = new ArrayList<>(2);
+        collections.add(comparables);
+        collections.add(incomparables);
+        for (Collection<AnnotationMirror> collection : collections) {
+            if (collection == null) {
+                continue;
+            }
+            for (AnnotationMirror type : collection) {
+                int t = typeToInt.get(type);
+                if (!excluded[t] && t != constant) {
+                    excluded[t] = true;
+                    count++;
+                }
+            }
+        }
+        int[][] clauses = new int[count][];
+        int i = 0;
+        for (int t = 0; t < numTypes; t++) {
+            if (excluded[t]) {
+                clauses[i++] = new int[] {-first(t)};
+            }
+        }
+        return clauses;
+    }
+
+    /**
+     * @param template a template of this class
+     * @param firstSlotId the id of the first slot
+     * @param secondSlotId the id of the second slot, ignored for constraints with a constant
+     * @return the clauses of the template for the given slots
+     */
+    public VecInt[] instantiate(int[][] template, int firstSlotId, int secondSlotId) {
+        // The variable of slot s and type t is (s - 1) * numTypes + t + 1.
+        final int firstOffset = (firstSlotId - 1) * numTypes;
+        final int secondOffset = (secondSlotId - 2) * numTypes;
+        VecInt[] clauses = new VecInt[template.length];
+        for (int i = 0; i < template.length; i++) {
+            int[] clauseTemplate = template[i];
+            int[] clause = new int[clauseTemplate.length];
+            for (int j = 0; j < clauseTemplate.length; j++) {
+                int literal = clauseTemplate[j];
+                int var = Math.abs(literal);
+                var += var <= numTypes ? firstOffset : secondOffset;
+                clause[j] = literal > 0 ? var : -var;
+            }
+            // VecInt takes ownership of the array, so each clause needs its own.
+            clauses[i] = new VecInt(clause);
+        }
+        return clauses;
+    }
+}
@@ -0,0 +1,64 @@
+package checkers.inference.solver.backend.maxsat.encoder;
+
+import org.sat4j.core.VecInt;
+
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.maxsat.MathUtils;
+import checkers.inference.solver.backend.encoder.EncodingCache;
+import checkers.inference.solver.frontend.Lattice;
+
+/**
+ * The {@link EncodingCache} of the MaxSAT backend. The variables of a slot are numbered
+ * consecutively, one per qualifier, so a template is filled in by shifting the variables of each
+ * of its slots to the variables of the new slot.
+ */
+public class MaxSATEncodingCache extends EncodingCache<VecInt[]> {
+
+    private final Lattice lattice;
+
+    public MaxSATEncodingCache(Lattice lattice) {
+        this.lattice = lattice;
+    }
+
+    @Override
+    protected VecInt[] fillIn(VecInt[] template, VariableSlot[] templateSlots, VariableSlot[] slots) {
+        VecInt[] result = new VecInt[template.length];
+        for (int i = 0; i < template.length; i++) {
+            VecInt clause = template[i];
+            if (clause == null) {
+                continue;
+            }
+            int[] literals = new int[clause.size()];
+            for (int j = 0; j < literals.length; j++) {
+                int literal = clause.get(j);
+                int slotId = MathUtils.getSlotId(literal, lattice);
+                int k = 0;
+                while (k < templateSlots.length && templateSlots[k].getId() != slotId) {
+                    k++;
+                }
+                if (k == templateSlots.length) {
+                    // A variable of a constant, or an auxiliary variable of the encoder.
+                    return null;
+                }
+                int filledVar = MathUtils.mapIdToMatrixEntry(slots[k].getId(),
+                        MathUtils.getIntRep(literal, lattice), lattice);
+                literals[j] = literal < 0 ? -filledVar : filledVar;
+            }
+            result[i] = new VecInt(literals);
+        }
+        return result;
+    }
+
+    @Override
+    protected VecInt[] toTemplate(VecInt[] encoding) {
+        // sat4j may reorder the literals of the clauses it is given.
+        VecInt[] template = new VecInt[encoding.length];
+        for (int i = 0; i < encoding.length; i++) {
+            if (encoding[i] != null) {
+                template[i] = new VecInt(encoding[i].size());
+                encoding[i].copyTo(template[i]);
+            }
+        }
+        return template;
+    }
+}
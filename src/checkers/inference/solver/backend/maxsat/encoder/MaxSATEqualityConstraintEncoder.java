@@ -3,8 +3,6 @@ package checkers.inference.solver.backend.maxsat.encoder;
 import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.VariableSlot;
 import checkers.inference.solver.backend.encoder.binary.EqualityConstraintEncoder;
-import checkers.inference.solver.backend.maxsat.MathUtils;
-import checkers.inference.solver.backend.maxsat.VectorUtils;
 import checkers.inference.solver.frontend.Lattice;
 import org.sat4j.core.VecInt;
 
@@ -20,19 +18,7 @@ public class MaxSATEqualityConstraintEncoder extends MaxSATAbstractConstraintEnc
     @Override
     public VecInt[] encodeVariable_Variable(VariableSlot fst, VariableSlot snd) {
         // a <=> b which is the same as (!a v b) & (!b v a)
-        VecInt[] result = new VecInt[lattice.numTypes * 2];
-        int i = 0;
-        for (AnnotationMirror type : lattice.allTypes) {
-            if (lattice.allTypes.contains(type)) {
-                result[i++] = VectorUtils.asVec(
-                        -MathUtils.mapIdToMatrixEntry(fst.getId(), typeToInt.get(type), lattice),
-                        MathUtils.mapIdToMatrixEntry(snd.getId(), typeToInt.get(type), lattice));
-                result[i++] = VectorUtils.asVec(
-                        -MathUtils.mapIdToMatrixEntry(snd.getId(), typeToInt.get(type), lattice),
-                        MathUtils.mapIdToMatrixEntry(fst.getId(), typeToInt.get(type), lattice));
-            }
-        }
-        return result;
+        return instantiate(getClauseTemplates().equalityVariableVariable, fst, snd);
     }
 
     @Override
@@ -42,11 +28,6 @@ public class MaxSATEqualityConstraintEncoder extends MaxSATAbstractConstraintEnc
 
     @Override
     public VecInt[] encodeConstant_Variable(ConstantSlot fst, VariableSlot snd) {
-        if (lattice.allTypes.contains(fst.getValue())) {
-            return VectorUtils.asVecArray(
-                    MathUtils.mapIdToMatrixEntry(snd.getId(), typeToInt.get(fst.getValue()), lattice));
-        } else {
-            return emptyValue;
-        }
+        return instantiate(getClauseTemplates().equalityVariableConstant, fst, snd);
     }
 }
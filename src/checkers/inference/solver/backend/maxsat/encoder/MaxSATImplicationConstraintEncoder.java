@@ -4,6 +4,8 @@ import checkers.inference.model.Constraint;
 import checkers.inference.model.ImplicationConstraint;
 import checkers.inference.solver.backend.encoder.implication.ImplicationConstraintEncoder;
 import checkers.inference.solver.backend.maxsat.MaxSatFormatTranslator;
+import checkers.inference.solver.backend.maxsat.VariableAllocator;
+import checkers.inference.solver.backend.maxsat.VectorUtils;
 import checkers.inference.solver.frontend.Lattice;
 import org.sat4j.core.VecInt;
 
@@ -17,6 +19,19 @@ public class MaxSATImplicationConstraintEncoder
         extends MaxSATAbstractConstraintEncoder
         implements ImplicationConstraintEncoder<VecInt[]> {
 
+    /**
+     * The ways to encode an implication, see {@link #encodeCartesian} and
+     * {@link #encodeWithAuxiliaryVariables}.
+     */
+    public enum Encoding {
+        /** Distribute the assumptions over the conclusion, without auxiliary variables. */
+        CARTESIAN,
+        /** Use auxiliary variables, which keeps the encoding linear in size. */
+        AUXILIARY_VARIABLES,
+        /** Use whichever of the above gives fewer clauses, the cartesian one on ties. */
+        SMALLEST
+    }
+
     /**
      * {@link MaxSatFormatTranslator} instance to delegate format translating
      * base {@link Constraint}s ({@code Constraint}s that are not
@@ -31,6 +46,37 @@ public class MaxSATImplicationConstraintEncoder
         this.formatTranslator = formatTranslator;
     }
 
+    /**
+     * Encodes an implication as CNF. The assumptions and the conclusion are encoded first, then
+     * combined according to {@link MaxSatFormatTranslator#getImplicationEncoding()}.
+     */
+    @Override
+    public VecInt[] encode(ImplicationConstraint constraint) {
+        // A list of VecInts/clauses from lhs of implication, which are
+        // conjuncted together in cnf
+        List<VecInt> assumptions = new ArrayList<>();
+        for (Constraint a : constraint.getAssumptions()) {
+            assumptions.addAll(Arrays.asList(a.serialize(formatTranslator)));
+        }
+        VecInt[] conclusionClauses = constraint.getConclusion()
+                .serialize(formatTranslator);
+
+        switch (formatTranslator.getImplicationEncoding()) {
+            case CARTESIAN:
+                return encodeCartesian(assumptions, conclusionClauses);
+            case AUXILIARY_VARIABLES:
+                return encodeWithAuxiliaryVariables(assumptions, conclusionClauses,
+                        formatTranslator.getVariableAllocator());
+            default:
+                if (countCartesianClauses(assumptions, conclusionClauses)
+                        <= countAuxiliaryVariableClauses(assumptions, conclusionClauses)) {
+                    return encodeCartesian(assumptions, conclusionClauses);
+                }
+                return encodeWithAuxiliaryVariables(assumptions, conclusionClauses,
+                        formatTranslator.getVariableAllocator());
+        }
+    }
+
     // High level procedures:
     // 1) Format translate all Constraint from assumptions to a list of VecInt:
     // [(a|b),(c|d)]
@@ -56,26 +102,27 @@ public class MaxSATImplicationConstraintEncoder
     // (~a | ~c | h | i) & (~a | ~c | j | k) & (~a | ~d | h | i) &
     // (~a | ~d | j | k) & (~b | ~c | h | i) & (~b | ~c | j | k) &
     // (~b | ~d | h | i) & (~b | ~d | j | k)
-    @Override
-    public VecInt[] encode(ImplicationConstraint constraint) {
-
-        // Step 1
-        // A list of VecInts/clauses from lhs of implication, which are
-        // conjuncted together in cnf
-        List<VecInt> assumptions = new ArrayList<>();
-        for (Constraint a : constraint.getAssumptions()) {
-            assumptions.addAll(Arrays.asList(a.serialize(formatTranslator)));
-        }
+    //
+    // The number of clauses is the product of the sizes of the assumption
+    // clauses, times the number of conclusion clauses.
+    /**
+     * Encodes {@code assumptions => conclusionClauses} without auxiliary variables, by
+     * distributing the negated assumptions over the conclusion clauses.
+     *
+     * @param assumptions the clauses of all assumptions (step 1)
+     * @param conclusionClauses the clauses of the conclusion
+     * @return the clauses of the implication
+     */
+    protected VecInt[] encodeCartesian(List<VecInt> assumptions, VecInt[] conclusionClauses) {
 
         // Step 2
         // l is a set of set, in which each subset contains every variable that
         // a VecInt contains, for example, l = {{a,b}, {c,d}}
         List<List<Integer>> l = new ArrayList<>();
         for (VecInt clause : assumptions) {
-            int[] a = clause.toArray();
             List<Integer> list = new ArrayList<>();
-            for (int each : a) {
-                list.add(each);
+            for (int i = 0; i < clause.size(); i++) {
+                list.add(clause.get(i));
             }
             l.add(list);
         }
@@ -87,9 +134,6 @@ public class MaxSATImplicationConstraintEncoder
         List<List<Integer>> cartesian = cartesianProduct(l);
 
         // Concatenate with every pair at the end
-        VecInt[] conclusionClauses = constraint.getConclusion()
-                .serialize(formatTranslator);
-
         int expectedSize = cartesian.size() * conclusionClauses.length;
 
         List<VecInt> serializedTemp = new ArrayList<>();
@@ -117,6 +161,131 @@ public class MaxSATImplicationConstraintEncoder
         return serializedTemp.toArray(finalSerializedResult);
     }
 
+    // Instead of distributing, give each assumption clause C that has more than
+    // one literal a fresh variable f meaning "C is false", i.e. f => ~l for every
+    // literal l of C. For a unit clause (l), ~l already is such a literal. Then
+    // the assumptions are false if one of these literals is true:
+    //
+    // (a | b) & (c | d) => (h | i) & (j | k) is encoded as
+    // (~f1 | ~a) & (~f1 | ~b) & (~f2 | ~c) & (~f2 | ~d) &
+    // (f1 | f2 | h | i) & (f1 | f2 | j | k)
+    //
+    // If there are many assumption and conclusion clauses, the conclusion gets a
+    // fresh variable g too, with g => each conclusion clause, so that the
+    // literals of the assumptions are not repeated in every conclusion clause:
+    // (f1 | f2 | g) & (~g | h | i) & (~g | j | k)
+    //
+    // The clauses are satisfiable together with the other constraints exactly
+    // when the cartesian encoding is, and the size is linear in the size of the
+    // assumptions and the conclusion.
+    /**
+     * Encodes {@code assumptions => conclusionClauses} with auxiliary variables, with a number
+     * of clauses linear in the number of literals.
+     *
+     * @param assumptions the clauses of all assumptions
+     * @param conclusionClauses the clauses of the conclusion
+     * @param variableAllocator allocates the auxiliary variables
+     * @return the clauses of the implication, including the definitions of the auxiliary
+     * variables
+     */
+    protected VecInt[] encodeWithAuxiliaryVariables(List<VecInt> assumptions, VecInt[] conclusionClauses,
+            VariableAllocator variableAllocator) {
+        if (conclusionClauses.length == 0) {
+            return emptyValue;
+        }
+        for (VecInt clause : assumptions) {
+            if (clause.size() == 0) {
+                // The assumptions can never hold
+                return emptyValue;
+            }
+        }
+
+        List<VecInt> result = new ArrayList<>();
+        // One literal per assumption clause, which implies that the clause is false
+        VecInt falsified = new VecInt(assumptions.size() + 1);
+        for (VecInt clause : assumptions) {
+            if (clause.size() == 1) {
+                falsified.push(-clause.get(0));
+            } else {
+                int falsifiedVar = variableAllocator.newVariable();
+                for (int i = 0; i < clause.size(); i++) {
+                    result.add(VectorUtils.asVec(-falsifiedVar, -clause.get(i)));
+                }
+                falsified.push(falsifiedVar);
+            }
+        }
+
+        if (usesConclusionVariable(falsified.size(), conclusionClauses.length)) {
+            int conclusionVar = variableAllocator.newVariable();
+            VecInt targetClause = new VecInt(falsified.size() + 1);
+            targetClause.pushAll(falsified);
+            targetClause.push(conclusionVar);
+            result.add(targetClause);
+            for (VecInt conclusionClause : conclusionClauses) {
+                VecInt impliedClause = new VecInt(conclusionClause.size() + 1);
+                impliedClause.push(-conclusionVar);
+                impliedClause.pushAll(conclusionClause);
+                result.add(impliedClause);
+            }
+        } else {
+            for (VecInt conclusionClause : conclusionClauses) {
+                VecInt targetClause = new VecInt(falsified.size() + conclusionClause.size());
+                targetClause.pushAll(falsified);
+                targetClause.pushAll(conclusionClause);
+                result.add(targetClause);
+            }
+        }
+        return result.toArray(new VecInt[result.size()]);
+    }
+
+    /**
+     * Whether {@link #encodeWithAuxiliaryVariables} gives the conclusion an auxiliary variable:
+     * only if that saves literals, i.e. if
+     * {@code falsified + 1 + conclusions < falsified * conclusions}.
+     */
+    private static boolean usesConclusionVariable(int falsified, int conclusions) {
+        return (falsified - 1) * (conclusions - 1) > 2;
+    }
+
+    /**
+     * @return the number of clauses {@link #encodeCartesian} returns, at most Long.MAX_VALUE
+     */
+    protected long countCartesianClauses(List<VecInt> assumptions, VecInt[] conclusionClauses) {
+        long count = conclusionClauses.length;
+        for (VecInt clause : assumptions) {
+            if (count == 0 || clause.size() == 0) {
+                return 0;
+            }
+            if (count > Long.MAX_VALUE / clause.size()) {
+                return Long.MAX_VALUE;
+            }
+            count *= clause.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of clauses {@link #encodeWithAuxiliaryVariables} returns
+     */
+    protected long countAuxiliaryVariableClauses(List<VecInt> assumptions, VecInt[] conclusionClauses) {
+        if (conclusionClauses.length == 0) {
+            return 0;
+        }
+        long count = 0;
+        for (VecInt clause : assumptions) {
+            if (clause.size() == 0) {
+                return 0;
+            }
+            if (clause.size() > 1) {
+                count += clause.size();
+            }
+        }
+        if (usesConclusionVariable(assumptions.size(), conclusionClauses.length)) {
+            return count + conclusionClauses.length + 1;
+        }
+        return count + conclusionClauses.length;
+    }
+
     /**
      * Method to get cartesian set of input set.
      *
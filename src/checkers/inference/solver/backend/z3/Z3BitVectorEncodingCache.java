@@ -0,0 +1,35 @@
+package checkers.inference.solver.backend.z3;
+
+import com.microsoft.z3.BitVecExpr;
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Expr;
+
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.EncodingCache;
+
+/**
+ * The {@link EncodingCache} of the z3 bit vector backend. A template is filled in by substituting
+ * the bit vector constants of its slots with the constants of the new slots.
+ */
+public class Z3BitVectorEncodingCache extends EncodingCache<BoolExpr> {
+
+    private final Z3BitVectorFormatTranslator formatTranslator;
+
+    public Z3BitVectorEncodingCache(Z3BitVectorFormatTranslator formatTranslator) {
+        this.formatTranslator = formatTranslator;
+    }
+
+    @Override
+    protected BoolExpr fillIn(BoolExpr template, VariableSlot[] templateSlots, VariableSlot[] slots) {
+        if (templateSlots.length == 0 || template.isTrue() || template.isFalse()) {
+            return template;
+        }
+        Expr[] from = new Expr[templateSlots.length];
+        Expr[] to = new Expr[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            from[i] = templateSlots[i].<BitVecExpr, BoolExpr>serialize(formatTranslator);
+            to[i] = slots[i].<BitVecExpr, BoolExpr>serialize(formatTranslator);
+        }
+        return (BoolExpr) template.substitute(from, to);
+    }
+}
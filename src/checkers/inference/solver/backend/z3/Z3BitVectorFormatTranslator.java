@@ -12,6 +12,7 @@ import org.checkerframework.javacutil.BugInCF;
 
 import checkers.inference.solver.backend.AbstractFormatTranslator;
 import checkers.inference.solver.backend.encoder.ConstraintEncoderFactory;
+import checkers.inference.solver.backend.encoder.EncodingCache;
 import checkers.inference.solver.backend.z3.encoder.Z3BitVectorConstraintEncoderFactory;
 import com.microsoft.z3.BitVecExpr;
 import com.microsoft.z3.BitVecNum;
@@ -119,6 +120,11 @@ public abstract class Z3BitVectorFormatTranslator extends AbstractFormatTranslat
         return new Z3BitVectorConstraintEncoderFactory(lattice, context, this);
     }
 
+    @Override
+    protected EncodingCache<BoolExpr> createEncodingCache() {
+        return new Z3BitVectorEncodingCache(this);
+    }
+
     @Override
     public BitVecExpr serialize(SourceVariableSlot slot) {
         return serializeVarSlot(slot);
@@ -0,0 +1,212 @@
+package checkers.inference.solver.backend.z3;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import com.microsoft.z3.BitVecNum;
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+import com.microsoft.z3.Expr;
+import com.microsoft.z3.FuncDecl;
+import com.microsoft.z3.Model;
+import com.microsoft.z3.Params;
+import com.microsoft.z3.Solver;
+import com.microsoft.z3.Status;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.PreferenceConstraint;
+
+/**
+ * An incremental z3 session over the hard constraints of a {@link Z3BitVectorFormatTranslator}:
+ * constraints can be added and retracted in groups between checks, and an unsatisfiable set of
+ * constraints is reported back as {@link Constraint}s.
+ *
+ * Every assertion is tracked by a Boolean constant of its own, so the unsat core of z3 names the
+ * constraints it is made of.  {@link #push()} opens a scope, and the matching {@link #pop()}
+ * retracts the constraints added since.  The slots keep the bit vector constants of the format
+ * translator for the lifetime of the context, so every check only encodes the constraints added
+ * since the last one.
+ *
+ * Preference constraints are soft, and never part of an unsat core, so the session skips them;
+ * {@link Z3Solver} optimizes them.
+ */
+public class Z3IncrementalSession {
+
+    /** The prefix of the names of the tracking constants, the slot constants are named by id. */
+    private static final String TRACKER_PREFIX = "c!";
+
+    private final Context context;
+
+    private final Solver solver;
+
+    private final Z3BitVectorFormatTranslator formatTranslator;
+
+    private final ProcessingEnvironment processingEnvironment;
+
+    /** The constraint each tracking constant stands for, by the name of the constant. */
+    private final Map<String, Constraint> trackedConstraints = new HashMap<>();
+
+    /** The names of the tracking constants of each scope, the innermost one last. */
+    private final Deque<List<String>> scopes = new ArrayDeque<>();
+
+    private int nextTrackerId = 0;
+
+    /** The result of the last {@link #check()}, or null if the constraints changed since. */
+    private Status lastStatus;
+
+    /**
+     * @param formatTranslator a format translator initialized with the given context
+     */
+    public Z3IncrementalSession(Context context, Z3BitVectorFormatTranslator formatTranslator,
+            ProcessingEnvironment processingEnvironment) {
+        this.context = context;
+        this.solver = context.mkSolver();
+        this.formatTranslator = formatTranslator;
+        this.processingEnvironment = processingEnvironment;
+        // The outermost scope, which is never popped.
+        scopes.addLast(new ArrayList<>());
+    }
+
+    /**
+     * Adds the constraints to the innermost scope.
+     */
+    public void add(Collection<Constraint> constraints) {
+        for (Constraint constraint : constraints) {
+            add(constraint);
+        }
+    }
+
+    /**
+     * Adds the constraint to the innermost scope.
+     *
+     * @return false if the constraint was skipped, because it is a preference constraint, always
+     * true, or not supported by the format translator
+     */
+    public boolean add(Constraint constraint) {
+        if (constraint instanceof PreferenceConstraint) {
+            return false;
+        }
+        BoolExpr serializedConstraint = constraint.serialize(formatTranslator);
+        if (serializedConstraint == null) {
+            InferenceMain.getInstance().logger.warning("Unsupported constraint detected! Constraint type: "
+                    + constraint.getClass());
+            return false;
+        } else if (serializedConstraint.isTrue()) {
+            return false;
+        }
+
+        String trackerName = TRACKER_PREFIX + nextTrackerId++;
+        solver.assertAndTrack(serializedConstraint, context.mkBoolConst(trackerName));
+        trackedConstraints.put(trackerName, constraint);
+        scopes.getLast().add(trackerName);
+        lastStatus = null;
+        return true;
+    }
+
+    /**
+     * Opens a scope, whose constraints the matching {@link #pop()} retracts.
+     */
+    public void push() {
+        solver.push();
+        scopes.addLast(new ArrayList<>());
+    }
+
+    /**
+     * Retracts the constraints added since the matching {@link #push()}.
+     */
+    public void pop() {
+        if (scopes.size() == 1) {
+            throw new BugInCF("Z3IncrementalSession.pop() without a matching push()");
+        }
+        solver.pop();
+        for (String trackerName : scopes.removeLast()) {
+            trackedConstraints.remove(trackerName);
+        }
+        lastStatus = null;
+    }
+
+    /**
+     * @return the number of open scopes, i.e. of {@link #push()}es not popped yet
+     */
+    public int getNumberOfScopes() {
+        return scopes.size() - 1;
+    }
+
+    /**
+     * @return the number of constraints asserted in all open scopes
+     */
+    public int getNumberOfConstraints() {
+        return trackedConstraints.size();
+    }
+
+    /**
+     * Sets parameters of the checks, e.g. a "timeout" in milliseconds after which they answer
+     * unknown.
+     */
+    public void setParameters(Params params) {
+        solver.setParameters(params);
+    }
+
+    /**
+     * Checks whether the constraints of all open scopes are satisfiable together.
+     */
+    public Status check() {
+        lastStatus = solver.check();
+        return lastStatus;
+    }
+
+    /**
+     * @return the solution of the last {@link #check()}, which must have been satisfiable
+     */
+    public Map<Integer, AnnotationMirror> getSolution() {
+        if (lastStatus != Status.SATISFIABLE) {
+            throw new BugInCF("No solution, the last check was " + lastStatus);
+        }
+        Model model = solver.getModel();
+        Map<Integer, AnnotationMirror> result = new HashMap<>();
+        for (FuncDecl funcDecl : model.getConstDecls()) {
+            String name = funcDecl.getName().toString();
+            if (name.startsWith(TRACKER_PREFIX)) {
+                continue;
+            }
+            Expr constInterp = model.getConstInterp(funcDecl);
+            if (!(constInterp instanceof BitVecNum)) {
+                throw new BugInCF("Wrong solution type detected: All solution must be type of BitVecNum, but get: "
+                        + constInterp.getClass());
+            }
+            result.put(Integer.valueOf(name),
+                    formatTranslator.decodeSolution((BitVecNum) constInterp, processingEnvironment));
+        }
+        return result;
+    }
+
+    /**
+     * @return the constraints of the unsat core of the last {@link #check()}, which must have been
+     * unsatisfiable
+     */
+    public Collection<Constraint> getUnsatisfiableConstraints() {
+        if (lastStatus != Status.UNSATISFIABLE) {
+            throw new BugInCF("No unsat core, the last check was " + lastStatus);
+        }
+        List<Constraint> result = new ArrayList<>();
+        for (BoolExpr tracker : solver.getUnsatCore()) {
+            Constraint constraint = trackedConstraints.get(tracker.getFuncDecl().getName().toString());
+            if (constraint == null) {
+                throw new BugInCF("Unknown tracking constant in the unsat core: " + tracker);
+            }
+            result.add(constraint);
+        }
+        return result;
+    }
+}
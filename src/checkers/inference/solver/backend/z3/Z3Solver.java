@@ -8,6 +8,7 @@ import java.util.Map;
 import javax.lang.model.element.AnnotationMirror;
 
 import org.checkerframework.javacutil.BugInCF;
+import org.checkerframework.javacutil.UserError;
 
 import com.microsoft.z3.BitVecNum;
 import com.microsoft.z3.BoolExpr;
@@ -16,6 +17,9 @@ import com.microsoft.z3.Expr;
 import com.microsoft.z3.FuncDecl;
 import com.microsoft.z3.Model;
 import com.microsoft.z3.Optimize;
+import com.microsoft.z3.Params;
+import com.microsoft.z3.Status;
+import com.microsoft.z3.Z3Exception;
 
 import checkers.inference.InferenceMain;
 import checkers.inference.model.Constraint;
@@ -45,9 +49,18 @@ public class Z3Solver extends Solver<Z3BitVectorFormatTranslator>{
     @Override
     public Map<Integer, AnnotationMirror> solve() {
         Map<Integer, AnnotationMirror> result = new HashMap<>();
+        optimal = true;
 
         encodeAllConstraints();
 
+        if (solverEnvironment.hasTimeBudget()) {
+            solver.setParameters(createTimeoutParams());
+        }
+
+        // An interrupt before the check starts is lost.
+        if (isCancelled()) {
+            return result;
+        }
         switch (solver.Check()) {
             case SATISFIABLE: {
                 result = decodeSolution(solver.getModel());
@@ -56,21 +69,75 @@ public class Z3Solver extends Solver<Z3BitVectorFormatTranslator>{
 
             case UNSATISFIABLE: {
                 System.out.println("Unsatisfiable!");
-                break;
+                return null;
             }
 
             case UNKNOWN:
             default: {
-                System.out.println("Solver failed to solve due to Unknown reason!");
+                optimal = false;
+                // When the time budget runs out, Optimize keeps the best model found so far.
+                Model bestModel = solverEnvironment.hasTimeBudget() ? getBestModelSoFar() : null;
+                if (bestModel != null) {
+                    result = decodeSolution(bestModel);
+                } else if (solverEnvironment.isTimeBudgetExhausted() && !isCancelled()) {
+                    throw new UserError("Z3 found no solution within the time budget.");
+                } else {
+                    System.out.println("Solver failed to solve due to Unknown reason: "
+                            + solver.getReasonUnknown());
+                }
                 break;
             }
         }
         return result;
     }
 
+    @Override
+    public void cancel() {
+        super.cancel();
+        // Makes a running check return UNKNOWN.
+        context.interrupt();
+    }
+
+    /**
+     * @return parameters that stop a check when the time budget runs out
+     */
+    private Params createTimeoutParams() {
+        Params params = context.mkParams();
+        params.add("timeout", (int) Math.min(Integer.MAX_VALUE,
+                Math.max(1, solverEnvironment.getRemainingTimeMillis())));
+        return params;
+    }
+
+    private Model getBestModelSoFar() {
+        try {
+            return solver.getModel();
+        } catch (Z3Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Explains unsatisfiable constraints by the unsat core of an incremental session on the same
+     * context, which reuses the bit vector constants of the slots encoded by {@link #solve()}.
+     * The check stops when the time budget runs out or the solver is cancelled, and then explains
+     * nothing.
+     */
     @Override
     public Collection<Constraint> explainUnsatisfiable() {
-        return new HashSet<>();// Doesn't support right now
+        Z3IncrementalSession session = new Z3IncrementalSession(context, formatTranslator,
+                solverEnvironment.processingEnvironment);
+        session.add(constraints);
+        // The statistics only count the encoding of solve(), which this one repeats.
+        formatTranslator.resetEncodingCacheStatistics();
+        if (solverEnvironment.hasTimeBudget()) {
+            session.setParameters(createTimeoutParams());
+        }
+
+        // An interrupt before the check starts is lost.
+        if (isCancelled() || session.check() != Status.UNSATISFIABLE) {
+            return new HashSet<>();
+        }
+        return session.getUnsatisfiableConstraints();
     }
 
     @Override
@@ -95,6 +162,7 @@ public class Z3Solver extends Solver<Z3BitVectorFormatTranslator>{
                 solver.Assert(serializedConstraint);
             }
         }
+        formatTranslator.recordEncodingCacheStatistics();
     }
 
 
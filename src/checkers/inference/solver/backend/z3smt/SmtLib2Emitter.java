@@ -0,0 +1,287 @@
+package checkers.inference.solver.backend.z3smt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import com.microsoft.z3.BitVecNum;
+import com.microsoft.z3.BitVecSort;
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Expr;
+import com.microsoft.z3.FuncDecl;
+import com.microsoft.z3.IntNum;
+import com.microsoft.z3.RatNum;
+import com.microsoft.z3.Sort;
+import com.microsoft.z3.enumerations.Z3_decl_kind;
+
+/**
+ * Writes z3 expressions as SMT-LIB2 commands straight to a {@link Writer}, walking the
+ * expressions as the encoders built them.
+ *
+ * Z3SmtSolver uses it with the {@code directEmission} option, instead of rendering every
+ * constraint with {@code simplify().toString()}, and the slots with {@code Optimize.toString()}:
+ * the expressions are neither rewritten nor rendered by z3 first, and nothing is kept in memory
+ * beyond the writer's buffer.  It still reads every node through the z3 API, and writes shared
+ * subterms out again at every use instead of binding them with {@code let}, so
+ * SmtLib2EmitterBenchmarks compares it to the default path.  The uninterpreted constants and
+ * functions of every expression are declared the first time they appear, before the command
+ * that uses them.
+ *
+ * Applications of indexed operators like {@code (_ extract 7 0)}, quantifiers and other
+ * expressions outside of the plain application syntax fall back to z3's own rendering.
+ */
+public class SmtLib2Emitter implements Closeable {
+
+    private final Writer out;
+
+    /** The names of the declared constants and functions. */
+    private final Set<String> declared = new HashSet<>();
+
+    public SmtLib2Emitter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes {@code (assert expr)}.
+     */
+    public void assertHard(BoolExpr expr) {
+        declareSymbols(expr);
+        write("(assert ");
+        writeExpr(expr);
+        write(")\n");
+    }
+
+    /**
+     * Writes {@code (assert (! expr :named name))}, so that the assertion can be part of an unsat
+     * core.
+     */
+    public void assertNamed(BoolExpr expr, String name) {
+        declareSymbols(expr);
+        write("(assert (! ");
+        writeExpr(expr);
+        write(" :named ");
+        write(name);
+        write("))\n");
+    }
+
+    /**
+     * Writes {@code (assert-soft expr :weight weight)}.
+     */
+    public void assertSoft(Expr expr, int weight) {
+        declareSymbols(expr);
+        write("(assert-soft ");
+        writeExpr(expr);
+        write(" :weight ");
+        write(Integer.toString(weight));
+        write(")\n");
+    }
+
+    /**
+     * Writes the given commands as they are.
+     */
+    public void write(String text) {
+        try {
+            out.write(text);
+        } catch (IOException e) {
+            throw new BugInCF("Cannot write the SMT-LIB2 encoding", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new BugInCF("Cannot write the SMT-LIB2 encoding", e);
+        }
+    }
+
+    /**
+     * @return true if the expression is true by its structure alone, without asking z3 to
+     * simplify it, e.g. {@code (and (= 0 0) (= false false))}
+     */
+    public static boolean isTriviallyTrue(Expr expr) {
+        if (expr.isTrue()) {
+            return true;
+        } else if (expr.isEq()) {
+            Expr[] args = expr.getArgs();
+            // z3 shares equal terms, so equal ASTs are the same term.
+            return args.length == 2 && args[0].equals(args[1]);
+        } else if (expr.isAnd()) {
+            for (Expr arg : expr.getArgs()) {
+                if (!isTriviallyTrue(arg)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (expr.isOr()) {
+            for (Expr arg : expr.getArgs()) {
+                if (isTriviallyTrue(arg)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (expr.isNot()) {
+            return isTriviallyFalse(expr.getArgs()[0]);
+        } else if (expr.isImplies()) {
+            Expr[] args = expr.getArgs();
+            return isTriviallyFalse(args[0]) || isTriviallyTrue(args[1]);
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the expression is false by its structure alone, e.g. {@code (= 0 1)}
+     */
+    public static boolean isTriviallyFalse(Expr expr) {
+        if (expr.isFalse()) {
+            return true;
+        } else if (expr.isEq()) {
+            Expr[] args = expr.getArgs();
+            // Distinct values, since z3 shares equal ones.
+            return args.length == 2 && isValue(args[0]) && isValue(args[1]) && !args[0].equals(args[1]);
+        } else if (expr.isAnd()) {
+            for (Expr arg : expr.getArgs()) {
+                if (isTriviallyFalse(arg)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (expr.isOr()) {
+            for (Expr arg : expr.getArgs()) {
+                if (!isTriviallyFalse(arg)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (expr.isNot()) {
+            return isTriviallyTrue(expr.getArgs()[0]);
+        }
+        return false;
+    }
+
+    private static boolean isValue(Expr expr) {
+        return expr.isNumeral() || expr.isTrue() || expr.isFalse();
+    }
+
+    /**
+     * Declares the uninterpreted constants and functions of the expression that are not declared
+     * yet.
+     */
+    private void declareSymbols(Expr expr) {
+        // Only the ids of terms that expr keeps alive, since z3 reuses the ids of freed terms.
+        Set<Integer> visited = new HashSet<>();
+        Deque<Expr> worklist = new ArrayDeque<>();
+        worklist.push(expr);
+        while (!worklist.isEmpty()) {
+            Expr current = worklist.pop();
+            if (!current.isApp() || !visited.add(current.getId())) {
+                continue;
+            }
+            FuncDecl funcDecl = current.getFuncDecl();
+            if (funcDecl.getDeclKind() == Z3_decl_kind.Z3_OP_UNINTERPRETED) {
+                declare(funcDecl);
+            }
+            for (Expr arg : current.getArgs()) {
+                worklist.push(arg);
+            }
+        }
+    }
+
+    private void declare(FuncDecl funcDecl) {
+        String name = funcDecl.getName().toString();
+        if (!declared.add(name)) {
+            return;
+        }
+        write("(declare-fun ");
+        writeSymbol(name);
+        write(" (");
+        Sort[] domain = funcDecl.getDomain();
+        for (int i = 0; i < domain.length; i++) {
+            if (i > 0) {
+                write(" ");
+            }
+            write(domain[i].toString());
+        }
+        write(") ");
+        write(funcDecl.getRange().toString());
+        write(")\n");
+    }
+
+    private void writeExpr(Expr expr) {
+        if (expr.isTrue()) {
+            write("true");
+        } else if (expr.isFalse()) {
+            write("false");
+        } else if (expr instanceof IntNum) {
+            writeInteger(((IntNum) expr).getBigInteger());
+        } else if (expr instanceof RatNum) {
+            RatNum ratNum = (RatNum) expr;
+            write("(/ ");
+            writeInteger(ratNum.getBigIntNumerator());
+            write(" ");
+            writeInteger(ratNum.getBigIntDenominator());
+            write(")");
+        } else if (expr instanceof BitVecNum) {
+            write("(_ bv");
+            write(((BitVecNum) expr).getBigInteger().toString());
+            write(" ");
+            write(Integer.toString(((BitVecSort) expr.getSort()).getSize()));
+            write(")");
+        } else if (!expr.isApp() || expr.isNumeral() || expr.getFuncDecl().getNumParameters() > 0) {
+            // Algebraic numbers, indexed operators and quantifiers.
+            write(expr.toString());
+        } else {
+            FuncDecl funcDecl = expr.getFuncDecl();
+            Expr[] args = expr.getArgs();
+            if (args.length > 0) {
+                write("(");
+            }
+            String name = funcDecl.getName().toString();
+            if (funcDecl.getDeclKind() == Z3_decl_kind.Z3_OP_UNINTERPRETED) {
+                writeSymbol(name);
+            } else {
+                // Boolean equality is called iff inside z3.
+                write(name.equals("iff") ? "=" : name);
+            }
+            if (args.length == 0) {
+                return;
+            }
+            for (Expr arg : args) {
+                write(" ");
+                writeExpr(arg);
+            }
+            write(")");
+        }
+    }
+
+    private void writeInteger(BigInteger value) {
+        if (value.signum() < 0) {
+            write("(- ");
+            write(value.negate().toString());
+            write(")");
+        } else {
+            write(value.toString());
+        }
+    }
+
+    /**
+     * Writes the name of an uninterpreted symbol, quoted, so that any name z3 accepted is a
+     * valid symbol.
+     */
+    private void writeSymbol(String name) {
+        if (name.indexOf('|') >= 0 || name.indexOf('\\') >= 0) {
+            throw new BugInCF("Cannot write the symbol " + name + " in SMT-LIB2");
+        }
+        write("|");
+        write(name);
+        write("|");
+    }
+}
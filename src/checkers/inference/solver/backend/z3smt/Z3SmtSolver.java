@@ -20,8 +20,13 @@ import com.microsoft.z3.Context;
 import com.microsoft.z3.Expr;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -30,13 +35,19 @@ import java.util.Map;
 import java.util.logging.Logger;
 import javax.lang.model.element.AnnotationMirror;
 import org.checkerframework.javacutil.BugInCF;
+import org.checkerframework.javacutil.UserError;
 
 public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
         extends Solver<Z3SmtFormatTranslator<SlotEncodingT, SlotSolutionT>> {
 
     public enum Z3SolverEngineArg implements SolverArg {
         /** option to use optimizing mode or not */
-        optimizingMode
+        optimizingMode,
+        /**
+         * option to write the smt file with {@link SmtLib2Emitter} instead of z3's simplify and
+         * toString, see SmtLib2EmitterBenchmarks
+         */
+        directEmission
     }
 
     private static final Logger logger = Logger.getLogger(Z3SmtSolver.class.getName());
@@ -47,12 +58,26 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
     /** The StringBuilder used to serialize the z3 smt input. */
     protected StringBuilder smtFileContents;
 
+    /**
+     * The emitter writing the z3 smt input file while it is serialized in direct emission mode,
+     * null otherwise.
+     */
+    protected SmtLib2Emitter emitter;
+
     protected static final String z3Program = "z3";
     protected boolean optimizingMode;
 
     /** This field indicates that whether we are going to explain unsatisfiable.*/
     protected boolean explainUnsat;
 
+    /** Whether the last run of z3 ran out of the time budget. */
+    protected boolean timedOut;
+
+    /**
+     * The time z3 gets to print its best model after its own timeout, before it is killed.
+     */
+    protected static final long KILL_GRACE_MILLIS = 5000;
+
     /**
      * This fields store the mapping from the constraint string ID to the constraint.
      * In non-optimizing mode, all ID-constraint mappings are cached during encoding,
@@ -110,15 +135,34 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
         serializeSMTFileContents();
 
         List<String> results = new ArrayList<>();
+        optimal = true;
+        // Cancelling also interrupts this thread, which kills a running z3 process.
+        if (isCancelled()) {
+            return null;
+        }
         solvingStart = System.currentTimeMillis();
         boolean isSat = runZ3Solver(results);
         solvingEnd = System.currentTimeMillis();
+        if (isCancelled()) {
+            return null;
+        }
 
         // serializationEnd and serializationStart are set within serializeSMTFileContents() above
         Statistics.addOrIncrementEntry(
                 "smt_serialization_time(millisec)", serializationEnd - serializationStart);
         Statistics.addOrIncrementEntry("smt_solving_time(millisec)", solvingEnd - solvingStart);
 
+        if (timedOut) {
+            if (results.isEmpty()) {
+                throw new UserError("z3 found no solution within the time budget.");
+            }
+            // In optimizing mode, the model is the best one z3 found before its timeout.
+            logger.fine("z3 ran out of the time budget, using the best model found so far");
+            optimal = false;
+            return formatTranslator.decodeSolution(
+                    results, solverEnvironment.processingEnvironment);
+        }
+
         if (!isSat) {
             // The status is UNSAT when there's no output model
             logger.fine("!!! The set of constraints is unsatisfiable! !!!");
@@ -161,14 +205,52 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
     }
 
     private void serializeSMTFileContents() {
+        if (solverEnvironment.getBoolArg(Z3SolverEngineArg.directEmission)) {
+            emitSMTFile();
+            return;
+        }
         // make a fresh solver to contain encodings of the slots
         solver = ctx.mkOptimize();
         // make a new buffer to store the serialized smt file contents
         smtFileContents = new StringBuilder();
 
+        encodeSMTFileContents();
+
+        logger.fine("Writing constraints to file: " + constraintsFile);
+
+        writeConstraintsToSMTFile();
+    }
+
+    /**
+     * Writes the smt file straight from the encodings with {@link SmtLib2Emitter}.
+     */
+    private void emitSMTFile() {
+        // the constraints for external solver use, or the unsat core constraints
+        File smtFile = new File(!explainUnsat ? constraintsFile : constraintsUnsatCoreFile);
+        logger.fine("Writing constraints to file: " + smtFile);
+
+        try (SmtLib2Emitter smtEmitter = new SmtLib2Emitter(new BufferedWriter(new FileWriter(smtFile)))) {
+            emitter = smtEmitter;
+            encodeSMTFileContents();
+        } catch (IOException e) {
+            throw new BugInCF("Cannot write file " + smtFile, e);
+        } finally {
+            emitter = null;
+        }
+
+        // write a copy in append mode to stats file for later bulk analysis
+        try (OutputStream stats = new FileOutputStream(constraintsStatsFile, true)) {
+            Files.copy(smtFile.toPath(), stats);
+            stats.write('\n');
+        } catch (IOException e) {
+            throw new BugInCF("Cannot write file " + constraintsStatsFile, e);
+        }
+    }
+
+    private void encodeSMTFileContents() {
         // only enable in non-optimizing mode
         if (!optimizingMode && explainUnsat) {
-            smtFileContents.append("(set-option :produce-unsat-cores true)\n");
+            writeCommands("(set-option :produce-unsat-cores true)\n");
         }
 
         serializationStart = System.currentTimeMillis();
@@ -181,16 +263,20 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
 
         logger.fine("Encoding constraints done!");
 
-        smtFileContents.append("(check-sat)\n");
+        writeCommands("(check-sat)\n");
         if (!optimizingMode && explainUnsat) {
-            smtFileContents.append("(get-unsat-core)\n");
+            writeCommands("(get-unsat-core)\n");
         } else {
-            smtFileContents.append("(get-model)\n");
+            writeCommands("(get-model)\n");
         }
-        
-        logger.fine("Writing constraints to file: " + constraintsFile);
+    }
 
-        writeConstraintsToSMTFile();
+    private void writeCommands(String commands) {
+        if (emitter != null) {
+            emitter.write(commands);
+        } else {
+            smtFileContents.append(commands);
+        }
     }
 
     private void writeConstraintsToSMTFile() {
@@ -216,7 +302,11 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
             if (slot instanceof VariableSlot) {
                 BoolExpr wfConstraint = formatTranslator.encodeSlotWellformednessConstraint((VariableSlot) slot);
 
-                if (!wfConstraint.simplify().isTrue()) {
+                if (emitter != null) {
+                    if (!SmtLib2Emitter.isTriviallyTrue(wfConstraint)) {
+                        emitter.assertHard(wfConstraint);
+                    }
+                } else if (!wfConstraint.simplify().isTrue()) {
                     solver.Assert(wfConstraint);
                 }
                 if (optimizingMode) {
@@ -225,6 +315,10 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
             }
         }
 
+        if (emitter != null) {
+            return;
+        }
+
         // solver.toString() also includes "(check-sat)" as the last line,
         // remove it
         String slotDefinitionsAndConstraints = solver.toString();
@@ -256,9 +350,13 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
                 continue;
             }
 
-            Expr simplifiedConstraint = serializedConstraint.simplify();
+            // The emitter only drops the constraints that are true or false by their structure,
+            // and asserts the ones that only z3 can tell, which doesn't change the solutions.
+            Expr simplifiedConstraint = emitter != null ? null : serializedConstraint.simplify();
 
-            if (simplifiedConstraint.isTrue()) {
+            if (emitter != null
+                    ? SmtLib2Emitter.isTriviallyTrue(serializedConstraint)
+                    : simplifiedConstraint.isTrue()) {
                 // This only works if the BoolExpr is directly the value Z3True.
                 // Still a good filter, but doesn't filter enough.
                 // EG: (and (= false false) (= false false) (= 0 0) (= 0 0) (= 0 0))
@@ -267,7 +365,9 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
                 continue;
             }
 
-            if (simplifiedConstraint.isFalse()) {
+            if (emitter != null
+                    ? SmtLib2Emitter.isTriviallyFalse(serializedConstraint)
+                    : simplifiedConstraint.isFalse()) {
                 final ToStringSerializer toStringSerializer = new ToStringSerializer(false);
                 throw new BugInCF(
                         "impossible constraint: "
@@ -276,41 +376,61 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
                                 + serializedConstraint);
             }
 
-            String clause = simplifiedConstraint.toString();
-
             if (!optimizingMode && explainUnsat) {
                 // add assertions with names, for unsat core dump
                 String constraintName = constraint.getClass().getSimpleName() + current;
 
-                constraintSmtFileContents.append("(assert (! ");
-                constraintSmtFileContents.append(clause);
-                constraintSmtFileContents.append(" :named " + constraintName + "))\n");
+                if (emitter != null) {
+                    emitter.assertNamed(serializedConstraint, constraintName);
+                } else {
+                    constraintSmtFileContents.append("(assert (! ");
+                    constraintSmtFileContents.append(simplifiedConstraint);
+                    constraintSmtFileContents.append(" :named " + constraintName + "))\n");
+                }
 
                 // add constraint to serialized constraints map, so that we can
                 // retrieve later using the constraint name when outputting the unsat core
                 serializedConstraints.put(constraintName, constraint);
+            } else if (emitter != null) {
+                emitter.assertHard(serializedConstraint);
             } else {
                 constraintSmtFileContents.append("(assert ");
-                constraintSmtFileContents.append(clause);
+                constraintSmtFileContents.append(simplifiedConstraint);
                 constraintSmtFileContents.append(")\n");
             }
 
             current++;
         }
+        if (explainUnsat) {
+            // The statistics only count the encoding of solve(), which this one repeats.
+            formatTranslator.resetEncodingCacheStatistics();
+        } else {
+            formatTranslator.recordEncodingCacheStatistics();
+        }
 
-        smtFileContents.append(constraintSmtFileContents);
+        if (emitter == null) {
+            smtFileContents.append(constraintSmtFileContents);
+        }
     }
 
     protected void encodeAllSoftConstraints() {
     	final Z3SmtSoftConstraintEncoder<SlotEncodingT, SlotSolutionT> encoder = formatTranslator.createSoftConstraintEncoder();
-        smtFileContents.append(encoder.encodeAndGetSoftConstraints(constraints));
+        if (emitter != null) {
+            encoder.encodeSoftConstraints(constraints, emitter);
+        } else {
+            smtFileContents.append(encoder.encodeAndGetSoftConstraints(constraints));
+        }
     }
 
     protected void encodeSlotPreferenceConstraint(VariableSlot varSlot) {
         // empty string means no optimization group
         // TODO: support variable weight for preference constraint
-        solver.AssertSoft(
-                formatTranslator.encodeSlotPreferenceConstraint(varSlot), 1, "");
+        BoolExpr preference = formatTranslator.encodeSlotPreferenceConstraint(varSlot);
+        if (emitter != null) {
+            emitter.assertSoft(preference, 1);
+        } else {
+            solver.AssertSoft(preference, 1, "");
+        }
     }
 
     /**
@@ -322,20 +442,29 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
     private boolean runZ3Solver(List<String> results) {
         assert results != null;
         // TODO: add z3 stats?
-        String[] command;
-        if (!explainUnsat) {
-            command = new String[] {z3Program, constraintsFile};
-        } else {
-            command = new String[] {z3Program, constraintsUnsatCoreFile};
+        List<String> command = new ArrayList<>();
+        command.add(z3Program);
+        long killTimeout = Long.MAX_VALUE;
+        if (solverEnvironment.hasTimeBudget()) {
+            // z3's own (soft) timeout lets it report the best model found so far
+            long remaining = Math.max(1, solverEnvironment.getRemainingTimeMillis());
+            command.add("-t:" + remaining);
+            killTimeout = remaining + KILL_GRACE_MILLIS;
         }
+        command.add(!explainUnsat ? constraintsFile : constraintsUnsatCoreFile);
 
         // Run command
         // TODO: check that stdErr has no errors
+        timedOut = false;
         int exitStatus =
                 ExternalSolverUtils.runExternalSolver(
-                        command,
+                        command.toArray(new String[0]),
                         stdOut -> parseStdOut(stdOut, results),
-                        stdErr -> ExternalSolverUtils.printStdStream(System.err, stdErr));
+                        stdErr -> ExternalSolverUtils.printStdStream(System.err, stdErr),
+                        killTimeout);
+        if (exitStatus == ExternalSolverUtils.TIMEOUT_EXIT_STATUS) {
+            timedOut = true;
+        }
         // if exit status from z3 is not 0, then it is unsat
         return exitStatus == 0;
     }
@@ -358,6 +487,12 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
         while ((line = readStdoutByLine(stdOut)) != null) {
             line = line.trim();
 
+            if (solverEnvironment.hasTimeBudget() && line.contentEquals("unknown")) {
+                // z3 ran out of time before it could decide or optimize
+                timedOut = true;
+                continue;
+            }
+
             if (explainUnsat) {
                 // UNSAT Cases ====================
                 // Parse the unsat output to get the unsatisfiable constraint identifiers
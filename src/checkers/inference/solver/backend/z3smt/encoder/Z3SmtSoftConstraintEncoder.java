@@ -15,6 +15,7 @@ import checkers.inference.model.ImplicationConstraint;
 import checkers.inference.model.InequalityConstraint;
 import checkers.inference.model.PreferenceConstraint;
 import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.solver.backend.z3smt.SmtLib2Emitter;
 import checkers.inference.solver.backend.z3smt.Z3SmtFormatTranslator;
 import checkers.inference.solver.frontend.Lattice;
 import org.checkerframework.javacutil.BugInCF;
@@ -24,6 +25,9 @@ public abstract class Z3SmtSoftConstraintEncoder<SlotEncodingT, SlotSolutionT>
 
     protected final StringBuilder softConstraints;
 
+    /** The emitter soft constraints are written to, or null to collect them in {@link #softConstraints}. */
+    private SmtLib2Emitter emitter;
+
     public Z3SmtSoftConstraintEncoder(
             Lattice lattice,
             Context ctx,
@@ -33,7 +37,11 @@ public abstract class Z3SmtSoftConstraintEncoder<SlotEncodingT, SlotSolutionT>
     }
 
     protected void addSoftConstraint(Expr serializedConstraint, int weight) {
-        softConstraints.append("(assert-soft " + serializedConstraint + " :weight " + weight + ")\n");
+        if (emitter != null) {
+            emitter.assertSoft(serializedConstraint, weight);
+        } else {
+            softConstraints.append("(assert-soft " + serializedConstraint + " :weight " + weight + ")\n");
+        }
     }
 
     protected abstract void encodeSoftSubtypeConstraint(SubtypeConstraint constraint);
@@ -49,6 +57,29 @@ public abstract class Z3SmtSoftConstraintEncoder<SlotEncodingT, SlotSolutionT>
      * @return a string representation of the encoding of soft constraints
      */
     public String encodeAndGetSoftConstraints(Collection<Constraint> constraints) {
+        encodeSoftConstraints(constraints);
+        String res = softConstraints.toString();
+        // clear field for next usage
+        softConstraints.setLength(0);
+        return res;
+    }
+
+    /**
+     * Encode a set of constraints as soft constraints, written straight to the given emitter.
+     *
+     * @param constraints constraints to be encoded as soft constraints
+     * @param emitter the emitter of the smt file
+     */
+    public void encodeSoftConstraints(Collection<Constraint> constraints, SmtLib2Emitter emitter) {
+        this.emitter = emitter;
+        try {
+            encodeSoftConstraints(constraints);
+        } finally {
+            this.emitter = null;
+        }
+    }
+
+    private void encodeSoftConstraints(Collection<Constraint> constraints) {
         for (Constraint constraint : constraints) {
             if (constraint instanceof SubtypeConstraint) {
                 encodeSoftSubtypeConstraint((SubtypeConstraint) constraint);
@@ -63,9 +94,5 @@ public abstract class Z3SmtSoftConstraintEncoder<SlotEncodingT, SlotSolutionT>
                 throw new BugInCF("Soft constraint for " + constraint.getClass().getName() + " is not supported");
             }
         }
-        String res = softConstraints.toString();
-        // clear field for next usage
-        softConstraints.setLength(0);
-        return res;
     }
 }
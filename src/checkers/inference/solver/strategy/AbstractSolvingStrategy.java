@@ -1,6 +1,14 @@
 package checkers.inference.solver.strategy;
 
+import java.util.Collection;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.presolve.SlotDomains;
+import checkers.inference.solver.backend.Solver;
 import checkers.inference.solver.backend.SolverFactory;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.util.SolverEnvironment;
 
 /**
  * Abstract base class for all concrete {@link SolvingStrategy} implementation. *
@@ -13,8 +21,28 @@ public abstract class AbstractSolvingStrategy implements SolvingStrategy {
      */
     protected final SolverFactory solverFactory;
 
+    /**
+     * The qualifiers each slot can take, or null if every slot can take every qualifier.
+     */
+    protected SlotDomains slotDomains;
+
     public AbstractSolvingStrategy(SolverFactory solverFactory) {
         this.solverFactory = solverFactory;
     }
 
+    @Override
+    public void setSlotDomains(SlotDomains slotDomains) {
+        this.slotDomains = slotDomains;
+    }
+
+    /**
+     * Create a solver by the given factory, whose format translator gets the {@link #slotDomains}.
+     */
+    protected Solver<?> createSolver(SolverFactory factory, SolverEnvironment solverEnvironment,
+            Collection<Slot> slots, Collection<Constraint> constraints, Lattice lattice) {
+        Solver<?> solver = factory.createSolver(solverEnvironment, slots, constraints, lattice);
+        solver.setSlotDomains(slotDomains);
+        return solver;
+    }
+
 }
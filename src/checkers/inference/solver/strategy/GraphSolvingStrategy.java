@@ -33,6 +33,7 @@ import checkers.inference.solver.util.SolverEnvironment;
 import checkers.inference.solver.util.Statistics;
 import com.sun.tools.javac.util.Pair;
 import org.checkerframework.framework.type.QualifierHierarchy;
+import org.checkerframework.javacutil.UserError;
 
 /**
  * GraphSolvingStrategy solves a given set of constraints by a divide-and-conquer way:
@@ -51,6 +52,12 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
         solveInParallel;
     }
 
+    /**
+     * Whether the solutions of all underlying solvers are optimal, i.e. none of them ran out of
+     * the time budget. Set before {@link #mergeInferenceResults(List)} is called.
+     */
+    protected boolean allSolutionsOptimal = true;
+
     public GraphSolvingStrategy(SolverFactory solverFactory) {
         super(solverFactory);
     }
@@ -79,7 +86,13 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
             if (solveInParallel) {
                 try {
                     inferenceResults = solveInparallel(separatedGraphSolvers);
-                } catch (InterruptedException | ExecutionException e) {
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof UserError) {
+                        // e.g. an underlying solver found no solution within the time budget
+                        throw (UserError) e.getCause();
+                    }
+                    e.printStackTrace();
+                } catch (InterruptedException e) {
                     e.printStackTrace();
                 }
             } else {
@@ -87,6 +100,11 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
             }
         }
 
+        allSolutionsOptimal = true;
+        for (Solver<?> underlyingSolver : separatedGraphSolvers) {
+            allSolutionsOptimal &= underlyingSolver.isOptimal();
+        }
+
         // Merge solutions.
         InferenceResult result = mergeInferenceResults(inferenceResults);
 
@@ -130,7 +148,8 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
         List<Solver<?>> separatedGraphSovlers = new ArrayList<>();
 
         for (Set<Constraint> independentConstraints : constraintGraph.getIndependentPath()) {
-            separatedGraphSovlers.add(solverFactory.createSolver(solverEnvironment, slots, independentConstraints, lattice));
+            separatedGraphSovlers.add(
+                    createSolver(solverFactory, solverEnvironment, slots, independentConstraints, lattice));
         }
 
         return separatedGraphSovlers;
@@ -222,6 +241,6 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
 
         // Till this point, there must be solution
         Statistics.addOrIncrementEntry("annotation_size", solutions.size());
-        return new DefaultInferenceResult(solutions);
+        return new DefaultInferenceResult(solutions, allSolutionsOptimal);
     }
 }
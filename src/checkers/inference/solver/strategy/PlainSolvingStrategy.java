@@ -24,12 +24,12 @@ public class PlainSolvingStrategy extends AbstractSolvingStrategy{
     public InferenceResult solve(SolverEnvironment solverEnvironment, Collection<Slot> slots,
                                  Collection<Constraint> constraints, Lattice lattice) {
 
-        Solver<?> underlyingSolver = solverFactory.createSolver(solverEnvironment, slots, constraints, lattice);
+        Solver<?> underlyingSolver = createSolver(solverFactory, solverEnvironment, slots, constraints, lattice);
 
         Map<Integer, AnnotationMirror> solutions = underlyingSolver.solve();
 
         if (solutions != null) {
-            return new DefaultInferenceResult(solutions);
+            return new DefaultInferenceResult(solutions, underlyingSolver.isOptimal());
         } else {
             return new DefaultInferenceResult(underlyingSolver.explainUnsatisfiable());
         }
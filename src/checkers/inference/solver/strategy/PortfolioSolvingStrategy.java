@@ -0,0 +1,283 @@
+package checkers.inference.solver.strategy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.BugInCF;
+import org.checkerframework.javacutil.UserError;
+
+import checkers.inference.DefaultInferenceResult;
+import checkers.inference.InferenceMain;
+import checkers.inference.InferenceResult;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.PreferenceConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.SolverEngine;
+import checkers.inference.solver.SolverEngine.SolverEngineArg;
+import checkers.inference.solver.backend.Solver;
+import checkers.inference.solver.backend.SolverFactory;
+import checkers.inference.solver.backend.maxsat.MaxSatSolver;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.util.NameUtils;
+import checkers.inference.solver.util.SolverArg;
+import checkers.inference.solver.util.SolverEnvironment;
+import checkers.inference.solver.util.Statistics;
+
+/**
+ * PortfolioSolvingStrategy gives the same constraints to several backends, which encode and solve
+ * them at the same time on a bounded thread pool, and keeps the answer of one of them:
+ *
+ * 1. Without a time budget, the first backend to answer wins, with a solution or a proof that
+ * there is none.
+ * 2. With a time budget ({@link SolverEngineArg#timeBudget}), every backend returns the best
+ * solution it found when the budget runs out, and the solution that violates the least weight of
+ * preference constraints wins. A backend that proves its solution optimal, or the constraints
+ * unsatisfiable, wins at once.
+ *
+ * The other backends are then cancelled, see {@link Solver#cancel()}, and the winner is recorded
+ * in the statistics as portfolio_winner_[name of the backend].
+ *
+ * No single backend is fastest on every constraint set, e.g. sat4j often wins on small lattices
+ * and z3 on large ones, so racing them costs some CPU time but keeps the solving time close to
+ * the one of the best backend for each input.
+ */
+public class PortfolioSolvingStrategy extends AbstractSolvingStrategy {
+
+    enum PortfolioSolvingStrategyArg implements SolverArg {
+        /**
+         * The backends to race against the one given by {@link SolverEngineArg#solver},
+         * separated by '+', e.g. Lingeling.
+         */
+        portfolio,
+
+        /**
+         * The number of backends solving at the same time, all of them by default. With fewer
+         * threads, the last backends only start when one of the first ones has answered, so
+         * they only matter with a time budget, or if a backend fails.
+         */
+        portfolioThreads;
+    }
+
+    /** Creates the factories of the other backends of the portfolio from their names. */
+    private final Function<String, SolverFactory> solverFactories;
+
+    /**
+     * @param solverFactory the factory of the backend given by {@link SolverEngineArg#solver}
+     * @param solverFactories the factories of the other backends by name, e.g. those of
+     * {@link SolverEngine#createSolverFactory(String)}
+     */
+    public PortfolioSolvingStrategy(SolverFactory solverFactory, Function<String, SolverFactory> solverFactories) {
+        super(solverFactory);
+        this.solverFactories = solverFactories;
+    }
+
+    @Override
+    public InferenceResult solve(SolverEnvironment solverEnvironment, Collection<Slot> slots,
+                                 Collection<Constraint> constraints, Lattice lattice) {
+        List<String> names = getPortfolio(solverEnvironment);
+        List<Solver<?>> solvers = new ArrayList<>(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            SolverFactory factory = i == 0 ? solverFactory : solverFactories.apply(names.get(i));
+            solvers.add(createSolver(factory, solverEnvironment, slots, constraints, lattice));
+        }
+
+        final long solvingStart = System.currentTimeMillis();
+        ExecutorService service = Executors.newFixedThreadPool(getNumberOfThreads(solverEnvironment, solvers.size()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "portfolio-solver");
+                    // A backend that ignores the cancel must not keep the checker running.
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        CompletionService<Answer> completionService = new ExecutorCompletionService<>(service);
+        for (int i = 0; i < solvers.size(); i++) {
+            final int index = i;
+            final Solver<?> solver = solvers.get(i);
+            completionService.submit(() -> {
+                Map<Integer, AnnotationMirror> solutions = solver.solve();
+                Collection<Constraint> unsatisfiableConstraints = null;
+                if (solutions == null && !solver.isCancelled()) {
+                    unsatisfiableConstraints = solver.explainUnsatisfiable();
+                }
+                return new Answer(index, solutions, unsatisfiableConstraints, solver.isOptimal());
+            });
+        }
+
+        Answer winner;
+        try {
+            winner = awaitWinner(completionService, solvers.size(), names,
+                    solverEnvironment.hasTimeBudget(), hasVariableSlots(slots), constraints);
+        } finally {
+            for (Solver<?> solver : solvers) {
+                solver.cancel();
+            }
+            // Interrupts the backends that wait for an external process, which then kill it.
+            service.shutdownNow();
+        }
+
+        final long solvingEnd = System.currentTimeMillis();
+        Statistics.addOrIncrementEntry("portfolio_solving_time(ms)", solvingEnd - solvingStart);
+        Statistics.addOrIncrementEntry("portfolio_winner_" + names.get(winner.index), 1);
+
+        if (winner.solutions != null) {
+            return new DefaultInferenceResult(winner.solutions, winner.optimal);
+        } else {
+            return new DefaultInferenceResult(winner.unsatisfiableConstraints);
+        }
+    }
+
+    /**
+     * @return the names of the backends, the one given by {@link SolverEngineArg#solver} first
+     */
+    protected List<String> getPortfolio(SolverEnvironment solverEnvironment) {
+        List<String> names = new ArrayList<>();
+        String solverName = solverEnvironment.getArg(SolverEngineArg.solver);
+        names.add(solverName == null ? NameUtils.getSolverName(MaxSatSolver.class) : solverName);
+
+        String portfolio = solverEnvironment.getArg(PortfolioSolvingStrategyArg.portfolio);
+        if (portfolio != null) {
+            for (String name : portfolio.split("\\+")) {
+                name = name.trim();
+                if (!name.isEmpty() && !names.contains(name)) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    private int getNumberOfThreads(SolverEnvironment solverEnvironment, int numberOfSolvers) {
+        String threads = solverEnvironment.getArg(PortfolioSolvingStrategyArg.portfolioThreads);
+        if (threads == null) {
+            return numberOfSolvers;
+        }
+        try {
+            int numberOfThreads = Integer.parseInt(threads.trim());
+            if (numberOfThreads > 0) {
+                return Math.min(numberOfThreads, numberOfSolvers);
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new UserError("Invalid portfolioThreads: " + threads + ", expected a positive number");
+    }
+
+    private static boolean hasVariableSlots(Collection<Slot> slots) {
+        for (Slot slot : slots) {
+            if (slot instanceof VariableSlot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Takes the answers of the backends as they finish, until one of them settles the result.
+     * Empty solutions of variable slots, e.g. of z3 when it answers unknown, count as failures.
+     *
+     * @param withTimeBudget whether to wait for the best solution rather than the first one
+     * @param hasVariableSlots whether a solution must solve some variable slots
+     * @return the answer of the winning backend
+     */
+    private Answer awaitWinner(CompletionService<Answer> completionService, int numberOfSolvers,
+            List<String> names, boolean withTimeBudget, boolean hasVariableSlots,
+            Collection<Constraint> constraints) {
+        Answer best = null;
+        long bestCost = Long.MAX_VALUE;
+        RuntimeException firstFailure = null;
+        for (int remaining = numberOfSolvers; remaining > 0; remaining--) {
+            Answer answer;
+            try {
+                Future<Answer> future = completionService.take();
+                answer = future.get();
+            } catch (InterruptedException e) {
+                throw new BugInCF("The portfolio solving thread was interrupted.", e);
+            } catch (ExecutionException e) {
+                // The other backends may still answer.
+                InferenceMain.getInstance().logger.warning("A backend of the portfolio failed: " + e.getCause());
+                if (firstFailure == null) {
+                    firstFailure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new BugInCF("A backend of the portfolio failed.", e.getCause());
+                }
+                continue;
+            }
+
+            if (answer.solutions != null && answer.solutions.isEmpty() && hasVariableSlots) {
+                String name = names.get(answer.index);
+                InferenceMain.getInstance().logger.warning(name + " of the portfolio found no solution.");
+                if (firstFailure == null) {
+                    firstFailure = new UserError(name + " found no solution.");
+                }
+                continue;
+            }
+            if (answer.solutions == null || !withTimeBudget || answer.optimal) {
+                return answer;
+            }
+            long cost = getPreferenceCost(answer.solutions, constraints);
+            InferenceMain.getInstance().logger.fine(names.get(answer.index) + " found a solution of cost " + cost);
+            if (best == null || cost < bestCost) {
+                best = answer;
+                bestCost = cost;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        throw firstFailure != null ? firstFailure : new BugInCF("The portfolio has no backend.");
+    }
+
+    /**
+     * @return the total weight of the preference constraints the solutions violate
+     */
+    protected long getPreferenceCost(Map<Integer, AnnotationMirror> solutions,
+            Collection<Constraint> constraints) {
+        long cost = 0;
+        for (Constraint constraint : constraints) {
+            if (!(constraint instanceof PreferenceConstraint)) {
+                continue;
+            }
+            PreferenceConstraint preference = (PreferenceConstraint) constraint;
+            AnnotationMirror solution = solutions.get(preference.getVariable().getId());
+            AnnotationMirror goal = preference.getGoal().getValue();
+            if (solution == null || (solution != goal && !AnnotationUtils.areSame(solution, goal))) {
+                cost += preference.getWeight();
+            }
+        }
+        return cost;
+    }
+
+    /** The result of one backend. */
+    private static class Answer {
+        /** The index of the backend in the portfolio. */
+        final int index;
+
+        /** The solutions, or null if the constraints are unsatisfiable. */
+        final Map<Integer, AnnotationMirror> solutions;
+
+        final Collection<Constraint> unsatisfiableConstraints;
+
+        final boolean optimal;
+
+        Answer(int index, Map<Integer, AnnotationMirror> solutions,
+                Collection<Constraint> unsatisfiableConstraints, boolean optimal) {
+            this.index = index;
+            this.solutions = solutions;
+            this.unsatisfiableConstraints = unsatisfiableConstraints;
+            this.optimal = optimal;
+        }
+    }
+}
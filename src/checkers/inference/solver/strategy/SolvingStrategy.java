@@ -5,6 +5,7 @@ import java.util.Collection;
 import checkers.inference.InferenceResult;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.Slot;
+import checkers.inference.presolve.SlotDomains;
 import checkers.inference.solver.SolverEngine;
 import checkers.inference.solver.frontend.Lattice;
 import checkers.inference.solver.util.SolverEnvironment;
@@ -31,4 +32,14 @@ public interface SolvingStrategy {
      */
     InferenceResult solve(SolverEnvironment solverEnvironment, Collection<Slot> slots,
                           Collection<Constraint> constraints, Lattice lattice);
+
+    /**
+     * Hands the domains narrowed by {@link checkers.inference.presolve.DomainPresolver} to the
+     * format translators of the solvers this strategy creates.  Strategies whose solvers encode
+     * a lattice of their own ignore them.
+     *
+     * @param slotDomains the qualifiers each slot can take
+     */
+    default void setSlotDomains(SlotDomains slotDomains) {
+    }
 }
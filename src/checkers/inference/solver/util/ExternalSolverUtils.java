@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 
@@ -20,6 +21,12 @@ public class ExternalSolverUtils {
 
     public static final Logger logger = Logger.getLogger(ExternalSolverUtils.class.getName());
 
+    /**
+     * The exit status returned by {@link #runExternalSolver(String[], Consumer, Consumer, long)}
+     * if the external solver did not finish in time and was killed.
+     */
+    public static final int TIMEOUT_EXIT_STATUS = Integer.MIN_VALUE;
+
     /**
      * Runs the external solver as given by command and uses the given
      * stdOutHandler and stdErrHandler lambdas to process stdOut and stdErr.
@@ -37,6 +44,34 @@ public class ExternalSolverUtils {
      */
     public static int runExternalSolver(String[] command, Consumer<BufferedReader> stdOutHandler,
             Consumer<BufferedReader> stdErrHandler) {
+        return runExternalSolver(command, stdOutHandler, stdErrHandler, Long.MAX_VALUE);
+    }
+
+    /**
+     * Runs the external solver as given by command and uses the given
+     * stdOutHandler and stdErrHandler lambdas to process stdOut and stdErr,
+     * killing the solver if it does not finish within the given time, or if the
+     * calling thread is interrupted while waiting for it, e.g. by
+     * {@link java.util.concurrent.ExecutorService#shutdownNow()}. In the latter
+     * case the interrupt status of the thread is kept.
+     *
+     * @param command
+     *            an external solver command to be executed, each string in the
+     *            array is space-concatenated to form the final command.
+     * @param stdOutHandler
+     *            a lambda which takes a {@link BufferedReader} providing the
+     *            stdOut of the external solver and handles the stdOut.
+     * @param stdErrHandler
+     *            a lambda which takes a {@link BufferedReader} providing the
+     *            stdErr of the external solver and handles the stdErr.
+     * @param timeoutMillis
+     *            the milliseconds to wait for the external solver, e.g.
+     *            {@link SolverEnvironment#getRemainingTimeMillis()}.
+     * @return the exit status code of the external command, or
+     *            {@link #TIMEOUT_EXIT_STATUS} if it was killed.
+     */
+    public static int runExternalSolver(String[] command, Consumer<BufferedReader> stdOutHandler,
+            Consumer<BufferedReader> stdErrHandler, long timeoutMillis) {
 
         logger.info("Running external solver command \"" + String.join(" ", command) + "\".");
 
@@ -56,7 +91,23 @@ public class ExternalSolverUtils {
         stdOutHandlerThread.start();
         stdErrHandlerThread.start();
 
-        // Wait for external solver threads to finish
+        boolean finished;
+        boolean interrupted = false;
+        try {
+            finished = process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (!finished) {
+                logger.info("External solver did not finish within " + timeoutMillis + " ms, killing it");
+                process.destroyForcibly().waitFor();
+            }
+        } catch (InterruptedException e) {
+            logger.info("Interrupted while waiting for the external solver, killing it");
+            process.destroyForcibly();
+            finished = false;
+            interrupted = true;
+        }
+
+        // Wait for external solver threads to finish, they reach the end of the streams once
+        // the process is gone
         try {
             stdOutHandlerThread.join();
         } catch (InterruptedException e) {
@@ -71,16 +122,12 @@ public class ExternalSolverUtils {
                     "The threads for handling stdErr of the external solver was interrupted.");
         }
 
-        int exitStatus;
-        try {
-            exitStatus = process.waitFor();
-        } catch (InterruptedException e) {
-            throw new BugInCF("The threads for the external solver was interrupted.");
-        }
-
         logger.info("External solver process finished");
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
 
-        return exitStatus;
+        return finished ? process.exitValue() : TIMEOUT_EXIT_STATUS;
     }
 
     /**
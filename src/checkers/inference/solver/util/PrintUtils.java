@@ -1,7 +1,12 @@
 package checkers.inference.solver.util;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
@@ -9,7 +14,7 @@ import java.util.TreeSet;
 
 import javax.lang.model.element.AnnotationMirror;
 
-import org.checkerframework.framework.type.AnnotatedTypeFactory;
+import org.checkerframework.framework.util.AnnotationFormatter;
 
 import checkers.inference.InferenceMain;
 import checkers.inference.model.ArithmeticConstraint;
@@ -35,6 +40,7 @@ import checkers.inference.model.SourceVariableSlot;
 import checkers.inference.model.SubtypeConstraint;
 import checkers.inference.model.VariableSlot;
 import checkers.inference.model.serialization.ToStringSerializer;
+import checkers.inference.solver.backend.maxsat.WellFormednessConstraint;
 
 /**
  * PrintUtils contains methods for printing and writing the solved results.
@@ -49,29 +55,23 @@ public class PrintUtils {
      * @param solutions
      *            inference solutions: a map between slot IDs and annotation
      *            mirrors
+     * @see SolutionReporter.TableReporter
      */
     private static void outputSolutions(PrintStream stream, Map<Integer, AnnotationMirror> solutions) {
-        final AnnotatedTypeFactory atf = InferenceMain.getInstance().getRealTypeFactory();
-
-        // string length of the highest slot ID, used to pad spaces for pretty formatting
-        final int maxLength = String.valueOf(InferenceMain.getInstance().getSlotManager().getNumberOfSlots()).length();
-
-        stream.println("======================= Solutions =======================");
-
-        for (Integer j : solutions.keySet()) {
-            stream.print("SlotID: " + j);
-            for (int i = 0; i < maxLength + 2 - j.toString().length(); i++) {
-                stream.print(" ");
-            }
-            stream.println("Annotation: " + atf.getAnnotationFormatter()
-                    .formatAnnotationMirror(solutions.get(j)));
+        final AnnotationFormatter formatter = InferenceMain.getInstance().getRealTypeFactory().getAnnotationFormatter();
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream));
+        try {
+            new SolutionReporter.TableReporter(formatter::formatAnnotationMirror, null).report(solutions, out);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-
-        stream.println("=========================================================");
     }
 
     /**
      * Print the solved solutions to screen.
+     *
+     * @see SolutionReporter
      */
     public static void printSolutions(Map<Integer, AnnotationMirror> solutions) {
         outputSolutions(System.out, solutions);
@@ -149,13 +149,16 @@ public class PrintUtils {
         // Print constraints and related slots
         stream.println("--- Constraints :");
         for (Constraint constraint : unsatConstraints) {
-            stream.println(constraint.serialize(toStringSerializer));
+            String serialized = constraint.serialize(toStringSerializer);
+            // Restrictions of the encoding, e.g. well-formedness, have no serialization.
+            stream.println(serialized != null ? serialized
+                    : toStringSerializer.getCurrentIndentString() + constraint);
             stream.println("\t" + constraint.getLocation());
         }
 
         // collect unique list of slots from all unsat constraints
         for (Constraint constraint : unsatConstraints) {
-            constraint.serialize(slotsCollector);
+            slotsCollector.collect(constraint);
         }
 
         stream.println("--- Related Slots :");
@@ -218,6 +221,18 @@ public class PrintUtils {
             return uniqueRelatedSlots;
         }
 
+        /**
+         * Collects the slots of the given constraint.  Restrictions of the encoding, e.g.
+         * well-formedness, have no serialization, so their slots are collected here.
+         */
+        public void collect(Constraint constraint) {
+            if (constraint instanceof WellFormednessConstraint) {
+                ((WellFormednessConstraint) constraint).getSlot().serialize(this);
+            } else {
+                constraint.serialize(this);
+            }
+        }
+
         private void addSlotIfNotAdded(Slot slot) {
             if (!(slot instanceof ConstantSlot)) {
                 uniqueRelatedSlots.add(slot);
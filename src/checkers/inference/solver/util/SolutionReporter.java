@@ -0,0 +1,224 @@
+package checkers.inference.solver.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.framework.util.AnnotationFormatter;
+import org.checkerframework.javacutil.BugInCF;
+import org.json.simple.JSONValue;
+
+import checkers.inference.InferenceMain;
+
+/**
+ * Reports the solutions of a solve, selected by the {@link SolutionReporterArg} solver arguments:
+ * <ul>
+ * <li>{@code solutionReporter=table} (default): a table on the console, as PrintUtils always did</li>
+ * <li>{@code solutionReporter=none}: no output, for runs where the console I/O would dominate</li>
+ * <li>{@code solutionReporter=tsv}: a "slot TAB annotation" line per solution in a file</li>
+ * <li>{@code solutionReporter=jsonl}: a {"slot": id, "annotation": "..."} line per solution in a file</li>
+ * </ul>
+ * The file of the tsv and jsonl reporters is given by {@code solutionReportFile}, and defaults to
+ * solutions.tsv or solutions.jsonl. Solutions are always reported in increasing slot id order and
+ * written through a buffer in one go.
+ */
+public abstract class SolutionReporter {
+
+    public enum SolutionReporterArg implements SolverArg {
+        /**
+         * how to report solutions: none, table, tsv or jsonl
+         */
+        solutionReporter,
+
+        /**
+         * file the tsv and jsonl reporters write to
+         */
+        solutionReportFile;
+    }
+
+    /** Reporter that does not output anything. */
+    public static final SolutionReporter NONE = new SolutionReporter() {
+        @Override
+        public void report(Map<Integer, AnnotationMirror> solutions) {
+        }
+    };
+
+    /**
+     * Create the reporter selected by the solver arguments, formatting annotations with the
+     * annotation formatter of the real type factory.
+     */
+    public static SolutionReporter create(SolverEnvironment solverEnvironment) {
+        String kind = solverEnvironment.getArg(SolutionReporterArg.solutionReporter);
+        String fileName = solverEnvironment.getArg(SolutionReporterArg.solutionReportFile);
+        if (kind == null || kind.equals("table")) {
+            return new TableReporter(defaultFormatter(), null);
+        }
+
+        switch (kind) {
+            case "none":
+                return NONE;
+            case "tsv":
+                return new TsvReporter(defaultFormatter(), new File(fileName == null ? "solutions.tsv" : fileName));
+            case "jsonl":
+                return new JsonLinesReporter(defaultFormatter(), new File(fileName == null ? "solutions.jsonl" : fileName));
+            default:
+                throw new BugInCF("Unknown solution reporter: " + kind + ", expected none, table, tsv or jsonl");
+        }
+    }
+
+    private static Function<AnnotationMirror, String> defaultFormatter() {
+        AnnotationFormatter formatter = InferenceMain.getInstance().getRealTypeFactory().getAnnotationFormatter();
+        return formatter::formatAnnotationMirror;
+    }
+
+    /**
+     * Report the given solutions.
+     *
+     * @param solutions a map between slot IDs and annotation mirrors
+     */
+    public abstract void report(Map<Integer, AnnotationMirror> solutions);
+
+    /**
+     * Base class of the reporters that format solutions into a writer, either System.out or a file.
+     */
+    public abstract static class FormattingReporter extends SolutionReporter {
+
+        protected final Function<AnnotationMirror, String> formatter;
+
+        /** The file to write to, or null for System.out. */
+        private final File file;
+
+        protected FormattingReporter(Function<AnnotationMirror, String> formatter, File file) {
+            this.formatter = formatter;
+            this.file = file;
+        }
+
+        @Override
+        public void report(Map<Integer, AnnotationMirror> solutions) {
+            try {
+                if (file == null) {
+                    // Do not close System.out.
+                    Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+                    report(solutions, out);
+                    out.flush();
+                } else {
+                    try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                        report(solutions, out);
+                    }
+                    System.out.println("Solutions have been written to: " + file.getAbsolutePath() + "\n");
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Write the given solutions to the given writer, in increasing slot id order.
+         */
+        public void report(Map<Integer, AnnotationMirror> solutions, Writer out) throws IOException {
+            List<Integer> ids = new ArrayList<>(solutions.keySet());
+            Collections.sort(ids);
+            writeHeader(ids, out);
+            for (Integer id : ids) {
+                writeSolution(id, formatter.apply(solutions.get(id)), out);
+            }
+            writeFooter(out);
+        }
+
+        protected void writeHeader(List<Integer> sortedIds, Writer out) throws IOException {
+        }
+
+        protected abstract void writeSolution(Integer id, String annotation, Writer out) throws IOException;
+
+        protected void writeFooter(Writer out) throws IOException {
+        }
+    }
+
+    /**
+     * The human-readable table of solutions, where each row shows the id and the annotation of a slot.
+     */
+    public static class TableReporter extends FormattingReporter {
+
+        /** String length of the highest slot ID, used to pad spaces for pretty formatting. */
+        private int maxLength;
+
+        public TableReporter(Function<AnnotationMirror, String> formatter, File file) {
+            super(formatter, file);
+        }
+
+        @Override
+        protected void writeHeader(List<Integer> sortedIds, Writer out) throws IOException {
+            maxLength = sortedIds.isEmpty() ? 1 : String.valueOf(sortedIds.get(sortedIds.size() - 1)).length();
+            out.write("======================= Solutions =======================");
+            out.write(System.lineSeparator());
+        }
+
+        @Override
+        protected void writeSolution(Integer id, String annotation, Writer out) throws IOException {
+            String slotId = id.toString();
+            out.write("SlotID: ");
+            out.write(slotId);
+            for (int i = 0; i < maxLength + 2 - slotId.length(); i++) {
+                out.write(' ');
+            }
+            out.write("Annotation: ");
+            out.write(annotation);
+            out.write(System.lineSeparator());
+        }
+
+        @Override
+        protected void writeFooter(Writer out) throws IOException {
+            out.write("=========================================================");
+            out.write(System.lineSeparator());
+        }
+    }
+
+    /**
+     * Tab separated values, one solution per line.
+     */
+    public static class TsvReporter extends FormattingReporter {
+
+        public TsvReporter(Function<AnnotationMirror, String> formatter, File file) {
+            super(formatter, file);
+        }
+
+        @Override
+        protected void writeSolution(Integer id, String annotation, Writer out) throws IOException {
+            out.write(id.toString());
+            out.write('\t');
+            out.write(annotation);
+            out.write('\n');
+        }
+    }
+
+    /**
+     * JSON lines, one solution object per line.
+     */
+    public static class JsonLinesReporter extends FormattingReporter {
+
+        public JsonLinesReporter(Function<AnnotationMirror, String> formatter, File file) {
+            super(formatter, file);
+        }
+
+        @Override
+        protected void writeSolution(Integer id, String annotation, Writer out) throws IOException {
+            out.write("{\"slot\": ");
+            out.write(id.toString());
+            out.write(", \"annotation\": \"");
+            out.write(JSONValue.escape(annotation));
+            out.write("\"}\n");
+        }
+    }
+}
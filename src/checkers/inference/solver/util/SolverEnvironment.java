@@ -25,9 +25,26 @@ public class SolverEnvironment {
      */
     public final ProcessingEnvironment processingEnvironment;
 
+    /**
+     * The time, in terms of {@link System#currentTimeMillis()}, by which all solvers using this
+     * environment should stop, or Long.MAX_VALUE if there is no time budget.
+     */
+    private final long deadline;
+
     public SolverEnvironment(final Map<String, String> configuration, ProcessingEnvironment processingEnvironment) {
+        this(configuration, processingEnvironment, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param timeBudget the milliseconds all solvers using this environment may take together,
+     * starting now, or Long.MAX_VALUE if there is no time budget
+     */
+    public SolverEnvironment(final Map<String, String> configuration, ProcessingEnvironment processingEnvironment,
+            long timeBudget) {
         this.options = Collections.unmodifiableMap(configuration);
         this.processingEnvironment = processingEnvironment;
+        long now = System.currentTimeMillis();
+        this.deadline = timeBudget >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeBudget;
     }
 
     /**
@@ -50,4 +67,32 @@ public class SolverEnvironment {
         String argValue = options.get(arg.name());
         return argValue != null && argValue.toLowerCase().equals("true");
     }
+
+    /**
+     * @return true if solving has a time budget, given when this environment was created
+     */
+    public boolean hasTimeBudget() {
+        return deadline != Long.MAX_VALUE;
+    }
+
+    /**
+     * The time budget is shared by all solvers using this environment, e.g. by the solvers of
+     * all sub-graphs under the graph solving strategy, and starts when the environment is created.
+     *
+     * @return the milliseconds left of the time budget, 0 if it is used up, or Long.MAX_VALUE if
+     * there is no time budget
+     */
+    public long getRemainingTimeMillis() {
+        if (!hasTimeBudget()) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * @return true if there is a time budget and it is used up
+     */
+    public boolean isTimeBudgetExhausted() {
+        return getRemainingTimeMillis() == 0;
+    }
 }
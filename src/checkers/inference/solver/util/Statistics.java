@@ -101,6 +101,20 @@ public class Statistics {
         }
     }
 
+    /**
+     * Adds the number of duplicate constraints that the constraint manager avoided creating, per
+     * kind of constraint.
+     *
+     * @param duplicateCounts
+     *            a map from the simple name of a constraint class to its number of duplicates
+     * @see checkers.inference.model.ConstraintManager#getDuplicateCounts()
+     */
+    public static void recordDuplicateConstraintsStatistics(final Map<String, Long> duplicateCounts) {
+        for (Entry<String, Long> entry : duplicateCounts.entrySet()) {
+            addOrIncrementEntry("duplicate_" + entry.getKey(), entry.getValue());
+        }
+    }
+
     /**
      * Returns an immutable map of the collected statistics.
      *
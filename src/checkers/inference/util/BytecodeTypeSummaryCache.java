@@ -0,0 +1,653 @@
+package checkers.inference.util;
+
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+
+import org.checkerframework.framework.type.AnnotatedTypeMirror;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedArrayType;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedDeclaredType;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedExecutableType;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedIntersectionType;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedTypeVariable;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedUnionType;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedWildcardType;
+import org.checkerframework.javacutil.AnnotationBuilder;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.util.Elements;
+import javax.tools.JavaFileObject;
+
+import checkers.inference.solver.util.Statistics;
+
+import static checkers.inference.util.VarInts.readVarInt;
+import static checkers.inference.util.VarInts.writeVarInt;
+
+/**
+ * A persistent, on-disk cache of the real-qualifier annotations that the real type factory
+ * assigns to library (bytecode) elements.
+ *
+ * The cache is split into one summary file per class path archive. A summary file is named
+ * after the SHA-256 of the archive's content and a key identifying everything else that decides
+ * the real annotations: the checker and its qualifiers, the code of the checker and the Checker
+ * Framework, the checker options, the content of the stub files, the content of the class path
+ * the checked code is compiled against, and the summary format. A changed jar or dependency,
+ * upgraded checker, or changed stub file simply misses the cache.
+ * Classes loaded from the JDK's module image are keyed by the JDK's runtime version instead.
+ * Classes loaded from loose class files are not cached.
+ *
+ * A summary file is memory-mapped the first time an element from its archive is looked up.
+ * Each entry holds, for every type in a pre-order traversal of the element's inference type,
+ * the qualifiers that the type carried after the real annotations were copied to it.
+ * Only qualifiers without element values are cached; an element whose type carries any other
+ * annotation is always annotated through the real type factory.
+ *
+ * Summary file format (all integers are unsigned LEB128 varints, strings are a varint byte
+ * length followed by UTF-8 bytes):
+ * <pre>
+ *   magic "CFIS", format version
+ *   string pool:  count, strings...
+ *   entry index:  count, (element key string index, body offset)...
+ *   entry bodies: type count, (qualifier count, qualifier string indexes...)...
+ * </pre>
+ * Body offsets are relative to the start of the bodies.
+ */
+public class BytecodeTypeSummaryCache {
+
+    private static final Logger logger = Logger.getLogger(BytecodeTypeSummaryCache.class.getName());
+
+    private static final int MAGIC = 0x43464953; // "CFIS"
+    private static final int FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".summary";
+
+    private final File cacheDir;
+    private final Elements elements;
+
+    /**
+     * Identifies the checker, its qualifiers, the code of the checker and the framework, the
+     * checker options, the stub files, the class path, and the summary format.
+     */
+    private final String qualifierKey;
+
+    /** Summaries of the archives seen so far, keyed by archive URI. */
+    private final Map<String, ArchiveSummary> archives = new HashMap<>();
+
+    /** Decoded qualifiers, keyed by their qualified name. */
+    private final Map<String, AnnotationMirror> qualifiers = new HashMap<>();
+
+    /**
+     * @param cacheDir directory holding the summary files; created if it does not exist
+     * @param elements used to rebuild cached qualifiers
+     * @param checkerName name of the real checker
+     * @param supportedQualifiers the real qualifiers; part of the cache key
+     * @param codeClasses classes whose code decides the real annotations, e.g. the real checker
+     * and the Checker Framework; the content of the jar or class directory each class is loaded
+     * from is part of the cache key
+     * @param checkerOptions the options of the real checker; part of the cache key, and the
+     * content of the files of its "stubs" option is too
+     * @param classPath the class path of the checked code; the content of each jar or class
+     * directory on it is part of the cache key, because the real annotations of an element can
+     * depend on classes of other archives, e.g. on the declarations it overrides
+     */
+    public BytecodeTypeSummaryCache(File cacheDir, Elements elements, String checkerName,
+                                    Collection<String> supportedQualifiers, Collection<Class<?>> codeClasses,
+                                    Map<String, String> checkerOptions, Iterable<? extends File> classPath) {
+        this.cacheDir = cacheDir;
+        this.elements = elements;
+
+        StringBuilder key = new StringBuilder(checkerName);
+        key.append('|').append(String.join(",", new TreeSet<>(supportedQualifiers)));
+        for (Class<?> codeClass : codeClasses) {
+            key.append('|').append(getCodeKey(codeClass));
+        }
+        Map<String, String> sortedOptions = new TreeMap<>(checkerOptions);
+        for (Map.Entry<String, String> option : sortedOptions.entrySet()) {
+            key.append('|').append(option.getKey()).append('=').append(option.getValue());
+        }
+        String stubs = sortedOptions.get("stubs");
+        if (stubs != null) {
+            for (String stub : stubs.split(File.pathSeparator)) {
+                key.append('|').append(getFileKey(new File(stub)));
+            }
+        }
+        for (File entry : classPath) {
+            key.append('|').append(getFileKey(entry));
+        }
+        key.append('|').append(FORMAT_VERSION);
+        this.qualifierKey = sha256(key.toString());
+    }
+
+    /**
+     * Apply the cached real annotations of element to inferenceType.
+     *
+     * @return true if the element was found in the cache and inferenceType was annotated,
+     * false if the caller must annotate it through the real type factory
+     */
+    public boolean apply(Element element, AnnotatedTypeMirror inferenceType) {
+        URI archiveUri = getArchiveUri(element);
+        if (archiveUri == null || getArchive(archiveUri) == null) {
+            return false;
+        }
+
+        List<String[]> entry = lookup(archiveUri, elementKey(element));
+        if (entry == null) {
+            Statistics.addOrIncrementEntry("bytecode_summary_misses", 1);
+            return false;
+        }
+
+        List<AnnotatedTypeMirror> types = collectTypes(inferenceType);
+        if (types.size() != entry.size()) {
+            // The summary was written for a different shape of this element's type.
+            Statistics.addOrIncrementEntry("bytecode_summary_misses", 1);
+            return false;
+        }
+
+        List<List<AnnotationMirror>> decoded = new ArrayList<>(types.size());
+        for (String[] names : entry) {
+            List<AnnotationMirror> annos = new ArrayList<>(names.length);
+            for (String name : names) {
+                AnnotationMirror anno = getQualifier(name);
+                if (anno == null) {
+                    Statistics.addOrIncrementEntry("bytecode_summary_misses", 1);
+                    return false;
+                }
+                annos.add(anno);
+            }
+            decoded.add(annos);
+        }
+
+        for (int i = 0; i < types.size(); i++) {
+            types.get(i).clearAnnotations();
+            types.get(i).addAnnotations(decoded.get(i));
+        }
+        Statistics.addOrIncrementEntry("bytecode_summary_hits", 1);
+        return true;
+    }
+
+    /**
+     * Record the annotations of inferenceType, which has just received the real annotations
+     * of element, so that later runs can skip the real type factory for element.
+     */
+    public void record(Element element, AnnotatedTypeMirror inferenceType) {
+        URI archiveUri = getArchiveUri(element);
+        if (archiveUri == null || getArchive(archiveUri) == null) {
+            return;
+        }
+
+        List<AnnotatedTypeMirror> types = collectTypes(inferenceType);
+        List<String[]> entry = new ArrayList<>(types.size());
+        for (AnnotatedTypeMirror type : types) {
+            Set<AnnotationMirror> annos = type.getAnnotations();
+            String[] names = new String[annos.size()];
+            int i = 0;
+            for (AnnotationMirror anno : annos) {
+                if (!anno.getElementValues().isEmpty()) {
+                    // Only qualifiers without values can be rebuilt from their name.
+                    return;
+                }
+                names[i++] = anno.getAnnotationType().toString();
+            }
+            entry.add(names);
+        }
+        add(archiveUri, elementKey(element), entry);
+    }
+
+    /**
+     * @return the qualifier names of each type of the element with the given key in the given
+     * archive, or null if they are not cached
+     */
+    List<String[]> lookup(URI archiveUri, String elementKey) {
+        ArchiveSummary archive = getArchive(archiveUri);
+        return archive == null ? null : archive.lookup(elementKey);
+    }
+
+    /**
+     * Records the qualifier names of each type of the element with the given key in the given
+     * archive, to be written by {@link #write()}.
+     */
+    void add(URI archiveUri, String elementKey, List<String[]> entry) {
+        ArchiveSummary archive = getArchive(archiveUri);
+        if (archive != null) {
+            archive.add(elementKey, entry);
+        }
+    }
+
+    /**
+     * Write every summary that received new entries during this run.
+     */
+    public void write() {
+        for (ArchiveSummary archive : archives.values()) {
+            if (archive == null || archive.added.isEmpty()) {
+                continue;
+            }
+            try {
+                archive.write();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to write bytecode summary " + archive.file, e);
+            }
+        }
+    }
+
+    private AnnotationMirror getQualifier(String name) {
+        if (!qualifiers.containsKey(name)) {
+            qualifiers.put(name, AnnotationBuilder.fromName(elements, name));
+        }
+        return qualifiers.get(name);
+    }
+
+    /**
+     * Return the summary for the archive, or null if the archive cannot be read.
+     */
+    private ArchiveSummary getArchive(URI archiveUri) {
+        String uriKey = archiveUri.toString();
+        if (!archives.containsKey(uriKey)) {
+            ArchiveSummary archive = null;
+            String contentKey = getContentKey(archiveUri);
+            if (contentKey != null) {
+                archive = new ArchiveSummary(new File(cacheDir, contentKey + "-" + qualifierKey + SUFFIX));
+                archive.load();
+            }
+            archives.put(uriKey, archive);
+        }
+        return archives.get(uriKey);
+    }
+
+    /**
+     * @return the URI of the jar file or JDK module that element's class file came from,
+     * or null if it came from somewhere else
+     */
+    private static URI getArchiveUri(Element element) {
+        if (!(element instanceof Symbol)) {
+            return null;
+        }
+        ClassSymbol outermost = ((Symbol) element).outermostClass();
+        if (outermost == null) {
+            return null;
+        }
+        JavaFileObject classfile = outermost.classfile;
+        if (classfile == null || classfile.getKind() != JavaFileObject.Kind.CLASS) {
+            return null;
+        }
+
+        String uri = classfile.toUri().toString();
+        if (uri.startsWith("jar:")) {
+            int separator = uri.indexOf("!/");
+            if (separator > 0) {
+                return URI.create(uri.substring("jar:".length(), separator));
+            }
+        } else if (uri.startsWith("jrt:/")) {
+            int moduleEnd = uri.indexOf('/', "jrt:/".length());
+            if (moduleEnd > 0) {
+                return URI.create(uri.substring(0, moduleEnd));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a key that changes whenever the content of the archive changes,
+     * or null if the archive cannot be read
+     */
+    private static String getContentKey(URI archiveUri) {
+        if ("jrt".equals(archiveUri.getScheme())) {
+            return sha256(archiveUri + "|" + System.getProperty("java.runtime.version"));
+        }
+
+        try {
+            return hashFile(Paths.get(archiveUri).toFile());
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.FINE, "Not caching bytecode types of " + archiveUri, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return a key that changes whenever the code of the jar or class directory that the class
+     * was loaded from changes
+     */
+    private static String getCodeKey(Class<?> codeClass) {
+        CodeSource codeSource = codeClass.getProtectionDomain().getCodeSource();
+        if (codeSource == null || codeSource.getLocation() == null) {
+            // Loaded by the bootstrap class loader, i.e. part of the JDK.
+            return codeClass.getName() + "@" + System.getProperty("java.runtime.version");
+        }
+        try {
+            return codeClass.getName() + "@" + getFileKey(Paths.get(codeSource.getLocation().toURI()).toFile());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return codeClass.getName() + "@" + codeSource.getLocation();
+        }
+    }
+
+    /**
+     * @return a key that changes whenever the content of the file, or of any file in the
+     * directory, changes
+     */
+    private static String getFileKey(File file) {
+        try {
+            if (file.isFile()) {
+                return hashFile(file);
+            } else if (file.isDirectory()) {
+                // Class and stub directories change file by file, their modification times
+                // are enough.
+                StringBuilder key = new StringBuilder(file.getAbsolutePath());
+                try (Stream<Path> paths = Files.walk(file.toPath())) {
+                    paths.filter(Files::isRegularFile).sorted().forEach(path -> {
+                        File member = path.toFile();
+                        key.append('|').append(path).append(':').append(member.length())
+                                .append(':').append(member.lastModified());
+                    });
+                }
+                return sha256(key.toString());
+            }
+        } catch (IOException | UncheckedIOException e) {
+            logger.log(Level.FINE, "Cannot read " + file, e);
+        }
+        return file.getAbsolutePath();
+    }
+
+    private static String hashFile(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return a key identifying element among the elements of its archive
+     */
+    static String elementKey(Element element) {
+        List<String> parts = new ArrayList<>();
+        for (Element current = element;
+             current != null && current.getKind() != ElementKind.PACKAGE;
+             current = current.getEnclosingElement()) {
+            parts.add(current.getKind() + ":" + current);
+        }
+        Collections.reverse(parts);
+        return String.join("#", parts);
+    }
+
+    /**
+     * Collect the types nested in type, in a fixed pre-order.  Each type occurs once.
+     */
+    static List<AnnotatedTypeMirror> collectTypes(AnnotatedTypeMirror type) {
+        List<AnnotatedTypeMirror> types = new ArrayList<>();
+        collectTypes(type, types, new IdentityHashMap<AnnotatedTypeMirror, Boolean>());
+        return types;
+    }
+
+    private static void collectTypes(AnnotatedTypeMirror type, List<AnnotatedTypeMirror> types,
+                                     IdentityHashMap<AnnotatedTypeMirror, Boolean> visited) {
+        if (type == null || visited.containsKey(type)) {
+            return;
+        }
+        visited.put(type, Boolean.TRUE);
+        types.add(type);
+
+        switch (type.getKind()) {
+            case DECLARED:
+                AnnotatedDeclaredType declared = (AnnotatedDeclaredType) type;
+                collectTypes(declared.getEnclosingType(), types, visited);
+                for (AnnotatedTypeMirror typeArg : declared.getTypeArguments()) {
+                    collectTypes(typeArg, types, visited);
+                }
+                break;
+
+            case EXECUTABLE:
+                AnnotatedExecutableType executable = (AnnotatedExecutableType) type;
+                collectTypes(executable.getReturnType(), types, visited);
+                collectTypes(executable.getReceiverType(), types, visited);
+                for (AnnotatedTypeMirror param : executable.getParameterTypes()) {
+                    collectTypes(param, types, visited);
+                }
+                for (AnnotatedTypeMirror typeVar : executable.getTypeVariables()) {
+                    collectTypes(typeVar, types, visited);
+                }
+                break;
+
+            case ARRAY:
+                collectTypes(((AnnotatedArrayType) type).getComponentType(), types, visited);
+                break;
+
+            case TYPEVAR:
+                collectTypes(((AnnotatedTypeVariable) type).getUpperBound(), types, visited);
+                collectTypes(((AnnotatedTypeVariable) type).getLowerBound(), types, visited);
+                break;
+
+            case WILDCARD:
+                collectTypes(((AnnotatedWildcardType) type).getExtendsBound(), types, visited);
+                collectTypes(((AnnotatedWildcardType) type).getSuperBound(), types, visited);
+                break;
+
+            case INTERSECTION:
+                for (AnnotatedTypeMirror bound : ((AnnotatedIntersectionType) type).directSupertypes()) {
+                    collectTypes(bound, types, visited);
+                }
+                break;
+
+            case UNION:
+                for (AnnotatedTypeMirror alternative : ((AnnotatedUnionType) type).getAlternatives()) {
+                    collectTypes(alternative, types, visited);
+                }
+                break;
+
+            default:
+                // Primitives, void, null, none and packages have no nested types.
+                break;
+        }
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return toHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The summary of one archive: the entries mapped from its file plus the entries
+     * recorded during this run.
+     */
+    private static class ArchiveSummary {
+        private final File file;
+
+        /** The mapped summary file, or null if there was none. */
+        private ByteBuffer buffer;
+        private String[] strings = new String[0];
+        private final Map<String, Integer> offsets = new HashMap<>();
+        private int bodiesStart;
+
+        private final Map<String, List<String[]>> added = new LinkedHashMap<>();
+
+        private ArchiveSummary(File file) {
+            this.file = file;
+        }
+
+        private void load() {
+            if (!file.exists()) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (mapped.getInt() != MAGIC || readVarInt(mapped) != FORMAT_VERSION) {
+                    return;
+                }
+
+                strings = new String[readVarInt(mapped)];
+                for (int i = 0; i < strings.length; i++) {
+                    strings[i] = readString(mapped);
+                }
+
+                int entries = readVarInt(mapped);
+                for (int i = 0; i < entries; i++) {
+                    String key = strings[readVarInt(mapped)];
+                    offsets.put(key, readVarInt(mapped));
+                }
+                bodiesStart = mapped.position();
+                buffer = mapped;
+
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.WARNING, "Ignoring unreadable bytecode summary " + file, e);
+                strings = new String[0];
+                offsets.clear();
+                buffer = null;
+            }
+        }
+
+        private List<String[]> lookup(String key) {
+            List<String[]> entry = added.get(key);
+            if (entry != null) {
+                return entry;
+            }
+            Integer offset = offsets.get(key);
+            if (offset == null) {
+                return null;
+            }
+            return readBody(bodiesStart + offset);
+        }
+
+        private List<String[]> readBody(int position) {
+            ByteBuffer body = buffer.duplicate();
+            body.position(position);
+            int types = readVarInt(body);
+            List<String[]> entry = new ArrayList<>(types);
+            for (int i = 0; i < types; i++) {
+                String[] names = new String[readVarInt(body)];
+                for (int j = 0; j < names.length; j++) {
+                    names[j] = strings[readVarInt(body)];
+                }
+                entry.add(names);
+            }
+            return entry;
+        }
+
+        private void add(String key, List<String[]> entry) {
+            if (!offsets.containsKey(key)) {
+                added.put(key, entry);
+            }
+        }
+
+        /**
+         * Rewrite the summary file with both its existing and its new entries.
+         * The file is written to a temporary file first and then moved into place, so that
+         * concurrent runs never observe a partially written summary.
+         */
+        private void write() throws IOException {
+            Map<String, List<String[]>> all = new LinkedHashMap<>();
+            for (String key : offsets.keySet()) {
+                all.put(key, readBody(bodiesStart + offsets.get(key)));
+            }
+            all.putAll(added);
+
+            Map<String, Integer> pool = new LinkedHashMap<>();
+            ByteArrayOutputStream bodies = new ByteArrayOutputStream();
+            DataOutputStream bodiesOut = new DataOutputStream(bodies);
+            Map<String, Integer> newOffsets = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String[]>> entry : all.entrySet()) {
+                intern(pool, entry.getKey());
+                newOffsets.put(entry.getKey(), bodies.size());
+                writeVarInt(bodiesOut, entry.getValue().size());
+                for (String[] names : entry.getValue()) {
+                    writeVarInt(bodiesOut, names.length);
+                    for (String name : names) {
+                        writeVarInt(bodiesOut, intern(pool, name));
+                    }
+                }
+            }
+
+            file.getParentFile().mkdirs();
+            File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                writeVarInt(out, FORMAT_VERSION);
+
+                writeVarInt(out, pool.size());
+                for (String string : pool.keySet()) {
+                    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    writeVarInt(out, bytes.length);
+                    out.write(bytes);
+                }
+
+                writeVarInt(out, newOffsets.size());
+                for (Map.Entry<String, Integer> entry : newOffsets.entrySet()) {
+                    writeVarInt(out, pool.get(entry.getKey()));
+                    writeVarInt(out, entry.getValue());
+                }
+
+                bodies.writeTo(out);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private static int intern(Map<String, Integer> pool, String string) {
+            Integer index = pool.get(string);
+            if (index == null) {
+                index = pool.size();
+                pool.put(string, index);
+            }
+            return index;
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
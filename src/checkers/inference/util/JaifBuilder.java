@@ -4,9 +4,22 @@ import scenelib.annotations.io.ASTRecord;
 import scenelib.annotations.io.ASTPath;
 import scenelib.annotations.io.ASTPath.ASTEntry;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -14,6 +27,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 import checkers.inference.model.AnnotationLocation;
@@ -28,7 +42,13 @@ import org.checkerframework.javacutil.Pair;
  * JaifBuilder creates Jaifs from a Map of ASTRecords to AnnotationMirrors.
  *
  * JaifBuilder first organizes ASTRecords by class and top level member, and then
- * builds a Jaif string.
+ * writes a Jaif, one class block at a time, to a Writer.
+ *
+ * When there are more locations than the external sort threshold, the records are not
+ * organized in memory all at once. Instead, they are sorted by class with an external
+ * merge sort: sorted runs of at most threshold records are spilled to temporary files and
+ * merged, so that only the records of one class are held in memory while its block is
+ * written. Classes are written in the same order either way.
  *
  * @author mcarthur
  *
@@ -60,7 +80,18 @@ public class JaifBuilder {
 
     private final boolean insertMainModOfLocalVar;
 
-    private StringBuilder builder;
+    /**
+     * The default number of locations above which the records are sorted externally.
+     */
+    public static final int DEFAULT_EXTERNAL_SORT_THRESHOLD = 1 << 20;
+
+    /**
+     * Number of locations above which the records are sorted externally, which is also
+     * the maximum number of records of a sorted run.
+     */
+    private int externalSortThreshold = DEFAULT_EXTERNAL_SORT_THRESHOLD;
+
+    private Writer out;
 
     public JaifBuilder(Map<AnnotationLocation, String> locationToAnno,
                         Set<? extends Class<? extends Annotation>> annotationMirrors) {
@@ -73,30 +104,59 @@ public class JaifBuilder {
         this.insertMainModOfLocalVar = insertMethodBodies;
     }
 
+    public void setExternalSortThreshold(int externalSortThreshold) {
+        if (externalSortThreshold < 1) {
+            throw new IllegalArgumentException("External sort threshold must be positive: " + externalSortThreshold);
+        }
+        this.externalSortThreshold = externalSortThreshold;
+    }
+
     /**
      * Creates a Jaif based on input slots.
      *
      * @return Jaif String
      */
     public String createJaif() {
-        classesMap = new HashMap<>();
-        builder = new StringBuilder();
+        StringWriter writer = new StringWriter();
+        try {
+            writeJaif(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
 
-        // Organize by classes
-        buildClassEntries();
+    /**
+     * Writes a Jaif based on input slots to the given writer. Each class block is written
+     * as soon as it is complete. The writer is neither flushed nor closed.
+     *
+     * @param out the writer to write the Jaif to
+     */
+    public void writeJaif(Writer out) throws IOException {
+        this.out = out;
+        writeAnnotationHeaderCache.clear();
+        try {
+            // Write out annotation definitions for all supported annotation mirrors
+            for (Class<? extends Annotation> annotation : supportedAnnotations) {
+                writeAnnotationHeader(annotation);
+            }
 
-        // Write out annotation definitions for all supported annotation mirrors
-        for (Class<? extends Annotation> annotation : supportedAnnotations) {
-            writeAnnotationHeader(annotation);
-        }
+            if (locationToAnno.size() <= externalSortThreshold) {
+                // Organize by classes
+                classesMap = new HashMap<>();
+                buildClassEntries(new ClassEntrySink());
 
-        // Write out each class
-        for (Map.Entry<String, ClassEntry> entry: classesMap.entrySet()) {
-            writeClassJaif(entry.getValue());
+                // Write out each class
+                for (Map.Entry<String, ClassEntry> entry: classesMap.entrySet()) {
+                    writeClassJaif(entry.getValue());
+                }
+            } else {
+                writeClassesExternally();
+            }
+        } finally {
+            classesMap = null;
+            this.out = null;
         }
-
-        classesMap = null;
-        return builder.toString();
     }
 
     /**
@@ -104,7 +164,7 @@ public class JaifBuilder {
      * annotations used as the return type of this annotation's methods. The annotations used as
      * return types must always be added as a header before the annotation using it in a method.
      */
-    private void writeAnnotationHeader(Class<? extends Annotation> annotation) {
+    private void writeAnnotationHeader(Class<? extends Annotation> annotation) throws IOException {
         // each annotation only needs to be written once to the header, skip if already written
         if (writeAnnotationHeaderCache.contains(annotation)) {
             // this case happens if a supported annotation contains multiple methods with the same
@@ -134,8 +194,8 @@ public class JaifBuilder {
         }
 
         // write the header for the given annotation
-        builder.append(buildAnnotationHeader(annotation))
-               .append("\n");
+        out.write(buildAnnotationHeader(annotation));
+        out.write("\n");
     }
 
     /**
@@ -215,13 +275,13 @@ public class JaifBuilder {
      * @param classEntry A unique entry for all members of a class that will be converted to
      *                   a jaif entry for that class
      */
-    private void writeClassJaif(ClassEntry classEntry) {
-        builder.append("package " + classEntry.packageName + ":\n");
-        builder.append("class " + classEntry.className + ":");
+    private void writeClassJaif(ClassEntry classEntry) throws IOException {
+        out.write("package " + classEntry.packageName + ":\n");
+        out.write("class " + classEntry.className + ":");
         if (!classEntry.declAnnos.isEmpty()) {
-            builder.append(String.join(" ", classEntry.declAnnos));
+            out.write(String.join(" ", classEntry.declAnnos));
         }
-        builder.append("\n");
+        out.write("\n");
 
         // Need to output members in a specific order.
         List<Entry<String, MemberRecords>> initializers = new ArrayList<>();
@@ -256,23 +316,23 @@ public class JaifBuilder {
      * @param memberName the member
      * @param memberRecords the records for the member
      */
-    private void writeMemberJaif(String memberName, MemberRecords memberRecords) {
+    private void writeMemberJaif(String memberName, MemberRecords memberRecords) throws IOException {
 
         // Member name is null for InstanceInitializers
         if (memberName != null) {
             // Write out the member type
             // TODO: Instance initializers
-            builder.append(memberName);
+            out.write(memberName);
         }
 
         for (RecordValue value: memberRecords.entries) {
-            builder.append("insert-annotation ");
-            builder.append(value.astPath.toString());
-            builder.append(": ");
-            builder.append(value.value);
-            builder.append("\n");
+            out.write("insert-annotation ");
+            out.write(value.astPath);
+            out.write(": ");
+            out.write(value.value);
+            out.write("\n");
         }
-        builder.append("\n");
+        out.write("\n");
     }
 
     /**
@@ -291,18 +351,19 @@ public class JaifBuilder {
     /**
      * Iterate through each variable and add it to the appropriate Class and Member list.
      */
-    private void buildClassEntries() {
+    private void buildClassEntries(RecordSink sink) throws IOException {
         for (Entry<AnnotationLocation, String> entry: locationToAnno.entrySet()) {
             AnnotationLocation location = entry.getKey();
             String annotation = entry.getValue();
             switch (location.getKind()) {
                 case AST_PATH:
                     AstPathLocation astLocation = (AstPathLocation) location;
-                    ClassEntry classEntry = getClassEntry(astLocation);
                     ASTRecord astRecord = astLocation.getAstRecord();
+                    String memberName = getMemberString(astRecord.methodName, astRecord.varName);
 
-                    MemberRecords memberRecords = classEntry.getMemberRecords(astRecord.methodName, astRecord.varName);
+                    // The member is created even if the record itself is skipped below
                     if (!insertMainModOfLocalVar && isMainModOfLocalVar(astRecord.astPath)) {
+                            sink.addMember(astRecord.className, memberName);
                             continue;
                     }
 
@@ -310,16 +371,16 @@ public class JaifBuilder {
                     // TODO: this is not a feature but a workaround of a bug:
                     // We should create a non-empty correct ASTPath for constructor
                     if (astRecord.astPath.equals(ASTPath.empty())) {
+                        sink.addMember(astRecord.className, memberName);
                         continue;
                     }
 
-                    memberRecords.entries.add(new RecordValue(astRecord.astPath,annotation));
+                    sink.addRecord(astRecord.className, memberName, astRecord.astPath.toString(), annotation);
                     break;
 
                 case CLASS_DECL:
                     ClassDeclLocation declLocation = (ClassDeclLocation) location;
-                    classEntry = getClassEntry(declLocation);
-                    classEntry.addDeclarationAnnotation(annotation);
+                    sink.addDeclarationAnnotation(declLocation.getFullyQualifiedClassName(), annotation);
                     break;
 
                 case MISSING:
@@ -333,6 +394,91 @@ public class JaifBuilder {
         }
     }
 
+    /**
+     * Write out the classes of locationToAnno, sorting their records by class with an external
+     * merge sort.
+     *
+     * The classes are ranked in the iteration order of a HashMap holding their names, inserted in
+     * the order in which buildClassEntries first encounters them. This is the order in which the
+     * in-memory classesMap is iterated, so both ways give the same Jaif.
+     */
+    private void writeClassesExternally() throws IOException {
+        Map<String, Integer> classRanks = new HashMap<>();
+        buildClassEntries(new RecordSink() {
+            @Override
+            void addClass(String className) {
+                classRanks.putIfAbsent(className, 0);
+            }
+        });
+        String[] classNames = new String[classRanks.size()];
+        int rank = 0;
+        for (Map.Entry<String, Integer> entry : classRanks.entrySet()) {
+            classNames[rank] = entry.getKey();
+            entry.setValue(rank++);
+        }
+
+        List<Path> runs = new ArrayList<>();
+        try {
+            SpillingSink spillingSink = new SpillingSink(classRanks, runs);
+            buildClassEntries(spillingSink);
+            spillingSink.spill();
+            classRanks.clear();
+
+            mergeRuns(runs, classNames);
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    /**
+     * Merge the sorted runs, and write out each class as soon as all of its records are read.
+     */
+    private void mergeRuns(List<Path> runs, String[] classNames) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runs.size()),
+                Comparator.comparingInt((RunReader reader) -> reader.head.classRank)
+                          .thenComparingInt(reader -> reader.runIndex));
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                RunReader reader = new RunReader(runs.get(i), i);
+                if (reader.advance()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+
+            ClassEntry classEntry = null;
+            int currentRank = -1;
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                SpilledRecord record = reader.head;
+                if (record.classRank != currentRank) {
+                    if (classEntry != null) {
+                        writeClassJaif(classEntry);
+                    }
+                    currentRank = record.classRank;
+                    classEntry = newClassEntry(classNames[currentRank]);
+                }
+                record.addTo(classEntry);
+
+                if (reader.advance()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            if (classEntry != null) {
+                writeClassJaif(classEntry);
+            }
+        } finally {
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+        }
+    }
+
     /**
      * @param astRecord
      * @return true if the given AST path represents a main modifier of a local variable
@@ -399,14 +545,6 @@ public class JaifBuilder {
         return entry.getTreeKind() == kind && entry.getChildSelector().equals(childSelector);
     }
 
-    private ClassEntry getClassEntry(AstPathLocation location) {
-        return getClassEntry(location.getAstRecord().className);
-    }
-
-    private ClassEntry getClassEntry(ClassDeclLocation location) {
-        return getClassEntry(location.getFullyQualifiedClassName());
-    }
-
     /**
      * Lookup or create, for a given class, a map of Members of that class
      * to a list of VariableSlots for those members.
@@ -416,21 +554,15 @@ public class JaifBuilder {
     private ClassEntry getClassEntry(String fullyQualified) {
         ClassEntry classEntry = this.classesMap.get(fullyQualified);
         if (classEntry == null) {
-            Pair<String, String> packageToClass = ASTPathUtil.splitFullyQualifiedClass(fullyQualified);
-            classEntry = new ClassEntry(packageToClass.first, packageToClass.second);
+            classEntry = newClassEntry(fullyQualified);
             this.classesMap.put(fullyQualified, classEntry);
         }
         return classEntry;
     }
 
-    /**
-     * Lookup or create, for a given class, a map of Members of that class
-     * to a list of VariableSlots for those members.
-     *
-     * @param record a record identifying a unique class
-     */
-    private ClassEntry getClassMembers(ASTRecord record) {
-        return getClassEntry(record.className);
+    private static ClassEntry newClassEntry(String fullyQualified) {
+        Pair<String, String> packageToClass = ASTPathUtil.splitFullyQualifiedClass(fullyQualified);
+        return new ClassEntry(packageToClass.first, packageToClass.second);
     }
 
     private static String getMemberString(String methodName, String variableName) {
@@ -475,15 +607,14 @@ public class JaifBuilder {
 
         /**
          * Lookup or create the List of VariableSLots for a Class and Member
-         * @param memberName The top-level member name to look up
-         * @param variableName If the record occurs in relation to a variable, this specifies the variable name
+         * @param memberString The member, as returned by getMemberString
          * @return
          */
-        public MemberRecords getMemberRecords(String memberName, String variableName) {
-            MemberRecords memberRecords = members.get(getMemberString(memberName, variableName));
+        public MemberRecords getMemberRecords(String memberString) {
+            MemberRecords memberRecords = members.get(memberString);
             if (memberRecords == null) {
                 memberRecords = new MemberRecords();
-                members.put(getMemberString(memberName, variableName), memberRecords);
+                members.put(memberString, memberRecords);
             }
             return memberRecords;
         }
@@ -502,11 +633,219 @@ public class JaifBuilder {
      * The value for a record.
      */
     private static class RecordValue {
-        ASTPath astPath;
+        String astPath;
         String value;
-        RecordValue(ASTPath record, String value) {
-            this.astPath = record;
+        RecordValue(String astPath, String value) {
+            this.astPath = astPath;
             this.value = value;
         }
     }
+
+    /**
+     * Receives the declaration annotations, members and records of locationToAnno
+     * from buildClassEntries, in iteration order.
+     */
+    private abstract static class RecordSink {
+        /** Called first for every class of a declaration annotation, member or record. */
+        void addClass(String className) throws IOException {
+        }
+
+        void addDeclarationAnnotation(String className, String annotation) throws IOException {
+            addClass(className);
+        }
+
+        void addMember(String className, String memberName) throws IOException {
+            addClass(className);
+        }
+
+        void addRecord(String className, String memberName, String astPath, String annotation) throws IOException {
+            addClass(className);
+        }
+    }
+
+    /**
+     * Organizes everything into classesMap.
+     */
+    private class ClassEntrySink extends RecordSink {
+        @Override
+        void addDeclarationAnnotation(String className, String annotation) {
+            getClassEntry(className).addDeclarationAnnotation(annotation);
+        }
+
+        @Override
+        void addMember(String className, String memberName) {
+            getClassEntry(className).getMemberRecords(memberName);
+        }
+
+        @Override
+        void addRecord(String className, String memberName, String astPath, String annotation) {
+            getClassEntry(className).getMemberRecords(memberName).entries.add(new RecordValue(astPath, annotation));
+        }
+    }
+
+    /**
+     * Collects records in a run, and spills each full run, stably sorted by class rank, to a
+     * temporary file.
+     */
+    private class SpillingSink extends RecordSink {
+        private final Map<String, Integer> classRanks;
+        private final List<Path> runs;
+        private final List<SpilledRecord> run = new ArrayList<>();
+
+        SpillingSink(Map<String, Integer> classRanks, List<Path> runs) {
+            this.classRanks = classRanks;
+            this.runs = runs;
+        }
+
+        @Override
+        void addDeclarationAnnotation(String className, String annotation) throws IOException {
+            add(new SpilledRecord(classRanks.get(className), SpilledRecord.DECLARATION, null, null, annotation));
+        }
+
+        @Override
+        void addMember(String className, String memberName) throws IOException {
+            add(new SpilledRecord(classRanks.get(className), SpilledRecord.MEMBER, memberName, null, null));
+        }
+
+        @Override
+        void addRecord(String className, String memberName, String astPath, String annotation) throws IOException {
+            add(new SpilledRecord(classRanks.get(className), SpilledRecord.RECORD, memberName, astPath, annotation));
+        }
+
+        private void add(SpilledRecord record) throws IOException {
+            run.add(record);
+            if (run.size() >= externalSortThreshold) {
+                spill();
+            }
+        }
+
+        /**
+         * Write out the current run, if any. List.sort is stable, so the records of each class
+         * stay in the order of locationToAnno.
+         */
+        void spill() throws IOException {
+            if (run.isEmpty()) {
+                return;
+            }
+            run.sort(Comparator.comparingInt(record -> record.classRank));
+
+            Path file = Files.createTempFile("jaif-run", ".bin");
+            runs.add(file);
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(file)))) {
+                output.writeInt(run.size());
+                for (SpilledRecord record : run) {
+                    record.write(output);
+                }
+            }
+            run.clear();
+        }
+    }
+
+    /**
+     * A declaration annotation, member or record of a class, as stored in a run.
+     */
+    private static class SpilledRecord {
+        static final byte DECLARATION = 0;
+        static final byte MEMBER = 1;
+        static final byte RECORD = 2;
+
+        final int classRank;
+        final byte kind;
+        final String memberName;
+        final String astPath;
+        final String annotation;
+
+        SpilledRecord(int classRank, byte kind, String memberName, String astPath, String annotation) {
+            this.classRank = classRank;
+            this.kind = kind;
+            this.memberName = memberName;
+            this.astPath = astPath;
+            this.annotation = annotation;
+        }
+
+        void addTo(ClassEntry classEntry) {
+            switch (kind) {
+                case DECLARATION:
+                    classEntry.addDeclarationAnnotation(annotation);
+                    break;
+                case MEMBER:
+                    classEntry.getMemberRecords(memberName);
+                    break;
+                default:
+                    classEntry.getMemberRecords(memberName).entries.add(new RecordValue(astPath, annotation));
+                    break;
+            }
+        }
+
+        void write(DataOutputStream output) throws IOException {
+            output.writeInt(classRank);
+            output.writeByte(kind);
+            writeString(output, memberName);
+            writeString(output, astPath);
+            writeString(output, annotation);
+        }
+
+        static SpilledRecord read(DataInputStream input) throws IOException {
+            int classRank = input.readInt();
+            byte kind = input.readByte();
+            return new SpilledRecord(classRank, kind, readString(input), readString(input), readString(input));
+        }
+
+        // DataOutput.writeUTF is limited to 64K, which annotations with long values may exceed.
+        private static void writeString(DataOutputStream output, String string) throws IOException {
+            if (string == null) {
+                output.writeInt(-1);
+            } else {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+        }
+
+        private static String readString(DataInputStream input) throws IOException {
+            int length = input.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            input.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Reads the records of a run one at a time.
+     */
+    private static class RunReader implements Closeable {
+        final int runIndex;
+        private final DataInputStream input;
+        private int remaining;
+        SpilledRecord head;
+
+        RunReader(Path run, int runIndex) throws IOException {
+            this.runIndex = runIndex;
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+            this.remaining = input.readInt();
+        }
+
+        /**
+         * Read the next record into head.
+         * @return false if the run is exhausted
+         */
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                head = null;
+                return false;
+            }
+            remaining--;
+            head = SpilledRecord.read(input);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
 }
@@ -6,6 +6,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -113,11 +114,13 @@ public class JaifFileReader implements Iterable<JaifPackage> {
             try {
                 nextPackage = readNext();
             } catch (IOException e) {
-                e.printStackTrace();
-
-                // if we don't exit and someone caught a stack trace then
-                // the iterator might never be closed (if used in a for loop)
-                System.exit(1);
+                // Close here, as a caller looping over the packages never gets to close it.
+                try {
+                    close();
+                } catch (IOException closeException) {
+                    e.addSuppressed(closeException);
+                }
+                throw new UncheckedIOException(e);
             }
 
             return current;
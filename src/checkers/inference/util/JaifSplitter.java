@@ -6,8 +6,10 @@ import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -147,6 +149,77 @@ public class JaifSplitter {
         writeInsertShellScript(commandFile, insertionCommands, visitedFiles);
     }
 
+    /**
+     * The result of splitting a jaif by package in memory, see {@link #partitionByPackage}.
+     */
+    public static class PackagePartitions {
+        /**
+         * The lines of the annotation definitions of the jaif, which every partition needs
+         */
+        public final List<String> headerLines = new ArrayList<>();
+
+        /**
+         * The lines of each package of the jaif, in the order in which the packages first occur.
+         * Packages that occur multiple times are aggregated into one entry.
+         */
+        public final Map<String, List<String>> packageToLines = new LinkedHashMap<>();
+
+        /**
+         * Writes the jaif for the given package, which consists of the header followed by the
+         * package's lines, to the given file.  If the jaif has no entries for the package, only the
+         * header is written.
+         */
+        public void writePartition(File file, String packageName) {
+            List<String> lines = new ArrayList<>(headerLines);
+            lines.add("\n");
+            List<String> packageLines = packageToLines.get(packageName);
+            if (packageLines != null) {
+                lines.addAll(packageLines);
+            }
+            overwriteLines(file, lines);
+        }
+    }
+
+    /**
+     * Split a jaif by package name without writing any files.  Unlike {@link #split()}, the header of
+     * the partitions is not built from a list of annotations but taken from the annotation definitions
+     * in the jaif itself, i.e. the packages that contain only "annotation" blocks.
+     * @param jaifFile The file to be split
+     * @return the header and package partitions of jaifFile
+     */
+    public static PackagePartitions partitionByPackage(File jaifFile) {
+        PackagePartitions partitions = new PackagePartitions();
+
+        JaifFileReader reader = new JaifFileReader(jaifFile);
+        for (JaifPackage jaifPackage : reader) {
+            if (jaifPackage.entries.isEmpty()) {
+                continue;
+            }
+
+            if (isAnnotationDefinitions(jaifPackage)) {
+                partitions.headerLines.addAll(jaifPackage.getLines());
+            } else {
+                List<String> lines = partitions.packageToLines.get(jaifPackage.name);
+                if (lines == null) {
+                    lines = new ArrayList<>();
+                    partitions.packageToLines.put(jaifPackage.name, lines);
+                }
+                lines.addAll(jaifPackage.getLines());
+            }
+        }
+
+        return partitions;
+    }
+
+    private static boolean isAnnotationDefinitions(JaifPackage jaifPackage) {
+        for (JaifFileReader.Block block : jaifPackage.entries) {
+            if (!block.lines.get(0).startsWith("annotation ")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static void writeInsertShellScript(File commandFile, Set<String> insertionCommands, Set<File> jaifs) {
 
         List<String> shFileCommands = new ArrayList<>(insertionCommands.size() + 6);
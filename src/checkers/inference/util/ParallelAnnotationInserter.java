@@ -0,0 +1,167 @@
+package checkers.inference.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.checkerframework.framework.util.ExecUtil;
+
+import checkers.inference.util.JaifSplitter.PackagePartitions;
+
+/**
+ * Inserts a jaif into source files with a bounded pool of insert-annotations-to-source processes.
+ *
+ * The jaif is split by package with {@link JaifSplitter#partitionByPackage}, and the source files
+ * are grouped by the package they declare.  Each group is inserted by its own process, with a jaif
+ * that contains the annotation definitions and the entries for that package only.  Since the
+ * Annotation File Utilities match jaif entries to classes by their fully qualified names, each
+ * source file receives the same insertions as in a single insertion of the whole jaif.
+ *
+ * The output of the processes is buffered and written in the order of the groups, which is the
+ * order in which the packages first occur in the list of source files, so the output does not
+ * depend on the scheduling of the processes.
+ */
+public class ParallelAnnotationInserter {
+
+    private static final Pattern COMMENT_PATTERN = Pattern.compile("/\\*.*?\\*/|//[^\\n]*", Pattern.DOTALL);
+    private static final Pattern PACKAGE_PATTERN = Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
+
+    /**
+     * The insertion command and its options, without the jaif and the source files
+     */
+    private final List<String> command;
+
+    /**
+     * The maximum number of insertion processes that run at the same time
+     */
+    private final int workers;
+
+    /**
+     * @param command the insertion command and its options, e.g. insert-annotations-to-source -v -i,
+     *                to which the jaif and the source files of each group are appended
+     * @param workers the maximum number of insertion processes that run at the same time
+     */
+    public ParallelAnnotationInserter(List<String> command, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("The number of insertion workers must be positive: " + workers);
+        }
+        this.command = command;
+        this.workers = workers;
+    }
+
+    /**
+     * Inserts jaifFile into javaFiles.
+     * @param out receives the standard output of all insertion processes
+     * @param err receives the error output of all insertion processes
+     * @return 0 if all insertions succeeded, otherwise the exit status of the first failed group
+     */
+    public int insert(File jaifFile, String[] javaFiles, OutputStream out, OutputStream err) throws IOException {
+        PackagePartitions partitions = JaifSplitter.partitionByPackage(jaifFile);
+        Map<String, List<String>> packageToSources = groupByPackage(javaFiles);
+
+        File partitionDir = Files.createTempDirectory("jaif-partitions").toFile();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(workers, packageToSources.size())));
+        try {
+            List<Future<InsertionResult>> results = new ArrayList<>(packageToSources.size());
+            int index = 0;
+            for (Map.Entry<String, List<String>> entry : packageToSources.entrySet()) {
+                File partitionJaif = new File(partitionDir, (index++) + ".jaif");
+                partitions.writePartition(partitionJaif, entry.getKey());
+
+                List<String> groupCommand = new ArrayList<>(command);
+                groupCommand.add(partitionJaif.getAbsolutePath());
+                groupCommand.addAll(entry.getValue());
+                results.add(executor.submit(() -> InsertionResult.run(groupCommand)));
+            }
+
+            int status = 0;
+            for (Future<InsertionResult> future : results) {
+                InsertionResult result = future.get();
+                result.out.writeTo(out);
+                result.err.writeTo(err);
+                if (status == 0) {
+                    status = result.status;
+                }
+            }
+            out.flush();
+            err.flush();
+            return status;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while inserting annotations", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to insert annotations", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            try (Stream<Path> paths = Files.walk(partitionDir.toPath())) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    /**
+     * Groups the given source files by the package they declare, keeping the order of javaFiles
+     * within each group.  The groups are ordered by the first occurrence of their package.
+     */
+    public static Map<String, List<String>> groupByPackage(String[] javaFiles) throws IOException {
+        Map<String, List<String>> packageToSources = new LinkedHashMap<>();
+        for (String javaFile : javaFiles) {
+            String packageName = readPackage(new File(javaFile));
+            List<String> sources = packageToSources.get(packageName);
+            if (sources == null) {
+                sources = new ArrayList<>();
+                packageToSources.put(packageName, sources);
+            }
+            sources.add(javaFile);
+        }
+        return packageToSources;
+    }
+
+    /**
+     * @return the package declared by the given source file, or "" for the default package
+     */
+    public static String readPackage(File javaFile) throws IOException {
+        String source = new String(Files.readAllBytes(javaFile.toPath()), StandardCharsets.UTF_8);
+        Matcher matcher = PACKAGE_PATTERN.matcher(COMMENT_PATTERN.matcher(source).replaceAll(" "));
+        return matcher.find() ? matcher.group(1) : "";
+    }
+
+    /**
+     * The exit status and buffered output of one insertion process.
+     */
+    private static class InsertionResult {
+        final int status;
+        final ByteArrayOutputStream out;
+        final ByteArrayOutputStream err;
+
+        private InsertionResult(int status, ByteArrayOutputStream out, ByteArrayOutputStream err) {
+            this.status = status;
+            this.out = out;
+            this.err = err;
+        }
+
+        static InsertionResult run(List<String> command) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            int status = ExecUtil.execute(command.toArray(new String[command.size()]), out, err);
+            return new InsertionResult(status, out, err);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package checkers.inference.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Unsigned LEB128 varints, 7 bits per byte with the high bit set on every byte but the last, and
+ * zig-zag encoded signed varints.  Used by the binary constraint format and the bytecode summary
+ * cache.
+ */
+public final class VarInts {
+
+    /** An int has 32 bits, so a varint has at most 5 bytes. */
+    private static final int MAX_SHIFT = 35;
+
+    private VarInts() {
+    }
+
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarInt(DataInput in) throws IOException {
+        return readVarInt(in::readUnsignedByte);
+    }
+
+    /**
+     * Read a varint at the position of the buffer and advance the position past it.
+     *
+     * @throws java.nio.BufferUnderflowException if the buffer ends inside the varint
+     * @throws UncheckedIOException if the varint is longer than 5 bytes
+     */
+    public static int readVarInt(ByteBuffer in) {
+        try {
+            return readVarInt(() -> in.get() & 0xFF);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Zig-zag encode a signed value, so that small negative numbers stay short as varints. */
+    public static void writeSignedVarInt(DataOutput out, int value) throws IOException {
+        writeVarInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    public static int readSignedVarInt(DataInput in) throws IOException {
+        int value = readVarInt(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int readVarInt(ByteSource in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < MAX_SHIFT; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private interface ByteSource {
+        int readUnsignedByte() throws IOException;
+    }
+}
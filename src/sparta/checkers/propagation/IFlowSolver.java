@@ -7,10 +7,12 @@ import org.checkerframework.framework.type.QualifierHierarchy;
 import org.checkerframework.javacutil.AnnotationBuilder;
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -51,9 +53,11 @@ import sparta.checkers.qual.Source;
  * For both modes, an equality constraint causes the Sets for both involved Slots
  * to be equal and include all Strings from either set.
  *
- * The algorithm processes list of constraints, adding the Strings to the inferredValues
- * map as needed. The entire list of constraints is processed repeatedly until the inferredValues map
- * no longer changes.
+ * The algorithm interns every permission String to a bit index and keeps the
+ * permissions of each Slot as a BitSet. Constant slots are decoded once. A worklist
+ * of constraints is then processed: whenever the set of a VariableSlot grows, only
+ * the constraints that mention that slot are revisited. Solving stops when the
+ * worklist is empty.
  *
  * @author mcarthur
  */
@@ -68,9 +72,26 @@ public abstract class IFlowSolver implements InferenceSolver {
     private Map<String, String> configuration;
 
     /**
-     * Map of inferred Strings for an VariableSlot's id.
+     * Map of inferred permissions for an VariableSlot's id.
+     * Each set bit is an index into permissionNames.
      */
-    private final Map<Integer, Set<String>> inferredValues = new HashMap<>();
+    private final Map<Integer, BitSet> inferredValues = new HashMap<>();
+
+    /**
+     * Map of decoded permissions for a ConstantSlot's id.
+     * These sets are never modified after they are created.
+     */
+    private final Map<Integer, BitSet> constantValues = new HashMap<>();
+
+    /**
+     * Interned permission Strings; the position of a String is its bit index.
+     */
+    private final List<String> permissionNames = new ArrayList<>();
+
+    /**
+     * Bit index of each interned permission String.
+     */
+    private final Map<String, Integer> permissionIndexes = new HashMap<>();
 
     // private final Map<String, Set<String>> flowPolicy = new HashMap<>();
 
@@ -85,44 +106,48 @@ public abstract class IFlowSolver implements InferenceSolver {
         this.processingEnvironment = processingEnvironment;
         this.configuration = configuration;
 
-        // Fixed point
-        boolean changed = true;
-        while (changed) {
-            changed = false;
-
-            for (Constraint constraint : constraints) {
-                if (constraint instanceof SubtypeConstraint) {
-                    Slot subtype = ((SubtypeConstraint)constraint).getSubtype();
-                    Slot supertype = ((SubtypeConstraint)constraint).getSupertype();
-
-                    Set<String> subtypePerms = getInferredSlotPermissions(subtype);
-                    Set<String> supertypePerms = getInferredSlotPermissions(supertype);
-
-                    if (isSinkSolver()) {
-                        if (subtype instanceof VariableSlot) {
-                            changed |= subtypePerms.addAll(supertypePerms);
-                        }
-                    } else {
-                        if (supertype instanceof VariableSlot) {
-                            changed |= supertypePerms.addAll(subtypePerms);
-                        }
-                    }
-                } else if (constraint instanceof EqualityConstraint) {
-                    Slot first = ((EqualityConstraint)constraint).getFirst();
-                    Slot second = ((EqualityConstraint)constraint).getSecond();
+        // Only subtype and equality constraints propagate permissions.
+        List<Constraint> propagating = new ArrayList<>();
+        for (Constraint constraint : constraints) {
+            if (constraint instanceof SubtypeConstraint || constraint instanceof EqualityConstraint) {
+                propagating.add(constraint);
+            } else {
+                logger.info("Ignoring constraint type: " + constraint.getClass());
+            }
+        }
 
-                    Set<String> firstPerms = getInferredSlotPermissions(first);
-                    Set<String> secondPerms = getInferredSlotPermissions(second);
+        // Index the constraints by the slots they mention, so a change to a slot
+        // only revisits its neighbours.
+        Map<Integer, List<Integer>> slotToConstraints = new HashMap<>();
+        for (int i = 0; i < propagating.size(); i++) {
+            for (Slot slot : getPropagatedSlots(propagating.get(i))) {
+                // Decode constants and create the sets of variables up front.
+                getInferredSlotPermissions(slot);
+                slotToConstraints.computeIfAbsent(slot.getId(), id -> new ArrayList<>()).add(i);
+            }
+        }
 
-                    if (first instanceof VariableSlot) {
-                        changed |= firstPerms.addAll(secondPerms);
-                    }
+        // Fixed point
+        ArrayDeque<Integer> worklist = new ArrayDeque<>(propagating.size());
+        boolean[] queued = new boolean[propagating.size()];
+        for (int i = 0; i < propagating.size(); i++) {
+            worklist.add(i);
+            queued[i] = true;
+        }
+
+        List<Slot> changedSlots = new ArrayList<>(2);
+        while (!worklist.isEmpty()) {
+            int index = worklist.poll();
+            queued[index] = false;
 
-                    if (second instanceof VariableSlot) {
-                        changed |= secondPerms.addAll(firstPerms);
+            changedSlots.clear();
+            propagate(propagating.get(index), changedSlots);
+            for (Slot changed : changedSlots) {
+                for (int neighbour : slotToConstraints.get(changed.getId())) {
+                    if (!queued[neighbour]) {
+                        queued[neighbour] = true;
+                        worklist.add(neighbour);
                     }
-                } else {
-                    logger.info("Ignoring constraint type: " + constraint.getClass());
                 }
             }
         }
@@ -132,12 +157,88 @@ public abstract class IFlowSolver implements InferenceSolver {
         return new DefaultInferenceResult(solutions);
     }
 
+    /**
+     * Return the slots whose permissions are read or written by the given
+     * subtype or equality constraint.
+     */
+    private Slot[] getPropagatedSlots(Constraint constraint) {
+        if (constraint instanceof SubtypeConstraint) {
+            return new Slot[] {((SubtypeConstraint) constraint).getSubtype(),
+                    ((SubtypeConstraint) constraint).getSupertype()};
+        } else {
+            return new Slot[] {((EqualityConstraint) constraint).getFirst(),
+                    ((EqualityConstraint) constraint).getSecond()};
+        }
+    }
+
+    /**
+     * Propagate permissions across one constraint.
+     *
+     * @param constraint a subtype or equality constraint
+     * @param changedSlots receives every slot whose permissions grew
+     */
+    private void propagate(Constraint constraint, List<Slot> changedSlots) {
+        if (constraint instanceof SubtypeConstraint) {
+            Slot subtype = ((SubtypeConstraint) constraint).getSubtype();
+            Slot supertype = ((SubtypeConstraint) constraint).getSupertype();
+
+            BitSet subtypePerms = getInferredSlotPermissions(subtype);
+            BitSet supertypePerms = getInferredSlotPermissions(supertype);
+
+            if (isSinkSolver()) {
+                if (subtype instanceof VariableSlot && addAll(subtypePerms, supertypePerms)) {
+                    changedSlots.add(subtype);
+                }
+            } else {
+                if (supertype instanceof VariableSlot && addAll(supertypePerms, subtypePerms)) {
+                    changedSlots.add(supertype);
+                }
+            }
+        } else {
+            Slot first = ((EqualityConstraint) constraint).getFirst();
+            Slot second = ((EqualityConstraint) constraint).getSecond();
+
+            BitSet firstPerms = getInferredSlotPermissions(first);
+            BitSet secondPerms = getInferredSlotPermissions(second);
+
+            if (first instanceof VariableSlot && addAll(firstPerms, secondPerms)) {
+                changedSlots.add(first);
+            }
+
+            if (second instanceof VariableSlot && addAll(secondPerms, firstPerms)) {
+                changedSlots.add(second);
+            }
+        }
+    }
+
+    /**
+     * Add all bits of source to target.
+     *
+     * @return true if target changed
+     */
+    private static boolean addAll(BitSet target, BitSet source) {
+        // Word by word over the incoming bits, instead of counting all bits of target twice.
+        BitSet added = (BitSet) source.clone();
+        added.andNot(target);
+        if (added.isEmpty()) {
+            return false;
+        }
+        target.or(added);
+        return true;
+    }
+
     private Map<Integer, AnnotationMirror> createAnnotations() {
         // Create annotations of the inferred sets.
+        Integer anyIndex = permissionIndexes.get("ANY");
         Map<Integer, AnnotationMirror> solutions = new HashMap<>();
-        for (Entry<Integer, Set<String>> inferredEntry : inferredValues.entrySet()) {
-            Set<String> strings = inferredEntry.getValue();
-            if (!(strings.size() == 1 && strings.contains("ANY"))) {
+        for (Entry<Integer, BitSet> inferredEntry : inferredValues.entrySet()) {
+            BitSet bits = inferredEntry.getValue();
+            boolean hasAny = anyIndex != null && bits.get(anyIndex);
+            if (!(bits.cardinality() == 1 && hasAny)) {
+                Set<String> strings = new LinkedHashSet<>();
+                for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                    strings.add(permissionNames.get(i));
+                }
                 strings.remove("ANY");
                 AnnotationMirror atm;
                 if (isSinkSolver()) {
@@ -159,17 +260,18 @@ public abstract class IFlowSolver implements InferenceSolver {
 
 
     /**
-     * Look up the set of inferred Strings for a Slot.
+     * Look up the set of inferred permissions for a Slot.
      *
      * If the Slot is a VariableSlot, return its entry in inferredValues.
      *
-     * If the Slot is a ConstantSlot, return an unmodifiable set based
-     * on the Strings used in the constant slots value.
+     * If the Slot is a ConstantSlot, return its entry in constantValues,
+     * decoding the Strings used in the constant slots value the first time
+     * the slot is seen. The returned set must not be modified.
      *
      * @param slot The slot to lookup
-     * @return The slots current Set of Strings.
+     * @return The slots current set of permission indexes.
      */
-    private Set<String> getInferredSlotPermissions(Slot slot) {
+    private BitSet getInferredSlotPermissions(Slot slot) {
         if (slot instanceof VariableSlot) {
             if (slot.getKind() == Kind.EXISTENTIAL_VARIABLE) {
                 throw new IllegalArgumentException("Unexpected variable type:" + slot);
@@ -177,27 +279,51 @@ public abstract class IFlowSolver implements InferenceSolver {
             return getFlowSet(slot.getId());
 
         } else if (slot instanceof ConstantSlot) {
-            Set<String> constantSet = new HashSet<>();
-            for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
-                    ((ConstantSlot) slot).getValue().getElementValues().entrySet()) {
-                if (entry.getKey().getSimpleName().toString().equals("value")) {
-                    List<?> values = (List<?>) entry.getValue().getValue();
-                    for (Object elem : values) {
-                        String flowPermString = elem.toString();
-                        flowPermString = flowPermString.substring(flowPermString.lastIndexOf(".") + 1);
-                        flowPermString = flowPermString.replace("\"", "");
-                        constantSet.add(String.valueOf(flowPermString).intern());
-                    }
-                }
+            BitSet constantSet = constantValues.get(slot.getId());
+            if (constantSet == null) {
+                constantSet = decodeConstant((ConstantSlot) slot);
+                constantValues.put(slot.getId(), constantSet);
             }
-            // The set of constants should not be modified
-            return Collections.unmodifiableSet(constantSet);
+            return constantSet;
         } else {
-            return new HashSet<>();
+            return new BitSet();
 //            throw new BugInCF("Found slot that was neither a variable or a constant: " + slot);
         }
     }
 
+    /**
+     * Parse the Strings used in a constant slot's value into a set of permission indexes.
+     */
+    private BitSet decodeConstant(ConstantSlot slot) {
+        BitSet constantSet = new BitSet();
+        for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+                slot.getValue().getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().toString().equals("value")) {
+                List<?> values = (List<?>) entry.getValue().getValue();
+                for (Object elem : values) {
+                    String flowPermString = elem.toString();
+                    flowPermString = flowPermString.substring(flowPermString.lastIndexOf(".") + 1);
+                    flowPermString = flowPermString.replace("\"", "");
+                    constantSet.set(getPermissionIndex(flowPermString));
+                }
+            }
+        }
+        return constantSet;
+    }
+
+    /**
+     * Intern a permission String, returning its bit index.
+     */
+    private int getPermissionIndex(String permission) {
+        Integer index = permissionIndexes.get(permission);
+        if (index == null) {
+            index = permissionNames.size();
+            permissionNames.add(permission);
+            permissionIndexes.put(permission, index);
+        }
+        return index;
+    }
+
     private AnnotationMirror createAnnotationMirror(Set<String> strings, Class<? extends Annotation> clazz) {
         AnnotationBuilder builder = new AnnotationBuilder( processingEnvironment, clazz);
         builder.setValue("value", strings.toArray());
@@ -205,20 +331,19 @@ public abstract class IFlowSolver implements InferenceSolver {
     }
 
     /**
-     * Get the Set of Strings in aggregatedValues map for the given id.
-     * Create the Set and add it to the map if it does not already exist.
+     * Get the set of permissions in inferredValues map for the given id.
+     * Create the set and add it to the map if it does not already exist.
      *
      * @param id The id of the VariableSlot
-     * @return The set of Strings for the id
+     * @return The set of permission indexes for the id
      */
-    private Set<String> getFlowSet(int id) {
-        if (inferredValues.containsKey(id)) {
-            return inferredValues.get(id);
-        } else {
-            Set<String> newSet = new HashSet<>();
-            inferredValues.put(id, newSet);
-            return newSet;
+    private BitSet getFlowSet(int id) {
+        BitSet set = inferredValues.get(id);
+        if (set == null) {
+            set = new BitSet();
+            inferredValues.put(id, set);
         }
+        return set;
     }
 
     /**
@@ -4,19 +4,42 @@ import checkers.inference.InferenceResult;
 import checkers.inference.InferenceSolver;
 import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.Constraint;
+import checkers.inference.model.ExistentialConstraint;
 import checkers.inference.model.Slot;
 import org.checkerframework.framework.type.QualifierHierarchy;
+import org.checkerframework.javacutil.BugInCF;
+import org.sat4j.core.VecInt;
 import sparta.checkers.iflow.util.PFPermission;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
+ * Solves one SAT problem per permission and merges the solutions.
+ *
+ * The constraints are split in two: constraints without any ConstantSlot encode to the
+ * same clauses for every permission, so they are encoded once and shared by all
+ * PermissionSolvers. Only the constraints that mention a constant (and existential
+ * constraints, whose encoding allocates fresh variables) are specialized per permission.
+ *
+ * A permission that is not mentioned by any constant in those constraints specializes
+ * them exactly like ANY does, so all such permissions share a single solve.
+ * The remaining problems are solved in parallel on a bounded pool.
+ *
  * Created by smillst on 9/17/15.
  */
 public abstract class IFlowSolver implements InferenceSolver {
 
+    /**
+     * Configuration key for the maximum number of permission problems solved at once.
+     * Defaults to the number of available processors.
+     */
+    private static final String THREADS_KEY = "permission-threads";
 
     public InferenceResult solve(Map<String, String> configuration,
                                  Collection<Slot> slots,
@@ -24,24 +47,87 @@ public abstract class IFlowSolver implements InferenceSolver {
                                  QualifierHierarchy qualHierarchy,
                                  ProcessingEnvironment processingEnvironment) {
         Collection<PFPermission> permissionsUsed = getPermissionsUsed(slots);
-        List<PermissionSolver> permissionSolvers = new ArrayList<>();
 
-        // Configure permission solvers
+        // Split the constraints into permission-independent and permission-dependent ones.
+        List<Constraint> sharedConstraints = new ArrayList<>();
+        List<Constraint> permissionConstraints = new ArrayList<>();
+        Set<PFPermission> constrainedPermissions = new TreeSet<>();
+        for (Constraint constraint : constraints) {
+            boolean hasConstant = false;
+            for (Slot slot : constraint.getSlots()) {
+                if (slot instanceof ConstantSlot) {
+                    hasConstant = true;
+                    constrainedPermissions.addAll(getPermissionList(((ConstantSlot) slot).getValue()));
+                }
+            }
+            if (hasConstant || constraint instanceof ExistentialConstraint) {
+                permissionConstraints.add(constraint);
+            } else {
+                sharedConstraints.add(constraint);
+            }
+        }
+
+        // Shared constraints never reach isTop, so any permission's serializer encodes them.
+        List<VecInt> sharedClauses = getSerializer(PFPermission.ANY).convertAll(sharedConstraints);
+
+        // Configure permission solvers; permissions not mentioned by any constrained
+        // constant are covered by the solver for ANY.
+        List<PermissionSolver> permissionSolvers = new ArrayList<>();
+        List<PFPermission> coveredByAny = new ArrayList<>();
         for (PFPermission permission : permissionsUsed) {
-            PermissionSolver solver = new PermissionSolver(permission);
-            solver.configure(constraints, getSerializer(permission));
-            permissionSolvers.add(solver);
+            if (permission.equals(PFPermission.ANY) || constrainedPermissions.contains(permission)) {
+                PermissionSolver solver = new PermissionSolver(permission);
+                solver.configure(sharedClauses, permissionConstraints, getSerializer(permission));
+                permissionSolvers.add(solver);
+            } else {
+                coveredByAny.add(permission);
+            }
         }
 
         // Solve
-        List<PermissionSolution> solutions = new ArrayList<>();
-        for (PermissionSolver solver : permissionSolvers) {
-            solutions.add(solver.solve());
+        List<PermissionSolution> solutions;
+        try {
+            solutions = solveInParallel(permissionSolvers, getThreadCount(configuration));
+        } catch (InterruptedException | ExecutionException e) {
+            throw new BugInCF("Error solving permissions in parallel", e);
+        }
+
+        for (PermissionSolution solution : new ArrayList<>(solutions)) {
+            if (solution.getPermission().equals(PFPermission.ANY)) {
+                for (PFPermission permission : coveredByAny) {
+                    solutions.add(solution.forPermission(permission));
+                }
+            }
         }
 
         return getMergedResultFromSolutions(processingEnvironment, solutions);
     }
 
+    private List<PermissionSolution> solveInParallel(List<PermissionSolver> permissionSolvers, int threads)
+            throws InterruptedException, ExecutionException {
+        ExecutorService service = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, permissionSolvers.size())));
+
+        List<Future<PermissionSolution>> futures = new ArrayList<>();
+        for (final PermissionSolver solver : permissionSolvers) {
+            futures.add(service.submit(solver::solve));
+        }
+        service.shutdown();
+
+        List<PermissionSolution> solutions = new ArrayList<>();
+        for (Future<PermissionSolution> future : futures) {
+            solutions.add(future.get());
+        }
+        return solutions;
+    }
+
+    private int getThreadCount(Map<String, String> configuration) {
+        String threads = configuration.get(THREADS_KEY);
+        if (threads != null) {
+            return Integer.parseInt(threads);
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
     private Collection<PFPermission> getPermissionsUsed(Collection<Slot> solts) {
         Set<PFPermission> permissions = new TreeSet<>();
         for (Slot slot : solts) {
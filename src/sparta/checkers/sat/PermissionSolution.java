@@ -40,6 +40,15 @@ public class PermissionSolution {
         return permission;
     }
 
+    /**
+     * Returns a solution with the same assignment as this one, for a permission whose
+     * problem is identical to the problem of this solution's permission.
+     * The returned solution shares this solution's maps.
+     */
+    public PermissionSolution forPermission(PFPermission permission) {
+        return new PermissionSolution(result, idToExistence, permission);
+    }
+
     public static PermissionSolution noSolution(PFPermission permission) {
         return new PermissionSolution(permission);
     }
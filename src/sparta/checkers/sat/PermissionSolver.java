@@ -6,6 +6,7 @@ import org.sat4j.core.VecInt;
 import org.sat4j.maxsat.WeightedMaxSatDecorator;
 import sparta.checkers.iflow.util.PFPermission;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -16,6 +17,7 @@ public class PermissionSolver {
     private SlotManager slotManager;
     private PFPermission permission;
     private IFlowSerializer serializer;
+    List<VecInt> sharedClauses;
     List<VecInt> clauses;
 
     public PermissionSolver(PFPermission permission) {
@@ -23,9 +25,24 @@ public class PermissionSolver {
     }
 
     public void configure(Collection<Constraint> constraints, IFlowSerializer serializer) {
+        configure(new ArrayList<VecInt>(), constraints, serializer);
+    }
+
+    /**
+     * Configure this solver with clauses that were already encoded for every permission,
+     * plus the constraints that must be encoded for this solver's permission.
+     *
+     * @param sharedClauses clauses shared with other PermissionSolvers; they are copied
+     *                      before being handed to sat4j and are never modified
+     * @param permissionConstraints constraints whose encoding depends on the permission
+     * @param serializer the serializer for this solver's permission
+     */
+    public void configure(List<VecInt> sharedClauses, Collection<Constraint> permissionConstraints,
+                          IFlowSerializer serializer) {
         this.serializer = serializer;
         this.slotManager = InferenceMain.getInstance().getSlotManager();
-        this.clauses = convertToCNF(constraints);
+        this.sharedClauses = sharedClauses;
+        this.clauses = convertToCNF(permissionConstraints);
     }
 
     private List<VecInt> convertToCNF(Collection<Constraint> constraints) {
@@ -39,7 +56,7 @@ public class PermissionSolver {
 
 
         final int totalVars = slotManager.getNumberOfSlots();
-        final int totalClauses = clauses.size();
+        final int totalClauses = sharedClauses.size() + clauses.size();
 
         try {
             // **** Prep Solver ****
@@ -50,6 +67,12 @@ public class PermissionSolver {
             solver.setExpectedNumberOfClauses(totalClauses);
             // Arbitrary timeout
             solver.setTimeoutMs(1000000);
+            for (VecInt clause : sharedClauses) {
+                // The shared clauses are read concurrently by other PermissionSolvers.
+                VecInt copy = new VecInt(clause.size());
+                clause.copyTo(copy);
+                solver.addSoftClause(copy);
+            }
             for (VecInt clause : clauses) {
                 solver.addSoftClause(clause);
             }
@@ -79,7 +102,7 @@ public class PermissionSolver {
             }
 
         } catch (Throwable th) {
-            VecInt lastClause = clauses.get(clauses.size() - 1);
+            VecInt lastClause = clauses.isEmpty() ? null : clauses.get(clauses.size() - 1);
             throw new RuntimeException("Error MAX-SAT solving! " + lastClause, th);
         }
 
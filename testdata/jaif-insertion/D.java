@@ -0,0 +1,3 @@
+class D {
+    Object d;
+}
@@ -0,0 +1,9 @@
+package p1;
+
+public class A {
+    Object f;
+
+    Object m(Object x) {
+        return x;
+    }
+}
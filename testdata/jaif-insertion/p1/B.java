@@ -0,0 +1,9 @@
+package p1;
+
+class B {
+    String s;
+
+    B(String s) {
+        this.s = s;
+    }
+}
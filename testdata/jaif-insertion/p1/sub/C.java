@@ -0,0 +1,11 @@
+/*
+ * package wrong;
+ */
+// package alsoWrong;
+package p1.sub;
+
+import java.util.List;
+
+public class C {
+    List<String> strings;
+}
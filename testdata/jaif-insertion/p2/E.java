@@ -0,0 +1,5 @@
+package p2;
+
+class E {
+    Object e;
+}
@@ -0,0 +1,163 @@
+package checkers.inference;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+
+/**
+ * Checks the ExistentialConstraints into which ConstraintNormalizer expands constraints between
+ * existential variables, written as (potential | alternative).
+ */
+public class ConstraintNormalizerTest {
+
+    private ConstraintManager constraintManager;
+
+    private int nextId;
+
+    private Slot v1, v2, v3, v4, v5, v6, v7;
+
+    @Before
+    public void setUp() {
+        constraintManager = InferenceMain.resetInstance().getConstraintManager();
+        nextId = 1;
+        v1 = createVariable();
+        v2 = createVariable();
+        v3 = createVariable();
+        v4 = createVariable();
+        v5 = createVariable();
+        v6 = createVariable();
+        v7 = createVariable();
+    }
+
+    @Test
+    public void testWithoutExistentials() {
+        Constraint constraint = subtype(v1, v2);
+        assertNormalizesTo(set(constraint), constraint);
+    }
+
+    @Test
+    public void testExistentialSubtype() {
+        // (v1 | v2) <: v3
+        assertNormalizesTo(set(subtype(existential(v1, v2), v3)),
+                ifExists(v1, list(subtype(v1, v3)), list(subtype(v2, v3))));
+    }
+
+    @Test
+    public void testExistentialSupertype() {
+        // v3 <: (v1 | v2)
+        assertNormalizesTo(set(subtype(v3, existential(v1, v2))),
+                ifExists(v1, list(subtype(v3, v1)), list(subtype(v3, v2))));
+    }
+
+    @Test
+    public void testExistentialsOnBothSides() {
+        // (v1 | v2) <: (v3 | v4)
+        assertNormalizesTo(set(subtype(existential(v1, v2), existential(v3, v4))),
+                ifExists(v1,
+                        list(ifExists(v3, list(subtype(v1, v3)), list(subtype(v1, v4)))),
+                        list(ifExists(v3, list(subtype(v2, v3)), list(subtype(v2, v4))))));
+    }
+
+    @Test
+    public void testEquality() {
+        // (v1 | v2) == v3
+        assertNormalizesTo(set(equality(existential(v1, v2), v3)),
+                ifExists(v1, list(equality(v1, v3)), list(equality(v2, v3))));
+    }
+
+    @Test
+    public void testNestedExistential() {
+        // (v1 | (v2 | v3)) <: v4
+        assertNormalizesTo(set(subtype(existential(v1, existential(v2, v3)), v4)),
+                ifExists(v1,
+                        list(subtype(v1, v4)),
+                        list(ifExists(v2, list(subtype(v2, v4)), list(subtype(v3, v4))))));
+    }
+
+    @Test
+    public void testSharedPotentialVariable() {
+        // (v1 | v2) <: v3 and (v1 | v4) <: v3 share the decision on v1
+        assertNormalizesTo(set(subtype(existential(v1, v2), v3), subtype(existential(v1, v4), v3)),
+                ifExists(v1, list(subtype(v1, v3)), list(subtype(v2, v3), subtype(v4, v3))));
+    }
+
+    @Test
+    public void testSameSlotOnBothSides() {
+        // (v1 | v2) <: (v3 | (v1 | v4)): the pair of v1 with itself is dropped, and v1 is decided
+        // once, by the left side
+        assertNormalizesTo(set(subtype(existential(v1, v2), existential(v3, existential(v1, v4)))),
+                ifExists(v1,
+                        list(ifExists(v3, list(subtype(v1, v3)), list(subtype(v1, v4)))),
+                        list(ifExists(v3, list(subtype(v2, v3)), list(subtype(v2, v4))))));
+    }
+
+    @Test
+    public void testKeepsOtherConstraints() {
+        // v5 <: v6 is kept as it is next to the expansion of (v1 | v2) <: v7
+        Constraint other = subtype(v5, v6);
+        assertNormalizesTo(set(other, subtype(existential(v1, v2), v7)),
+                other,
+                ifExists(v1, list(subtype(v1, v7)), list(subtype(v2, v7))));
+    }
+
+    private void assertNormalizesTo(Set<Constraint> constraints, Constraint... expected) {
+        assertEquals(toStrings(Arrays.asList(expected)),
+                toStrings(new ConstraintNormalizer().normalize(constraints)));
+    }
+
+    private Slot createVariable() {
+        return new SourceVariableSlot(nextId++, AnnotationLocation.MISSING_LOCATION, null, null, true);
+    }
+
+    private Slot existential(Slot potential, Slot alternative) {
+        return new ExistentialVariableSlot(nextId++, potential, alternative);
+    }
+
+    private Constraint subtype(Slot subtype, Slot supertype) {
+        return constraintManager.createSubtypeConstraint(subtype, supertype);
+    }
+
+    private Constraint equality(Slot first, Slot second) {
+        return constraintManager.createEqualityConstraint(first, second);
+    }
+
+    private Constraint ifExists(Slot potential, List<Constraint> ifExists, List<Constraint> ifNotExists) {
+        return constraintManager.createExistentialConstraint(potential, ifExists, ifNotExists);
+    }
+
+    private static List<Constraint> list(Constraint... constraints) {
+        return Arrays.asList(constraints);
+    }
+
+    private static Set<Constraint> set(Constraint... constraints) {
+        return new LinkedHashSet<>(Arrays.asList(constraints));
+    }
+
+    /**
+     * ExistentialConstraints do not implement equals, so the normalizations are compared by the
+     * sorted string representations of their constraints.
+     */
+    private static List<String> toStrings(Iterable<Constraint> constraints) {
+        List<String> strings = new ArrayList<>();
+        for (Constraint constraint : constraints) {
+            strings.add(constraint.toString());
+        }
+        Collections.sort(strings);
+        return strings;
+    }
+}
@@ -0,0 +1,59 @@
+package checkers.inference;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.checkerframework.framework.test.TestUtilities;
+import org.checkerframework.javacutil.SystemUtil;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import checkers.inference.solver.SolverEngine;
+import checkers.inference.test.InferenceTestConfiguration;
+import checkers.inference.test.InferenceTestConfigurationBuilder;
+import checkers.inference.test.InferenceTestExecutor;
+import checkers.inference.test.InferenceTestUtilities;
+
+/**
+ * Runs the ostrusted tests with and without --equalityPresolve, and checks that both solutions
+ * type check once inserted into the test sources.  The tests use the MaxSat back end of the
+ * SolverEngine, which runs a single sat4j solver, so that the solutions do not depend on which
+ * solver finishes first.  Whether the presolved solutions are as good is checked by
+ * {@link checkers.inference.presolve.EqualityPresolverCostTest}, as these tests have no preferences.
+ */
+@RunWith(Parameterized.class)
+public class EqualityPresolveTest {
+
+    private static final String MAX_SAT = "--solverArgs=solver=MaxSat";
+
+    private final File testFile;
+
+    public EqualityPresolveTest(File testFile) {
+        this.testFile = testFile;
+    }
+
+    @Parameters
+    public static List<File> getTestFiles() {
+        return TestUtilities.findRelativeNestedJavaFiles("testdata", "ostrusted-inferrable-test");
+    }
+
+    @Test
+    public void testSameResultWithPresolve() {
+        InferenceTestConfiguration config = InferenceTestConfigurationBuilder.buildDefaultConfiguration(
+                "ostrusted", testFile, new File("testdata"), ostrusted.OsTrustedChecker.class,
+                Arrays.asList("-Anomsgtext", "-Astubs=src/ostrusted/jdk.astub", "-d", "tests/build/outputdir"),
+                new ArrayList<String>(), SolverEngine.class.getCanonicalName(), new ArrayList<String>(),
+                SystemUtil.getBooleanSystemProperty("use.hacks"), TestUtilities.getShouldEmitDebugInfo(),
+                System.getProperty("path.afu.scripts"), System.getProperty("path.inference.script"));
+
+        InferenceTestUtilities.assertResultsAreValid(
+                new InferenceTestExecutor().runTest(config, Collections.singletonList(MAX_SAT)));
+        InferenceTestUtilities.assertResultsAreValid(
+                new InferenceTestExecutor().runTest(config, Arrays.asList(MAX_SAT, "--equalityPresolve")));
+    }
+}
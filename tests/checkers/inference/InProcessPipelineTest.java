@@ -0,0 +1,78 @@
+package checkers.inference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import checkers.inference.solver.MaxSat2TypeSolver;
+
+/**
+ * Checks that a ROUNDTRIP with --inProcess inserts the same annotations as a ROUNDTRIP that runs
+ * each step in a separate process, on a few sources of testdata/ostrusted-inferrable-test.
+ */
+public class InProcessPipelineTest {
+
+    private static final File CORPUS = new File("testdata", "ostrusted-inferrable-test");
+    private static final String[] SOURCES = { "Refinement.java", "Bounds.java", "TestConcat.java" };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void resetOptions() {
+        // InferenceOptions are static, so they must not leak into other tests.
+        InferenceOptions.inProcess = false;
+    }
+
+    @Test
+    public void testSameAsSeparateProcesses() throws IOException {
+        Map<String, String> expected = roundtrip("separate", false);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, roundtrip("in-process", true));
+    }
+
+    /** Runs a ROUNDTRIP and returns the annotated sources that the insertion wrote. */
+    private Map<String, String> roundtrip(String name, boolean inProcess) throws IOException {
+        File outputDir = folder.newFolder(name);
+        File classesDir = folder.newFolder(name + "-classes");
+
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--mode", "ROUNDTRIP",
+                "--checker", "ostrusted.OsTrustedChecker",
+                "--solver", MaxSat2TypeSolver.class.getCanonicalName(),
+                "--jaifFile", new File(folder.getRoot(), name + ".jaif").getAbsolutePath(),
+                "--afuOutputDir", outputDir.getAbsolutePath()));
+        String pathToAfuScripts = System.getProperty("path.afu.scripts");
+        if (pathToAfuScripts != null) {
+            args.add("--pathToAfuScripts");
+            args.add(pathToAfuScripts);
+        }
+        if (inProcess) {
+            args.add("--inProcess");
+        }
+        args.addAll(Arrays.asList("-Astubs=src/ostrusted/jdk.astub", "-d", classesDir.getAbsolutePath()));
+        for (String source : SOURCES) {
+            args.add(new File(CORPUS, source).getAbsolutePath());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream printOut = new PrintStream(out, true);
+        int status = new InferenceLauncher(printOut, printOut).launch(args.toArray(new String[args.size()]));
+        assertEquals(out.toString(), 0, status);
+        assertFalse(out.toString(), out.toString().contains(" failed ---"));
+        return ParallelAnnotationInserterTest.readTree(outputDir);
+    }
+}
@@ -0,0 +1,102 @@
+package checkers.inference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.checkerframework.framework.util.ExecUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import checkers.inference.util.ParallelAnnotationInserter;
+
+/**
+ * Checks that inserting a jaif with a ParallelAnnotationInserter gives the same source files
+ * as a single insert-annotations-to-source process, on the corpus in testdata/jaif-insertion.
+ */
+public class ParallelAnnotationInserterTest {
+
+    private static final File CORPUS = new File("testdata", "jaif-insertion");
+    private static final File JAIF = new File(CORPUS, "insertion.jaif");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSameAsSingleInsertion() throws IOException {
+        String[] javaFiles = corpusSources();
+
+        File expectedDir = folder.newFolder("single");
+        List<String> command = insertionCommand(expectedDir);
+        command.add(JAIF.getAbsolutePath());
+        command.addAll(Arrays.asList(javaFiles));
+        ByteArrayOutputStream singleOut = new ByteArrayOutputStream();
+        int status = ExecUtil.execute(command.toArray(new String[command.size()]), singleOut, singleOut);
+        assertEquals(singleOut.toString(), 0, status);
+        Map<String, String> expected = readTree(expectedDir);
+        assertFalse(expected.isEmpty());
+
+        for (int workers : new int[] { 1, 2, 8 }) {
+            File actualDir = folder.newFolder("parallel-" + workers);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            status = new ParallelAnnotationInserter(insertionCommand(actualDir), workers)
+                    .insert(JAIF, javaFiles, out, out);
+            assertEquals(out.toString(), 0, status);
+            assertEquals("workers " + workers, expected, readTree(actualDir));
+        }
+    }
+
+    @Test
+    public void testGroupByPackage() throws IOException {
+        Map<String, List<String>> packageToSources = ParallelAnnotationInserter.groupByPackage(corpusSources());
+        assertEquals(Arrays.asList("", "p1", "p1.sub", "p2"), new ArrayList<>(packageToSources.keySet()));
+        assertEquals(2, packageToSources.get("p1").size());
+    }
+
+    private static List<String> insertionCommand(File outputDir) {
+        String pathToAfuScripts = System.getProperty("path.afu.scripts", "");
+        List<String> command = new ArrayList<>();
+        command.add(pathToAfuScripts.isEmpty() ? "insert-annotations-to-source"
+                : pathToAfuScripts + File.separator + "insert-annotations-to-source");
+        command.add("-v");
+        command.add("--outdir=" + outputDir.getAbsolutePath());
+        return command;
+    }
+
+    /** The corpus sources, in a fixed order. */
+    private static String[] corpusSources() throws IOException {
+        try (Stream<Path> paths = Files.walk(CORPUS.toPath())) {
+            return paths.filter(path -> path.toString().endsWith(".java"))
+                        .map(path -> path.toFile().getAbsolutePath())
+                        .sorted()
+                        .toArray(String[]::new);
+        }
+    }
+
+    /** Maps the path of each file below root, relative to root, to its content. */
+    static Map<String, String> readTree(File root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root.toPath())) {
+            List<Path> files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+            Map<String, String> tree = new TreeMap<>();
+            for (Path file : files) {
+                tree.put(root.toPath().relativize(file).toString(),
+                        new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            }
+            return tree;
+        }
+    }
+}
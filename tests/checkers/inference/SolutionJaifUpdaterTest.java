@@ -0,0 +1,193 @@
+package checkers.inference;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.Set;
+
+import org.json.simple.parser.ParseException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import checkers.inference.model.serialization.JsonDeserializer;
+
+/**
+ * Checks that the streaming SolutionJaifUpdater writes the same bytes as the original
+ * Scanner and json-simple based implementation, which is kept here as reference.
+ */
+public class SolutionJaifUpdaterTest {
+
+    private static final String TOP = "@Top";
+    private static final String BOTTOM = "@Bottom";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path originalJson;
+    private Path solvedJson;
+
+    @Before
+    public void setUp() throws IOException {
+        // JsonDeserializer looks up the constraint manager of InferenceMain.
+        InferenceMain.resetInstance();
+
+        // Variables 1-40 are solved, alternating bottom and top, in both formats of the variables
+        // section. 3, 6, 9 and 12 are potential variables, of which only 6 and 12 are enabled.
+        StringBuilder variables = new StringBuilder();
+        for (int id = 1; id <= 40; id++) {
+            if (id > 1) {
+                variables.append(",\n");
+            }
+            String value = id % 2 == 0 ? "type:0" : "type:1";
+            if (id % 3 == 0) {
+                variables.append("\"var:").append(id).append("\": {\"type_value\": \"").append(value).append("\"}");
+            } else {
+                variables.append("\"var:").append(id).append("\": \"").append(value).append("\"");
+            }
+        }
+        String existential = "{\"constraint\": \"enabled_check\", \"id\": \"var:%d\", \"then\": [%s], \"else\": []}";
+        String subtype = "{\"constraint\": \"subtype\", \"sub\": \"var:%d\", \"sup\": \"var:%d\"}";
+        String constraints = String.format(existential, 3, String.format(subtype, 3, 4)) + ",\n"
+                + String.format(subtype, 1, 2) + ",\n"
+                + String.format(existential, 6, String.format(existential, 9, "")) + ",\n"
+                + String.format(existential, 12, String.format(subtype, 12, 1));
+
+        originalJson = write("original.json", "{\"version\": \"2\", \"constraints\": [\n" + constraints + "\n]}");
+        solvedJson = write("solved.json", "{\"version\": \"2\", \"constraints\": [],\n"
+                + "\"variables\": {\n" + variables + "\n},\n"
+                + "\"enabled_vars\": [\"var:6\", \"var:12\"]}");
+    }
+
+    @Test
+    public void testUnixLineEndings() throws Exception {
+        assertSameOutput(jaif("\n", true));
+    }
+
+    @Test
+    public void testWindowsAndMacLineEndings() throws Exception {
+        assertSameOutput(jaif("\r\n", true));
+        assertSameOutput(jaif("\r", false));
+    }
+
+    @Test
+    public void testNoTrailingNewline() throws Exception {
+        assertSameOutput(jaif("\n", false));
+    }
+
+    @Test
+    public void testEmptyJaif() throws Exception {
+        assertSameOutput("");
+        assertSameOutput("\n\n");
+    }
+
+    @Test
+    public void testLongLines() throws Exception {
+        StringBuilder jaif = new StringBuilder();
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            StringBuilder padding = new StringBuilder();
+            for (int j = random.nextInt(300); j > 0; j--) {
+                padding.append(' ');
+            }
+            jaif.append(padding).append("field f").append(i).append(":\n");
+            jaif.append(padding).append("type: ").append(SolutionJaifUpdater.CHECKERS_INFERENCE_QUALS_VAR_ANNOT)
+                    .append(1 + random.nextInt(50)).append(")\n");
+        }
+        assertSameOutput(jaif.toString());
+    }
+
+    private String jaif(String newline, boolean trailingNewline) {
+        StringBuilder jaif = new StringBuilder();
+        jaif.append("package checkers.inference.qual:").append(newline)
+            .append("annotation @VarAnnot: @java.lang.annotation.Retention(RUNTIME)").append(newline)
+            .append("    int value").append(newline)
+            .append(newline)
+            .append("package :").append(newline)
+            .append("class Foo:").append(newline);
+        // Includes unsolved ids (41-45), disabled and enabled potential variables and odd keys.
+        for (int id = 1; id <= 45; id++) {
+            jaif.append("field f").append(id).append(":").append(newline)
+                .append("type: ").append(SolutionJaifUpdater.CHECKERS_INFERENCE_QUALS_VAR_ANNOT)
+                .append(id).append(")").append(newline);
+        }
+        jaif.append("type: ").append(SolutionJaifUpdater.CHECKERS_INFERENCE_QUALS_VAR_ANNOT).append("x1)").append(newline);
+        jaif.append("type: ").append(SolutionJaifUpdater.CHECKERS_INFERENCE_QUALS_VAR_ANNOT).append("007)");
+        if (trailingNewline) {
+            jaif.append(newline);
+        }
+        return jaif.toString();
+    }
+
+    private void assertSameOutput(String jaifContent) throws Exception {
+        Path jaif = write("input.jaif", jaifContent);
+        Path expected = folder.getRoot().toPath().resolve("expected.jaif");
+        legacyUpdateJaif(jaif, expected);
+
+        for (int bufferSize : new int[] { 1, 7, 64, 64 * 1024 }) {
+            Path actual = folder.getRoot().toPath().resolve("actual-" + bufferSize + ".jaif");
+            SolutionJaifUpdater.updateJaif(originalJson, solvedJson, jaif, actual, TOP, BOTTOM, bufferSize);
+            assertArrayEquals("buffer size " + bufferSize, Files.readAllBytes(expected), Files.readAllBytes(actual));
+        }
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path path = folder.getRoot().toPath().resolve(name);
+        Files.write(path, content.getBytes(Charset.defaultCharset()));
+        return path;
+    }
+
+    // The original implementation of SolutionJaifUpdater.
+
+    private void legacyUpdateJaif(Path jaifPath, Path outputPath) throws IOException, ParseException {
+        JsonDeserializer solvedDeserializer = new JsonDeserializer(null, readFile(solvedJson));
+
+        JsonDeserializer originalDeserializer = new JsonDeserializer(null, readFile(originalJson));
+        List<String> allPotentialVariables = originalDeserializer.getPotentialVariables();
+        Set<String> enabledVars = solvedDeserializer.getEnabledVars();
+        Map<String, Boolean> existentialValues = new HashMap<>();
+        for (String potentialVar : allPotentialVariables) {
+            existentialValues.put(potentialVar, enabledVars.contains(potentialVar));
+        }
+
+        Map<String, String> values = new HashMap<>();
+        for (Map.Entry<String, String> entry : solvedDeserializer.getAnnotationValues().entrySet()) {
+            values.put(entry.getKey(), entry.getValue().equals("0") ? BOTTOM : TOP);
+        }
+
+        try (Scanner in = new Scanner(jaifPath.toFile());
+             PrintStream out = new PrintStream(outputPath.toFile())) {
+            while (in.hasNextLine()) {
+                String line = in.nextLine();
+                int start = -1;
+                if ((start = line.indexOf(SolutionJaifUpdater.CHECKERS_INFERENCE_QUALS_VAR_ANNOT)) != -1) {
+                    int end = start + (SolutionJaifUpdater.CHECKERS_INFERENCE_QUALS_VAR_ANNOT.length());
+                    String key = line.substring(end, line.length() - 1);
+                    if (values.get(key) != null) {
+                        Boolean exists = existentialValues.get(key);
+                        if (exists == null || exists) {
+                            out.print(line.substring(0, start));
+                            out.println(values.get(key));
+                        }
+                    }
+                } else {
+                    out.println(line);
+                }
+            }
+        }
+    }
+
+    private static String readFile(Path path) throws IOException {
+        return new String(Files.readAllBytes(path), Charset.defaultCharset());
+    }
+}
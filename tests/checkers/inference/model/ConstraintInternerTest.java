@@ -0,0 +1,60 @@
+package checkers.inference.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import checkers.inference.model.ConstraintInterner.Kind;
+
+/**
+ * Checks that ConstraintInterner finds the canonical instance of each key, also after it grows,
+ * and counts the duplicates per kind.
+ */
+public class ConstraintInternerTest {
+
+    @Test
+    public void testLookupAndDuplicateCounts() {
+        ConstraintInterner interner = new ConstraintInterner();
+        Constraint alwaysTrue = AlwaysTrueConstraint.create();
+        Constraint alwaysFalse = AlwaysFalseConstraint.create();
+
+        // Enough keys for the table to grow several times.
+        int count = 5000;
+        int subtype = ConstraintInterner.header(Kind.SUBTYPE, 0);
+        int equality = ConstraintInterner.header(Kind.EQUALITY, 0);
+        for (int i = 0; i < count; i++) {
+            assertNull(interner.get(subtype, i, i + 1, 0));
+            interner.put(subtype, i, i + 1, 0, alwaysTrue);
+        }
+        // The same slots in another kind, or in another order, are another key.
+        assertNull(interner.get(equality, 0, 1, 0));
+        interner.put(equality, 0, 1, 0, alwaysFalse);
+        assertNull(interner.get(subtype, 1, 0, 0));
+        assertTrue(interner.getDuplicateCounts().isEmpty());
+
+        for (int i = 0; i < count; i++) {
+            assertSame(alwaysTrue, interner.get(subtype, i, i + 1, 0));
+        }
+        assertSame(alwaysFalse, interner.get(equality, 0, 1, 0));
+        assertEquals(Long.valueOf(count), interner.getDuplicateCounts().get("SubtypeConstraint"));
+        assertEquals(Long.valueOf(1), interner.getDuplicateCounts().get("EqualityConstraint"));
+
+        interner.clear();
+        assertNull(interner.get(subtype, 0, 1, 0));
+        assertEquals(Collections.emptyMap(), interner.getDuplicateCounts());
+    }
+
+    @Test
+    public void testOperationIsPartOfKey() {
+        ConstraintInterner interner = new ConstraintInterner();
+        Constraint alwaysTrue = AlwaysTrueConstraint.create();
+        interner.put(ConstraintInterner.header(Kind.ARITHMETIC, 0), 1, 2, 3, alwaysTrue);
+        assertNull(interner.get(ConstraintInterner.header(Kind.ARITHMETIC, 1), 1, 2, 3));
+        assertSame(alwaysTrue, interner.get(ConstraintInterner.header(Kind.ARITHMETIC, 0), 1, 2, 3));
+    }
+}
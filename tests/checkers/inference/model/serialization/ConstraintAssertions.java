@@ -0,0 +1,118 @@
+package checkers.inference.model.serialization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import checkers.inference.model.ArithmeticVariableSlot;
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.ComparisonVariableSlot;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ExistentialConstraint;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.LubVariableSlot;
+import checkers.inference.model.RefinementVariableSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+
+/**
+ * Asserts that slots, constraints and solutions read back from a constraint file are the ones
+ * that were written. Slots and constraints read back are different objects, so they are compared
+ * by kind, id and the slots they refer to.
+ */
+public final class ConstraintAssertions {
+
+    private ConstraintAssertions() {
+    }
+
+    public static void assertSameSlots(Collection<? extends Slot> expected, Collection<? extends Slot> actual) {
+        assertEquals(describeSlots(expected), describeSlots(actual));
+    }
+
+    /**
+     * Constraints are equal if they are of the same kind over equal slots, and slots are equal if
+     * they are of the same kind and have the same id. Existential constraints have no equality, so
+     * their parts are compared instead.
+     */
+    public static void assertSameConstraints(Collection<? extends Constraint> expected,
+            Collection<? extends Constraint> actual) {
+        assertEquals(expected.size(), actual.size());
+        Iterator<? extends Constraint> actualIterator = actual.iterator();
+        for (Constraint expectedConstraint : expected) {
+            Constraint actualConstraint = actualIterator.next();
+            if (expectedConstraint instanceof ExistentialConstraint) {
+                assertTrue("Expected " + expectedConstraint + " but was " + actualConstraint,
+                        actualConstraint instanceof ExistentialConstraint);
+                ExistentialConstraint expectedExistential = (ExistentialConstraint) expectedConstraint;
+                ExistentialConstraint actualExistential = (ExistentialConstraint) actualConstraint;
+                assertEquals(expectedExistential.getPotentialVariable(), actualExistential.getPotentialVariable());
+                assertSameConstraints(expectedExistential.potentialConstraints(),
+                        actualExistential.potentialConstraints());
+                assertSameConstraints(expectedExistential.getAlternateConstraints(),
+                        actualExistential.getAlternateConstraints());
+            } else {
+                assertEquals(expectedConstraint, actualConstraint);
+            }
+        }
+    }
+
+    /** Qualifiers read back are different objects, so they are compared by their names and values. */
+    public static void assertSameSolutions(Map<Integer, AnnotationMirror> expected,
+            Map<Integer, AnnotationMirror> actual) {
+        assertEquals(describeSolutions(expected), describeSolutions(actual));
+    }
+
+    private static Map<Integer, String> describeSolutions(Map<Integer, AnnotationMirror> solutions) {
+        Map<Integer, String> descriptions = new TreeMap<>();
+        for (Map.Entry<Integer, AnnotationMirror> entry : solutions.entrySet()) {
+            descriptions.put(entry.getKey(), entry.getValue().toString());
+        }
+        return descriptions;
+    }
+
+    private static List<String> describeSlots(Collection<? extends Slot> slots) {
+        List<Slot> sortedSlots = new ArrayList<>(slots);
+        sortedSlots.sort(null);
+        List<String> descriptions = new ArrayList<>();
+        for (Slot slot : sortedSlots) {
+            descriptions.add(describe(slot));
+        }
+        return descriptions;
+    }
+
+    private static String describe(Slot slot) {
+        String description = slot.getClass().getSimpleName() + "(" + slot.getId() + ")";
+        if (slot instanceof ConstantSlot) {
+            return description + " " + ((ConstantSlot) slot).getValue();
+        } else if (slot instanceof SourceVariableSlot) {
+            SourceVariableSlot sourceSlot = (SourceVariableSlot) slot;
+            return description + " insertable " + sourceSlot.isInsertable()
+                    + " default " + sourceSlot.getDefaultAnnotation();
+        } else if (slot instanceof RefinementVariableSlot) {
+            return description + " refined " + ((RefinementVariableSlot) slot).getRefined();
+        } else if (slot instanceof ExistentialVariableSlot) {
+            return description + " potential " + ((ExistentialVariableSlot) slot).getPotentialSlot()
+                    + " alternative " + ((ExistentialVariableSlot) slot).getAlternativeSlot();
+        } else if (slot instanceof CombVariableSlot) {
+            return description + " first " + ((CombVariableSlot) slot).getFirst()
+                    + " second " + ((CombVariableSlot) slot).getSecond();
+        } else if (slot instanceof LubVariableSlot) {
+            return description + " left " + ((LubVariableSlot) slot).getLeft()
+                    + " right " + ((LubVariableSlot) slot).getRight();
+        } else if (slot instanceof ArithmeticVariableSlot) {
+            return description + " value type " + ((ArithmeticVariableSlot) slot).getValueTypeKind();
+        } else if (slot instanceof ComparisonVariableSlot) {
+            return description + " refined " + ((ComparisonVariableSlot) slot).getRefined();
+        }
+        return description;
+    }
+}
@@ -0,0 +1,227 @@
+package checkers.inference.model.serialization;
+
+import static checkers.inference.model.serialization.ConstraintAssertions.assertSameConstraints;
+import static checkers.inference.model.serialization.ConstraintAssertions.assertSameSlots;
+import static checkers.inference.model.serialization.ConstraintAssertions.assertSameSolutions;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.type.TypeKind;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import checkers.inference.DefaultSlotManager;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ArithmeticConstraint.ArithmeticOperationKind;
+import checkers.inference.model.ArithmeticVariableSlot;
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.ComparisonConstraint.ComparisonOperationKind;
+import checkers.inference.model.ComparisonVariableSlot;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.LubVariableSlot;
+import checkers.inference.model.RefinementVariableSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.replay.ReplayEnvironment;
+
+/**
+ * Writes slots of every kind, constraints and a solution to the binary format, and checks that
+ * they come back the same after a binary round trip and after a round trip through the JSON
+ * format.
+ */
+public class JsonBinaryConverterTest {
+
+    private static final AnnotationLocation LOCATION = AnnotationLocation.MISSING_LOCATION;
+
+    private static ReplayEnvironment environment;
+    private static AnnotationMirror top;
+    private static AnnotationMirror bottom;
+
+    private DefaultSlotManager slotManager;
+    private JsonBinaryConverter converter;
+
+    private ConstantSlot topSlot;
+    private ConstantSlot bottomSlot;
+    private SourceVariableSlot a;
+    private SourceVariableSlot b;
+    private RefinementVariableSlot refinement;
+    private CombVariableSlot comb;
+    private LubVariableSlot lub;
+    private ArithmeticVariableSlot arithmetic;
+    private ComparisonVariableSlot comparison;
+
+    private final Map<Integer, AnnotationMirror> solutions = new HashMap<>();
+    private final Set<Integer> enabledVariables = new LinkedHashSet<>();
+
+    @BeforeClass
+    public static void setUpEnvironment() throws IOException {
+        environment = ReplayEnvironment.bootstrap("ostrusted.OsTrustedChecker");
+        top = environment.qualifierHierarchy.getTopAnnotations().iterator().next();
+        bottom = environment.qualifierHierarchy.getBottomAnnotations().iterator().next();
+    }
+
+    @Before
+    public void setUp() {
+        // Constants get the ids they get when a JSON file is read back.
+        slotManager = environment.newSlotManager(true);
+        converter = new JsonBinaryConverter(new SimpleAnnotationMirrorSerializer(top, bottom));
+
+        topSlot = slotManager.createConstantSlot(top);
+        bottomSlot = slotManager.createConstantSlot(bottom);
+        a = add(new SourceVariableSlot(nextId(), LOCATION, null, null, true));
+        b = add(new SourceVariableSlot(nextId(), LOCATION, null, bottom, false));
+        refinement = add(new RefinementVariableSlot(nextId(), LOCATION, a));
+        comb = add(new CombVariableSlot(nextId(), LOCATION, a, topSlot));
+        lub = add(new LubVariableSlot(nextId(), LOCATION, a, refinement));
+        add(new ExistentialVariableSlot(nextId(), a, b));
+        arithmetic = add(new ArithmeticVariableSlot(nextId(), LOCATION, TypeKind.INT));
+        comparison = add(new ComparisonVariableSlot(nextId(), LOCATION, a));
+
+        solutions.put(a.getId(), top);
+        solutions.put(b.getId(), bottom);
+        solutions.put(comb.getId(), top);
+        enabledVariables.add(a.getId());
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        ConstraintManager constraintManager = newConstraintManager();
+        List<Constraint> constraints = new ArrayList<>(jsonConstraints(constraintManager));
+        constraints.add(constraintManager.createCombineConstraint(a, b, comb));
+        constraints.add(constraintManager.createPreferenceConstraint(a, topSlot, 3));
+        constraints.add(constraintManager.createImplicationConstraint(
+                Collections.singletonList(constraintManager.createSubtypeConstraint(a, b)),
+                constraintManager.createEqualityConstraint(refinement, lub)));
+        constraints.add(constraintManager.createArithmeticConstraint(ArithmeticOperationKind.PLUS, a, b, arithmetic));
+        constraints.add(constraintManager.createComparisonConstraint(ComparisonOperationKind.LESS_THAN, a, b,
+                comparison));
+        byte[] binary = write(slotManager.getSlots(), constraints, solutions, enabledVariables);
+
+        BinaryDeserializer deserializer = read(binary);
+        List<Slot> slots = deserializer.getSlots();
+        List<Constraint> readConstraints = deserializer.readConstraints();
+        assertSameSlots(slotManager.getSlots(), slots);
+        assertSameConstraints(constraints, readConstraints);
+        assertSameSolutions(solutions, deserializer.getSolutions());
+        assertEquals(enabledVariables, deserializer.getEnabledVariables());
+
+        // Writing what was read gives the same file.
+        assertArrayEquals(binary, write(slots, readConstraints, deserializer.getSolutions(),
+                deserializer.getEnabledVariables()));
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws IOException, ParseException {
+        List<Constraint> constraints = jsonConstraints(newConstraintManager());
+        byte[] binary = write(slotManager.getSlots(), constraints, solutions, enabledVariables);
+
+        String json = toJson(binary);
+        byte[] convertedBinary = toBinary(json);
+
+        BinaryDeserializer deserializer = read(convertedBinary);
+        assertSameSlots(slotManager.getSlots(), deserializer.getSlots());
+        assertSameConstraints(constraints, deserializer.readConstraints());
+        assertSameSolutions(solutions, deserializer.getSolutions());
+        assertEquals(enabledVariables, deserializer.getEnabledVariables());
+
+        // Converting back gives the same JSON.
+        JSONParser parser = new JSONParser();
+        assertEquals(parser.parse(json), parser.parse(toJson(convertedBinary)));
+    }
+
+    @Test
+    public void testSlotsOnlyWhenAsked() {
+        List<Constraint> constraints = jsonConstraints(newConstraintManager());
+        SimpleAnnotationMirrorSerializer annotationSerializer = new SimpleAnnotationMirrorSerializer(top, bottom);
+
+        JSONObject plain = new JsonSerializer(slotManager.getSlots(), constraints, null, annotationSerializer)
+                .generateConstraintFile();
+        assertFalse(plain.containsKey(JsonSerializer.SLOTS_KEY));
+
+        JSONObject withSlots = new JsonSerializer(slotManager.getSlots(), constraints, null, annotationSerializer,
+                true).generateConstraintFile();
+        assertTrue(withSlots.containsKey(JsonSerializer.SLOTS_KEY));
+    }
+
+    /** Constraints of every kind that the JsonDeserializer can read. */
+    private List<Constraint> jsonConstraints(ConstraintManager constraintManager) {
+        return Arrays.asList(
+                constraintManager.createSubtypeConstraint(a, b),
+                constraintManager.createSubtypeConstraint(comb, lub),
+                constraintManager.createEqualityConstraint(refinement, a),
+                constraintManager.createEqualityConstraint(lub, bottomSlot),
+                constraintManager.createInequalityConstraint(lub, arithmetic),
+                constraintManager.createComparableConstraint(comparison, b),
+                constraintManager.createExistentialConstraint(a,
+                        Collections.singletonList(constraintManager.createSubtypeConstraint(comb, b)),
+                        Collections.singletonList(constraintManager.createEqualityConstraint(lub, topSlot))));
+    }
+
+    private String toJson(byte[] binary) throws IOException {
+        StringWriter json = new StringWriter();
+        converter.binaryToJson(new ByteArrayInputStream(binary), json, environment.processingEnvironment,
+                newConstraintManager());
+        return json.toString();
+    }
+
+    private byte[] toBinary(String json) throws IOException, ParseException {
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        converter.jsonToBinary(json, binary, environment.newSlotManager(true));
+        return binary.toByteArray();
+    }
+
+    private static byte[] write(Collection<Slot> slots, Collection<Constraint> constraints,
+            Map<Integer, AnnotationMirror> solutions, Collection<Integer> enabledVariables) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinarySerializer serializer = new BinarySerializer(out, slots, solutions, enabledVariables)) {
+            serializer.writeAll(constraints);
+        }
+        return out.toByteArray();
+    }
+
+    private static BinaryDeserializer read(byte[] binary) throws IOException {
+        return new BinaryDeserializer(new ByteArrayInputStream(binary), environment.processingEnvironment,
+                newConstraintManager());
+    }
+
+    /** A new constraint manager for every file, so that constraints interned before are not reused. */
+    private static ConstraintManager newConstraintManager() {
+        ConstraintManager constraintManager = new ConstraintManager();
+        constraintManager.init(environment.qualifierHierarchy);
+        return constraintManager;
+    }
+
+    private int nextId() {
+        return slotManager.getNumberOfSlots() + 1;
+    }
+
+    private <T extends Slot> T add(T slot) {
+        slotManager.addSlot(slot);
+        return slot;
+    }
+}
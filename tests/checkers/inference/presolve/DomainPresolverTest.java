@@ -0,0 +1,134 @@
+package checkers.inference.presolve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.frontend.TestLattices;
+
+/**
+ * Checks the domains DomainPresolver narrows in a diamond lattice, top > a, b > bottom, and the
+ * constraints it reports when a slot has no qualifier left.
+ */
+public class DomainPresolverTest {
+
+    private static final int TOP = 0, A = 1, B = 2, BOTTOM = 3;
+
+    private ConstraintManager constraintManager;
+    private List<AnnotationMirror> types;
+    private final List<ConstantSlot> constants = new ArrayList<>();
+    private Lattice lattice;
+
+    @Before
+    public void setUp() {
+        constraintManager = InferenceMain.resetInstance().getConstraintManager();
+        types = TestLattices.qualifiers(TestLattices.DIAMOND.length);
+        for (int i = 0; i < types.size(); i++) {
+            constants.add(new ConstantSlot(1000000 + i, types.get(i)));
+        }
+        lattice = TestLattices.lattice(types, TestLattices.DIAMOND);
+    }
+
+    @Test
+    public void testPropagatesThroughSubtypes() {
+        // v0 == a, v1 <: v0, v1 != bottom, v0 <: v2, and v3 is unconstrained
+        List<Slot> v = createVariables(4);
+        SlotDomains domains = presolve(v, Arrays.asList(
+                constraintManager.createEqualityConstraint(v.get(0), constants.get(A)),
+                constraintManager.createSubtypeConstraint(v.get(1), v.get(0)),
+                constraintManager.createInequalityConstraint(v.get(1), constants.get(BOTTOM)),
+                constraintManager.createSubtypeConstraint(v.get(0), v.get(2))));
+
+        assertFalse(domains.isUnsatisfiable());
+        assertTrue(domains.getUnsatisfiableConstraints().isEmpty());
+        assertSame(types.get(A), domains.getFixedType(v.get(0).getId()));
+        assertSame(types.get(A), domains.getFixedType(v.get(1).getId()));
+        assertNull(domains.getFixedType(v.get(2).getId()));
+        assertEquals(2, domains.getDomainSize(v.get(2).getId()));
+        assertTrue(domains.isAllowed(v.get(2).getId(), TOP));
+        assertTrue(domains.isAllowed(v.get(2).getId(), A));
+        assertFalse(domains.isAllowed(v.get(2).getId(), B));
+        assertEquals(types.size(), domains.getDomainSize(v.get(3).getId()));
+        assertEquals(3 + 3 + 2, domains.getNumberOfRemovedTypes());
+    }
+
+    @Test
+    public void testInequality() {
+        // v0 == a, v1 is neither top nor bottom, and v0 != v1, so v1 is b
+        List<Slot> v = createVariables(2);
+        SlotDomains domains = presolve(v, Arrays.asList(
+                constraintManager.createEqualityConstraint(v.get(0), constants.get(A)),
+                constraintManager.createInequalityConstraint(v.get(1), constants.get(TOP)),
+                constraintManager.createInequalityConstraint(v.get(1), constants.get(BOTTOM)),
+                constraintManager.createInequalityConstraint(v.get(0), v.get(1))));
+        assertSame(types.get(B), domains.getFixedType(v.get(1).getId()));
+    }
+
+    @Test
+    public void testEmptyDomain() {
+        // a <: v2 <: b leaves nothing for v2, and v3 <: v4 has nothing to do with it
+        List<Slot> v = createVariables(5);
+        List<Constraint> causes = Arrays.asList(
+                constraintManager.createEqualityConstraint(v.get(0), constants.get(A)),
+                constraintManager.createEqualityConstraint(v.get(1), constants.get(B)),
+                constraintManager.createSubtypeConstraint(v.get(0), v.get(2)),
+                constraintManager.createSubtypeConstraint(v.get(2), v.get(1)));
+        List<Constraint> constraints = new ArrayList<>(causes);
+        constraints.add(constraintManager.createSubtypeConstraint(v.get(3), v.get(4)));
+
+        SlotDomains domains = presolve(v, constraints);
+        assertTrue(domains.isUnsatisfiable());
+        assertEquals(new HashSet<>(causes), new HashSet<>(domains.getUnsatisfiableConstraints()));
+    }
+
+    @Test
+    public void testLongChain() {
+        // v0 == top, and top only has itself as supertype, so every slot of the chain is top
+        int count = 100000;
+        List<Slot> v = createVariables(count);
+        List<Constraint> constraints = new ArrayList<>();
+        constraints.add(constraintManager.createEqualityConstraint(v.get(0), constants.get(TOP)));
+        for (int i = 0; i + 1 < count; i++) {
+            constraints.add(constraintManager.createSubtypeConstraint(v.get(i), v.get(i + 1)));
+        }
+
+        SlotDomains domains = presolve(v, constraints);
+        for (Slot slot : v) {
+            assertSame(types.get(TOP), domains.getFixedType(slot.getId()));
+        }
+    }
+
+    private SlotDomains presolve(List<Slot> variables, List<Constraint> constraints) {
+        List<Slot> slots = new ArrayList<>(variables);
+        slots.addAll(constants);
+        return new DomainPresolver(lattice).presolve(slots, constraints);
+    }
+
+    private static List<Slot> createVariables(int count) {
+        List<Slot> variables = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            variables.add(new SourceVariableSlot(i, AnnotationLocation.MISSING_LOCATION, null, null, true));
+        }
+        return variables;
+    }
+}
@@ -0,0 +1,109 @@
+package checkers.inference.presolve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import checkers.inference.DefaultSlotManager;
+import checkers.inference.InferenceResult;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.PreferenceConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.replay.ReplayEnvironment;
+import checkers.inference.replay.SyntheticWorkloadGenerator;
+import checkers.inference.solver.SolverEngine;
+
+/**
+ * Solves generated workloads with preferences with the MaxSat back end, with and without the
+ * EqualityPresolver, and checks that both solutions violate the same weight of preferences.  The
+ * solutions themselves may differ, as there can be several optimal ones.
+ */
+public class EqualityPresolverCostTest {
+
+    private static ReplayEnvironment environment;
+
+    @BeforeClass
+    public static void setUpEnvironment() throws IOException {
+        environment = ReplayEnvironment.bootstrap("ostrusted.OsTrustedChecker");
+    }
+
+    @Test
+    public void testSameCostWithPresolve() {
+        for (long seed = 1; seed <= 5; seed++) {
+            DefaultSlotManager slotManager = environment.newSlotManager(false);
+            Set<Constraint> constraints = generate(slotManager, seed);
+            List<Slot> slots = slotManager.getSlots();
+
+            InferenceResult expected = solve(slots, constraints);
+            SlotSubstitution substitution = new EqualityPresolver().presolve(slots, constraints);
+            assertTrue(substitution.getNumberOfReplacedSlots() > 0);
+            Set<Constraint> presolved = substitution.substitute(constraints);
+            InferenceResult actual = substitution.mapBack(
+                    solve(substitution.removeReplacedSlots(slots), presolved));
+
+            assertTrue(expected.hasSolution());
+            assertTrue(actual.hasSolution());
+            assertTrue(expected.isOptimal());
+            assertTrue(actual.isOptimal());
+            assertEquals("seed " + seed, violatedWeight(expected, constraints), violatedWeight(actual, constraints));
+        }
+    }
+
+    /** A workload with a preference of random weight for the top or bottom of every variable. */
+    private static Set<Constraint> generate(DefaultSlotManager slotManager, long seed) {
+        SyntheticWorkloadGenerator generator = new SyntheticWorkloadGenerator(environment, slotManager, seed);
+        Set<Constraint> constraints = new LinkedHashSet<>(
+                generator.generate(100, 150, SyntheticWorkloadGenerator.parseMix("subtype=50,equality=50")));
+
+        Random random = new Random(seed);
+        List<ConstantSlot> goals = new ArrayList<>();
+        goals.add(slotManager.createConstantSlot(environment.qualifierHierarchy.getTopAnnotations().iterator().next()));
+        goals.add(slotManager.createConstantSlot(environment.qualifierHierarchy.getBottomAnnotations().iterator().next()));
+        for (VariableSlot variable : slotManager.getVariableSlots()) {
+            constraints.add(environment.constraintManager.createPreferenceConstraint(
+                    variable, goals.get(random.nextInt(goals.size())), 1 + random.nextInt(10)));
+        }
+        return constraints;
+    }
+
+    private static InferenceResult solve(Collection<Slot> slots, Collection<Constraint> constraints) {
+        // With a time budget, the solver searches until the model is optimal.
+        Map<String, String> configuration = new HashMap<>();
+        configuration.put("solver", "MaxSat");
+        configuration.put("timeBudget", "600000");
+        return new SolverEngine().solve(configuration, slots, constraints, environment.qualifierHierarchy,
+                environment.processingEnvironment);
+    }
+
+    /** @return the sum of the weights of the preferences that result violates */
+    private static int violatedWeight(InferenceResult result, Collection<Constraint> constraints) {
+        int weight = 0;
+        for (Constraint constraint : constraints) {
+            if (constraint instanceof PreferenceConstraint) {
+                PreferenceConstraint preference = (PreferenceConstraint) constraint;
+                AnnotationMirror solution = result.getSolutionForVariable(preference.getVariable().getId());
+                if (!AnnotationUtils.areSame(solution, preference.getGoal().getValue())) {
+                    weight += preference.getWeight();
+                }
+            }
+        }
+        return weight;
+    }
+}
@@ -0,0 +1,212 @@
+package checkers.inference.presolve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import checkers.inference.DefaultInferenceResult;
+import checkers.inference.InferenceMain;
+import checkers.inference.InferenceResult;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.frontend.TestLattices;
+
+/**
+ * Checks how a SlotSubstitution from the EqualityPresolver rewrites constraints, and how it maps
+ * solutions and unsatisfiable constraints back to the original slots and constraints.
+ */
+public class SlotSubstitutionTest {
+
+    private static final AnnotationMirror TOP = TestLattices.qualifier("Top");
+    private static final AnnotationMirror BOTTOM = TestLattices.qualifier("Bottom");
+
+    private ConstraintManager constraintManager;
+    private final ConstantSlot top = new ConstantSlot(100, TOP);
+    private final ConstantSlot bottom = new ConstantSlot(101, BOTTOM);
+
+    @Before
+    public void setUp() {
+        constraintManager = InferenceMain.resetInstance().getConstraintManager();
+    }
+
+    @Test
+    public void testConstantRepresentative() {
+        // v2 == v1 == top, so both are replaced by the constant rather than by v1
+        List<VariableSlot> v = createVariables(4);
+        Set<Constraint> constraints = constraints(
+                constraintManager.createEqualityConstraint(v.get(1), top),
+                constraintManager.createEqualityConstraint(v.get(2), v.get(1)),
+                constraintManager.createInequalityConstraint(v.get(2), v.get(3)),
+                constraintManager.createSubtypeConstraint(v.get(3), v.get(0)));
+
+        SlotSubstitution substitution = presolve(v, constraints);
+        assertEquals(2, substitution.getNumberOfReplacedSlots());
+        assertSame(top, substitution.getRepresentative(v.get(1)));
+        assertSame(top, substitution.getRepresentative(v.get(2)));
+        assertEquals(Arrays.asList(v.get(0), v.get(3), top, bottom), substitution.removeReplacedSlots(slots(v)));
+        assertEquals(constraints(
+                constraintManager.createInequalityConstraint(top, v.get(3)),
+                constraintManager.createSubtypeConstraint(v.get(3), v.get(0))),
+                substitution.substitute(constraints));
+
+        // The replaced slots get the constant, which the solver has no solution for.
+        Map<Integer, AnnotationMirror> solutions = new HashMap<>();
+        solutions.put(v.get(0).getId(), TOP);
+        solutions.put(v.get(3).getId(), BOTTOM);
+        InferenceResult result = substitution.mapBack(new DefaultInferenceResult(solutions));
+        assertSame(TOP, result.getSolutionForVariable(v.get(1).getId()));
+        assertSame(TOP, result.getSolutionForVariable(v.get(2).getId()));
+        assertSame(BOTTOM, result.getSolutionForVariable(v.get(3).getId()));
+        assertEquals(4, result.getSolutions().size());
+    }
+
+    @Test
+    public void testPinnedSlots() {
+        // The result of the combine constraint has the smallest id of its class, but it must stay
+        // a CombVariableSlot, so v0 represents the class and the result keeps its equality to v0.
+        List<VariableSlot> v = createVariables(4);
+        CombVariableSlot comb = new CombVariableSlot(0, AnnotationLocation.MISSING_LOCATION, v.get(2), v.get(3));
+        Set<Constraint> constraints = constraints(
+                constraintManager.createCombineConstraint(v.get(2), v.get(3), comb),
+                constraintManager.createEqualityConstraint(comb, v.get(1)),
+                constraintManager.createEqualityConstraint(v.get(1), v.get(0)));
+
+        List<Slot> slots = slots(v);
+        slots.add(comb);
+        SlotSubstitution substitution = new EqualityPresolver().presolve(slots, constraints);
+        assertEquals(1, substitution.getNumberOfReplacedSlots());
+        assertSame(comb, substitution.getRepresentative(comb));
+        assertSame(v.get(0), substitution.getRepresentative(v.get(1)));
+        assertEquals(constraints(
+                constraintManager.createCombineConstraint(v.get(2), v.get(3), comb),
+                constraintManager.createEqualityConstraint(comb, v.get(0))),
+                substitution.substitute(constraints));
+    }
+
+    @Test
+    public void testMergesPreferenceWeights() {
+        // The preferences of v0 and v1 become one preference of their representative with the
+        // sum of their weights, and the preference of v2, which is replaced by top, is dropped.
+        List<VariableSlot> v = createVariables(3);
+        Set<Constraint> constraints = constraints(
+                constraintManager.createEqualityConstraint(v.get(0), v.get(1)),
+                constraintManager.createEqualityConstraint(v.get(2), top),
+                constraintManager.createPreferenceConstraint(v.get(0), bottom, 3),
+                constraintManager.createPreferenceConstraint(v.get(1), bottom, 4),
+                constraintManager.createPreferenceConstraint(v.get(1), top, 2),
+                constraintManager.createPreferenceConstraint(v.get(2), bottom, 5));
+
+        SlotSubstitution substitution = presolve(v, constraints);
+        assertEquals(constraints(
+                constraintManager.createPreferenceConstraint(v.get(0), bottom, 7),
+                constraintManager.createPreferenceConstraint(v.get(0), top, 2)),
+                substitution.substitute(constraints));
+    }
+
+    @Test
+    public void testUnsatisfiableConstraints() {
+        // v0 == top and v0 != top, while v1 <: v2 has nothing to do with it
+        List<VariableSlot> v = createVariables(3);
+        Constraint equality = constraintManager.createEqualityConstraint(v.get(0), top);
+        Constraint inequality = constraintManager.createInequalityConstraint(v.get(0), top);
+        Set<Constraint> constraints = constraints(equality, inequality,
+                constraintManager.createSubtypeConstraint(v.get(1), v.get(2)));
+
+        SlotSubstitution substitution = presolve(v, constraints);
+        assertTrue(substitution.getUnsatisfiableConstraints().isEmpty());
+        substitution.substitute(constraints);
+        assertEquals(new HashSet<>(Arrays.asList(equality, inequality)),
+                new HashSet<>(substitution.getUnsatisfiableConstraints()));
+    }
+
+    @Test
+    public void testMapBackUnsatisfiableConstraints() {
+        // The solver reports v0 != v2 in terms of the representative of v1.
+        List<VariableSlot> v = createVariables(4);
+        Constraint equality = constraintManager.createEqualityConstraint(v.get(0), v.get(1));
+        Constraint inequality = constraintManager.createInequalityConstraint(v.get(1), v.get(2));
+        Set<Constraint> constraints = constraints(equality, inequality,
+                constraintManager.createSubtypeConstraint(v.get(2), v.get(3)));
+
+        SlotSubstitution substitution = presolve(v, constraints);
+        Constraint rewritten = constraintManager.createInequalityConstraint(v.get(0), v.get(2));
+        assertTrue(substitution.substitute(constraints).contains(rewritten));
+
+        InferenceResult result = substitution.mapBack(
+                new DefaultInferenceResult(Collections.singletonList(rewritten)));
+        assertFalse(result.hasSolution());
+        assertEquals(new HashSet<>(Arrays.asList(equality, inequality)),
+                new HashSet<>(result.getUnsatisfiableConstraints()));
+    }
+
+    @Test
+    public void testCausesOfSlotsSharingAConstant() {
+        // v0 and v1 are both fixed to top, for different reasons, and the solver reports the
+        // rewritten v0 != v2, which only involves the reasons for v0
+        List<VariableSlot> v = createVariables(3);
+        Constraint fixesV0 = constraintManager.createEqualityConstraint(v.get(0), top);
+        Constraint fixesV1 = constraintManager.createEqualityConstraint(v.get(1), top);
+        Map<Integer, Slot> representatives = new HashMap<>();
+        representatives.put(v.get(0).getId(), top);
+        representatives.put(v.get(1).getId(), top);
+        Map<Integer, List<Constraint>> causes = new HashMap<>();
+        causes.put(v.get(0).getId(), Collections.singletonList(fixesV0));
+        causes.put(v.get(1).getId(), Collections.singletonList(fixesV1));
+        SlotSubstitution substitution = new SlotSubstitution(representatives, causes::get);
+
+        Constraint inequality = constraintManager.createInequalityConstraint(v.get(0), v.get(2));
+        Constraint rewritten = constraintManager.createInequalityConstraint(top, v.get(2));
+        assertTrue(substitution.substitute(constraints(inequality)).contains(rewritten));
+
+        InferenceResult result = substitution.mapBack(
+                new DefaultInferenceResult(Collections.singletonList(rewritten)));
+        assertEquals(new HashSet<>(Arrays.asList(inequality, fixesV0)),
+                new HashSet<>(result.getUnsatisfiableConstraints()));
+    }
+
+    private SlotSubstitution presolve(List<VariableSlot> variables, Set<Constraint> constraints) {
+        return new EqualityPresolver().presolve(slots(variables), constraints);
+    }
+
+    private List<Slot> slots(List<VariableSlot> variables) {
+        List<Slot> slots = new ArrayList<Slot>(variables);
+        slots.add(top);
+        slots.add(bottom);
+        return slots;
+    }
+
+    private static Set<Constraint> constraints(Constraint... constraints) {
+        return new LinkedHashSet<>(Arrays.asList(constraints));
+    }
+
+    /** Variables with the ids 1 to count. */
+    private static List<VariableSlot> createVariables(int count) {
+        List<VariableSlot> variables = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            variables.add(new SourceVariableSlot(i, AnnotationLocation.MISSING_LOCATION, null, null, true));
+        }
+        return variables;
+    }
+}
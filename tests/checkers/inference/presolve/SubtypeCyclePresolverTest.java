@@ -0,0 +1,126 @@
+package checkers.inference.presolve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import checkers.inference.DefaultInferenceResult;
+import checkers.inference.InferenceMain;
+import checkers.inference.InferenceResult;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.solver.frontend.TestLattices;
+
+/**
+ * Checks that SubtypeCyclePresolver merges exactly the slots on subtype cycles, and that the
+ * solution of each representative is mapped back to the slots it replaced.
+ */
+public class SubtypeCyclePresolverTest {
+
+    private ConstraintManager constraintManager;
+
+    @Before
+    public void setUp() {
+        constraintManager = InferenceMain.resetInstance().getConstraintManager();
+    }
+
+    @Test
+    public void testCollapsesCycle() {
+        List<Slot> v = createVariables(5);
+        Set<Constraint> constraints = new LinkedHashSet<>(Arrays.asList(
+                constraintManager.createSubtypeConstraint(v.get(0), v.get(1)),
+                constraintManager.createSubtypeConstraint(v.get(1), v.get(2)),
+                constraintManager.createSubtypeConstraint(v.get(2), v.get(0)),
+                constraintManager.createSubtypeConstraint(v.get(2), v.get(3)),
+                constraintManager.createSubtypeConstraint(v.get(4), v.get(0))));
+
+        SlotSubstitution substitution = new SubtypeCyclePresolver().presolve(v, constraints);
+        assertEquals(2, substitution.getNumberOfReplacedSlots());
+        assertSame(v.get(0), substitution.getRepresentative(v.get(1)));
+        assertSame(v.get(0), substitution.getRepresentative(v.get(2)));
+        assertSame(v.get(3), substitution.getRepresentative(v.get(3)));
+        assertEquals(Arrays.asList(v.get(0), v.get(3), v.get(4)), substitution.removeReplacedSlots(v));
+
+        // The cycle becomes trivially true, the constraints leaving it now start at the representative.
+        Set<Constraint> expected = new HashSet<>(Arrays.asList(
+                constraintManager.createSubtypeConstraint(v.get(0), v.get(3)),
+                constraintManager.createSubtypeConstraint(v.get(4), v.get(0))));
+        assertEquals(expected, new HashSet<>(substitution.substitute(constraints)));
+        assertTrue(substitution.getUnsatisfiableConstraints().isEmpty());
+    }
+
+    @Test
+    public void testCollapsesCycleThroughEquality() {
+        // v0 == v1 <: v2 <: v0, while v2 <: v3 alone is not a cycle
+        List<Slot> v = createVariables(4);
+        Set<Constraint> constraints = new LinkedHashSet<>(Arrays.asList(
+                constraintManager.createEqualityConstraint(v.get(0), v.get(1)),
+                constraintManager.createSubtypeConstraint(v.get(1), v.get(2)),
+                constraintManager.createSubtypeConstraint(v.get(2), v.get(0)),
+                constraintManager.createSubtypeConstraint(v.get(2), v.get(3))));
+
+        SlotSubstitution substitution = new SubtypeCyclePresolver().presolve(v, constraints);
+        assertEquals(2, substitution.getNumberOfReplacedSlots());
+        assertSame(v.get(0), substitution.getRepresentative(v.get(2)));
+        assertEquals(Collections.singleton(constraintManager.createSubtypeConstraint(v.get(0), v.get(3))),
+                substitution.substitute(constraints));
+    }
+
+    @Test
+    public void testLongCycle() {
+        // Long enough to overflow the call stack with a recursive implementation.
+        int count = 100000;
+        List<Slot> v = createVariables(count);
+        Set<Constraint> constraints = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            constraints.add(constraintManager.createSubtypeConstraint(v.get(i), v.get((i + 1) % count)));
+        }
+
+        SlotSubstitution substitution = new SubtypeCyclePresolver().presolve(v, constraints);
+        assertEquals(count - 1, substitution.getNumberOfReplacedSlots());
+        assertTrue(substitution.substitute(constraints).isEmpty());
+    }
+
+    @Test
+    public void testMapBack() {
+        List<Slot> v = createVariables(3);
+        Set<Constraint> constraints = new LinkedHashSet<>(Arrays.asList(
+                constraintManager.createSubtypeConstraint(v.get(0), v.get(1)),
+                constraintManager.createSubtypeConstraint(v.get(1), v.get(0))));
+        SlotSubstitution substitution = new SubtypeCyclePresolver().presolve(v, constraints);
+
+        AnnotationMirror solution = TestLattices.qualifier("Solution");
+        Map<Integer, AnnotationMirror> solutions = new HashMap<>();
+        solutions.put(v.get(0).getId(), solution);
+        InferenceResult result = substitution.mapBack(new DefaultInferenceResult(solutions));
+        assertSame(solution, result.getSolutionForVariable(v.get(0).getId()));
+        assertSame(solution, result.getSolutionForVariable(v.get(1).getId()));
+        assertEquals(2, result.getSolutions().size());
+    }
+
+    private static List<Slot> createVariables(int count) {
+        List<Slot> variables = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            variables.add(new SourceVariableSlot(i, AnnotationLocation.MISSING_LOCATION, null, null, true));
+        }
+        return variables;
+    }
+}
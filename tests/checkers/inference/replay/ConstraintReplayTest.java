@@ -0,0 +1,99 @@
+package checkers.inference.replay;
+
+import static checkers.inference.model.serialization.ConstraintAssertions.assertSameConstraints;
+import static checkers.inference.model.serialization.ConstraintAssertions.assertSameSlots;
+import static checkers.inference.model.serialization.ConstraintAssertions.assertSameSolutions;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import checkers.inference.DefaultSlotManager;
+import checkers.inference.InferenceResult;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
+import checkers.inference.model.serialization.BinarySerializerSolver;
+import checkers.inference.solver.SolverEngine;
+
+/**
+ * Dumps generated workloads with BinarySerializerSolver, and checks that replaying the dump gives
+ * the same slots, constraints and solution.
+ */
+public class ConstraintReplayTest {
+
+    private static ReplayEnvironment environment;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpEnvironment() throws IOException {
+        environment = ReplayEnvironment.bootstrap("ostrusted.OsTrustedChecker");
+    }
+
+    @Test
+    public void testReplayGivesSameConstraints() throws IOException {
+        DefaultSlotManager slotManager = environment.newSlotManager(false);
+        List<Constraint> constraints = generate(slotManager, SyntheticWorkloadGenerator.mix);
+        File dump = dump(slotManager.getSlots(), constraints);
+
+        DefaultSlotManager replayedSlotManager = environment.newSlotManager(false);
+        List<Constraint> replayed = replay(dump, replayedSlotManager);
+        assertSameSlots(slotManager.getSlots(), replayedSlotManager.getSlots());
+        assertSameConstraints(constraints, replayed);
+    }
+
+    @Test
+    public void testReplayGivesSameSolution() throws IOException {
+        // Kinds of constraints that the MaxSat back end can encode.
+        DefaultSlotManager slotManager = environment.newSlotManager(false);
+        List<Constraint> constraints = generate(slotManager, "subtype=80,equality=20");
+        File dump = dump(slotManager.getSlots(), constraints);
+        InferenceResult expected = solve(slotManager.getSlots(), constraints);
+
+        DefaultSlotManager replayedSlotManager = environment.newSlotManager(false);
+        List<Constraint> replayed = replay(dump, replayedSlotManager);
+        InferenceResult actual = solve(replayedSlotManager.getSlots(), replayed);
+
+        assertTrue(expected.hasSolution());
+        assertTrue(actual.hasSolution());
+        assertSameSolutions(expected.getSolutions(), actual.getSolutions());
+    }
+
+    private static List<Constraint> generate(DefaultSlotManager slotManager, String mix) {
+        SyntheticWorkloadGenerator generator = new SyntheticWorkloadGenerator(environment, slotManager, 42);
+        return new ArrayList<>(generator.generate(200, 600, SyntheticWorkloadGenerator.parseMix(mix)));
+    }
+
+    private File dump(Collection<Slot> slots, Collection<Constraint> constraints) throws IOException {
+        File dump = folder.newFile("constraints.cfic");
+        new BinarySerializerSolver().solve(Collections.singletonMap("constraint-file", dump.getPath()), slots,
+                constraints, environment.qualifierHierarchy, environment.processingEnvironment);
+        return dump;
+    }
+
+    /** Constraints are read through a new constraint manager, so that the generated ones are not reused. */
+    private static List<Constraint> replay(File dump, DefaultSlotManager slotManager) throws IOException {
+        ConstraintManager constraintManager = new ConstraintManager();
+        constraintManager.init(environment.qualifierHierarchy);
+        return ConstraintReplay.read(dump.getPath(), slotManager, environment.processingEnvironment,
+                constraintManager);
+    }
+
+    private static InferenceResult solve(Collection<Slot> slots, Collection<Constraint> constraints) {
+        Map<String, String> configuration = Collections.singletonMap("solver", "MaxSat");
+        return new SolverEngine().solve(configuration, slots, constraints, environment.qualifierHierarchy,
+                environment.processingEnvironment);
+    }
+}
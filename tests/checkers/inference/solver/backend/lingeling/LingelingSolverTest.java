@@ -0,0 +1,65 @@
+package checkers.inference.solver.backend.lingeling;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.UserError;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.solver.backend.maxsat.MaxSatFormatTranslator;
+import checkers.inference.solver.backend.maxsat.TestClauses;
+import checkers.inference.solver.backend.maxsat.VariableAllocator;
+import checkers.inference.solver.backend.maxsat.VectorUtils;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.frontend.TestLattices;
+import checkers.inference.solver.util.SolverEnvironment;
+
+/**
+ * Checks that Lingeling is killed when the time budget runs out, on a generated instance too hard
+ * to solve within it.  Needs lingeling on the PATH.
+ */
+public class LingelingSolverTest {
+
+    @Before
+    public void setUp() throws InterruptedException {
+        try {
+            new ProcessBuilder("lingeling", "--version").start().waitFor();
+        } catch (IOException e) {
+            Assume.assumeNoException("lingeling is not on the PATH", e);
+        }
+        InferenceMain.resetInstance();
+    }
+
+    @Test(expected = UserError.class)
+    public void testBudgetExpires() {
+        // Random 3-SAT at the satisfiability threshold of about 4.26 clauses per variable.
+        int variables = 700;
+        List<AnnotationMirror> types = TestLattices.qualifiers(3);
+        Lattice lattice = TestLattices.lattice(types, TestLattices.CHAIN);
+        MaxSatFormatTranslator formatTranslator = new MaxSatFormatTranslator(lattice);
+        formatTranslator.setVariableAllocator(new VariableAllocator(0));
+        SolverEnvironment solverEnvironment = new SolverEnvironment(Collections.<String, String>emptyMap(), null, 500);
+
+        new LingelingSolver(solverEnvironment, Collections.<Slot>emptyList(),
+                Collections.<Constraint>emptyList(), formatTranslator, lattice) {
+            @Override
+            public void encodeAllConstraints() {
+                VariableAllocator variableAllocator = formatTranslator.getVariableAllocator();
+                for (int i = 0; i < variables; i++) {
+                    variableAllocator.newVariable();
+                }
+                for (int[] clause : TestClauses.randomClauses(variables, variables * 426 / 100, 42)) {
+                    hardClauses.add(VectorUtils.asVec(clause));
+                }
+            }
+        }.solve();
+    }
+}
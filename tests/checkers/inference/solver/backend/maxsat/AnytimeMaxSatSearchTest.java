@@ -0,0 +1,124 @@
+package checkers.inference.solver.backend.maxsat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Random;
+
+import org.checkerframework.javacutil.UserError;
+import org.junit.Test;
+import org.sat4j.maxsat.WeightedMaxSatDecorator;
+import org.sat4j.specs.ContradictionException;
+
+import checkers.inference.solver.util.SolverEnvironment;
+
+/**
+ * Checks that AnytimeMaxSatSearch proves small instances optimal, with or without a time budget,
+ * and that on generated instances too hard to prove optimal it stops when the time budget runs
+ * out, with the best model found so far.
+ */
+public class AnytimeMaxSatSearchTest {
+
+    @Test
+    public void testOptimal() throws ContradictionException {
+        // Hard: x1 | x2.  Soft: !x1 (weight 3), !x2 (weight 1).  The optimum is x2 only.
+        WeightedMaxSatDecorator solver = newSolver(2);
+        solver.addHardClause(VectorUtils.asVec(1, 2));
+        solver.addSoftClause(3, VectorUtils.asVec(-1));
+        solver.addSoftClause(1, VectorUtils.asVec(-2));
+
+        AnytimeMaxSatSearch search = new AnytimeMaxSatSearch(solver, environment("60000"));
+        assertTrue(search.search());
+        assertTrue(search.isOptimal());
+        assertFalse(search.isTimedOut());
+        int[] model = search.getModel();
+        assertEquals(-1, model[0]);
+        assertEquals(2, model[1]);
+    }
+
+    @Test
+    public void testUnsatisfiable() throws ContradictionException {
+        WeightedMaxSatDecorator solver = newSolver(2);
+        solver.addHardClause(VectorUtils.asVec(1, 2));
+        solver.addHardClause(VectorUtils.asVec(1, -2));
+        solver.addHardClause(VectorUtils.asVec(-1, 2));
+        solver.addHardClause(VectorUtils.asVec(-1, -2));
+
+        AnytimeMaxSatSearch search = new AnytimeMaxSatSearch(solver, environment("60000"));
+        assertFalse(search.search());
+        assertFalse(search.isTimedOut());
+        assertNull(search.getModel());
+    }
+
+    @Test
+    public void testBudgetExpires() throws ContradictionException {
+        long budget = 500;
+        // Ten times as many random soft clauses as variables: a model is easy to find, but
+        // proving one optimal takes far longer than the budget.
+        int variables = 300;
+        Random random = new Random(42);
+        WeightedMaxSatDecorator solver = newSolver(variables);
+        for (int[] clause : TestClauses.randomClauses(variables, variables * 10, 42)) {
+            solver.addSoftClause(1 + random.nextInt(10), VectorUtils.asVec(clause));
+        }
+
+        AnytimeMaxSatSearch search = new AnytimeMaxSatSearch(solver, environment(Long.toString(budget)));
+        assertTrue(search.search());
+
+        assertTrue(search.isTimedOut());
+        assertFalse(search.isOptimal());
+        assertNotNull(search.getModel());
+        assertTrue(search.getImprovements() >= 1);
+    }
+
+    @Test
+    public void testOptimalWithoutBudget() throws ContradictionException {
+        // Hard: x1 | x2 | x3.  Soft: !x1 (weight 2), !x2 (weight 1), !x3 (weight 3).
+        WeightedMaxSatDecorator solver = newSolver(3);
+        solver.setTimeoutMs(60000);
+        solver.addHardClause(VectorUtils.asVec(1, 2, 3));
+        solver.addSoftClause(2, VectorUtils.asVec(-1));
+        solver.addSoftClause(1, VectorUtils.asVec(-2));
+        solver.addSoftClause(3, VectorUtils.asVec(-3));
+
+        AnytimeMaxSatSearch search = new AnytimeMaxSatSearch(solver,
+                new SolverEnvironment(Collections.<String, String>emptyMap(), null));
+        assertTrue(search.search());
+        assertTrue(search.isOptimal());
+        assertFalse(search.isTimedOut());
+        int[] model = search.getModel();
+        assertEquals(-1, model[0]);
+        assertEquals(2, model[1]);
+        assertEquals(-3, model[2]);
+    }
+
+    @Test
+    public void testNoBudgetLeft() throws ContradictionException {
+        WeightedMaxSatDecorator solver = newSolver(1);
+        solver.addSoftClause(1, VectorUtils.asVec(1));
+
+        AnytimeMaxSatSearch search = new AnytimeMaxSatSearch(solver, environment("0"));
+        assertFalse(search.search());
+        assertTrue(search.isTimedOut());
+        assertNull(search.getModel());
+    }
+
+    @Test(expected = UserError.class)
+    public void testInvalidBudget() {
+        environment("ten seconds");
+    }
+
+    private static WeightedMaxSatDecorator newSolver(int variables) {
+        WeightedMaxSatDecorator solver = new WeightedMaxSatDecorator(org.sat4j.pb.SolverFactory.newBoth());
+        solver.newVar(variables);
+        return solver;
+    }
+
+    private static SolverEnvironment environment(String timeBudget) {
+        return new SolverEnvironment(Collections.<String, String>emptyMap(), null, Long.parseLong(timeBudget));
+    }
+}
@@ -0,0 +1,38 @@
+package checkers.inference.solver.backend.maxsat;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.frontend.TestLattices;
+
+/**
+ * Checks that getSlotId and getIntRep invert mapIdToMatrixEntry, including for the variable of
+ * the last type of a slot, which is a multiple of the number of types.
+ */
+public class MathUtilsTest {
+
+    private final Lattice lattice = TestLattices.lattice(TestLattices.qualifiers(3), TestLattices.CHAIN);
+
+    @Test
+    public void testInverse() {
+        for (int slotId = 1; slotId <= 4; slotId++) {
+            for (int type = 0; type < lattice.numTypes; type++) {
+                int var = MathUtils.mapIdToMatrixEntry(slotId, type, lattice);
+                assertEquals(slotId, MathUtils.getSlotId(var, lattice));
+                assertEquals(type, MathUtils.getIntRep(var, lattice));
+                assertEquals(slotId, MathUtils.getSlotId(-var, lattice));
+                assertEquals(type, MathUtils.getIntRep(-var, lattice));
+            }
+        }
+    }
+
+    @Test
+    public void testLastTypeOfSlot() {
+        assertEquals(1, MathUtils.getSlotId(3, lattice));
+        assertEquals(2, MathUtils.getIntRep(3, lattice));
+        assertEquals(2, MathUtils.getSlotId(4, lattice));
+        assertEquals(0, MathUtils.getIntRep(4, lattice));
+    }
+}
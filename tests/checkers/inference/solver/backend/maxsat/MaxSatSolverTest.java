@@ -0,0 +1,92 @@
+package checkers.inference.solver.backend.maxsat;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.plumelib.util.Pair;
+import org.sat4j.core.VecInt;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.frontend.TestLattices;
+import checkers.inference.solver.util.SolverEnvironment;
+
+/**
+ * Checks that {@link MaxSatSolver#cancel()} stops a running sat4j search, both the single check
+ * without a time budget and the anytime search with one, on a generated instance too hard to solve
+ * before the cancel.
+ */
+public class MaxSatSolverTest {
+
+    @Before
+    public void setUp() {
+        InferenceMain.resetInstance();
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        assertNull(solveAndCancel(createSolver(false)));
+    }
+
+    @Test
+    public void testCancelAnytimeSearch() throws InterruptedException {
+        assertNull(solveAndCancel(createSolver(true)));
+    }
+
+    private static Map<Integer, AnnotationMirror> solveAndCancel(MaxSatSolver solver) throws InterruptedException {
+        AtomicReference<Map<Integer, AnnotationMirror>> solution = new AtomicReference<>();
+        Thread thread = new Thread(() -> solution.set(solver.solve()));
+        thread.start();
+        Thread.sleep(500);
+        solver.cancel();
+        thread.join(30000);
+        assertFalse("The solver did not stop when cancelled", thread.isAlive());
+        return solution.get();
+    }
+
+    /**
+     * @param withSoftClauses whether to also prefer every variable to be false, and give the solver
+     * a time budget in which it searches for an optimal model
+     */
+    private static MaxSatSolver createSolver(boolean withSoftClauses) {
+        // Random 3-SAT at the satisfiability threshold of about 4.26 clauses per variable.
+        int variables = 1000;
+        List<AnnotationMirror> types = TestLattices.qualifiers(3);
+        Lattice lattice = TestLattices.lattice(types, TestLattices.CHAIN);
+        MaxSatFormatTranslator formatTranslator = new MaxSatFormatTranslator(lattice);
+        formatTranslator.setVariableAllocator(new VariableAllocator(0));
+        SolverEnvironment solverEnvironment = withSoftClauses
+                ? new SolverEnvironment(Collections.<String, String>emptyMap(), null, 600000)
+                : new SolverEnvironment(Collections.<String, String>emptyMap(), null);
+
+        return new MaxSatSolver(solverEnvironment, Collections.<Slot>emptyList(),
+                Collections.<Constraint>emptyList(), formatTranslator, lattice) {
+            @Override
+            public void encodeAllConstraints() {
+                VariableAllocator variableAllocator = formatTranslator.getVariableAllocator();
+                for (int i = 0; i < variables; i++) {
+                    variableAllocator.newVariable();
+                }
+                for (int[] clause : TestClauses.randomClauses(variables, variables * 426 / 100, 42)) {
+                    hardClauses.add(VectorUtils.asVec(clause));
+                }
+                if (withSoftClauses) {
+                    for (int var = 1; var <= variables; var++) {
+                        softClauses.add(new Pair<VecInt, Integer>(VectorUtils.asVec(-var), 1));
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,54 @@
+package checkers.inference.solver.backend.maxsat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import org.sat4j.core.VecInt;
+
+/**
+ * Evaluates and generates clauses for the tests of the MaxSAT encodings and solvers.
+ */
+public final class TestClauses {
+
+    private TestClauses() {
+    }
+
+    /**
+     * @param isTrue whether a variable is true in the assignment
+     * @return true if the assignment satisfies every clause
+     */
+    public static boolean satisfies(Iterable<VecInt> clauses, IntPredicate isTrue) {
+        for (VecInt clause : clauses) {
+            boolean satisfied = false;
+            for (int i = 0; i < clause.size() && !satisfied; i++) {
+                int literal = clause.get(i);
+                satisfied = isTrue.test(Math.abs(literal)) == (literal > 0);
+            }
+            if (!satisfied) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return clauses of three random literals over the variables 1 to variables, the same for the
+     * same seed.  With more than about 4.3 clauses per variable, they are hard to satisfy, or to
+     * satisfy as many of as possible.
+     */
+    public static List<int[]> randomClauses(int variables, int clauses, long seed) {
+        Random random = new Random(seed);
+        List<int[]> result = new ArrayList<>(clauses);
+        for (int i = 0; i < clauses; i++) {
+            int[] clause = new int[3];
+            for (int j = 0; j < clause.length; j++) {
+                int variable = 1 + random.nextInt(variables);
+                clause[j] = random.nextBoolean() ? variable : -variable;
+            }
+            result.add(clause);
+        }
+        return result;
+    }
+}
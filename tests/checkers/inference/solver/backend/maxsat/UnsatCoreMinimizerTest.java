@@ -0,0 +1,99 @@
+package checkers.inference.solver.backend.maxsat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.checkerframework.javacutil.BugInCF;
+import org.junit.Test;
+import org.sat4j.core.VecInt;
+
+/**
+ * Checks that UnsatCoreMinimizer finds the known minimal unsatisfiable subsets of small clause
+ * sets, with items of one and of several clauses.
+ */
+public class UnsatCoreMinimizerTest {
+
+    @Test
+    public void testUniqueCore() {
+        UnsatCoreMinimizer<String> minimizer = new UnsatCoreMinimizer<>();
+        minimizer.addItem("x1", clauses(new int[] {1}));
+        minimizer.addItem("x3", clauses(new int[] {3}));
+        minimizer.addItem("x1 -> x2", clauses(new int[] {-1, 2}));
+        minimizer.addItem("x3 | x4", clauses(new int[] {3, 4}));
+        minimizer.addItem("!x2", clauses(new int[] {-2}));
+        minimizer.addItem("x4 -> x3", clauses(new int[] {-4, 3}));
+        assertEquals(Arrays.asList("x1", "x1 -> x2", "!x2"), minimizer.minimize());
+    }
+
+    @Test
+    public void testItemsWithSeveralClauses() {
+        // Like the well-formedness restriction of a slot: exactly one of x1, x2, x3.
+        UnsatCoreMinimizer<String> minimizer = new UnsatCoreMinimizer<>();
+        minimizer.addItem("exactly one of x1, x2, x3",
+                clauses(new int[] {1, 2, 3}, new int[] {-1, -2}, new int[] {-1, -3}, new int[] {-2, -3}));
+        minimizer.addItem("x4 == x5", clauses(new int[] {-4, 5}, new int[] {4, -5}));
+        minimizer.addItem("x1 or x2", clauses(new int[] {1, 2}));
+        minimizer.addItem("x2 or x3", clauses(new int[] {2, 3}));
+        minimizer.addItem("x1 or x3", clauses(new int[] {1, 3}));
+        assertEquals(Arrays.asList("exactly one of x1, x2, x3", "x1 or x2", "x2 or x3", "x1 or x3"),
+                minimizer.minimize());
+    }
+
+    @Test
+    public void testOneOfSeveralCores() {
+        // {x1, !x1} and {x2, x2 -> x1, !x1} are both minimal, the result must be one of them.
+        UnsatCoreMinimizer<String> minimizer = new UnsatCoreMinimizer<>();
+        minimizer.addItem("x2", clauses(new int[] {2}));
+        minimizer.addItem("x1", clauses(new int[] {1}));
+        minimizer.addItem("x2 -> x1", clauses(new int[] {-2, 1}));
+        minimizer.addItem("!x1", clauses(new int[] {-1}));
+        List<String> mus = minimizer.minimize();
+        assertTrue(mus.toString(), mus.equals(Arrays.asList("x1", "!x1"))
+                || mus.equals(Arrays.asList("x2", "x2 -> x1", "!x1")));
+    }
+
+    @Test
+    public void testLongChain() {
+        // x1, x1 -> x2, ..., x(n-1) -> xn, !xn is the only core, among unrelated items.
+        int length = 200;
+        UnsatCoreMinimizer<Integer> minimizer = new UnsatCoreMinimizer<>();
+        List<Integer> expected = new ArrayList<>();
+        int item = 0;
+        minimizer.addItem(item, clauses(new int[] {1}));
+        expected.add(item++);
+        for (int i = 1; i < length; i++) {
+            minimizer.addItem(item++, clauses(new int[] {length + i, -(length + i + 1)}));
+            minimizer.addItem(item, clauses(new int[] {-i, i + 1}));
+            expected.add(item++);
+        }
+        minimizer.addItem(item, clauses(new int[] {-length}));
+        expected.add(item);
+
+        assertEquals(expected, minimizer.minimize());
+        // At most one check for all items and one per item of the first core.
+        int items = item + 1;
+        assertTrue("solver calls: " + minimizer.getSolverCalls(), minimizer.getSolverCalls() <= items + 1);
+    }
+
+    @Test(expected = BugInCF.class)
+    public void testSatisfiable() {
+        UnsatCoreMinimizer<String> minimizer = new UnsatCoreMinimizer<>();
+        minimizer.addItem("x1", clauses(new int[] {1}));
+        minimizer.addItem("x1 -> x2", clauses(new int[] {-1, 2}));
+        minimizer.addItem("no clauses", Collections.<VecInt>emptyList());
+        minimizer.minimize();
+    }
+
+    private static List<VecInt> clauses(int[]... literals) {
+        List<VecInt> clauses = new ArrayList<>(literals.length);
+        for (int[] clause : literals) {
+            clauses.add(VectorUtils.asVec(clause));
+        }
+        return clauses;
+    }
+}
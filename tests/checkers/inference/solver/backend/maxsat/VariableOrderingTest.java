@@ -0,0 +1,173 @@
+package checkers.inference.solver.backend.maxsat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.sat4j.core.LiteralsUtils;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.core.ICDCL;
+import org.sat4j.pb.IPBSolver;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * Checks the renumbering of VariableOrdering on synthetic constraint graphs, and that
+ * SeededVarOrderHeap keeps the learned activities after the first search.  The solving time with
+ * each ordering is measured by VariableOrderingBenchmarks.
+ */
+public class VariableOrderingTest {
+
+    private static final int NUM_TYPES = 3;
+
+    @Test
+    public void testBfsStartsAtConstants() {
+        // A chain 1 - 2 - ... - 6, where only slot 6 shares a constraint with a constant.
+        int slots = 6;
+        int[] from = {1, 2, 3, 4, 5};
+        int[] to = {2, 3, 4, 5, 6};
+        boolean[] adjacentToConstant = new boolean[slots + 1];
+        adjacentToConstant[6] = true;
+
+        VariableOrdering ordering = new VariableOrdering(slots, NUM_TYPES, from, to, from.length,
+                adjacentToConstant, VariableOrdering.Strategy.BFS);
+        for (int s = 1; s <= slots; s++) {
+            assertEquals(slots + 1 - s, ordering.getNewSlotId(s));
+        }
+        // Slots near the constant are seeded higher than slots far from it.
+        assertTrue(ordering.getActivitySeed(1) > ordering.getActivitySeed(slots * NUM_TYPES));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Graph graph = Graph.shuffledGrid(10, new Random(1));
+        VariableOrdering ordering = graph.ordering(VariableOrdering.Strategy.RCM);
+        int auxiliary = 5;
+        for (int var = 1; var <= graph.slots * NUM_TYPES + auxiliary; var++) {
+            assertEquals(var, ordering.fromSolverLiteral(ordering.toSolverLiteral(var)));
+            assertEquals(-var, ordering.fromSolverLiteral(ordering.toSolverLiteral(-var)));
+        }
+        // Auxiliary variables keep their number.
+        assertEquals(graph.slots * NUM_TYPES + 1, ordering.toSolverLiteral(graph.slots * NUM_TYPES + 1));
+    }
+
+    @Test
+    public void testRcmReducesProfile() {
+        int side = 40;
+        Graph graph = Graph.shuffledGrid(side, new Random(2));
+        VariableOrdering identity = new VariableOrdering(graph.slots, NUM_TYPES, new int[0], new int[0], 0,
+                new boolean[graph.slots + 1], VariableOrdering.Strategy.RCM);
+        VariableOrdering rcm = graph.ordering(VariableOrdering.Strategy.RCM);
+
+        long shuffledProfile = identity.getProfile(graph.from, graph.to, graph.edges);
+        long rcmProfile = rcm.getProfile(graph.from, graph.to, graph.edges);
+        // In a grid, RCM numbers by anti-diagonals, so neighbours are at most about 2 * side
+        // apart, where random numbers are about slots / 3 apart.
+        assertTrue(rcmProfile + " vs " + shuffledProfile, rcmProfile * 5 < shuffledProfile);
+        assertTrue(rcmProfile <= (long) graph.edges * 2 * side);
+    }
+
+    @Test
+    public void testSortClauses() {
+        List<VecInt> clauses = new ArrayList<>(Arrays.asList(
+                VectorUtils.asVec(7, -9), VectorUtils.asVec(-2, 8), VectorUtils.asVec(9, 3),
+                VectorUtils.asVec(2, -5)));
+        VariableOrdering.sortClauses(clauses);
+        // By lowest variable, and in input order between clauses with the same lowest variable.
+        int[][] expected = {{-2, 8}, {2, -5}, {9, 3}, {7, -9}};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i][0], clauses.get(i).get(0));
+            assertEquals(expected[i][1], clauses.get(i).get(1));
+        }
+    }
+
+    @Test
+    public void testSeedsOnlyFirstSearch() throws ContradictionException, TimeoutException {
+        Graph graph = Graph.shuffledGrid(4, new Random(4));
+        graph.adjacentToConstant[1] = true;
+        VariableOrdering ordering = graph.ordering(VariableOrdering.Strategy.BFS);
+        int variables = graph.slots * NUM_TYPES;
+        IPBSolver solver = org.sat4j.pb.SolverFactory.newDefault();
+        ICDCL<?> cdclSolver = (ICDCL<?>) solver;
+        SeededVarOrderHeap order = new SeededVarOrderHeap(cdclSolver.getOrder().getPhaseSelectionStrategy(),
+                ordering, variables);
+        cdclSolver.setOrder(order);
+        solver.newVar(variables);
+        for (int s = 1; s <= graph.slots; s++) {
+            solver.addClause(VectorUtils.asVec(var(s, 0), var(s, 1), var(s, 2)));
+        }
+        assertTrue(solver.isSatisfiable());
+
+        // As if the search had bumped the last variable in a conflict.
+        order.updateVar(LiteralsUtils.posLit(variables));
+        double[] learned = new double[variables + 1];
+        for (int var = 1; var <= variables; var++) {
+            learned[var] = order.varActivity(LiteralsUtils.posLit(var));
+        }
+        assertTrue(learned[variables] > ordering.getActivitySeed(variables));
+
+        // The solver initializes the order again before the next search.
+        order.init();
+        for (int var = 1; var <= variables; var++) {
+            assertEquals(learned[var], order.varActivity(LiteralsUtils.posLit(var)), 0);
+        }
+    }
+
+    private static int var(int slot, int type) {
+        return (slot - 1) * NUM_TYPES + type + 1;
+    }
+
+    private static class Graph {
+        final int slots;
+        int[] from = new int[16];
+        int[] to = new int[16];
+        int edges;
+        final boolean[] adjacentToConstant;
+
+        Graph(int slots) {
+            this.slots = slots;
+            this.adjacentToConstant = new boolean[slots + 1];
+        }
+
+        /** A side x side grid whose slot ids are a random permutation. */
+        static Graph shuffledGrid(int side, Random random) {
+            List<Integer> ids = new ArrayList<>();
+            for (int i = 1; i <= side * side; i++) {
+                ids.add(i);
+            }
+            java.util.Collections.shuffle(ids, random);
+            Graph graph = new Graph(side * side);
+            for (int row = 0; row < side; row++) {
+                for (int column = 0; column < side; column++) {
+                    int id = ids.get(row * side + column);
+                    if (column + 1 < side) {
+                        graph.addEdge(id, ids.get(row * side + column + 1));
+                    }
+                    if (row + 1 < side) {
+                        graph.addEdge(id, ids.get((row + 1) * side + column));
+                    }
+                }
+            }
+            return graph;
+        }
+
+        void addEdge(int a, int b) {
+            if (edges == from.length) {
+                from = Arrays.copyOf(from, edges * 2);
+                to = Arrays.copyOf(to, edges * 2);
+            }
+            from[edges] = a;
+            to[edges] = b;
+            edges++;
+        }
+
+        VariableOrdering ordering(VariableOrdering.Strategy strategy) {
+            return new VariableOrdering(slots, NUM_TYPES, from, to, edges, adjacentToConstant, strategy);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package checkers.inference.solver.backend.maxsat.encoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.junit.Test;
+import org.sat4j.core.VecInt;
+
+import checkers.inference.solver.backend.maxsat.MathUtils;
+import checkers.inference.solver.backend.maxsat.TestClauses;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.frontend.TestLattices;
+
+/**
+ * Checks that the clause templates of a diamond lattice, top > a, b > bottom, hold for exactly
+ * the pairs of types the constraints allow.
+ */
+public class MaxSATClauseTemplatesTest {
+
+    private static final boolean[][] SUBTYPE = TestLattices.DIAMOND;
+
+    private final List<AnnotationMirror> types;
+    private final Map<AnnotationMirror, Integer> typeToInt;
+    private final Lattice lattice;
+    private final MaxSATClauseTemplates templates;
+
+    public MaxSATClauseTemplatesTest() {
+        types = TestLattices.qualifiers(SUBTYPE.length);
+        typeToInt = TestLattices.typeToInt(types);
+        lattice = TestLattices.lattice(types, SUBTYPE);
+        templates = MaxSATClauseTemplates.forLattice(lattice, typeToInt);
+    }
+
+    @Test
+    public void testCachedPerLattice() {
+        assertSame(templates, MaxSATClauseTemplates.forLattice(lattice, typeToInt));
+    }
+
+    @Test
+    public void testVariableVariable() {
+        // Slot ids far apart, to check the offsets of both slots.
+        int first = 3, second = 17;
+        for (int x = 0; x < types.size(); x++) {
+            for (int y = 0; y < types.size(); y++) {
+                String pair = x + ", " + y;
+                assertEquals(pair, SUBTYPE[x][y], holds(templates.instantiate(
+                        templates.subtypeVariableVariable, first, second), first, x, second, y));
+                assertEquals(pair, x == y, holds(templates.instantiate(
+                        templates.equalityVariableVariable, first, second), first, x, second, y));
+                // The inequality clauses also require every type to be taken by one of the
+                // slots, so with more than two types they hold for no pair.
+                if (holds(templates.instantiate(templates.inequalityVariableVariable, first, second),
+                        first, x, second, y)) {
+                    assertTrue(pair, x != y);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testVariableConstant() {
+        int slot = 5;
+        for (int c = 0; c < types.size(); c++) {
+            for (int x = 0; x < types.size(); x++) {
+                String pair = x + ", constant " + c;
+                assertEquals(pair, SUBTYPE[x][c], holds(templates.instantiate(
+                        templates.subtypeVariableConstant[c], slot, slot), slot, x, slot, x));
+                assertEquals(pair, SUBTYPE[c][x], holds(templates.instantiate(
+                        templates.subtypeConstantVariable[c], slot, slot), slot, x, slot, x));
+                assertEquals(pair, x == c, holds(templates.instantiate(
+                        templates.equalityVariableConstant[c], slot, slot), slot, x, slot, x));
+                assertEquals(pair, x != c, holds(templates.instantiate(
+                        templates.inequalityVariableConstant[c], slot, slot), slot, x, slot, x));
+                assertEquals(pair, SUBTYPE[x][c] || SUBTYPE[c][x], holds(templates.instantiate(
+                        templates.comparableVariableConstant[c], slot, slot), slot, x, slot, x));
+            }
+        }
+    }
+
+    /**
+     * @return whether the clauses hold when the first slot has type x and the second slot has
+     * type y, and no slot has any other type
+     */
+    private boolean holds(VecInt[] clauses, int firstSlot, int x, int secondSlot, int y) {
+        Set<Integer> trueVars = new HashSet<>(Arrays.asList(
+                MathUtils.mapIdToMatrixEntry(firstSlot, x, lattice),
+                MathUtils.mapIdToMatrixEntry(secondSlot, y, lattice)));
+        return TestClauses.satisfies(Arrays.asList(clauses), trueVars::contains);
+    }
+}
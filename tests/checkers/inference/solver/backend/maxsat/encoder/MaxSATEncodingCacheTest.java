@@ -0,0 +1,168 @@
+package checkers.inference.solver.backend.maxsat.encoder;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sat4j.core.VecInt;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.BinaryConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.binary.BinaryConstraintEncoder;
+import checkers.inference.solver.backend.maxsat.MathUtils;
+import checkers.inference.solver.backend.maxsat.VectorUtils;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.frontend.TestLattices;
+
+/**
+ * Checks that the encodings filled in by MaxSATEncodingCache are the encodings of the encoder,
+ * in a chain lattice top > middle > bottom.
+ */
+public class MaxSATEncodingCacheTest {
+
+    private final List<AnnotationMirror> types = TestLattices.qualifiers(TestLattices.CHAIN.length);
+    private final Map<AnnotationMirror, Integer> typeToInt = TestLattices.typeToInt(types);
+    private final Lattice lattice = TestLattices.lattice(types, TestLattices.CHAIN);
+
+    private ConstraintManager constraintManager;
+    private MaxSATEncodingCache cache;
+    private CountingEncoder encoder;
+
+    private final VariableSlot x = createVariable(1);
+    private final VariableSlot y = createVariable(2);
+    private final VariableSlot z = createVariable(3);
+    private final VariableSlot w = createVariable(4);
+    private final ConstantSlot top;
+    private final ConstantSlot middle;
+
+    public MaxSATEncodingCacheTest() {
+        top = new ConstantSlot(10, types.get(0));
+        middle = new ConstantSlot(11, types.get(1));
+    }
+
+    @Before
+    public void setUp() {
+        constraintManager = InferenceMain.resetInstance().getConstraintManager();
+        cache = new MaxSATEncodingCache(lattice);
+        encoder = new CountingEncoder(new MaxSATSubtypeConstraintEncoder(lattice, typeToInt));
+    }
+
+    @Test
+    public void testFillIn() {
+        VecInt[] first = encode(x, y);
+        // sat4j may change the clauses it is given, the template must not change with them.
+        first[0].set(0, 0);
+
+        assertEquals(clauses(encoder.encoder.encodeVariable_Variable(z, w)), clauses(encode(z, w)));
+        assertEquals(clauses(encoder.encoder.encodeVariable_Variable(y, x)), clauses(encode(y, x)));
+        assertEquals(clauses(encoder.encoder.encodeVariable_Constant(z, middle)), clauses(encode(z, middle)));
+        assertEquals(clauses(encoder.encoder.encodeVariable_Constant(w, middle)), clauses(encode(w, middle)));
+        assertEquals(clauses(encoder.encoder.encodeConstant_Variable(middle, x)), clauses(encode(middle, x)));
+        // Another constant is another shape.
+        assertEquals(clauses(encoder.encoder.encodeVariable_Constant(w, top)), clauses(encode(w, top)));
+
+        assertEquals(4, encoder.calls);
+        assertEquals(3, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void testSameSlotNotCached() {
+        encode(x, y);
+        encode(z, z);
+        assertEquals(2, encoder.calls);
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testAuxiliaryVariable() {
+        // Clauses over a variable of no slot of the constraint can't be filled in.
+        int auxiliary = MathUtils.mapIdToMatrixEntry(100, 0, lattice);
+        BinaryConstraintEncoder<VecInt[]> auxiliaryEncoder = new BinaryConstraintEncoder<VecInt[]>() {
+            @Override
+            public VecInt[] encodeVariable_Variable(VariableSlot fst, VariableSlot snd) {
+                return new VecInt[] {VectorUtils.asVec(MathUtils.mapIdToMatrixEntry(fst.getId(), 0, lattice),
+                        auxiliary), VectorUtils.asVec(MathUtils.mapIdToMatrixEntry(snd.getId(), 1, lattice))};
+            }
+
+            @Override
+            public VecInt[] encodeVariable_Constant(VariableSlot fst, ConstantSlot snd) {
+                return null;
+            }
+
+            @Override
+            public VecInt[] encodeConstant_Variable(ConstantSlot fst, VariableSlot snd) {
+                return null;
+            }
+        };
+        encoder = new CountingEncoder(auxiliaryEncoder);
+
+        encode(x, y);
+        assertEquals(clauses(auxiliaryEncoder.encodeVariable_Variable(z, w)), clauses(encode(z, w)));
+        assertEquals(clauses(auxiliaryEncoder.encodeVariable_Variable(w, x)), clauses(encode(w, x)));
+        assertEquals(3, encoder.calls);
+        assertEquals(0, cache.getHits());
+    }
+
+    private VecInt[] encode(Slot first, Slot second) {
+        BinaryConstraint constraint =
+                (BinaryConstraint) ((BinaryConstraint) constraintManager.createSubtypeConstraint(x, y)).make(first, second);
+        return cache.encode(constraint, encoder);
+    }
+
+    private static List<List<Integer>> clauses(VecInt[] encoding) {
+        List<List<Integer>> clauses = new ArrayList<>();
+        for (VecInt clause : encoding) {
+            List<Integer> literals = new ArrayList<>();
+            for (int i = 0; i < clause.size(); i++) {
+                literals.add(clause.get(i));
+            }
+            clauses.add(literals);
+        }
+        return clauses;
+    }
+
+    private static SourceVariableSlot createVariable(int id) {
+        return new SourceVariableSlot(id, AnnotationLocation.MISSING_LOCATION, null, null, true);
+    }
+
+    /** Counts the constraints its encoder encodes. */
+    private static class CountingEncoder implements BinaryConstraintEncoder<VecInt[]> {
+        final BinaryConstraintEncoder<VecInt[]> encoder;
+        int calls;
+
+        CountingEncoder(BinaryConstraintEncoder<VecInt[]> encoder) {
+            this.encoder = encoder;
+        }
+
+        @Override
+        public VecInt[] encodeVariable_Variable(VariableSlot fst, VariableSlot snd) {
+            calls++;
+            return encoder.encodeVariable_Variable(fst, snd);
+        }
+
+        @Override
+        public VecInt[] encodeVariable_Constant(VariableSlot fst, ConstantSlot snd) {
+            calls++;
+            return encoder.encodeVariable_Constant(fst, snd);
+        }
+
+        @Override
+        public VecInt[] encodeConstant_Variable(ConstantSlot fst, VariableSlot snd) {
+            calls++;
+            return encoder.encodeConstant_Variable(fst, snd);
+        }
+    }
+}
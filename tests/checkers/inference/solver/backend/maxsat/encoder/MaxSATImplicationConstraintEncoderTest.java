@@ -0,0 +1,128 @@
+package checkers.inference.solver.backend.maxsat.encoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.sat4j.core.VecInt;
+
+import checkers.inference.solver.backend.maxsat.TestClauses;
+import checkers.inference.solver.backend.maxsat.VariableAllocator;
+import checkers.inference.solver.backend.maxsat.VectorUtils;
+
+/**
+ * Checks that the auxiliary variable encoding of implications has the same models as the
+ * cartesian encoding, projected to the variables of the assumptions and the conclusion, and that
+ * it stays linear in size where the cartesian encoding grows exponentially.
+ */
+public class MaxSATImplicationConstraintEncoderTest {
+
+    private static final int VARIABLES = 5;
+
+    // The clause-level encodings need neither a lattice nor a format translator.
+    private final MaxSATImplicationConstraintEncoder encoder =
+            new MaxSATImplicationConstraintEncoder(null, null, null);
+
+    @Test
+    public void testSameModels() {
+        Random random = new Random(7);
+        for (int round = 0; round < 500; round++) {
+            List<VecInt> assumptions = randomClauses(random, random.nextInt(5));
+            VecInt[] conclusion = randomClauses(random, random.nextInt(4)).toArray(new VecInt[0]);
+            VariableAllocator allocator = new VariableAllocator(VARIABLES);
+
+            VecInt[] cartesian = encoder.encodeCartesian(assumptions, conclusion);
+            VecInt[] auxiliary = encoder.encodeWithAuxiliaryVariables(assumptions, conclusion, allocator);
+
+            assertEquals(encoder.countCartesianClauses(assumptions, conclusion), cartesian.length);
+            assertEquals(encoder.countAuxiliaryVariableClauses(assumptions, conclusion), auxiliary.length);
+
+            int freshVariables = allocator.getNumberOfFreshVariables();
+            for (int model = 0; model < 1 << VARIABLES; model++) {
+                boolean implied = !satisfies(assumptions.toArray(new VecInt[0]), model)
+                        || satisfies(conclusion, model);
+                assertEquals(assumptions + " => " + toString(conclusion) + " in " + model,
+                        implied, satisfies(cartesian, model));
+
+                boolean extensible = false;
+                for (int fresh = 0; fresh < 1 << freshVariables && !extensible; fresh++) {
+                    extensible = satisfies(auxiliary, model | (fresh << VARIABLES));
+                }
+                assertEquals(assumptions + " => " + toString(conclusion) + " in " + model,
+                        implied, extensible);
+            }
+        }
+    }
+
+    @Test
+    public void testUnitAssumptionsNeedNoAuxiliaryVariables() {
+        // a & b => (c | d) & e is the same clauses in both encodings: (~a | ~b | c | d), (~a | ~b | e)
+        List<VecInt> assumptions = new ArrayList<>();
+        assumptions.add(VectorUtils.asVec(1));
+        assumptions.add(VectorUtils.asVec(2));
+        VecInt[] conclusion = {VectorUtils.asVec(3, 4), VectorUtils.asVec(5)};
+        VariableAllocator allocator = new VariableAllocator(VARIABLES);
+
+        VecInt[] auxiliary = encoder.encodeWithAuxiliaryVariables(assumptions, conclusion, allocator);
+
+        assertEquals(0, allocator.getNumberOfFreshVariables());
+        assertEquals(toString(encoder.encodeCartesian(assumptions, conclusion)), toString(auxiliary));
+    }
+
+    @Test
+    public void testLinearSize() {
+        // 20 assumption clauses of 3 literals each: 3^20 cartesian combinations.
+        int clauses = 20;
+        List<VecInt> assumptions = new ArrayList<>();
+        for (int i = 0; i < clauses; i++) {
+            assumptions.add(VectorUtils.asVec(3 * i + 1, 3 * i + 2, 3 * i + 3));
+        }
+        VecInt[] conclusion = {VectorUtils.asVec(3 * clauses + 1), VectorUtils.asVec(3 * clauses + 2)};
+        VariableAllocator allocator = new VariableAllocator(3 * clauses + 2);
+
+        VecInt[] auxiliary = encoder.encodeWithAuxiliaryVariables(assumptions, conclusion, allocator);
+
+        assertEquals(2 * 3486784401L, encoder.countCartesianClauses(assumptions, conclusion));
+        // Three definition clauses per assumption, one clause for the assumptions and one per
+        // conclusion clause.
+        assertEquals(3 * clauses + 1 + 2, auxiliary.length);
+        assertEquals(clauses + 1, allocator.getNumberOfFreshVariables());
+        for (VecInt clause : auxiliary) {
+            assertTrue(clause.size() <= clauses + 1);
+        }
+    }
+
+    private static List<VecInt> randomClauses(Random random, int count) {
+        List<VecInt> clauses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int size = 1 + random.nextInt(3);
+            int[] literals = new int[size];
+            for (int j = 0; j < size; j++) {
+                int var = 1 + random.nextInt(VARIABLES);
+                literals[j] = random.nextBoolean() ? var : -var;
+            }
+            clauses.add(VectorUtils.asVec(literals));
+        }
+        return clauses;
+    }
+
+    /**
+     * @param model the assignment, where bit i - 1 is the value of variable i
+     */
+    private static boolean satisfies(VecInt[] clauses, int model) {
+        return TestClauses.satisfies(Arrays.asList(clauses), var -> (model & (1 << (var - 1))) != 0);
+    }
+
+    private static String toString(VecInt[] clauses) {
+        StringBuilder sb = new StringBuilder();
+        for (VecInt clause : clauses) {
+            sb.append('(').append(clause).append(')');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package checkers.inference.solver.backend.z3;
+
+import java.math.BigInteger;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+/**
+ * Encodes the two qualifier lattice top > bottom as the bit vectors 1 and 0, for the tests of the
+ * Z3 back end.
+ */
+class TestBitVectorCodec implements Z3BitVectorCodec {
+
+    private final AnnotationMirror top;
+    private final AnnotationMirror bottom;
+
+    TestBitVectorCodec(AnnotationMirror top, AnnotationMirror bottom) {
+        this.top = top;
+        this.bottom = bottom;
+    }
+
+    /**
+     * @return a format translator without a lattice, which encodes qualifiers with this codec
+     */
+    static Z3BitVectorFormatTranslator formatTranslator(AnnotationMirror top, AnnotationMirror bottom) {
+        return new Z3BitVectorFormatTranslator(null) {
+            @Override
+            protected Z3BitVectorCodec createZ3BitVectorCodec() {
+                return new TestBitVectorCodec(top, bottom);
+            }
+        };
+    }
+
+    @Override
+    public int getFixedBitVectorSize() {
+        return 1;
+    }
+
+    @Override
+    public BigInteger encodeConstantAM(AnnotationMirror am) {
+        return am == top ? BigInteger.ONE : BigInteger.ZERO;
+    }
+
+    @Override
+    public AnnotationMirror decodeNumeralValue(BigInteger numeralValue, ProcessingEnvironment processingEnvironment) {
+        return numeralValue.signum() != 0 ? top : bottom;
+    }
+}
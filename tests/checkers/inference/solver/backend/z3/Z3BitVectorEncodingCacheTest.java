@@ -0,0 +1,126 @@
+package checkers.inference.solver.backend.z3;
+
+import static org.junit.Assert.assertEquals;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+import com.microsoft.z3.Solver;
+import com.microsoft.z3.Status;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.EncodingCache;
+import checkers.inference.solver.frontend.TestLattices;
+import checkers.inference.solver.util.Statistics;
+
+/**
+ * Checks that the encodings Z3BitVectorEncodingCache fills in from a template are the ones the
+ * encoders give, for constraints between two variables, a variable and a constant, and a constant
+ * and a variable.
+ */
+public class Z3BitVectorEncodingCacheTest {
+
+    private static final AnnotationMirror TOP = TestLattices.qualifier("Top");
+    private static final AnnotationMirror BOTTOM = TestLattices.qualifier("Bottom");
+
+    private ConstraintManager constraintManager;
+    private Context context;
+
+    /** Encodes through a Z3BitVectorEncodingCache. */
+    private Z3BitVectorFormatTranslator cached;
+
+    /** Encodes every constraint by its encoder. */
+    private Z3BitVectorFormatTranslator uncached;
+
+    private final VariableSlot x = createVariable(1);
+    private final VariableSlot y = createVariable(2);
+    private final VariableSlot z = createVariable(3);
+    private final VariableSlot w = createVariable(4);
+    private final ConstantSlot top = new ConstantSlot(10, TOP);
+    private final ConstantSlot bottom = new ConstantSlot(11, BOTTOM);
+
+    @Before
+    public void setUp() {
+        try {
+            context = new Context();
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException("The z3 native library is not available", e);
+        }
+        constraintManager = InferenceMain.resetInstance().getConstraintManager();
+        Statistics.clearStatistics();
+        cached = TestBitVectorCodec.formatTranslator(TOP, BOTTOM);
+        cached.initContext(context);
+        uncached = new Z3BitVectorFormatTranslator(null) {
+            @Override
+            protected Z3BitVectorCodec createZ3BitVectorCodec() {
+                return new TestBitVectorCodec(TOP, BOTTOM);
+            }
+
+            @Override
+            protected EncodingCache<BoolExpr> createEncodingCache() {
+                return null;
+            }
+        };
+        uncached.initContext(context);
+    }
+
+    @After
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void testVariableVariable() {
+        assertFilledIn(constraintManager.createSubtypeConstraint(x, y),
+                constraintManager.createSubtypeConstraint(z, w));
+    }
+
+    @Test
+    public void testVariableConstant() {
+        assertFilledIn(constraintManager.createEqualityConstraint(x, top),
+                constraintManager.createEqualityConstraint(z, top));
+    }
+
+    @Test
+    public void testConstantVariable() {
+        assertFilledIn(constraintManager.createEqualityConstraint(bottom, y),
+                constraintManager.createEqualityConstraint(bottom, w));
+    }
+
+    /**
+     * Encodes the first constraint, which becomes the template of its shape, then checks that the
+     * encoding of the second one is filled in from it, and equivalent to the one of the encoder.
+     */
+    private void assertFilledIn(Constraint first, Constraint second) {
+        assertEquivalent(first.serialize(uncached), first.serialize(cached));
+        assertEquivalent(second.serialize(uncached), second.serialize(cached));
+
+        cached.recordEncodingCacheStatistics();
+        assertEquals(Long.valueOf(1), Statistics.getStatistics().get("encoding_cache_hits"));
+        assertEquals(Long.valueOf(1), Statistics.getStatistics().get("encoding_cache_misses"));
+    }
+
+    private void assertEquivalent(BoolExpr expected, BoolExpr actual) {
+        Solver solver = context.mkSolver();
+        solver.add(context.mkNot(context.mkEq(expected, actual)));
+        assertEquals(expected + " vs " + actual, Status.UNSATISFIABLE, solver.check());
+    }
+
+    private static SourceVariableSlot createVariable(int id) {
+        return new SourceVariableSlot(id, AnnotationLocation.MISSING_LOCATION, null, null, true);
+    }
+}
@@ -0,0 +1,129 @@
+package checkers.inference.solver.backend.z3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.microsoft.z3.BitVecExpr;
+import com.microsoft.z3.Context;
+import com.microsoft.z3.Status;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.frontend.TestLattices;
+
+/**
+ * Drives several rounds of adding, checking and retracting constraints through one
+ * Z3IncrementalSession, in a two qualifier lattice top > bottom encoded as the bit vectors 1 and 0.
+ */
+public class Z3IncrementalSessionTest {
+
+    private static final AnnotationMirror TOP = TestLattices.qualifier("Top");
+    private static final AnnotationMirror BOTTOM = TestLattices.qualifier("Bottom");
+
+    private ConstraintManager constraintManager;
+    private Context context;
+    private Z3BitVectorFormatTranslator formatTranslator;
+    private Z3IncrementalSession session;
+
+    private final VariableSlot x = createVariable(1);
+    private final VariableSlot y = createVariable(2);
+    private final VariableSlot z = createVariable(3);
+    private final ConstantSlot top = new ConstantSlot(10, TOP);
+    private final ConstantSlot bottom = new ConstantSlot(11, BOTTOM);
+
+    @Before
+    public void setUp() {
+        try {
+            context = new Context();
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException("The z3 native library is not available", e);
+        }
+        constraintManager = InferenceMain.resetInstance().getConstraintManager();
+        formatTranslator = TestBitVectorCodec.formatTranslator(TOP, BOTTOM);
+        formatTranslator.initContext(context);
+        session = new Z3IncrementalSession(context, formatTranslator, null);
+    }
+
+    @After
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void testRounds() {
+        // Round 1: x == bottom and y <: x.
+        Constraint xIsBottom = constraintManager.createEqualityConstraint(x, bottom);
+        Constraint yBelowX = constraintManager.createSubtypeConstraint(y, x);
+        session.add(Arrays.asList(xIsBottom, yBelowX));
+        assertEquals(Status.SATISFIABLE, session.check());
+        Map<Integer, AnnotationMirror> solution = session.getSolution();
+        assertSame(BOTTOM, solution.get(x.getId()));
+        assertSame(BOTTOM, solution.get(y.getId()));
+        BitVecExpr xBitVector = formatTranslator.serializeVarSlot(x);
+
+        // Round 2: y == top contradicts both constraints of round 1.
+        session.push();
+        Constraint yIsTop = constraintManager.createEqualityConstraint(y, top);
+        session.add(yIsTop);
+        assertEquals(Status.UNSATISFIABLE, session.check());
+        assertEquals(new HashSet<>(Arrays.asList(xIsBottom, yBelowX, yIsTop)),
+                new HashSet<>(session.getUnsatisfiableConstraints()));
+        session.pop();
+        assertEquals(0, session.getNumberOfScopes());
+        assertEquals(2, session.getNumberOfConstraints());
+        assertEquals(Status.SATISFIABLE, session.check());
+
+        // Round 3: x <: z and z == top, retracted again.
+        session.push();
+        session.add(Arrays.asList(constraintManager.createSubtypeConstraint(x, z),
+                constraintManager.createEqualityConstraint(z, top)));
+        assertEquals(Status.SATISFIABLE, session.check());
+        solution = session.getSolution();
+        assertSame(BOTTOM, solution.get(x.getId()));
+        assertSame(TOP, solution.get(z.getId()));
+        session.pop();
+        assertEquals(2, session.getNumberOfConstraints());
+
+        // Round 4: y == top in the outermost scope makes the session unsatisfiable for good.
+        session.add(yIsTop);
+        assertEquals(Status.UNSATISFIABLE, session.check());
+        assertEquals(3, session.getUnsatisfiableConstraints().size());
+
+        // The slots kept their bit vector constants across all rounds.
+        assertSame(xBitVector, formatTranslator.serializeVarSlot(x));
+    }
+
+    @Test
+    public void testSkipsPreferences() {
+        ConstantSlot goal = new ConstantSlot(12, TOP);
+        session.add(constraintManager.createEqualityConstraint(x, bottom));
+        session.add(Collections.<Constraint>singletonList(
+                constraintManager.createPreferenceConstraint(x, goal, 1)));
+        assertEquals(1, session.getNumberOfConstraints());
+        assertEquals(Status.SATISFIABLE, session.check());
+        assertSame(BOTTOM, session.getSolution().get(x.getId()));
+    }
+
+    private static SourceVariableSlot createVariable(int id) {
+        return new SourceVariableSlot(id, AnnotationLocation.MISSING_LOCATION, null, null, true);
+    }
+}
@@ -0,0 +1,223 @@
+package checkers.inference.solver.backend.z3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.UserError;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.microsoft.z3.BitVecExpr;
+import com.microsoft.z3.BoolExpr;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.maxsat.TestClauses;
+import checkers.inference.solver.frontend.TestLattices;
+import checkers.inference.solver.util.SolverEnvironment;
+
+/**
+ * Checks how Z3Solver uses the time budget: a small instance is solved optimally within it, while
+ * on a generated instance too hard to optimize within it, the solver returns the best model found
+ * so far flagged as not optimal, or fails if it found none.  Z3Solver#cancel() interrupts a
+ * running check, and a cancel before the check skips it, also the one that explains
+ * unsatisfiable constraints.
+ */
+public class Z3SolverTest {
+
+    private static final AnnotationMirror TOP = TestLattices.qualifier("Top");
+    private static final AnnotationMirror BOTTOM = TestLattices.qualifier("Bottom");
+
+    private ClauseSolver solver;
+
+    private Z3Solver unsatisfiableSolver;
+
+    @Before
+    public void setUp() {
+        InferenceMain.resetInstance();
+    }
+
+    @After
+    public void tearDown() {
+        if (solver != null) {
+            solver.context.close();
+        }
+        if (unsatisfiableSolver != null) {
+            unsatisfiableSolver.context.close();
+        }
+    }
+
+    @Test
+    public void testOptimalWithinBudget() {
+        // Hard: x1 | x2.  Soft: !x1 (weight 3), !x2 (weight 1).  The optimum is x2 only.
+        solver = createSolver("60000", 2);
+        solver.addClause(0, 1, 2);
+        solver.addClause(3, -1);
+        solver.addClause(1, -2);
+
+        Map<Integer, AnnotationMirror> solution = solver.solve();
+        assertTrue(solver.isOptimal());
+        assertSame(BOTTOM, solution.get(1));
+        assertSame(TOP, solution.get(2));
+    }
+
+    @Test
+    public void testBudgetExpires() {
+        int variables = 300;
+        solver = createSolver("500", variables);
+        addRandomSoftClauses(solver, variables);
+
+        Map<Integer, AnnotationMirror> solution;
+        try {
+            solution = solver.solve();
+        } catch (UserError e) {
+            // Optimize had no model yet when the budget ran out.
+            return;
+        }
+        assertFalse(solver.isOptimal());
+        assertEquals(variables, solution.size());
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        int variables = 300;
+        solver = createSolver(null, variables);
+        addRandomSoftClauses(solver, variables);
+
+        AtomicReference<Map<Integer, AnnotationMirror>> solution = new AtomicReference<>();
+        Thread thread = new Thread(() -> solution.set(solver.solve()));
+        thread.start();
+        Thread.sleep(500);
+        solver.cancel();
+        thread.join(30000);
+        assertFalse("The solver did not stop when cancelled", thread.isAlive());
+        // Interrupted, Optimize answers unknown.
+        assertFalse(solver.isOptimal());
+        assertTrue(solution.get().isEmpty());
+    }
+
+    @Test
+    public void testCancelBeforeCheck() {
+        solver = createSolver(null, 2);
+        solver.addClause(0, 1, 2);
+        solver.cancel();
+        assertTrue(solver.solve().isEmpty());
+    }
+
+    @Test
+    public void testExplainUnsatisfiable() {
+        unsatisfiableSolver = createUnsatisfiableSolver();
+        assertEquals(2, unsatisfiableSolver.explainUnsatisfiable().size());
+    }
+
+    @Test
+    public void testExplainUnsatisfiableCancelled() {
+        unsatisfiableSolver = createUnsatisfiableSolver();
+        unsatisfiableSolver.cancel();
+        assertTrue(unsatisfiableSolver.explainUnsatisfiable().isEmpty());
+    }
+
+    /** A solver of the constraints x == top and x == bottom. */
+    private static Z3Solver createUnsatisfiableSolver() {
+        ConstraintManager constraintManager = InferenceMain.getInstance().getConstraintManager();
+        VariableSlot x = new SourceVariableSlot(1, AnnotationLocation.MISSING_LOCATION, null, null, true);
+        List<Constraint> constraints = Arrays.asList(
+                constraintManager.createEqualityConstraint(x, new ConstantSlot(10, TOP)),
+                constraintManager.createEqualityConstraint(x, new ConstantSlot(11, BOTTOM)));
+        SolverEnvironment solverEnvironment = new SolverEnvironment(Collections.<String, String>emptyMap(), null);
+        try {
+            return new Z3Solver(solverEnvironment, Collections.<Slot>singletonList(x), constraints,
+                    TestBitVectorCodec.formatTranslator(TOP, BOTTOM), null);
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException("The z3 native library is not available", e);
+            return null;
+        }
+    }
+
+    /** Ten times as many random soft clauses as variables, see AnytimeMaxSatSearchTest. */
+    private static void addRandomSoftClauses(ClauseSolver solver, int variables) {
+        Random random = new Random(42);
+        for (int[] clause : TestClauses.randomClauses(variables, variables * 10, 42)) {
+            solver.addClause(1 + random.nextInt(10), clause);
+        }
+    }
+
+    /**
+     * @param timeBudget the time budget in milliseconds, or null for none
+     */
+    private ClauseSolver createSolver(String timeBudget, int variables) {
+        SolverEnvironment solverEnvironment = new SolverEnvironment(Collections.<String, String>emptyMap(), null,
+                timeBudget == null ? Long.MAX_VALUE : Long.parseLong(timeBudget));
+        try {
+            return new ClauseSolver(solverEnvironment, variables);
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException("The z3 native library is not available", e);
+            return null;
+        }
+    }
+
+    /**
+     * A Z3Solver of weighted clauses over the slots 1 to variables, where the literal x is true if
+     * slot x is top, and -x if it is bottom.
+     */
+    private static class ClauseSolver extends Z3Solver {
+
+        private final int variables;
+
+        /** Each clause with its weight first, 0 for a hard clause. */
+        private final List<int[]> weightedClauses = new ArrayList<>();
+
+        ClauseSolver(SolverEnvironment solverEnvironment, int variables) {
+            super(solverEnvironment, Collections.<Slot>emptyList(), Collections.<Constraint>emptyList(),
+                    TestBitVectorCodec.formatTranslator(TOP, BOTTOM), null);
+            this.variables = variables;
+        }
+
+        void addClause(int weight, int... literals) {
+            int[] weightedClause = new int[literals.length + 1];
+            weightedClause[0] = weight;
+            System.arraycopy(literals, 0, weightedClause, 1, literals.length);
+            weightedClauses.add(weightedClause);
+        }
+
+        @Override
+        protected void encodeAllConstraints() {
+            BitVecExpr[] slots = new BitVecExpr[variables + 1];
+            for (int i = 1; i <= variables; i++) {
+                slots[i] = context.mkBVConst(Integer.toString(i), 1);
+            }
+            for (int[] weightedClause : weightedClauses) {
+                BoolExpr[] literals = new BoolExpr[weightedClause.length - 1];
+                for (int i = 1; i < weightedClause.length; i++) {
+                    int literal = weightedClause[i];
+                    literals[i - 1] = context.mkEq(slots[Math.abs(literal)], context.mkBV(literal > 0 ? 1 : 0, 1));
+                }
+                if (weightedClause[0] == 0) {
+                    solver.Assert(context.mkOr(literals));
+                } else {
+                    solver.AssertSoft(context.mkOr(literals), weightedClause[0], "test");
+                }
+            }
+        }
+    }
+}
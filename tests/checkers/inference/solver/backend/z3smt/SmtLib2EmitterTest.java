@@ -0,0 +1,185 @@
+package checkers.inference.solver.backend.z3smt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.microsoft.z3.BitVecExpr;
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+import com.microsoft.z3.Expr;
+import com.microsoft.z3.FuncDecl;
+import com.microsoft.z3.IntExpr;
+import com.microsoft.z3.Solver;
+import com.microsoft.z3.Status;
+import com.microsoft.z3.Symbol;
+
+/**
+ * Checks the SMT-LIB2 text SmtLib2Emitter writes for z3 expressions, including bit vectors and
+ * indexed operators, that it means the same as z3's own rendering, and its structural checks for
+ * trivially true and false constraints.
+ */
+public class SmtLib2EmitterTest {
+
+    private Context ctx;
+
+    @Before
+    public void setUp() {
+        try {
+            ctx = new Context();
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException("The z3 native library is not available", e);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (ctx != null) {
+            ctx.close();
+        }
+    }
+
+    @Test
+    public void testEmit() {
+        IntExpr x = ctx.mkIntConst("3");
+        BoolExpr b = ctx.mkBoolConst("b");
+        StringWriter out = new StringWriter();
+        SmtLib2Emitter emitter = new SmtLib2Emitter(out);
+
+        emitter.assertHard(ctx.mkAnd(ctx.mkLe(ctx.mkInt(0), x), ctx.mkEq(x, ctx.mkInt(-2))));
+        emitter.assertNamed(ctx.mkOr(b, ctx.mkNot(ctx.mkEq(x, ctx.mkInt(1)))), "SubtypeConstraint1");
+        emitter.assertSoft(b, 2);
+        emitter.close();
+
+        // Each constant is declared once, before its first use.
+        assertEquals("(declare-fun |3| () Int)\n"
+                + "(assert (and (<= 0 |3|) (= |3| (- 2))))\n"
+                + "(declare-fun |b| () Bool)\n"
+                + "(assert (! (or |b| (not (= |3| 1))) :named SubtypeConstraint1))\n"
+                + "(assert-soft |b| :weight 2)\n", out.toString());
+    }
+
+    @Test
+    public void testBitVectors() {
+        BitVecExpr v = ctx.mkBVConst("v", 8);
+        BoolExpr b = ctx.mkBoolConst("b");
+        BoolExpr c = ctx.mkBoolConst("c");
+        StringWriter out = new StringWriter();
+        SmtLib2Emitter emitter = new SmtLib2Emitter(out);
+
+        emitter.assertHard(ctx.mkBVULE(v, ctx.mkBV(200, 8)));
+        emitter.assertHard(ctx.mkEq(ctx.mkExtract(3, 0, v), ctx.mkBV(5, 4)));
+        emitter.assertHard(ctx.mkIff(b, c));
+        emitter.close();
+
+        String text = out.toString();
+        assertTrue(text, text.startsWith("(declare-fun |v| () (_ BitVec 8))\n"
+                + "(assert (bvule |v| (_ bv200 8)))\n"));
+        // z3 renders the indexed extract itself, with v unquoted, which is the same symbol.
+        assertTrue(text, text.contains("(assert (= ((_ extract 3 0) v) (_ bv5 4)))\n"));
+        assertTrue(text, text.endsWith("(assert (= |b| |c|))\n"));
+        assertEquals(text, 1, occurrences(text, "(declare-fun |v|"));
+        assertEquals(text, 1, occurrences(text, "(declare-fun |b|"));
+        assertEquals(text, 1, occurrences(text, "(declare-fun |c|"));
+    }
+
+    @Test
+    public void testDeclaresOnce() {
+        IntExpr x = ctx.mkIntConst("x");
+        StringWriter out = new StringWriter();
+        SmtLib2Emitter emitter = new SmtLib2Emitter(out);
+
+        emitter.assertHard(ctx.mkLe(ctx.mkInt(0), x));
+        emitter.assertSoft(ctx.mkEq(x, ctx.mkInt(1)), 1);
+        emitter.assertNamed(ctx.mkLe(x, ctx.mkInt(2)), "c1");
+        emitter.close();
+
+        assertEquals(out.toString(), 1, occurrences(out.toString(), "(declare-fun |x|"));
+    }
+
+    /**
+     * Each expression means the same when parsed from the emitted text as when parsed from the
+     * text of z3's simplify().toString(), which the emitter replaces.
+     */
+    @Test
+    public void testSameAsSimplifiedText() {
+        IntExpr x = ctx.mkIntConst("x");
+        BoolExpr b = ctx.mkBoolConst("b");
+        BoolExpr c = ctx.mkBoolConst("c");
+        BitVecExpr v = ctx.mkBVConst("v", 8);
+        Expr[] constants = {x, b, c, v};
+        BoolExpr[] exprs = {
+                ctx.mkAnd(ctx.mkLe(ctx.mkInt(0), x), ctx.mkNot(ctx.mkEq(x, ctx.mkInt(-2)))),
+                ctx.mkOr(b, ctx.mkNot(ctx.mkEq(x, ctx.mkInt(1)))),
+                ctx.mkEq(ctx.mkExtract(3, 0, v), ctx.mkBV(5, 4)),
+                ctx.mkBVULE(v, ctx.mkBV(200, 8)),
+                ctx.mkIff(b, c),
+                ctx.mkImplies(c, ctx.mkEq(ctx.mkITE(b, ctx.mkBV(1, 8), v), ctx.mkBV(3, 8))),
+        };
+
+        for (BoolExpr expr : exprs) {
+            StringWriter out = new StringWriter();
+            SmtLib2Emitter emitter = new SmtLib2Emitter(out);
+            emitter.assertHard(expr);
+            emitter.close();
+
+            BoolExpr emitted = parse(out.toString());
+            BoolExpr simplified = parse("(assert " + expr.simplify().toString() + ")", constants);
+            Solver solver = ctx.mkSolver();
+            solver.add(ctx.mkNot(ctx.mkEq(emitted, simplified)));
+            assertEquals(out.toString(), Status.UNSATISFIABLE, solver.check());
+        }
+    }
+
+    /**
+     * @param constants the constants the text uses without declaring them
+     * @return the conjunction of the assertions of the text
+     */
+    private BoolExpr parse(String text, Expr... constants) {
+        Symbol[] names = new Symbol[constants.length];
+        FuncDecl[] decls = new FuncDecl[constants.length];
+        for (int i = 0; i < constants.length; i++) {
+            decls[i] = constants[i].getFuncDecl();
+            names[i] = decls[i].getName();
+        }
+        // One conjunction in z3 4.7, an array of the assertions in later versions.
+        Object parsed = ctx.parseSMTLIB2String(text, null, null, names, decls);
+        return parsed instanceof BoolExpr[] ? ctx.mkAnd((BoolExpr[]) parsed) : (BoolExpr) parsed;
+    }
+
+    private static int occurrences(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testTrivialConstraints() {
+        IntExpr x = ctx.mkIntConst("x");
+        BoolExpr tautology = ctx.mkAnd(ctx.mkEq(ctx.mkInt(0), ctx.mkInt(0)), ctx.mkEq(ctx.mkFalse(), ctx.mkFalse()),
+                ctx.mkEq(x, x));
+        BoolExpr contradiction = ctx.mkAnd(ctx.mkEq(x, ctx.mkInt(1)), ctx.mkEq(ctx.mkInt(0), ctx.mkInt(1)));
+        BoolExpr neither = ctx.mkEq(x, ctx.mkInt(0));
+
+        assertTrue(SmtLib2Emitter.isTriviallyTrue(tautology));
+        assertTrue(SmtLib2Emitter.isTriviallyTrue(ctx.mkImplies(contradiction, neither)));
+        assertTrue(SmtLib2Emitter.isTriviallyTrue(ctx.mkNot(contradiction)));
+        assertFalse(SmtLib2Emitter.isTriviallyFalse(tautology));
+
+        assertTrue(SmtLib2Emitter.isTriviallyFalse(contradiction));
+        assertTrue(SmtLib2Emitter.isTriviallyFalse(ctx.mkOr(contradiction, ctx.mkFalse())));
+        assertFalse(SmtLib2Emitter.isTriviallyTrue(contradiction));
+
+        assertFalse(SmtLib2Emitter.isTriviallyTrue(neither));
+        assertFalse(SmtLib2Emitter.isTriviallyFalse(neither));
+    }
+}
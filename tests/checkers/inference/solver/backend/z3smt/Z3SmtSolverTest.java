@@ -0,0 +1,219 @@
+package checkers.inference.solver.backend.z3smt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.UserError;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.microsoft.z3.BoolExpr;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.ConstraintEncoderFactory;
+import checkers.inference.solver.backend.maxsat.TestClauses;
+import checkers.inference.solver.backend.z3smt.Z3SmtSolver.Z3SolverEngineArg;
+import checkers.inference.solver.backend.z3smt.encoder.Z3SmtSoftConstraintEncoder;
+import checkers.inference.solver.frontend.TestLattices;
+import checkers.inference.solver.util.SolverEnvironment;
+
+/**
+ * Checks how Z3SmtSolver passes the time budget to z3 in optimizing mode: a small instance is
+ * solved optimally within it, while on a generated instance too hard to optimize within it, z3
+ * stops at its own timeout and the solver returns the best model z3 printed, flagged as not
+ * optimal, or fails if z3 had none.  Needs z3 on the PATH.
+ */
+public class Z3SmtSolverTest {
+
+    private static final AnnotationMirror TOP = TestLattices.qualifier("Top");
+    private static final AnnotationMirror BOTTOM = TestLattices.qualifier("Bottom");
+
+    @Before
+    public void setUp() throws InterruptedException {
+        try {
+            new ProcessBuilder(Z3SmtSolver.z3Program, "-version").start().waitFor();
+        } catch (IOException e) {
+            Assume.assumeNoException("z3 is not on the PATH", e);
+        }
+        InferenceMain.resetInstance();
+    }
+
+    @Test
+    public void testOptimalWithinBudget() {
+        // Hard: x1 | x2.  Soft: !x1 (weight 3), !x2 (weight 1).  The optimum is x2 only.
+        ClauseSolver solver = createSolver("60000", 2);
+        solver.addClause(0, 1, 2);
+        solver.addClause(3, -1);
+        solver.addClause(1, -2);
+
+        Map<Integer, AnnotationMirror> solution = solver.solve();
+        assertTrue(solver.isOptimal());
+        assertSame(BOTTOM, solution.get(1));
+        assertSame(TOP, solution.get(2));
+    }
+
+    @Test
+    public void testBudgetExpires() {
+        // Ten times as many random soft clauses as variables, see AnytimeMaxSatSearchTest.
+        int variables = 300;
+        ClauseSolver solver = createSolver("500", variables);
+        Random random = new Random(42);
+        for (int[] clause : TestClauses.randomClauses(variables, variables * 10, 42)) {
+            solver.addClause(1 + random.nextInt(10), clause);
+        }
+
+        Map<Integer, AnnotationMirror> solution;
+        try {
+            solution = solver.solve();
+        } catch (UserError e) {
+            // z3 printed no model when it stopped.
+            return;
+        }
+        assertTrue(solver.timedOut);
+        assertFalse(solver.isOptimal());
+        assertEquals(variables, solution.size());
+    }
+
+    private static ClauseSolver createSolver(String timeBudget, int variables) {
+        Map<String, String> configuration = new HashMap<>();
+        configuration.put(Z3SolverEngineArg.optimizingMode.name(), "true");
+        try {
+            return new ClauseSolver(new SolverEnvironment(configuration, null, Long.parseLong(timeBudget)), variables);
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException("The z3 native library is not available", e);
+            return null;
+        }
+    }
+
+    /**
+     * A Z3SmtSolver of weighted clauses over the slots 1 to variables, where the literal x is
+     * true if slot x is top, and -x if it is bottom.
+     */
+    private static class ClauseSolver extends Z3SmtSolver<BoolExpr, Boolean> {
+
+        private final int variables;
+
+        /** Each clause with its weight first, 0 for a hard clause. */
+        private final List<int[]> weightedClauses = new ArrayList<>();
+
+        ClauseSolver(SolverEnvironment solverEnvironment, int variables) {
+            super(solverEnvironment, Collections.<Slot>emptyList(), Collections.<Constraint>emptyList(),
+                    new ClauseFormatTranslator(), null);
+            this.variables = variables;
+        }
+
+        void addClause(int weight, int... literals) {
+            int[] weightedClause = new int[literals.length + 1];
+            weightedClause[0] = weight;
+            System.arraycopy(literals, 0, weightedClause, 1, literals.length);
+            weightedClauses.add(weightedClause);
+        }
+
+        @Override
+        protected void encodeAllConstraints() {
+            encodeClauses(false);
+        }
+
+        @Override
+        protected void encodeAllSoftConstraints() {
+            encodeClauses(true);
+        }
+
+        private void encodeClauses(boolean soft) {
+            for (int[] weightedClause : weightedClauses) {
+                if ((weightedClause[0] != 0) != soft) {
+                    continue;
+                }
+                BoolExpr[] literals = new BoolExpr[weightedClause.length - 1];
+                for (int i = 1; i < weightedClause.length; i++) {
+                    int literal = weightedClause[i];
+                    BoolExpr slot = ctx.mkBoolConst(Integer.toString(Math.abs(literal)));
+                    literals[i - 1] = literal > 0 ? slot : ctx.mkNot(slot);
+                }
+                if (soft) {
+                    emitter.assertSoft(ctx.mkOr(literals), weightedClause[0]);
+                } else {
+                    emitter.assertHard(ctx.mkOr(literals));
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the models of a {@link ClauseSolver}, which encodes its clauses itself.
+     */
+    private static class ClauseFormatTranslator extends Z3SmtFormatTranslator<BoolExpr, Boolean> {
+
+        ClauseFormatTranslator() {
+            super(null);
+        }
+
+        @Override
+        protected void finishInitializingEncoders() {
+            // No constraints are encoded through the encoders.
+        }
+
+        @Override
+        protected ConstraintEncoderFactory<BoolExpr> createConstraintEncoderFactory() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected BoolExpr serializeVariableSlot(VariableSlot slot) {
+            return ctx.mkBoolConst(Integer.toString(slot.getId()));
+        }
+
+        @Override
+        protected BoolExpr serializeConstantSlot(ConstantSlot slot) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected Z3SmtSoftConstraintEncoder<BoolExpr, Boolean> createSoftConstraintEncoder() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BoolExpr encodeSlotWellformednessConstraint(VariableSlot slot) {
+            return ctx.mkTrue();
+        }
+
+        @Override
+        public BoolExpr encodeSlotPreferenceConstraint(VariableSlot slot) {
+            return ctx.mkTrue();
+        }
+
+        @Override
+        public Map<Integer, AnnotationMirror> decodeSolution(List<String> model, ProcessingEnvironment processingEnv) {
+            Map<Integer, AnnotationMirror> solution = new HashMap<>();
+            for (String line : model) {
+                String[] nameAndValue = line.split(" ");
+                solution.put(Integer.valueOf(nameAndValue[0]), decodeSolution(Boolean.valueOf(nameAndValue[1]), processingEnv));
+            }
+            return solution;
+        }
+
+        @Override
+        public AnnotationMirror decodeSolution(Boolean solution, ProcessingEnvironment processingEnvironment) {
+            return solution ? TOP : BOTTOM;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package checkers.inference.solver.frontend;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Name;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+
+/**
+ * Qualifiers and lattices for the tests of solvers and presolvers, which do not need the
+ * qualifiers of a real type system.
+ */
+public final class TestLattices {
+
+    /** CHAIN[x][y]: x is a subtype of y, in the chain top > middle > bottom. */
+    public static final boolean[][] CHAIN = {
+            {true, false, false},
+            {true, true, false},
+            {true, true, true}};
+
+    /** DIAMOND[x][y]: x is a subtype of y, in the diamond top > a, b > bottom. */
+    public static final boolean[][] DIAMOND = {
+            {true, false, false, false},
+            {true, true, false, false},
+            {true, false, true, false},
+            {true, true, true, true}};
+
+    private TestLattices() {
+    }
+
+    /**
+     * @return an annotation test.qual.simpleName without elements.  Its type and element only
+     * answer what is needed to look up the name of the annotation, and the annotation is only
+     * equal to itself.
+     */
+    public static AnnotationMirror qualifier(String simpleName) {
+        String qualifiedName = "test.qual." + simpleName;
+        TypeElement element = proxy(TypeElement.class, qualifiedName, (method, args) -> {
+            switch (method) {
+                case "getQualifiedName":
+                    return name(qualifiedName);
+                case "getSimpleName":
+                    return name(simpleName);
+                case "getKind":
+                    return ElementKind.ANNOTATION_TYPE;
+                default:
+                    return null;
+            }
+        });
+        DeclaredType type = proxy(DeclaredType.class, qualifiedName, (method, args) -> {
+            switch (method) {
+                case "asElement":
+                    return element;
+                case "getKind":
+                    return TypeKind.DECLARED;
+                case "getTypeArguments":
+                    return Collections.emptyList();
+                default:
+                    return null;
+            }
+        });
+        return proxy(AnnotationMirror.class, "@" + qualifiedName, (method, args) -> {
+            switch (method) {
+                case "getAnnotationType":
+                    return type;
+                case "getElementValues":
+                    return Collections.emptyMap();
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * @return count different qualifiers, named Q0, Q1 and so on
+     */
+    public static List<AnnotationMirror> qualifiers(int count) {
+        List<AnnotationMirror> qualifiers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            qualifiers.add(qualifier("Q" + i));
+        }
+        return qualifiers;
+    }
+
+    /**
+     * @param types the qualifiers of the lattice, the first one the top and the last one the bottom
+     * @param subtype subtype[x][y] is true if types.get(x) is a subtype of types.get(y)
+     * @return the lattice of the given qualifiers, without a qualifier hierarchy
+     */
+    public static Lattice lattice(List<AnnotationMirror> types, boolean[][] subtype) {
+        Map<AnnotationMirror, Collection<AnnotationMirror>> subType = new HashMap<>();
+        Map<AnnotationMirror, Collection<AnnotationMirror>> superType = new HashMap<>();
+        Map<AnnotationMirror, Collection<AnnotationMirror>> incomparableType = new HashMap<>();
+        for (int i = 0; i < types.size(); i++) {
+            Set<AnnotationMirror> subtypes = new HashSet<>();
+            Set<AnnotationMirror> supertypes = new HashSet<>();
+            Set<AnnotationMirror> incomparables = new HashSet<>();
+            for (int j = 0; j < types.size(); j++) {
+                if (subtype[j][i]) {
+                    subtypes.add(types.get(j));
+                }
+                if (subtype[i][j]) {
+                    supertypes.add(types.get(j));
+                }
+                if (!subtype[i][j] && !subtype[j][i]) {
+                    incomparables.add(types.get(j));
+                }
+            }
+            subType.put(types.get(i), subtypes);
+            superType.put(types.get(i), supertypes);
+            if (!incomparables.isEmpty()) {
+                incomparableType.put(types.get(i), incomparables);
+            }
+        }
+        return new Lattice(subType, superType, incomparableType, new LinkedHashSet<>(types),
+                types.get(0), types.get(types.size() - 1), types.size(),
+                Collections.<AnnotationMirror>emptySet(), null);
+    }
+
+    /**
+     * @return the index of every qualifier in types, as the MaxSAT encoders number them
+     */
+    public static Map<AnnotationMirror, Integer> typeToInt(List<AnnotationMirror> types) {
+        Map<AnnotationMirror, Integer> typeToInt = new HashMap<>();
+        for (int i = 0; i < types.size(); i++) {
+            typeToInt.put(types.get(i), i);
+        }
+        return typeToInt;
+    }
+
+    private static Name name(String value) {
+        return proxy(Name.class, value, (method, args) -> {
+            switch (method) {
+                case "contentEquals":
+                    return value.contentEquals((CharSequence) args[0]);
+                case "length":
+                    return value.length();
+                case "charAt":
+                    return value.charAt((Integer) args[0]);
+                case "subSequence":
+                    return value.subSequence((Integer) args[0], (Integer) args[1]);
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /** Answers a call to the given method with the given arguments, or null if it is not supported. */
+    private interface Answer {
+        Object answer(String method, Object[] args);
+    }
+
+    /**
+     * @return an instance of type that is only equal to itself, prints as description, and
+     * answers all other methods with answer
+     */
+    private static <T> T proxy(Class<T> type, String description, Answer answer) {
+        return type.cast(Proxy.newProxyInstance(TestLattices.class.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return description;
+                        default:
+                            Object result = answer.answer(method.getName(), args);
+                            if (result == null) {
+                                throw new UnsupportedOperationException(
+                                        method.getName() + " of " + description);
+                            }
+                            return result;
+                    }
+                }));
+    }
+}
@@ -0,0 +1,193 @@
+package checkers.inference.solver.strategy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.UserError;
+import org.junit.Before;
+import org.junit.Test;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.InferenceResult;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.solver.SolverEngine;
+import checkers.inference.solver.SolverEngine.SolverEngineArg;
+import checkers.inference.solver.backend.AbstractFormatTranslator;
+import checkers.inference.solver.backend.Solver;
+import checkers.inference.solver.backend.SolverFactory;
+import checkers.inference.solver.backend.encoder.ConstraintEncoderFactory;
+import checkers.inference.solver.frontend.TestLattices;
+import checkers.inference.solver.strategy.PortfolioSolvingStrategy.PortfolioSolvingStrategyArg;
+import checkers.inference.solver.util.SolverEnvironment;
+import checkers.inference.solver.util.Statistics;
+
+/**
+ * Races fake backends that answer after a given delay, or only when they are cancelled.
+ */
+public class PortfolioSolvingStrategyTest {
+
+    private final AnnotationMirror top = TestLattices.qualifier("Top");
+    private final AnnotationMirror bottom = TestLattices.qualifier("Bottom");
+    private final Map<String, FakeSolver> solvers = new HashMap<>();
+    private ConstraintManager constraintManager;
+    private SourceVariableSlot variable;
+
+    @Before
+    public void setUp() {
+        constraintManager = InferenceMain.resetInstance().getConstraintManager();
+        Statistics.clearStatistics();
+        variable = new SourceVariableSlot(1, AnnotationLocation.MISSING_LOCATION, null, null, true);
+    }
+
+    @Test
+    public void testFirstAnswerWins() {
+        // The configured backend never answers on its own.
+        solvers.put("Slow", new FakeSolver(Long.MAX_VALUE, solution(top), true));
+        solvers.put("Fast", new FakeSolver(0, solution(bottom), true));
+
+        long start = System.currentTimeMillis();
+        InferenceResult result = solve(config("Slow", "Fast"), Collections.<Constraint>emptyList());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertTrue(result.hasSolution());
+        assertSame(bottom, result.getSolutionForVariable(variable.getId()));
+        assertTrue(solvers.get("Slow").isCancelled());
+        assertEquals(Long.valueOf(1), Statistics.getStatistics().get("portfolio_winner_fast"));
+    }
+
+    @Test
+    public void testUnsatisfiableWins() {
+        solvers.put("Slow", new FakeSolver(Long.MAX_VALUE, solution(top), true));
+        solvers.put("Unsat", new FakeSolver(0, null, true));
+
+        InferenceResult result = solve(config("Slow", "Unsat"), Collections.<Constraint>emptyList());
+        assertFalse(result.hasSolution());
+        assertEquals(FakeSolver.EXPLANATION, result.getUnsatisfiableConstraints());
+    }
+
+    @Test
+    public void testUnknownDoesNotWin() {
+        // Like z3 when it answers unknown, without a model.
+        solvers.put("Unknown", new FakeSolver(0, Collections.<Integer, AnnotationMirror>emptyMap(), false));
+        solvers.put("Later", new FakeSolver(100, solution(top), true));
+
+        InferenceResult result = solve(config("Unknown", "Later"), Collections.<Constraint>emptyList());
+        assertSame(top, result.getSolutionForVariable(variable.getId()));
+        assertEquals(Long.valueOf(1), Statistics.getStatistics().get("portfolio_winner_later"));
+    }
+
+    @Test(expected = UserError.class)
+    public void testNoSolutionFails() {
+        solvers.put("Unknown", new FakeSolver(0, Collections.<Integer, AnnotationMirror>emptyMap(), false));
+        solvers.put("AlsoUnknown", new FakeSolver(100, Collections.<Integer, AnnotationMirror>emptyMap(), false));
+
+        solve(config("Unknown", "AlsoUnknown"), Collections.<Constraint>emptyList());
+    }
+
+    @Test
+    public void testLeastCostWithinBudget() {
+        // Neither solution is proven optimal, the later one satisfies the preference.
+        solvers.put("Worse", new FakeSolver(0, solution(bottom), false));
+        solvers.put("Better", new FakeSolver(100, solution(top), false));
+        Map<String, String> config = config("Worse", "Better");
+        config.put(SolverEngineArg.timeBudget.name(), "10000");
+        ConstantSlot goal = new ConstantSlot(1000, top);
+
+        InferenceResult result = solve(config, Collections.<Constraint>singletonList(
+                constraintManager.createPreferenceConstraint(variable, goal, 10)));
+        assertSame(top, result.getSolutionForVariable(variable.getId()));
+        assertFalse(result.isOptimal());
+        assertEquals(Long.valueOf(1), Statistics.getStatistics().get("portfolio_winner_better"));
+    }
+
+    private InferenceResult solve(Map<String, String> config, Collection<Constraint> constraints) {
+        SolverEnvironment solverEnvironment = new SolverEnvironment(config, null, SolverEngine.getTimeBudget(config));
+        String configured = config.get(SolverEngineArg.solver.name());
+        PortfolioSolvingStrategy strategy = new PortfolioSolvingStrategy(factory(configured), this::factory);
+        return strategy.solve(solverEnvironment, Collections.<Slot>singletonList(variable), constraints, null);
+    }
+
+    private SolverFactory factory(String name) {
+        return (solverEnvironment, slots, constraints, lattice) -> solvers.get(name);
+    }
+
+    private static Map<String, String> config(String solver, String portfolio) {
+        Map<String, String> config = new HashMap<>();
+        config.put(SolverEngineArg.solver.name(), solver);
+        config.put(PortfolioSolvingStrategyArg.portfolio.name(), portfolio);
+        return config;
+    }
+
+    private Map<Integer, AnnotationMirror> solution(AnnotationMirror type) {
+        return Collections.singletonMap(variable.getId(), type);
+    }
+
+    /** Answers after the given delay, unless it is cancelled first. */
+    private static class FakeSolver extends Solver<FakeFormatTranslator> {
+        static final Collection<Constraint> EXPLANATION = Collections.emptySet();
+
+        private final long delayMillis;
+        private final Map<Integer, AnnotationMirror> solutions;
+
+        FakeSolver(long delayMillis, Map<Integer, AnnotationMirror> solutions, boolean optimal) {
+            super(new SolverEnvironment(Collections.<String, String>emptyMap(), null),
+                    Collections.<Slot>emptyList(), Collections.<Constraint>emptyList(),
+                    new FakeFormatTranslator(), null);
+            this.delayMillis = delayMillis;
+            this.solutions = solutions;
+            this.optimal = optimal;
+        }
+
+        @Override
+        public Map<Integer, AnnotationMirror> solve() {
+            long end = delayMillis == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + delayMillis;
+            while (System.currentTimeMillis() < end && !isCancelled()) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return null;
+                }
+            }
+            return isCancelled() ? null : solutions;
+        }
+
+        @Override
+        public Collection<Constraint> explainUnsatisfiable() {
+            return EXPLANATION;
+        }
+
+        @Override
+        protected void encodeAllConstraints() {
+        }
+    }
+
+    private static class FakeFormatTranslator extends AbstractFormatTranslator<Void, Void, Void> {
+        FakeFormatTranslator() {
+            super(null);
+        }
+
+        @Override
+        protected ConstraintEncoderFactory<Void> createConstraintEncoderFactory() {
+            return null;
+        }
+
+        @Override
+        public AnnotationMirror decodeSolution(Void solution, ProcessingEnvironment processingEnvironment) {
+            return null;
+        }
+    }
+}
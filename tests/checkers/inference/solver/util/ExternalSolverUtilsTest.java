@@ -0,0 +1,74 @@
+package checkers.inference.solver.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that runExternalSolver kills the external solver when the timeout runs out, and when the
+ * waiting thread is interrupted.  It only returns once the output of the solver is closed, so
+ * returning long before the solver would have finished shows that it was killed.  Needs sleep on
+ * the PATH.
+ */
+public class ExternalSolverUtilsTest {
+
+    private static final String[] COMMAND = {"sleep", "60"};
+
+    @Before
+    public void setUp() throws InterruptedException {
+        try {
+            new ProcessBuilder("sleep", "0").start().waitFor();
+        } catch (IOException e) {
+            Assume.assumeNoException("sleep is not on the PATH", e);
+        }
+    }
+
+    @Test
+    public void testTimeoutKills() {
+        long start = System.currentTimeMillis();
+        int status = ExternalSolverUtils.runExternalSolver(COMMAND, ExternalSolverUtilsTest::readAll,
+                ExternalSolverUtilsTest::readAll, 200);
+        assertEquals(ExternalSolverUtils.TIMEOUT_EXIT_STATUS, status);
+        assertTrue(System.currentTimeMillis() - start < 30000);
+    }
+
+    @Test
+    public void testInterruptKills() throws InterruptedException {
+        AtomicInteger status = new AtomicInteger();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread thread = new Thread(() -> {
+            status.set(ExternalSolverUtils.runExternalSolver(COMMAND, ExternalSolverUtilsTest::readAll,
+                    ExternalSolverUtilsTest::readAll, Long.MAX_VALUE));
+            interrupted.set(Thread.currentThread().isInterrupted());
+        });
+        long start = System.currentTimeMillis();
+        thread.start();
+        Thread.sleep(200);
+        thread.interrupt();
+        thread.join(30000);
+
+        assertTrue(System.currentTimeMillis() - start < 30000);
+        assertEquals(ExternalSolverUtils.TIMEOUT_EXIT_STATUS, status.get());
+        // The interrupt status is kept for the caller.
+        assertTrue(interrupted.get());
+    }
+
+    private static void readAll(BufferedReader reader) {
+        try {
+            while (reader.readLine() != null) {
+                // Discard the output.
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package checkers.inference.solver.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.type.DeclaredType;
+
+import org.junit.Test;
+
+import checkers.inference.solver.util.SolutionReporter.FormattingReporter;
+import checkers.inference.solver.util.SolutionReporter.JsonLinesReporter;
+import checkers.inference.solver.util.SolutionReporter.TableReporter;
+import checkers.inference.solver.util.SolutionReporter.TsvReporter;
+
+public class SolutionReporterTest {
+
+    private static final Function<AnnotationMirror, String> FORMATTER = AnnotationMirror::toString;
+
+    private static final String NL = System.lineSeparator();
+
+    /** An annotation mirror that is only ever formatted. */
+    private static AnnotationMirror annotation(final String name) {
+        return new AnnotationMirror() {
+            @Override
+            public DeclaredType getAnnotationType() {
+                return null;
+            }
+
+            @Override
+            public Map<? extends ExecutableElement, ? extends AnnotationValue> getElementValues() {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+
+    /** The same solutions, inserted in opposite orders. */
+    private static Map<Integer, AnnotationMirror> solutions(boolean reversed) {
+        AnnotationMirror top = annotation("@Top");
+        AnnotationMirror bottom = annotation("@Bottom \"quoted\"");
+        int[] ids = { 3, 120, 7, 45, 1000 };
+        Map<Integer, AnnotationMirror> solutions = new LinkedHashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            int index = reversed ? ids.length - 1 - i : i;
+            solutions.put(ids[index], ids[index] % 2 == 0 ? top : bottom);
+        }
+        return solutions;
+    }
+
+    private static String report(FormattingReporter reporter, Map<Integer, AnnotationMirror> solutions)
+            throws IOException {
+        StringWriter out = new StringWriter();
+        reporter.report(solutions, out);
+        return out.toString();
+    }
+
+    private static void assertDeterministic(FormattingReporter reporter, String expected) throws IOException {
+        assertEquals(expected, report(reporter, solutions(false)));
+        assertEquals(expected, report(reporter, solutions(true)));
+        assertEquals(expected, report(reporter, new HashMap<>(solutions(true))));
+    }
+
+    @Test
+    public void testTable() throws IOException {
+        assertDeterministic(new TableReporter(FORMATTER, null),
+                "======================= Solutions =======================" + NL
+                + "SlotID: 3     Annotation: @Bottom \"quoted\"" + NL
+                + "SlotID: 7     Annotation: @Bottom \"quoted\"" + NL
+                + "SlotID: 45    Annotation: @Bottom \"quoted\"" + NL
+                + "SlotID: 120   Annotation: @Top" + NL
+                + "SlotID: 1000  Annotation: @Top" + NL
+                + "=========================================================" + NL);
+    }
+
+    @Test
+    public void testTsv() throws IOException {
+        assertDeterministic(new TsvReporter(FORMATTER, null),
+                "3\t@Bottom \"quoted\"\n"
+                + "7\t@Bottom \"quoted\"\n"
+                + "45\t@Bottom \"quoted\"\n"
+                + "120\t@Top\n"
+                + "1000\t@Top\n");
+    }
+
+    @Test
+    public void testJsonLines() throws IOException {
+        assertDeterministic(new JsonLinesReporter(FORMATTER, null),
+                "{\"slot\": 3, \"annotation\": \"@Bottom \\\"quoted\\\"\"}\n"
+                + "{\"slot\": 7, \"annotation\": \"@Bottom \\\"quoted\\\"\"}\n"
+                + "{\"slot\": 45, \"annotation\": \"@Bottom \\\"quoted\\\"\"}\n"
+                + "{\"slot\": 120, \"annotation\": \"@Top\"}\n"
+                + "{\"slot\": 1000, \"annotation\": \"@Top\"}\n");
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        Map<Integer, AnnotationMirror> empty = Collections.emptyMap();
+        assertEquals("", report(new TsvReporter(FORMATTER, null), empty));
+        assertEquals("", report(new JsonLinesReporter(FORMATTER, null), empty));
+        assertEquals("======================= Solutions =======================" + NL
+                + "=========================================================" + NL,
+                report(new TableReporter(FORMATTER, null), empty));
+    }
+}
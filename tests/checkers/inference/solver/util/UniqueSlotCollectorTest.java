@@ -0,0 +1,48 @@
+package checkers.inference.solver.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.solver.backend.maxsat.WellFormednessConstraint;
+import checkers.inference.solver.util.PrintUtils.UniqueSlotCollector;
+
+/**
+ * Checks that the slots of restrictions of the encoding without a serialization, like
+ * well-formedness, are collected as related slots of an explanation.
+ */
+public class UniqueSlotCollectorTest {
+
+    private ConstraintManager constraintManager;
+
+    @Before
+    public void setUp() {
+        constraintManager = InferenceMain.resetInstance().getConstraintManager();
+    }
+
+    @Test
+    public void testCollectsWellFormednessSlot() {
+        Slot x = createVariable(1);
+        Slot y = createVariable(2);
+        Slot z = createVariable(3);
+
+        UniqueSlotCollector collector = new UniqueSlotCollector();
+        collector.collect(constraintManager.createSubtypeConstraint(x, y));
+        collector.collect(new WellFormednessConstraint(z));
+
+        assertEquals(new LinkedHashSet<>(Arrays.asList(x, y, z)), collector.getSlots());
+    }
+
+    private static Slot createVariable(int id) {
+        return new SourceVariableSlot(id, AnnotationLocation.MISSING_LOCATION, null, null, true);
+    }
+}
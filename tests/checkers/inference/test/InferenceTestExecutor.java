@@ -24,6 +24,14 @@ public class InferenceTestExecutor {
     }
 
     public InferenceTestResult runTest(InferenceTestConfiguration config) {
+        return runTest(config, new ArrayList<String>());
+    }
+
+    /**
+     * Runs the test as {@link #runTest(InferenceTestConfiguration)}, passing inferenceOptions to
+     * the inference script.
+     */
+    public InferenceTestResult runTest(InferenceTestConfiguration config, List<String> inferenceOptions) {
 
         InferenceTestPhase lastPhaseRun;
         boolean failed;
@@ -36,7 +44,7 @@ public class InferenceTestExecutor {
         //run inference over the java files
         InferenceResult inferenceResult = null;
         if (!failed) {
-            inferenceResult = infer(config);
+            inferenceResult = infer(config, inferenceOptions);
             failed = inferenceResult.didFail();
             lastPhaseRun = InferenceTestPhase.INFER;
         }
@@ -60,6 +68,14 @@ public class InferenceTestExecutor {
     }
 
     public static InferenceResult infer(InferenceTestConfiguration configuration) {
+        return infer(configuration, new ArrayList<String>());
+    }
+
+    /**
+     * Runs inference as {@link #infer(InferenceTestConfiguration)}, passing inferenceOptions to
+     * the inference script in addition to the options of the configuration.
+     */
+    public static InferenceResult infer(InferenceTestConfiguration configuration, List<String> inferenceOptions) {
         TestConfiguration initialConfig = configuration.getInitialTypecheckConfig();
 
         ensureDirectoryExists(configuration.getAnnotatedSourceDir());
@@ -92,6 +108,7 @@ public class InferenceTestExecutor {
         if (configuration.getPathToAfuScripts() != null && !configuration.getPathToAfuScripts().equals("")) {
             options.add("--pathToAfuScripts=" + configuration.getPathToAfuScripts());
         }
+        options.addAll(inferenceOptions);
 
         options.add("--");
 
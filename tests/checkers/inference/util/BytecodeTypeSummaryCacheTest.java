@@ -0,0 +1,136 @@
+package checkers.inference.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes summaries of a fake archive, and checks which later caches hit or miss them.
+ */
+public class BytecodeTypeSummaryCacheTest {
+
+    private static final String CHECKER = "test.TestChecker";
+    private static final List<String> QUALIFIERS = Arrays.asList("test.qual.Top", "test.qual.Bottom");
+    private static final String ELEMENT = "CLASS:test.Lib#METHOD:get()";
+    private static final List<String[]> ENTRY = Arrays.asList(
+            new String[] {"test.qual.Top"}, new String[0], new String[] {"test.qual.Bottom"});
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cacheDir;
+    private File archive;
+    private URI archiveUri;
+    private File stub;
+    private Map<String, String> options;
+    private File dependency;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDir = folder.newFolder("cache");
+        archive = folder.newFile("lib.jar");
+        Files.write(archive.toPath(), "version 1".getBytes(StandardCharsets.UTF_8));
+        archiveUri = archive.toURI();
+        stub = folder.newFile("lib.astub");
+        Files.write(stub.toPath(), "class Lib {}".getBytes(StandardCharsets.UTF_8));
+        options = new HashMap<>();
+        options.put("stubs", stub.getPath());
+        dependency = folder.newFile("dependency.jar");
+        Files.write(dependency.toPath(), "version 1".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testHit() {
+        BytecodeTypeSummaryCache first = cache(QUALIFIERS, options);
+        assertNull(first.lookup(archiveUri, ELEMENT));
+        first.add(archiveUri, ELEMENT, ENTRY);
+        // Entries recorded in this run are found before they are written.
+        assertEntry(first.lookup(archiveUri, ELEMENT));
+        first.write();
+
+        BytecodeTypeSummaryCache second = cache(QUALIFIERS, options);
+        assertEntry(second.lookup(archiveUri, ELEMENT));
+        assertNull(second.lookup(archiveUri, "CLASS:test.Lib#METHOD:set()"));
+    }
+
+    @Test
+    public void testMissesOtherArchive() throws IOException {
+        write();
+        Files.write(archive.toPath(), "version 2".getBytes(StandardCharsets.UTF_8));
+        assertNull(cache(QUALIFIERS, options).lookup(archiveUri, ELEMENT));
+    }
+
+    @Test
+    public void testMissesOtherQualifiers() {
+        write();
+        assertNull(cache(Collections.singletonList("test.qual.Top"), options).lookup(archiveUri, ELEMENT));
+    }
+
+    @Test
+    public void testMissesOtherOptions() {
+        write();
+        Map<String, String> otherOptions = new HashMap<>(options);
+        otherOptions.put("ignorejdkastub", null);
+        assertNull(cache(QUALIFIERS, otherOptions).lookup(archiveUri, ELEMENT));
+    }
+
+    @Test
+    public void testMissesOtherStubs() throws IOException {
+        write();
+        Files.write(stub.toPath(), "class Lib { @Top Object get(); }".getBytes(StandardCharsets.UTF_8));
+        assertNull(cache(QUALIFIERS, options).lookup(archiveUri, ELEMENT));
+    }
+
+    @Test
+    public void testMissesOtherDependency() throws IOException {
+        write();
+        Files.write(dependency.toPath(), "version 2".getBytes(StandardCharsets.UTF_8));
+        assertNull(cache(QUALIFIERS, options).lookup(archiveUri, ELEMENT));
+    }
+
+    @Test
+    public void testMissesOtherCode() {
+        write();
+        // Test is loaded from the JUnit jar rather than from the test classes.
+        BytecodeTypeSummaryCache otherCode = new BytecodeTypeSummaryCache(cacheDir, null, CHECKER, QUALIFIERS,
+                Collections.<Class<?>>singletonList(Test.class), options, classPath());
+        assertNull(otherCode.lookup(archiveUri, ELEMENT));
+    }
+
+    private void write() {
+        BytecodeTypeSummaryCache cache = cache(QUALIFIERS, options);
+        cache.add(archiveUri, ELEMENT, ENTRY);
+        cache.write();
+        assertEntry(cache(QUALIFIERS, options).lookup(archiveUri, ELEMENT));
+    }
+
+    private BytecodeTypeSummaryCache cache(Collection<String> qualifiers, Map<String, String> checkerOptions) {
+        return new BytecodeTypeSummaryCache(cacheDir, null, CHECKER, qualifiers,
+                Collections.<Class<?>>singletonList(BytecodeTypeSummaryCacheTest.class), checkerOptions,
+                classPath());
+    }
+
+    private List<File> classPath() {
+        return Arrays.asList(archive, dependency);
+    }
+
+    private static void assertEntry(List<String[]> entry) {
+        assertEquals(Arrays.deepToString(ENTRY.toArray()), Arrays.deepToString(entry.toArray()));
+    }
+}
@@ -0,0 +1,212 @@
+package checkers.inference.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.sun.source.tree.Tree;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import scenelib.annotations.io.ASTPath;
+import scenelib.annotations.io.ASTRecord;
+
+/**
+ * Checks that JaifBuilder writes the same Jaif whether it organizes the records in memory or
+ * sorts them externally, and the Jaif in testdata/jaif-builder, which the builder wrote before
+ * it could sort externally.
+ */
+public class JaifBuilderTest {
+
+    private static final Set<Class<? extends Annotation>> NO_ANNOTATIONS = Collections.emptySet();
+
+    @Test
+    public void testSingleClass() {
+        Map<AnnotationLocation, String> locations = new LinkedHashMap<>();
+        ASTRecord method = new ASTRecord(null, "a.b.C", "m()V", null, ASTPath.empty());
+        locations.put(new AstPathLocation(method.extend(Tree.Kind.METHOD, ASTPath.TYPE, -1)), "@Top");
+        locations.put(new ClassDeclLocation("a.b.C"), "@Decl");
+        ASTRecord field = new ASTRecord(null, "a.b.C", null, "f", ASTPath.empty());
+        locations.put(new AstPathLocation(field.extend(Tree.Kind.VARIABLE, ASTPath.TYPE, -1)), "@Bottom");
+        // Empty paths are skipped.
+        locations.put(new AstPathLocation(field), "@Top");
+
+        String expected = "package a.b:\n"
+                + "class C:@Decl\n"
+                + "field f:\n"
+                + "insert-annotation Variable.type: @Bottom\n"
+                + "\n"
+                + "method m()V:\n"
+                + "insert-annotation Method.type: @Top\n"
+                + "\n";
+        assertEquals(expected, new JaifBuilder(locations, NO_ANNOTATIONS).createJaif());
+
+        JaifBuilder builder = new JaifBuilder(locations, NO_ANNOTATIONS);
+        builder.setExternalSortThreshold(1);
+        assertEquals(expected, builder.createJaif());
+    }
+
+    @Test
+    public void testExternalSortGivesSameJaif() throws IOException {
+        Map<AnnotationLocation, String> locations = randomLocations(2000);
+        String expected = new JaifBuilder(locations, NO_ANNOTATIONS).createJaif();
+
+        for (int threshold : new int[] { 1, 2, 7, 100, 1999 }) {
+            JaifBuilder builder = new JaifBuilder(locations, NO_ANNOTATIONS);
+            builder.setExternalSortThreshold(threshold);
+            StringWriter writer = new StringWriter();
+            builder.writeJaif(writer);
+            assertEquals("threshold " + threshold, expected, writer.toString());
+        }
+    }
+
+    @Test
+    public void testInsertMainModOfLocalVar() {
+        Map<AnnotationLocation, String> locations = randomLocations(500);
+        for (boolean insertMainMod : new boolean[] { false, true }) {
+            String expected = new JaifBuilder(locations, NO_ANNOTATIONS, insertMainMod).createJaif();
+            JaifBuilder builder = new JaifBuilder(locations, NO_ANNOTATIONS, insertMainMod);
+            builder.setExternalSortThreshold(3);
+            assertEquals(expected, builder.createJaif());
+        }
+    }
+
+    @Test
+    public void testSameJaifAsFixture() throws IOException {
+        // Annotations with enum, enum[], Class and String[] elements, and without elements.
+        Set<Class<? extends Annotation>> annotations = new LinkedHashSet<>(Arrays.asList(
+                Retention.class, Target.class, Repeatable.class, SuppressWarnings.class, Documented.class));
+        Map<AnnotationLocation, String> locations = fixtureLocations();
+        for (boolean insertMainMod : new boolean[] { false, true }) {
+            String expected = readFixture(insertMainMod ? "locations-main-modifier.jaif" : "locations.jaif");
+            assertEquals(expected, new JaifBuilder(locations, annotations, insertMainMod).createJaif());
+
+            for (int threshold : new int[] { 1, 3, locations.size() - 1 }) {
+                JaifBuilder builder = new JaifBuilder(locations, annotations, insertMainMod);
+                builder.setExternalSortThreshold(threshold);
+                assertEquals("threshold " + threshold, expected, builder.createJaif());
+            }
+        }
+    }
+
+    /**
+     * Locations in three classes, one in the default package, with declaration annotations,
+     * initializers, fields, methods, parameters, receivers, nested type arguments, an empty path
+     * and a local variable, in the order in which they are written for testdata/jaif-builder.
+     */
+    private static Map<AnnotationLocation, String> fixtureLocations() {
+        Map<AnnotationLocation, String> locations = new LinkedHashMap<>();
+        locations.put(new ClassDeclLocation("p.C"), "@Top");
+        locations.put(methodLocation("p.C", "m0()V", null, 0), "@Bottom(1)");
+        locations.put(methodLocation("p.C", "m0()V", null, 2), "@Top");
+        locations.put(methodLocation("p.C", "m1()V", "-1", 0), "@Bottom(2)");
+        locations.put(methodLocation("p.C", "m1()V", "0", 0), "@Top");
+        locations.put(methodLocation("p.C", "m1()V", "1", 1), "@Bottom(3)");
+        locations.put(methodLocation("p.C", null, "f0", 0), "@Top");
+        locations.put(methodLocation("p.C", null, null, 0), "@Bottom(4)");
+        locations.put(localVariableLocation("p.C", "m0()V", 1), "@Top");
+        locations.put(new AstPathLocation(new ASTRecord(null, "p.C", "m2()V", null, ASTPath.empty())), "@Top");
+        locations.put(new ClassDeclLocation("Default"), "@Bottom(5)");
+        locations.put(methodLocation("Default", "m0()V", null, 1), "@Top");
+        locations.put(localVariableLocation("Default", "m0()V", 0), "@Bottom(6)");
+        locations.put(methodLocation("q.r.D", null, "f1", 0), "@Top");
+        locations.put(methodLocation("q.r.D", "m3()V", "0", 0), "@Bottom(7)");
+        locations.put(localVariableLocation("p.C", "m1()V", 2), "@Bottom(8)");
+        return locations;
+    }
+
+    /** The type of a method, field or parameter, and depth type arguments down into it. */
+    private static AstPathLocation methodLocation(String className, String methodName, String varName, int depth) {
+        ASTRecord record = new ASTRecord(null, className, methodName, varName, ASTPath.empty())
+                .extend(Tree.Kind.METHOD, ASTPath.TYPE, -1);
+        for (int i = 0; i < depth; i++) {
+            record = record.extend(Tree.Kind.PARAMETERIZED_TYPE, ASTPath.TYPE_ARGUMENT, i);
+        }
+        return new AstPathLocation(record);
+    }
+
+    /** The type of the local variable declared by the given statement of a method. */
+    private static AstPathLocation localVariableLocation(String className, String methodName, int statement) {
+        return new AstPathLocation(new ASTRecord(null, className, methodName, null, ASTPath.empty())
+                .extend(Tree.Kind.BLOCK, ASTPath.STATEMENT, statement)
+                .extend(Tree.Kind.VARIABLE, ASTPath.TYPE, -1));
+    }
+
+    private static String readFixture(String name) throws IOException {
+        return new String(Files.readAllBytes(Paths.get("testdata", "jaif-builder", name)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Locations in 50 classes, including the default package, with declaration annotations,
+     * initializers, fields, methods, parameters, receivers, empty paths and local variables.
+     */
+    private static Map<AnnotationLocation, String> randomLocations(int count) {
+        Random random = new Random(11);
+        Map<AnnotationLocation, String> locations = new HashMap<>();
+        while (locations.size() < count) {
+            int classIndex = random.nextInt(50);
+            String className = classIndex % 10 == 0 ? "Default" + classIndex : "p" + classIndex % 3 + ".C" + classIndex;
+            String annotation = random.nextBoolean() ? "@Top" : "@Bottom(" + random.nextInt(10) + ")";
+            if (random.nextInt(40) == 0) {
+                locations.put(new ClassDeclLocation(className), annotation);
+                continue;
+            }
+
+            String methodName = null;
+            String varName = null;
+            switch (random.nextInt(5)) {
+                case 0:
+                    break;
+                case 1:
+                    varName = "f" + random.nextInt(5);
+                    break;
+                case 2:
+                    methodName = "m" + random.nextInt(5) + "()V";
+                    varName = random.nextBoolean() ? "-1" : String.valueOf(random.nextInt(3));
+                    break;
+                default:
+                    methodName = "m" + random.nextInt(5) + "()V";
+                    break;
+            }
+
+            ASTRecord record = new ASTRecord(null, className, methodName, varName, ASTPath.empty());
+            switch (random.nextInt(6)) {
+                case 0:
+                    // empty path
+                    break;
+                case 1:
+                    record = record.extend(Tree.Kind.BLOCK, ASTPath.STATEMENT, random.nextInt(4))
+                                   .extend(Tree.Kind.VARIABLE, ASTPath.TYPE, -1);
+                    break;
+                default:
+                    record = record.extend(Tree.Kind.METHOD, ASTPath.TYPE, -1);
+                    for (int depth = random.nextInt(4); depth > 0; depth--) {
+                        record = record.extend(Tree.Kind.PARAMETERIZED_TYPE, ASTPath.TYPE_ARGUMENT, random.nextInt(3));
+                    }
+                    break;
+            }
+            locations.put(new AstPathLocation(record), annotation);
+        }
+        return locations;
+    }
+}